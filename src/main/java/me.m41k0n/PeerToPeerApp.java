@@ -1,39 +1,103 @@
 package me.m41k0n;
 
+import me.m41k0n.app.DataDirectory;
+import me.m41k0n.app.IdentityStore;
+import me.m41k0n.app.LanDiscovery;
 import me.m41k0n.app.P2PConnector;
+import me.m41k0n.app.PeerDirectory;
+import me.m41k0n.app.PeerListener;
+import me.m41k0n.app.PinnedPeers;
+import me.m41k0n.app.RelayServer;
+import me.m41k0n.app.RendezvousServer;
+import me.m41k0n.app.SessionRegistry;
+import me.m41k0n.app.StoreAndForward;
 import me.m41k0n.cli.CliUtils;
+import me.m41k0n.domain.PeerEndpoint;
 import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.Warmup;
+import me.m41k0n.store.ChatHistory;
+import me.m41k0n.store.Outbox;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class PeerToPeerApp {
 
     public static void main(String[] args) {
+        // BouncyCastle só é registrado se o JDK não tiver Ed25519
+        CryptoUtils.registerProviderIfNeeded();
+        if (args.length > 0 && "--warmup".equals(args[0])) {
+            // execução de treino (ex.: geração do arquivo AppCDS): aquece e sai
+            int done = Warmup.run(Integer.getInteger("p2p.warmup.iterations", Warmup.DEFAULT_ITERATIONS));
+            System.out.println("Aquecimento concluído: " + done + " handshake(s).");
+            return;
+        }
+        if (args.length > 0 && ("--relay".equals(args[0]) || "--rendezvous".equals(args[0]))) {
+            runService(new Scanner(System.in), "--relay".equals(args[0]));
+            return;
+        }
+        // aquece handshake/registros em segundo plano enquanto o usuário responde às perguntas
+        Warmup.startInBackground();
         Scanner scanner = new Scanner(System.in);
 
-        System.out.println("Gerando identidade...");
-        PeerIdentity myIdentity = PeerIdentity.generate();
-        System.out.println("Sua chave pública (sua identidade): " + myIdentity.getPublicKeyBase64());
-        System.out.println();
+        IdentityStore identityStore = openIdentityStore();
+        char[] passphrase = identityStore == null ? new char[0] : CliUtils.askPassphrase(scanner,
+                identityStore.exists() ? "Senha da sua identidade" : "Crie uma senha para proteger sua nova identidade (vazio = sem senha)");
+        // PBKDF2 + decodificação da chave rodam em paralelo com o restante da inicialização
+        CompletableFuture<PeerIdentity> identityLoad = CompletableFuture.supplyAsync(() -> loadIdentity(identityStore, passphrase));
+
         System.out.println("Seus endereços IP (v4) locais:");
         CliUtils.printLocalIPv4();
         System.out.println();
 
+        PeerDirectory directory = openPeerDirectory();
+        PinnedPeers pinned = openPinnedPeers();
+        PeerIdentity myIdentity = awaitIdentity(identityLoad, identityStore, scanner);
+        System.out.println("Sua chave pública (sua identidade): " + myIdentity.getPublicKeyBase64());
+        System.out.println();
+
+        // A porta fica aberta durante toda a execução: peers podem reconectar entre sessões
+        PeerListener listener = openListener(scanner, myIdentity);
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            serveFleet(listener, pinned);
+            return;
+        }
+
+        // Entre sessões, peers fixados que conectarem ficam aguardando em vez de serem recusados
+        if (pinned != null) listener.parkWhileDetached(pinned);
+        LanDiscovery lan = openDiscovery(myIdentity, listener.getPort());
+
         // Loop principal: qualquer erro volta ao início, evitando reiniciar a aplicação
         while (true) {
             try {
-                int listenPort = CliUtils.askPort(scanner, "Porta local para ouvir conexões");
+                printPinnedOnLan(lan, pinned);
+                String peerPubB64 = CliUtils.askPeerKey(scanner, knownPeers(pinned, directory),
+                        "Chave pública (Base64) do peer com quem deseja falar");
+                if (pinned != null && pinned.pin(peerPubB64, null)) {
+                    System.out.println("Peer fixado (" + CryptoUtils.fingerprintHex(peerPubB64) + ").");
+                }
 
-                String peerPubB64 = CliUtils.askBase64Key(scanner, "Chave pública (Base64) do peer com quem deseja falar");
+                List<PeerEndpoint> known = new ArrayList<>(lan != null ? lan.endpointsOf(peerPubB64) : Collections.emptyList());
+                if (directory != null) known.addAll(directory.knownEndpoints(peerPubB64));
+                List<PeerEndpoint> peerEndpoints = CliUtils.askPeerEndpoints(scanner, known);
 
-                String peerIp = CliUtils.askPeerIp(scanner);
-                Integer peerPort = null;
-                if (!peerIp.isEmpty()) {
-                    peerPort = CliUtils.askPort(scanner, "Porta do peer");
+                // Anexa ao listener e, se houver endereços do peer (digitados ou conhecidos), também inicia um dialer com retry.
+                try (Outbox outbox = openOutbox(myIdentity, peerPubB64);
+                     ChatHistory history = openHistory(myIdentity, peerPubB64)) {
+                    StoreAndForward saf = outbox != null ? new StoreAndForward(outbox) : null;
+                    new P2PConnector(directory, saf, history).withDiscovery(lan).startPeerRace(listener, peerEndpoints, myIdentity, peerPubB64, scanner);
                 }
-
-                // Inicia sempre o listener e, se IP do peer for informado, também um dialer com retry.
-                new P2PConnector().startPeerRace(listenPort, peerIp.isEmpty() ? null : peerIp, peerPort, myIdentity, peerPubB64, scanner);
                 System.out.println("Sessão encerrada. Voltando ao início...\n");
             } catch (Exception e) {
                 System.err.println("Erro inesperado na aplicação: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
@@ -41,4 +105,192 @@ public class PeerToPeerApp {
             }
         }
     }
+
+    /**
+     * Pergunta a porta local e abre o listener de longa duração; se a porta estiver ocupada, pergunta de novo.
+     */
+    private static PeerListener openListener(Scanner scanner, PeerIdentity myIdentity) {
+        while (true) {
+            int listenPort = CliUtils.askPort(scanner, "Porta local para ouvir conexões");
+            try {
+                return PeerListener.open(listenPort, myIdentity);
+            } catch (IOException e) {
+                System.err.println("Não foi possível ouvir na porta " + listenPort + " (" + e.getMessage() + "). Tente outra.");
+            }
+        }
+    }
+
+    /**
+     * Descoberta na rede local (anúncios multicast assinados); desligável com -Dp2p.discovery=false.
+     * Sem multicast disponível o app segue só com endereços digitados/conhecidos.
+     */
+    private static LanDiscovery openDiscovery(PeerIdentity myIdentity, int listenPort) {
+        if (!Boolean.parseBoolean(System.getProperty("p2p.discovery", "true"))) return null;
+        try {
+            return LanDiscovery.start(myIdentity, listenPort);
+        } catch (IOException e) {
+            System.err.println("Descoberta na rede local indisponível (" + e.getMessage() + ").");
+            return null;
+        }
+    }
+
+    private static void printPinnedOnLan(LanDiscovery lan, PinnedPeers pinned) {
+        if (lan == null || pinned == null) return;
+        for (String k : lan.present(pinned.publicKeys())) {
+            System.out.println("Peer fixado na rede local: " + CryptoUtils.fingerprintHex(k) + " em " + lan.endpointsOf(k));
+        }
+    }
+
+    /**
+     * Modo servidor ("--serve"): aceita sessões simultâneas de todos os peers fixados e imprime as
+     * mensagens recebidas com a impressão digital do remetente. Não retorna.
+     */
+    private static void serveFleet(PeerListener listener, PinnedPeers pinned) {
+        if (pinned == null) {
+            System.err.println("Modo servidor exige a lista de peers fixados.");
+            return;
+        }
+        SessionRegistry registry = new SessionRegistry();
+        listener.attach(pinned, session -> {
+            registry.register(session);
+            String fp = CryptoUtils.fingerprintHex(session.getPeerStaticPubB64());
+            System.out.println("[Sessions] " + fp + " conectado (" + registry.size() + " ativo(s)).");
+            session.runReceiver(registry.handlerFor(session, new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { System.out.println("[" + fp + "] " + text); }
+                @Override public void onError(Exception e) { System.out.println("[Sessions] " + fp + " desconectado."); }
+            }));
+        });
+        System.out.println("Modo servidor: aceitando " + pinned.publicKeys().size() + " peer(s) fixado(s). Ctrl+C para sair.");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Modos de infraestrutura, sem identidade: "--relay" retransmite registros cifrados entre peers
+     * que não se alcançam; "--rendezvous" só troca endpoints para hole punching. Não retorna.
+     */
+    private static void runService(Scanner scanner, boolean relayMode) {
+        while (true) {
+            int port = CliUtils.askPort(scanner, relayMode ? "Porta do relay" : "Porta do rendezvous (TCP e UDP)");
+            try {
+                if (!relayMode) {
+                    RendezvousServer.open(port);
+                    System.out.println("Modo rendezvous ativo. Ctrl+C para sair.");
+                    Thread.currentThread().join();
+                    return;
+                }
+                RelayServer relay = RelayServer.open(port);
+                System.out.println("Modo relay ativo. Ctrl+C para sair.");
+                while (true) {
+                    Thread.sleep(60_000);
+                    System.out.println("[Relay] " + relay.getActiveSessions() + " sessão(ões) ativa(s), "
+                            + relay.getWaitingCount() + " aguardando par, " + relay.getBytesRelayed() + " bytes retransmitidos.");
+                }
+            } catch (IOException e) {
+                System.err.println("Não foi possível ouvir na porta " + port + " (" + e.getMessage() + "). Tente outra.");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Abre a outbox persistente do peer (mensagens guardadas enquanto ele estava offline).
+     * Retorna null se o disco não estiver disponível; o chat segue sem store-and-forward.
+     */
+    private static Outbox openOutbox(PeerIdentity myIdentity, String peerPubB64) {
+        try {
+            Path dir = DataDirectory.resolve("outbox").resolve(CryptoUtils.fingerprintHex(peerPubB64));
+            return new Outbox(dir, Outbox.deriveAtRestKey(myIdentity.getPrivateKey(), peerPubB64), peerPubB64);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Outbox indisponível (" + e.getMessage() + "); mensagens não entregues serão perdidas.");
+            return null;
+        }
+    }
+
+    /**
+     * Abre o histórico local do peer (com índice de palavras para /search).
+     * Retorna null se o disco não estiver disponível; o chat segue sem histórico.
+     */
+    private static ChatHistory openHistory(PeerIdentity myIdentity, String peerPubB64) {
+        try {
+            Path dir = DataDirectory.resolve("history").resolve(CryptoUtils.fingerprintHex(peerPubB64));
+            return new ChatHistory(dir, ChatHistory.deriveAtRestKey(myIdentity.getPrivateKey(), peerPubB64), true);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Histórico indisponível (" + e.getMessage() + "); mensagens não serão gravadas.");
+            return null;
+        }
+    }
+
+    /**
+     * Peers fixados primeiro, depois os demais conhecidos pelo diretório (sem repetição).
+     */
+    private static List<String> knownPeers(PinnedPeers pinned, PeerDirectory directory) {
+        Set<String> keys = new LinkedHashSet<>();
+        if (pinned != null) keys.addAll(pinned.publicKeys());
+        if (directory != null) keys.addAll(directory.knownPeers());
+        return new ArrayList<>(keys);
+    }
+
+    private static IdentityStore openIdentityStore() {
+        try {
+            return IdentityStore.openDefault();
+        } catch (IOException e) {
+            System.err.println("Armazenamento de identidade indisponível (" + e.getMessage() + "); usando identidade temporária.");
+            return null;
+        }
+    }
+
+    private static PeerIdentity loadIdentity(IdentityStore store, char[] passphrase) {
+        try {
+            if (store == null) return PeerIdentity.generate();
+            boolean existed = store.exists();
+            PeerIdentity id = store.loadOrCreate(passphrase);
+            if (!existed) System.out.println("Nova identidade gerada e salva.");
+            return id;
+        } catch (IOException e) {
+            System.err.println("Falha ao ler/gravar identidade (" + e.getMessage() + "); usando identidade temporária.");
+            return PeerIdentity.generate();
+        } finally {
+            Arrays.fill(passphrase, '\0');
+        }
+    }
+
+    /**
+     * Aguarda a carga em segundo plano; se a senha estiver errada, pergunta de novo.
+     */
+    private static PeerIdentity awaitIdentity(CompletableFuture<PeerIdentity> load, IdentityStore store, Scanner scanner) {
+        while (true) {
+            try {
+                return load.join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof IllegalStateException)) throw e;
+                System.err.println("Não foi possível abrir a identidade: " + e.getCause().getMessage() + ". Tente novamente.");
+                char[] again = CliUtils.askPassphrase(scanner, "Senha da sua identidade");
+                load = CompletableFuture.supplyAsync(() -> loadIdentity(store, again));
+            }
+        }
+    }
+
+    private static PinnedPeers openPinnedPeers() {
+        try {
+            return PinnedPeers.openDefault();
+        } catch (IOException e) {
+            System.err.println("Lista de peers fixados indisponível (" + e.getMessage() + ").");
+            return null;
+        }
+    }
+
+    private static PeerDirectory openPeerDirectory() {
+        try {
+            return PeerDirectory.openDefault();
+        } catch (IOException e) {
+            System.err.println("Diretório de peers indisponível (" + e.getMessage() + "); seguindo sem histórico.");
+            return null;
+        }
+    }
 }
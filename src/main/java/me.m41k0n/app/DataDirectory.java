@@ -0,0 +1,28 @@
+package me.m41k0n.app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Local dos arquivos persistentes do nó (diretório de peers, etc.).
+ * Padrão: ~/.securep2p — pode ser sobrescrito com -Dp2p.home=/outro/caminho (útil em testes e
+ * para rodar vários nós na mesma máquina).
+ */
+public final class DataDirectory {
+
+    private DataDirectory() {}
+
+    public static Path base() {
+        String override = System.getProperty("p2p.home");
+        if (override != null && !override.trim().isEmpty()) return Paths.get(override.trim());
+        return Paths.get(System.getProperty("user.home"), ".securep2p");
+    }
+
+    public static Path resolve(String name) throws IOException {
+        Path dir = base();
+        Files.createDirectories(dir);
+        return dir.resolve(name);
+    }
+}
@@ -0,0 +1,268 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.AeadUtils;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canal de grupo com "sender keys" sobre sessões pareadas já autenticadas.
+ *
+ * Cada participante gera uma chave de remetente (AES-256) e a distribui aos membros por registros
+ * de controle cifrados das sessões pareadas ({@link SecureSession#sendControl}). Cada mensagem de grupo
+ * é cifrada UMA vez com essa chave e o mesmo envelope é enviado a todas as sessões
+ * ({@link SecureSession#sendGroupRecord}), então o custo de CPU do envio não cresce com o tamanho do grupo.
+ *
+ * Formato do envelope (linha de texto): groupId|keyId|gseq|Base64(IV || ciphertext+tag)|assinatura,
+ * com AAD = "groupId|keyId|gseq" e a assinatura Ed25519 da identidade do remetente sobre todo o
+ * resto ("groupId|keyId|gseq|ct"), calculada uma vez por mensagem. O envelope trafega fora do AEAD
+ * pareado, então a chave de grupo só garante sigilo: todo membro a conhece e poderia cifrar em nome
+ * do remetente. Quem autentica o remetente é a assinatura, verificada com a chave pública do dono da
+ * chave de grupo. As chaves recebidas são indexadas por (dono, keyId) e só são procuradas entre as
+ * distribuídas pela sessão que entregou o envelope, então um membro também não sequestra o keyId de
+ * outro. gseq repetido/antigo é rejeitado. Ao remover um membro, a chave de remetente é rotacionada.
+ */
+public class GroupChannel {
+
+    private static final String KEY_CONTROL = "gkey";
+    private static final int KEY_BYTES = 32;
+    private static final SecureRandom RNG = new SecureRandom();
+
+    private final String groupId;
+    private final PeerIdentity me;
+    private final Map<String, SecureSession> members = new ConcurrentHashMap<>();
+    // "dono|keyId" -> chave; o keyId é escolhido pelo remetente e visível a todos os membros
+    private final Map<String, RemoteKey> remoteKeys = new ConcurrentHashMap<>();
+
+    private byte[] senderKey;
+    private String senderKeyId;
+    private long nextGroupSeq;
+
+    /**
+     * Recebe mensagens de grupo já abertas e autenticadas.
+     */
+    public interface GroupListener {
+        void onGroupMessage(String fromPeerPubB64, String text);
+    }
+
+    private static final class RemoteKey {
+        final String owner;
+        final byte[] ownerPub;
+        final byte[] key;
+        long lastSeq = -1;
+
+        RemoteKey(String owner, byte[] key) {
+            this.owner = owner;
+            this.ownerPub = Base64.getDecoder().decode(owner);
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param me identidade local, que assina os envelopes enviados (os membros a conhecem pela sessão pareada)
+     */
+    public GroupChannel(String groupId, PeerIdentity me) {
+        if (groupId == null || !groupId.matches("[A-Za-z0-9_-]{1,64}")) {
+            throw new IllegalArgumentException("groupId inválido (use 1..64 caracteres [A-Za-z0-9_-])");
+        }
+        if (me == null) throw new IllegalArgumentException("identidade local é obrigatória");
+        this.groupId = groupId;
+        this.me = me;
+        rotateSenderKey();
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public List<String> memberKeys() {
+        return new ArrayList<>(members.keySet());
+    }
+
+    /**
+     * Adiciona um membro (sessão já estabelecida) e envia a ele nossa chave de remetente atual.
+     */
+    public synchronized void addMember(SecureSession session) throws IOException {
+        String peer = session.getPeerStaticPubB64();
+        session.sendControl(keyControl());
+        members.put(peer, session);
+    }
+
+    /**
+     * Remove um membro e rotaciona a chave de remetente, redistribuindo-a aos restantes,
+     * para que o membro removido não leia mensagens futuras.
+     */
+    public synchronized void removeMember(String peerPubB64) {
+        if (members.remove(peerPubB64) == null) return;
+        forgetKeysOf(peerPubB64);
+        rotateSenderKey();
+        String control = keyControl();
+        for (Iterator<Map.Entry<String, SecureSession>> it = members.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, SecureSession> e = it.next();
+            try {
+                e.getValue().sendControl(control);
+            } catch (IOException ioe) {
+                System.err.println("[Group] Falha ao redistribuir chave para membro; removendo: " + ioe.getMessage());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Cifra e assina a mensagem uma única vez e envia o mesmo envelope a todos os membros.
+     * Membros com sessão encerrada ou falha de escrita são removidos. Retorna quantos receberam.
+     */
+    public synchronized int broadcast(String plaintext) {
+        long gseq = nextGroupSeq++;
+        String header = groupId + "|" + senderKeyId + "|" + gseq;
+        String ct = AeadUtils.encryptToBase64(senderKey, plaintext.getBytes(StandardCharsets.UTF_8),
+                header.getBytes(StandardCharsets.UTF_8));
+        String signed = header + "|" + ct;
+        String envelope = signed + "|" + me.sign(signed);
+
+        int delivered = 0;
+        for (Iterator<Map.Entry<String, SecureSession>> it = members.entrySet().iterator(); it.hasNext();) {
+            SecureSession s = it.next().getValue();
+            try {
+                if (s.isClosed()) throw new IOException("sessão encerrada");
+                s.sendGroupRecord(envelope);
+                delivered++;
+            } catch (IOException ioe) {
+                System.err.println("[Group] Falha ao enviar para membro; removendo do grupo: " + ioe.getMessage());
+                it.remove();
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Processa um registro de controle vindo da sessão do peer informado.
+     * Retorna true se o registro era uma distribuição de chave deste grupo.
+     */
+    public boolean handleControl(String fromPeerPubB64, String body) {
+        String[] p = body.split("\\|", -1);
+        if (p.length != 4 || !KEY_CONTROL.equals(p[0]) || !groupId.equals(p[1])) return false;
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(p[3]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("chave de grupo não é Base64 válido");
+        }
+        if (key.length != KEY_BYTES) throw new IllegalArgumentException("chave de grupo com tamanho inválido");
+        try {
+            Base64.getDecoder().decode(fromPeerPubB64);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("chave pública do remetente não é Base64 válido");
+        }
+        // a nova chave do dono substitui as anteriores (rotação)
+        forgetKeysOf(fromPeerPubB64);
+        remoteKeys.put(keySlot(fromPeerPubB64, p[2]), new RemoteKey(fromPeerPubB64, key));
+        return true;
+    }
+
+    /**
+     * Abre um envelope de grupo recebido pela sessão do peer informado.
+     * Lança IllegalArgumentException para envelope malformado e IllegalStateException para
+     * chave desconhecida, remetente divergente, assinatura inválida, replay ou falha de autenticação.
+     */
+    public String open(String fromPeerPubB64, String envelope) {
+        String[] p = envelope.split("\\|", -1);
+        if (p.length != 5) throw new IllegalArgumentException("envelope de grupo malformado");
+        if (!groupId.equals(p[0])) throw new IllegalStateException("envelope de outro grupo: " + p[0]);
+        // só procura entre as chaves distribuídas pela sessão que entregou o envelope
+        RemoteKey rk = remoteKeys.get(keySlot(fromPeerPubB64, p[1]));
+        if (rk == null) throw new IllegalStateException("chave de remetente desconhecida para esta sessão: " + p[1]);
+        long gseq;
+        try {
+            gseq = Long.parseLong(p[2]);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("gseq malformado");
+        }
+        // o envelope não passa pelo AEAD da sessão: sem a assinatura do dono, qualquer membro forjaria
+        String signed = envelope.substring(0, envelope.lastIndexOf('|'));
+        if (!CryptoUtils.verify(rk.ownerPub, signed, p[4])) {
+            throw new IllegalStateException("assinatura do remetente inválida no envelope de grupo");
+        }
+        synchronized (rk) {
+            if (gseq <= rk.lastSeq) throw new IllegalStateException("replay/out-of-order de grupo: gseq=" + gseq);
+            byte[] aad = (p[0] + "|" + p[1] + "|" + p[2]).getBytes(StandardCharsets.UTF_8);
+            byte[] plain;
+            try {
+                plain = AeadUtils.decryptFromBase64(rk.key, p[3], aad);
+            } catch (RuntimeException ex) {
+                throw new IllegalStateException("envelope de grupo não autenticou", ex);
+            }
+            rk.lastSeq = gseq;
+            return new String(plain, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Handler para {@link SecureSession#runReceiver} que trata chaves e envelopes deste grupo e
+     * delega o restante (mensagens pareadas, erros) ao handler original.
+     */
+    public SecureSession.MessageHandler handlerFor(SecureSession session,
+                                                  SecureSession.MessageHandler delegate,
+                                                  GroupListener listener) {
+        final String peer = session.getPeerStaticPubB64();
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) {
+                delegate.onPlaintext(text);
+            }
+            @Override public void onError(Exception e) {
+                delegate.onError(e);
+            }
+            @Override public void onControl(String body) {
+                try {
+                    if (!handleControl(peer, body)) delegate.onControl(body);
+                } catch (IllegalArgumentException iae) {
+                    System.err.println("[Group] Controle de grupo inválido ignorado: " + iae.getMessage());
+                }
+            }
+            @Override public void onGroupRecord(String envelope) {
+                try {
+                    listener.onGroupMessage(peer, open(peer, envelope));
+                } catch (IllegalArgumentException | IllegalStateException ex) {
+                    System.err.println("[Group] Envelope de grupo descartado: " + ex.getMessage());
+                }
+            }
+        };
+    }
+
+    private String keyControl() {
+        return KEY_CONTROL + "|" + groupId + "|" + senderKeyId + "|" + Base64.getEncoder().encodeToString(senderKey);
+    }
+
+    private void rotateSenderKey() {
+        if (senderKey != null) Arrays.fill(senderKey, (byte) 0);
+        senderKey = new byte[KEY_BYTES];
+        RNG.nextBytes(senderKey);
+        byte[] id = new byte[8];
+        RNG.nextBytes(id);
+        senderKeyId = Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+        nextGroupSeq = 0;
+    }
+
+    private static String keySlot(String owner, String keyId) {
+        return owner + "|" + keyId;
+    }
+
+    private void forgetKeysOf(String owner) {
+        remoteKeys.entrySet().removeIf(e -> {
+            if (!e.getValue().owner.equals(owner)) return false;
+            Arrays.fill(e.getValue().key, (byte) 0);
+            return true;
+        });
+    }
+}
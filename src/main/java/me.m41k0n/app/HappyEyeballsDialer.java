@@ -0,0 +1,298 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.FlightEvents;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.infra.TransportProfile;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Discagem "happy eyeballs" (RFC 8305, simplificado): resolve todos os candidatos do peer,
+ * intercala IPv6/IPv4 e dispara tentativas escalonadas (connect + handshake) em paralelo.
+ * A primeira tentativa que concluir o handshake autenticado vence; as demais são canceladas
+ * fechando seus sockets.
+ */
+public class HappyEyeballsDialer {
+
+    /** Atraso entre o início de tentativas consecutivas (RFC 8305 recomenda 250 ms). */
+    public static final long DEFAULT_STAGGER_MS = 250;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 2000;
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+    private static final String PATH = "direto";
+
+    private final PeerIdentity myIdentity;
+    private final String peerStaticPubB64;
+    private final long staggerMs;
+    private final int connectTimeoutMs;
+    private final TransportProfile profile;
+    private volatile DialObserver observer;
+
+    /**
+     * Recebe o resultado de cada tentativa individual (ex.: para alimentar o {@link PeerDirectory}).
+     * Tentativas canceladas por perderem a corrida não são reportadas como falha.
+     */
+    public interface DialObserver {
+        void onAttemptSucceeded(PeerEndpoint endpoint, long handshakeMs);
+        void onAttemptFailed(PeerEndpoint endpoint);
+    }
+
+    /** Dialer com o perfil de transporte de -Dp2p.transport (ver {@link TransportProfile}). */
+    public HappyEyeballsDialer(PeerIdentity myIdentity, String peerStaticPubB64) {
+        this(myIdentity, peerStaticPubB64, TransportProfile.current());
+    }
+
+    /** Dialer cujos sockets (opções TCP, timeouts de connect e handshake) seguem 'profile'. */
+    public HappyEyeballsDialer(PeerIdentity myIdentity, String peerStaticPubB64, TransportProfile profile) {
+        this(myIdentity, peerStaticPubB64, DEFAULT_STAGGER_MS, profile.connectTimeoutMs(), profile);
+    }
+
+    /**
+     * Dialer com escalonamento e timeout de connect explícitos: estes dois valores prevalecem sobre
+     * o perfil; opções TCP e timeout de handshake continuam vindo de {@link TransportProfile#current()}.
+     */
+    public HappyEyeballsDialer(PeerIdentity myIdentity, String peerStaticPubB64, long staggerMs, int connectTimeoutMs) {
+        this(myIdentity, peerStaticPubB64, staggerMs, connectTimeoutMs, TransportProfile.current());
+    }
+
+    private HappyEyeballsDialer(PeerIdentity myIdentity, String peerStaticPubB64, long staggerMs, int connectTimeoutMs,
+                                TransportProfile profile) {
+        this.myIdentity = myIdentity;
+        this.peerStaticPubB64 = peerStaticPubB64;
+        this.staggerMs = staggerMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.profile = profile;
+    }
+
+    public void setObserver(DialObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Executa uma rodada de corrida sobre todos os endereços resolvidos dos candidatos.
+     * Retorna a sessão vencedora (handshake concluído) ou null se todas falharem ou se
+     * 'abort' for sinalizado (ex.: o listener venceu a corrida global).
+     */
+    public SecureSession race(List<PeerEndpoint> candidates, AtomicBoolean abort) {
+        List<Target> addrs = interleave(resolveAll(candidates));
+        if (addrs.isEmpty()) return null;
+
+        ExecutorService pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "p2p-dial-" + THREAD_IDS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<SecureSession> cs = new ExecutorCompletionService<>(pool);
+        List<Attempt> attempts = new ArrayList<>();
+        SecureSession won = null;
+        try {
+            int next = 0;
+            int inFlight = 0;
+            while (!abort.get() && (inFlight > 0 || next < addrs.size())) {
+                if (inFlight == 0) {
+                    // nada em andamento: inicia a próxima tentativa imediatamente
+                    start(cs, attempts, addrs.get(next++));
+                    inFlight++;
+                    continue;
+                }
+                Future<SecureSession> f = cs.poll(staggerMs, TimeUnit.MILLISECONDS);
+                if (f == null) {
+                    // a tentativa atual ainda não respondeu dentro do escalonamento: abre a próxima em paralelo
+                    if (next < addrs.size()) {
+                        start(cs, attempts, addrs.get(next++));
+                        inFlight++;
+                    }
+                    continue;
+                }
+                inFlight--;
+                won = resultOrNull(f);
+                if (won != null) {
+                    System.out.println("[P2P] Conectado ao peer via " + addressOf(attempts, won));
+                    return won;
+                }
+                // falha rápida: não espera o escalonamento para tentar o próximo endereço
+                if (next < addrs.size()) {
+                    start(cs, attempts, addrs.get(next++));
+                    inFlight++;
+                }
+            }
+            return null;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            // cancela todas as tentativas perdedoras (inclusive as que concluíram depois da vencedora)
+            for (Attempt a : attempts) {
+                if (a.session != won || won == null) a.cancel();
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    private void start(CompletionService<SecureSession> cs, List<Attempt> attempts, Target addr) {
+        Attempt a = new Attempt(addr);
+        attempts.add(a);
+        cs.submit(a::run);
+    }
+
+    private static InetSocketAddress addressOf(List<Attempt> attempts, SecureSession s) {
+        for (Attempt a : attempts) {
+            if (a.session == s) return a.target.address;
+        }
+        return null;
+    }
+
+    private static SecureSession resultOrNull(Future<SecureSession> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException ee) {
+            return null;
+        }
+    }
+
+    /**
+     * Endereço resolvido + endpoint de origem (para reportar o resultado ao observer).
+     */
+    static final class Target {
+        final PeerEndpoint endpoint;
+        final InetSocketAddress address;
+
+        Target(PeerEndpoint endpoint, InetSocketAddress address) {
+            this.endpoint = endpoint;
+            this.address = address;
+        }
+
+        boolean isIPv6() {
+            return address.getAddress() instanceof Inet6Address;
+        }
+    }
+
+    /**
+     * Resolve cada candidato (literal ou hostname) para todos os seus endereços, sem duplicatas.
+     * Falhas de DNS de um candidato não impedem os demais.
+     */
+    List<Target> resolveAll(List<PeerEndpoint> candidates) {
+        Set<InetSocketAddress> seen = new HashSet<>();
+        List<Target> out = new ArrayList<>();
+        for (PeerEndpoint ep : candidates) {
+            try {
+                for (InetAddress a : InetAddress.getAllByName(ep.getHost())) {
+                    InetSocketAddress isa = new InetSocketAddress(a, ep.getPort());
+                    if (seen.add(isa)) out.add(new Target(ep, isa));
+                }
+            } catch (UnknownHostException uhe) {
+                System.err.println("[P2P] Não foi possível resolver " + ep + ": " + uhe.getMessage());
+                DialObserver obs = observer;
+                if (obs != null) obs.onAttemptFailed(ep);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Intercala famílias de endereço (RFC 8305 §4) começando pela família do primeiro candidato,
+     * preservando a ordem relativa dentro de cada família. Assim a preferência do chamador
+     * (ex.: endpoint historicamente mais rápido no {@link PeerDirectory}) é tentada primeiro.
+     */
+    static List<Target> interleave(List<Target> addrs) {
+        if (addrs.isEmpty()) return addrs;
+        boolean firstIsV6 = addrs.get(0).isIPv6();
+        List<Target> first = new ArrayList<>();
+        List<Target> second = new ArrayList<>();
+        for (Target t : addrs) {
+            if (t.isIPv6() == firstIsV6) first.add(t); else second.add(t);
+        }
+        List<Target> out = new ArrayList<>(addrs.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            if (i < first.size()) out.add(first.get(i++));
+            if (j < second.size()) out.add(second.get(j++));
+        }
+        return out;
+    }
+
+    /**
+     * Uma tentativa individual: connect + handshake como iniciador. Pode ser cancelada a
+     * qualquer momento fechando o socket; se concluir depois do cancelamento, fecha a própria sessão.
+     */
+    private final class Attempt {
+        private final Target target;
+        private volatile boolean cancelled;
+        private volatile Socket socket;
+        private volatile SecureSession session;
+
+        Attempt(Target target) {
+            this.target = target;
+        }
+
+        SecureSession run() throws Exception {
+            Socket s = new Socket();
+            this.socket = s;
+            long start = System.nanoTime();
+            FlightEvents.Dial event = FlightEvents.beginDial();
+            try {
+                if (cancelled) throw new IOException("tentativa cancelada");
+                profile.configure(s);
+                s.connect(target.address, connectTimeoutMs);
+                s.setSoTimeout(profile.handshakeTimeoutMs());
+                SecureSession sess = new SecureSession(new TcpSocketAdapter(s), myIdentity, peerStaticPubB64, true);
+                this.session = sess;
+                sess.startHandshake();
+                s.setSoTimeout(0);
+                DialObserver obs = observer;
+                if (obs != null) obs.onAttemptSucceeded(target.endpoint, (System.nanoTime() - start) / 1_000_000L);
+                if (cancelled) {
+                    sess.close();
+                    throw new IOException("tentativa cancelada após handshake");
+                }
+                if (event != null) event.end(PATH, target.address.toString(), null);
+                return sess;
+            } catch (Exception e) {
+                if (event != null) event.end(PATH, target.address.toString(), cancelled ? "cancelada" : String.valueOf(e.getMessage()));
+                if (!cancelled) {
+                    System.err.println("[P2P] Tentativa para " + target.address + " falhou: " + e.getMessage());
+                    DialObserver obs = observer;
+                    if (obs != null) obs.onAttemptFailed(target.endpoint);
+                }
+                closeQuietly(s);
+                throw e;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            SecureSession sess = session;
+            if (sess != null) {
+                try { sess.close(); } catch (IOException ignored) { }
+            }
+            Socket s = socket;
+            if (s != null) closeQuietly(s);
+        }
+    }
+
+    private static void closeQuietly(Socket s) {
+        try { s.close(); } catch (IOException ignored) { }
+    }
+}
@@ -0,0 +1,149 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.UdpStreamSocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Lado cliente do {@link RendezvousServer}: descobre o próprio endpoint UDP público, troca
+ * endpoints com o peer pelo rendezvous, fura os dois NATs ao mesmo tempo e roda a
+ * {@link SecureSession} direto sobre o caminho UDP aberto ({@link UdpStreamSocket}).
+ */
+public class HolePuncher {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int JOIN_TIMEOUT_MS = 10_000;
+    private static final int OBSERVE_TRIES = 8;
+    private static final int OBSERVE_WAIT_MS = 250;
+    private static final long PUNCH_WINDOW_MS = 5000;
+
+    private final PeerEndpoint rendezvous;
+    private final PeerIdentity myIdentity;
+    private final String peerStaticPubB64;
+    private final SecureRandom random = new SecureRandom();
+    // sockets ainda em negociação; null depois de entregue a sessão
+    private volatile Closeable pendingUdp;
+    private volatile Closeable pendingTcp;
+    private volatile boolean cancelled;
+
+    public HolePuncher(PeerEndpoint rendezvous, PeerIdentity myIdentity, String peerStaticPubB64) {
+        if (rendezvous == null || myIdentity == null || peerStaticPubB64 == null) {
+            throw new IllegalArgumentException("rendezvous, identidade e peer são obrigatórios");
+        }
+        this.rendezvous = rendezvous;
+        this.myIdentity = myIdentity;
+        this.peerStaticPubB64 = peerStaticPubB64;
+    }
+
+    /**
+     * Uma tentativa completa: observa, encontra o peer (até 'pairWaitMs'), fura e faz o handshake.
+     * Lança se o rendezvous não responder, o peer não aparecer ou o punching não abrir caminho
+     * (ex.: NAT simétrico); aí cabe ao caller cair para o relay.
+     */
+    public SecureSession connect(int pairWaitMs) throws Exception {
+        DatagramSocket udp = new DatagramSocket();
+        pendingUdp = udp;
+        try {
+            if (cancelled) throw new IOException("hole punching cancelado");
+            InetSocketAddress rdv = new InetSocketAddress(rendezvous.getHost(), rendezvous.getPort());
+            byte[] tokenBytes = new byte[16];
+            random.nextBytes(tokenBytes);
+            String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+            observe(udp, rdv, token);
+
+            String[] peer = meet(rdv, token, pairWaitMs);
+            InetSocketAddress peerUdp = new InetSocketAddress(peer[1], Integer.parseInt(peer[2]));
+            boolean initiator = RelayServer.ROLE_INITIATOR.equals(peer[3]);
+
+            UdpStreamSocket stream = UdpStreamSocket.punch(udp, peerUdp, PUNCH_WINDOW_MS);
+            if (stream == null) {
+                throw new IOException("hole punching não abriu caminho até " + peerUdp + " (NAT simétrico?)");
+            }
+            SecureSession session = new SecureSession(stream, myIdentity, peerStaticPubB64, initiator);
+            session.startHandshake();
+            pendingUdp = null;
+            return session;
+        } catch (Exception e) {
+            pendingUdp = null;
+            udp.close();
+            throw e;
+        }
+    }
+
+    // registra o endpoint UDP público (visto pelo rendezvous) sob um token de uso único
+    private static void observe(DatagramSocket udp, InetSocketAddress rdv, String token) throws IOException {
+        byte[] req = (RendezvousServer.UDP_PREFIX + token).getBytes(StandardCharsets.UTF_8);
+        byte[] buf = new byte[256];
+        DatagramPacket p = new DatagramPacket(buf, buf.length);
+        udp.setSoTimeout(OBSERVE_WAIT_MS);
+        for (int i = 0; i < OBSERVE_TRIES; i++) {
+            udp.send(new DatagramPacket(req, req.length, rdv));
+            try {
+                p.setLength(buf.length);
+                udp.receive(p);
+            } catch (SocketTimeoutException again) {
+                continue;
+            }
+            if (rdv.equals(p.getSocketAddress())
+                    && new String(buf, 0, p.getLength(), StandardCharsets.UTF_8).startsWith(RendezvousServer.SEEN_PREFIX)) {
+                return;
+            }
+        }
+        throw new IOException("rendezvous não respondeu via UDP");
+    }
+
+    private String[] meet(InetSocketAddress rdv, String token, int pairWaitMs) throws IOException {
+        try (Socket s = new Socket()) {
+            pendingTcp = s;
+            if (cancelled) throw new IOException("hole punching cancelado");
+            s.connect(rdv, CONNECT_TIMEOUT_MS);
+            s.setSoTimeout(JOIN_TIMEOUT_MS);
+            InputStream in = s.getInputStream();
+            String challenge = RelayServer.readLine(in);
+            if (!challenge.startsWith(RendezvousServer.CHALLENGE_PREFIX)) throw new IllegalStateException("rendezvous respondeu fora do protocolo");
+            String nonce = challenge.substring(RendezvousServer.CHALLENGE_PREFIX.length());
+            String me = myIdentity.getPublicKeyBase64();
+            String sig = myIdentity.sign(RendezvousServer.meetPayload(nonce, me, peerStaticPubB64, token));
+            RelayServer.writeLine(s.getOutputStream(),
+                    RendezvousServer.MEET_PREFIX + me + "|" + peerStaticPubB64 + "|" + token + "|" + sig);
+
+            s.setSoTimeout(pairWaitMs);
+            String[] p = RelayServer.readLine(in).split("\\|", -1);
+            if (p.length != 4 || !RendezvousServer.PEER_PREFIX.equals(p[0] + "|")) {
+                throw new IllegalStateException("rendezvous respondeu fora do protocolo");
+            }
+            return p;
+        } finally {
+            pendingTcp = null;
+        }
+    }
+
+    /** Aborta uma tentativa em andamento (sessões já entregues não são afetadas). */
+    public void cancel() {
+        cancelled = true;
+        closeQuietly(pendingTcp);
+        closeQuietly(pendingUdp);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+}
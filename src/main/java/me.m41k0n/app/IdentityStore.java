@@ -0,0 +1,171 @@
+package me.m41k0n.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.AeadUtils;
+import me.m41k0n.infra.CryptoUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Armazena a identidade do nó em disco para que a chave pública não mude a cada execução.
+ *
+ * A chave privada (PKCS8) é cifrada com AES-GCM sob uma chave derivada da senha por PBKDF2-HMAC-SHA256
+ * (sal aleatório e número de iterações gravados no arquivo); a AAD amarra o ciphertext à chave
+ * pública. O arquivo é JSON gravado de forma atômica e, em sistemas POSIX, com permissão 600.
+ * Ao carregar, a chave privada já é decodificada uma vez ({@link PeerIdentity#getParsedPrivateKey()})
+ * e conferida contra a chave pública.
+ */
+public class IdentityStore {
+
+    public static final int DEFAULT_ITERATIONS = 310_000;
+    private static final String KDF = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int FORMAT_VERSION = 1;
+    private static final SecureRandom RNG = new SecureRandom();
+
+    private final Path file;
+    private final int iterations;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    /** Conteúdo persistido. */
+    private static final class StoredIdentity {
+        int version;
+        String kdf;
+        int iterations;
+        String salt;
+        String publicKey;
+        String privateKey;
+    }
+
+    public IdentityStore(Path file) {
+        this(file, DEFAULT_ITERATIONS);
+    }
+
+    public IdentityStore(Path file, int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations deve ser >= 1");
+        this.file = file;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Abre o armazenamento no local padrão ({@link DataDirectory}).
+     */
+    public static IdentityStore openDefault() throws IOException {
+        return new IdentityStore(DataDirectory.resolve("identity.json"));
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Carrega a identidade. Lança IllegalStateException se a senha estiver errada ou o arquivo
+     * tiver sido adulterado, e IOException se não puder ser lido.
+     */
+    public PeerIdentity load(char[] passphrase) throws IOException {
+        StoredIdentity s;
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            s = gson.fromJson(r, StoredIdentity.class);
+        } catch (JsonParseException e) {
+            throw new IOException("arquivo de identidade corrompido: " + e.getMessage(), e);
+        }
+        if (s == null || s.version != FORMAT_VERSION || !KDF.equals(s.kdf) || s.iterations < 1
+                || s.salt == null || s.publicKey == null || s.privateKey == null) {
+            throw new IOException("arquivo de identidade em formato desconhecido: " + file);
+        }
+        byte[] pub = Base64.getDecoder().decode(s.publicKey);
+        byte[] key = deriveKey(passphrase, Base64.getDecoder().decode(s.salt), s.iterations);
+        byte[] priv;
+        try {
+            priv = AeadUtils.decrypt(key, Base64.getDecoder().decode(s.privateKey), aad(s.publicKey));
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("senha incorreta ou arquivo de identidade adulterado", e);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+        PeerIdentity id = new PeerIdentity(pub, priv);
+        // decodifica uma vez e confere o par: falha aqui é arquivo inconsistente
+        if (!CryptoUtils.verify(pub, s.publicKey, id.sign(s.publicKey))) {
+            throw new IllegalStateException("chave privada não corresponde à chave pública do arquivo");
+        }
+        return id;
+    }
+
+    /**
+     * Grava a identidade cifrada com a senha (substitui o arquivo existente de forma atômica).
+     */
+    public void save(PeerIdentity identity, char[] passphrase) throws IOException {
+        byte[] salt = new byte[SALT_BYTES];
+        RNG.nextBytes(salt);
+        byte[] key = deriveKey(passphrase, salt, iterations);
+        StoredIdentity s = new StoredIdentity();
+        s.version = FORMAT_VERSION;
+        s.kdf = KDF;
+        s.iterations = iterations;
+        s.salt = Base64.getEncoder().encodeToString(salt);
+        s.publicKey = identity.getPublicKeyBase64();
+        try {
+            s.privateKey = Base64.getEncoder().encodeToString(AeadUtils.encrypt(key, identity.getPrivateKey(), aad(s.publicKey)));
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gson.toJson(s, w);
+        }
+        restrictToOwner(tmp);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carrega a identidade existente ou, na primeira execução, gera uma nova e a grava.
+     */
+    public PeerIdentity loadOrCreate(char[] passphrase) throws IOException {
+        if (exists()) return load(passphrase);
+        PeerIdentity id = PeerIdentity.generate();
+        save(id, passphrase);
+        id.getParsedPrivateKey();
+        return id;
+    }
+
+    private static byte[] aad(String publicKeyB64) {
+        return ("p2p-identity-v1|" + publicKeyB64).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deriveKey(char[] passphrase, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(passphrase == null ? new char[0] : passphrase, salt, iterations, 256);
+        try {
+            return SecretKeyFactory.getInstance(KDF).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("PBKDF2 indisponível", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static void restrictToOwner(Path p) {
+        try {
+            Files.setPosixFilePermissions(p, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException ignored) {
+            // sistema sem permissões POSIX (ex.: Windows): mantém o padrão do SO
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Descoberta de peers na rede local por anúncios multicast assinados.
+ *
+ * Cada nó anuncia periodicamente "p2pd1|&lt;chave&gt;|&lt;portaDoListener&gt;|&lt;ts&gt;|&lt;assinatura&gt;"
+ * (Ed25519 com a chave de identidade, TTL 1) e mantém uma tabela viva chave → endpoint (IP de
+ * origem do datagrama + porta anunciada) que expira sem novos anúncios. Anúncios disparados por
+ * eventos (início, peer novo na rede) são agrupados num único envio e limitados a um por
+ * MIN_ANNOUNCE_GAP_MS; a verificação de assinatura é limitada por IP de origem e anúncios
+ * repetidos ou mais antigos que o último aceito do mesmo peer são descartados sem verificar.
+ *
+ * O endpoint descoberto é só uma dica de onde discar: a identidade continua sendo provada no
+ * handshake da SecureSession.
+ */
+public class LanDiscovery implements Closeable {
+
+    static final String PREFIX = "p2pd1|";
+    private static final String GROUP = System.getProperty("p2p.discoveryGroup", "239.255.41.41");
+    private static final int PORT = Integer.getInteger("p2p.discoveryPort", 41414);
+    static final long ANNOUNCE_INTERVAL_MS = 5000;
+    static final long MIN_ANNOUNCE_GAP_MS = 1000;
+    static final long EXPIRY_MS = 3 * ANNOUNCE_INTERVAL_MS;
+    static final long MAX_CLOCK_SKEW_MS = 120_000;
+    static final int MAX_PEERS = 1024;
+
+    private final PeerIdentity myIdentity;
+    private final String myPub;
+    private final int listenPort;
+    private final LongSupplier clock;
+    // limita verificações Ed25519 por IP de origem (anúncios forjados custam CPU)
+    private final HandshakeGuard verifyGuard = new HandshakeGuard(5, 20, Integer.MAX_VALUE, -1);
+
+    private static final class Seen {
+        final PeerEndpoint endpoint;
+        final long announcedTs;
+        final long seenAtMs;
+
+        Seen(PeerEndpoint endpoint, long announcedTs, long seenAtMs) {
+            this.endpoint = endpoint;
+            this.announcedTs = announcedTs;
+            this.seenAtMs = seenAtMs;
+        }
+    }
+
+    // protegido por 'this'; notifyAll a cada peer novo ou endpoint alterado
+    private final Map<String, Seen> table = new HashMap<>();
+    private long lastAnnounceMs = Long.MIN_VALUE / 2;
+    private boolean announceRequested = true;
+
+    private MulticastSocket socket;
+    private InetSocketAddress group;
+    private volatile boolean closed;
+
+    /**
+     * Entra no grupo multicast e inicia os threads de anúncio e escuta.
+     *
+     * @param listenPort porta do {@link PeerListener} anunciada aos outros peers
+     */
+    public static LanDiscovery start(PeerIdentity myIdentity, int listenPort) throws IOException {
+        LanDiscovery d = new LanDiscovery(myIdentity, listenPort, System::currentTimeMillis);
+        d.open();
+        return d;
+    }
+
+    LanDiscovery(PeerIdentity myIdentity, int listenPort, LongSupplier clock) {
+        this.myIdentity = myIdentity;
+        this.myPub = myIdentity.getPublicKeyBase64();
+        this.listenPort = listenPort;
+        this.clock = clock;
+    }
+
+    private void open() throws IOException {
+        group = new InetSocketAddress(InetAddress.getByName(GROUP), PORT);
+        socket = new MulticastSocket(PORT);
+        socket.setTimeToLive(1);
+        socket.joinGroup(group, null);
+        Thread rx = new Thread(this::receiveLoop, "p2p-discovery-rx");
+        rx.setDaemon(true);
+        rx.start();
+        Thread tx = new Thread(this::announceLoop, "p2p-discovery-tx");
+        tx.setDaemon(true);
+        tx.start();
+    }
+
+    /** Endpoints vivos (não expirados) do peer; lista vazia se ele não foi visto na rede local. */
+    public synchronized List<PeerEndpoint> endpointsOf(String peerPubB64) {
+        Seen s = live(peerPubB64);
+        return s == null ? Collections.emptyList() : Collections.singletonList(s.endpoint);
+    }
+
+    /** Cópia da tabela viva: chave pública → endpoint. */
+    public synchronized Map<String, PeerEndpoint> livePeers() {
+        Map<String, PeerEndpoint> out = new LinkedHashMap<>();
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Seen> e : table.entrySet()) {
+            if (now - e.getValue().seenAtMs <= EXPIRY_MS) out.put(e.getKey(), e.getValue().endpoint);
+        }
+        return out;
+    }
+
+    /** Espera até o peer aparecer na rede local (ou 'timeoutMs'); retorna o endpoint ou null. */
+    public synchronized PeerEndpoint awaitPeer(String peerPubB64, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Seen s = live(peerPubB64); !closed; s = live(peerPubB64)) {
+            if (s != null) return s.endpoint;
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return null;
+            wait(left);
+        }
+        return null;
+    }
+
+    private Seen live(String peerPubB64) {
+        Seen s = table.get(peerPubB64);
+        return s != null && clock.getAsLong() - s.seenAtMs <= EXPIRY_MS ? s : null;
+    }
+
+    /** Pede um anúncio imediato; pedidos próximos viram um só envio (no máximo um por MIN_ANNOUNCE_GAP_MS). */
+    public synchronized void requestAnnounce() {
+        announceRequested = true;
+        notifyAll();
+    }
+
+    String announcement() {
+        String body = PREFIX + myPub + "|" + listenPort + "|" + clock.getAsLong();
+        return body + "|" + myIdentity.sign(body);
+    }
+
+    /**
+     * Processa um datagrama recebido de 'from'. Retorna true se ele atualizou a tabela.
+     */
+    boolean onDatagram(String msg, InetAddress from) {
+        if (!msg.startsWith(PREFIX)) return false;
+        String[] p = msg.split("\\|", -1);
+        if (p.length != 5) return false;
+        String pub = p[1];
+        if (pub.equals(myPub)) return false;
+        int port;
+        long ts;
+        try {
+            port = Integer.parseInt(p[2]);
+            ts = Long.parseLong(p[3]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        if (port < 1 || port > 65535 || Math.abs(now - ts) > MAX_CLOCK_SKEW_MS) return false;
+        synchronized (this) {
+            Seen prev = table.get(pub);
+            // repetido/antigo: nem verifica a assinatura
+            if (prev != null && ts <= prev.announcedTs) return false;
+            if (prev == null && table.size() >= MAX_PEERS && !evictExpired(now)) return false;
+        }
+        HandshakeGuard.Permit permit = verifyGuard.tryAdmit(from);
+        if (permit == null) return false;
+        permit.close();
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(pub);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!CryptoUtils.verify(key, msg.substring(0, msg.lastIndexOf('|')), p[4])) return false;
+
+        PeerEndpoint endpoint = new PeerEndpoint(from.getHostAddress(), port);
+        synchronized (this) {
+            Seen prev = table.get(pub);
+            if (prev != null && ts <= prev.announcedTs) return false;
+            table.put(pub, new Seen(endpoint, ts, now));
+            boolean isNew = prev == null || now - prev.seenAtMs > EXPIRY_MS;
+            if (isNew) {
+                System.out.println("[Discovery] Peer " + CryptoUtils.fingerprintHex(pub) + " visto em " + endpoint + ".");
+                // um peer novo se apresentou: respondemos logo em vez de esperar o próximo ciclo
+                announceRequested = true;
+            }
+            if (isNew || !endpoint.equals(prev.endpoint)) notifyAll();
+        }
+        return true;
+    }
+
+    private boolean evictExpired(long now) {
+        return table.values().removeIf(s -> now - s.seenAtMs > EXPIRY_MS);
+    }
+
+    private void receiveLoop() {
+        byte[] buf = new byte[1024];
+        DatagramPacket p = new DatagramPacket(buf, buf.length);
+        while (!closed) {
+            try {
+                p.setLength(buf.length);
+                socket.receive(p);
+                onDatagram(new String(buf, 0, p.getLength(), StandardCharsets.UTF_8), p.getAddress());
+            } catch (IOException e) {
+                if (!closed) System.err.println("[Discovery] Erro ao receber anúncio: " + e.getMessage());
+                if (socket.isClosed()) return;
+            } catch (RuntimeException malformed) {
+                // datagrama inválido de terceiros: ignora
+            }
+        }
+    }
+
+    private void announceLoop() {
+        while (!closed) {
+            try {
+                synchronized (this) {
+                    long now = clock.getAsLong();
+                    while (!closed && (now - lastAnnounceMs < MIN_ANNOUNCE_GAP_MS
+                            || (!announceRequested && now - lastAnnounceMs < ANNOUNCE_INTERVAL_MS))) {
+                        long next = announceRequested ? lastAnnounceMs + MIN_ANNOUNCE_GAP_MS : lastAnnounceMs + ANNOUNCE_INTERVAL_MS;
+                        wait(Math.max(1, next - now));
+                        now = clock.getAsLong();
+                    }
+                    announceRequested = false;
+                    lastAnnounceMs = now;
+                }
+                if (closed) return;
+                byte[] b = announcement().getBytes(StandardCharsets.UTF_8);
+                socket.send(new DatagramPacket(b, b.length, group));
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) System.err.println("[Discovery] Falha ao anunciar: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Peers da tabela viva que estão em 'keys' (ex.: os fixados), na ordem de 'keys'. */
+    public List<String> present(List<String> keys) {
+        Map<String, PeerEndpoint> live = livePeers();
+        List<String> out = new ArrayList<>();
+        for (String k : keys) if (live.containsKey(k)) out.add(k);
+        return out;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (socket != null) socket.close();
+    }
+}
@@ -1,18 +1,27 @@
 package me.m41k0n.app;
 
+import me.m41k0n.domain.PeerEndpoint;
 import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.FlightEvents;
+import me.m41k0n.infra.LatencyTracer;
 import me.m41k0n.infra.SecureSession;
-import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.store.ChatHistory;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Orquestra a conexão P2P: listener sempre ativo + discagem opcional.
@@ -20,124 +29,264 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class P2PConnector {
 
+    private final PeerDirectory directory;
+    private final StoreAndForward storeAndForward;
+    private final ChatHistory history;
+    private LanDiscovery discovery;
+
+    private static final String READY_PING = "[/ready]";
+    private static final int DEFAULT_HISTORY_PAGE = 20;
+
+    // Keepalive: intervalo configurável por -Dp2p.heartbeatMs (0 desliga) e pings sem resposta tolerados
+    private static final long HEARTBEAT_INTERVAL_MS = Long.getLong("p2p.heartbeatMs", 5000L);
+    private static final int HEARTBEAT_MAX_MISSED = 3;
+
+    // Decifragem paralela na recepção (-Dp2p.decryptWorkers; 0/1 = receptor sequencial)
+    private static final int DECRYPT_WORKERS = Integer.getInteger("p2p.decryptWorkers", 0);
+
+    // Rastreamento de latência por estágio (-Dp2p.trace=<intervalo do resumo em ms>; 0 desliga)
+    private static final long TRACE_PERIOD_MS = Long.getLong("p2p.trace", 0L);
+
+    // Peers atrás de NAT: rendezvous para hole punching (-Dp2p.rendezvous=host:porta) e relay
+    // (-Dp2p.relay=host:porta), este após um atraso para dar preferência aos caminhos diretos
+    private static final String RENDEZVOUS = System.getProperty("p2p.rendezvous");
+    private static final String RELAY = System.getProperty("p2p.relay");
+    private static final long RELAY_DELAY_MS = Long.getLong("p2p.relayDelayMs", 3000L);
+    private static final int PAIR_WAIT_MS = 30_000;
+
+    public P2PConnector() {
+        this(null);
+    }
+
+    /**
+     * @param directory diretório persistente de peers (pode ser null): ordena os candidatos pelo
+     *                  histórico e registra sucesso/falha/latência de cada tentativa de discagem.
+     */
+    public P2PConnector(PeerDirectory directory) {
+        this(directory, null);
+    }
+
+    /**
+     * @param storeAndForward outbox do peer (pode ser null): pendências são reenviadas ao conectar e
+     *                        mensagens cujo envio falha durante a sessão são enfileiradas em disco.
+     */
+    public P2PConnector(PeerDirectory directory, StoreAndForward storeAndForward) {
+        this(directory, storeAndForward, null);
+    }
+
+    /**
+     * @param history histórico local do peer (pode ser null): mensagens enviadas e recebidas são
+     *                gravadas e o CLI ganha os comandos /history e /search.
+     */
+    public P2PConnector(PeerDirectory directory, StoreAndForward storeAndForward, ChatHistory history) {
+        this.directory = directory;
+        this.storeAndForward = storeAndForward;
+        this.history = history;
+    }
+
+    /**
+     * @param discovery descoberta na rede local (pode ser null): se o peer estiver se anunciando,
+     *                  o dialer tenta o endpoint anunciado primeiro, sem precisar de IP digitado.
+     */
+    public P2PConnector withDiscovery(LanDiscovery discovery) {
+        this.discovery = discovery;
+        return this;
+    }
+
     /**
      * Orquestra o fluxo P2P em etapas bem definidas:
-     * 1) listenForConnections: inicia o listener (thread de accept) que tenta handshake para cada conexão entrante.
-     * 2) dialPeer: opcionalmente inicia o dialer (thread) com tentativas e backoff, se IP/porta do peer forem informados.
-     * 3) awaitWinner: aguarda a primeira sessão segura (handshake concluído) e fecha o listener.
-     * 4) establishSecureSession: inicia o receptor da sessão, envia ping de prontidão e inicia o laço de envio do CLI.
-     * 5) sendReadinessPing: envia um frame simples para sinalizar que o canal está pronto.
+     * 1) listener: anexa-se ao {@link PeerListener} (porta sempre aberta) para receber sessões entrantes do peer.
+     * 2) dialPeer: opcionalmente inicia o dialer (thread) com corrida entre os endereços candidatos (digitados,
+     *    conhecidos ou anunciados na rede local) e backoff.
+     * 3) composeOffline: com outbox, enquanto o peer não conecta o CLI continua lendo e guarda o que for
+     *    digitado para entrega na conexão.
+     * 4) awaitWinner: aguarda a primeira sessão segura (handshake concluído) e desanexa do listener.
+     * 5) establishSecureSession: assim que a sessão vence, inicia o receptor, o keepalive, o ping de
+     *    prontidão e o reenvio da outbox (mesmo com o CLI ainda bloqueado lendo uma linha).
+     * 6) sendingLoop: laço de envio do CLI.
      */
-    public void startPeerRace(int listenPort,
-                              String peerIpOrNull,
-                              Integer peerPort,
+    public void startPeerRace(PeerListener listener,
+                              List<PeerEndpoint> peerCandidates,
                               PeerIdentity myIdentity,
                               String peerStaticPubB64,
                               Scanner scanner) throws IOException {
 
         final AtomicBoolean done = new AtomicBoolean(false);
         final CompletableFuture<SecureSession> winner = new CompletableFuture<>();
+        final LatencyTracer tracer = TRACE_PERIOD_MS > 0 ? new LatencyTracer() : null;
+        // falha ao preparar a sessão (ex.: fechada logo após o handshake) chega ao awaitWinner, não se perde
+        final CompletableFuture<SecureSession> established = winner.thenApply(session -> {
+            try {
+                establishSecureSession(session, tracer);
+            } catch (RuntimeException e) {
+                try { session.close(); } catch (IOException ignored) {}
+                throw e;
+            }
+            return session;
+        });
 
-        ServerSocket serverSocket = listenForConnections(listenPort, myIdentity, peerStaticPubB64, done, winner);
-        dialPeer(peerIpOrNull, peerPort, myIdentity, peerStaticPubB64, done, winner);
+        listener.attach(peerStaticPubB64, session -> {
+            if (done.compareAndSet(false, true)) {
+                if (directory != null) directory.recordSeen(peerStaticPubB64);
+                winner.complete(session);
+            } else {
+                try { session.close(); } catch (IOException ignored) {}
+            }
+        });
+        System.out.println("[P2P] Aguardando conexão do peer na porta " + listener.getPort() + "...");
+        dialPeer(peerCandidates, myIdentity, peerStaticPubB64, done, winner);
+        punchPeer(myIdentity, peerStaticPubB64, done, winner);
+        dialRelay(myIdentity, peerStaticPubB64, done, winner);
 
-        try (SecureSession session = awaitWinner(serverSocket, done, winner)) {
-            establishSecureSession(session, scanner);
+        String typedAfterConnect = null;
+        if (storeAndForward != null) {
+            AtomicReference<String> typed = new AtomicReference<>();
+            if (!composeOffline(done, winner, scanner, typed)) {
+                listener.detach();
+                System.out.println("[P2P] Espera pelo peer cancelada.");
+                return;
+            }
+            typedAfterConnect = typed.get();
+        }
+
+        try {
+            SecureSession session = awaitWinner(listener, done, established);
+            if (session == null) return;
+            try (SecureSession s = session) {
+                sendingLoop(s, scanner, typedAfterConnect);
+            }
+        } finally {
+            if (tracer != null && winner.isDone()) {
+                tracer.stop();
+                System.out.print(tracer.summary());
+            }
         }
     }
 
     /**
-     * listenForConnections: abre um ServerSocket e inicia um thread "p2p-accept" que aceita conexões entrantes.
-     * Para cada conexão aceita, tenta realizar o handshake autenticado (como responder). Se o handshake
-     * concluir e ninguém tiver vencido ainda, completa o CompletableFuture winner com a sessão.
-     * A thread encerra quando o sinal de 'done' for verdadeiro.
+     * composeOffline: enquanto nenhuma sessão venceu, lê linhas do CLI e as guarda na outbox (entregues
+     * pelo flush da próxima conexão). Comandos de histórico continuam funcionando. A linha digitada
+     * depois que o peer já conectou vai para 'typedAfterConnect' e é enviada pela sessão. Retorna
+     * false se o usuário cancelou a espera com /exit; sem entrada disponível, apenas espera.
      */
-    private ServerSocket listenForConnections(int listenPort,
-                                              PeerIdentity myIdentity,
-                                              String peerStaticPubB64,
-                                              AtomicBoolean done,
-                                              CompletableFuture<SecureSession> winner) throws IOException {
-        final ServerSocket serverSocket = new ServerSocket(listenPort);
-        Thread acceptThread = new Thread(() -> {
-            System.out.println("[P2P] Ouvindo em 0.0.0.0:" + listenPort + ". Aguardando conexão do peer...");
-            while (!done.get()) {
-                try {
-                    Socket s = serverSocket.accept();
-                    if (done.get()) { try { s.close(); } catch (IOException ignored) {} break; }
-                    SecureSession session = new SecureSession(new TcpSocketAdapter(s), myIdentity, peerStaticPubB64, false);
-                    try {
-                        session.startHandshake();
-                        if (done.compareAndSet(false, true)) {
-                            winner.complete(session);
-                            break;
-                        } else {
-                            session.close();
-                        }
-                    } catch (Exception ex) {
-                        System.err.println("[P2P] Handshake falhou no caminho de aceitação: " + ex.getMessage());
-                        try { session.close(); } catch (IOException ignored) {}
-                    }
-                } catch (IOException ioe) {
-                    if (!done.get()) System.err.println("[P2P] Erro ao aceitar conexão: " + ioe.getMessage());
-                    break;
-                }
+    private boolean composeOffline(AtomicBoolean done,
+                                   CompletableFuture<SecureSession> winner,
+                                   Scanner scanner,
+                                   AtomicReference<String> typedAfterConnect) {
+        System.out.println("[Outbox] Enquanto o peer não conecta, o que você digitar fica guardado e é entregue na conexão (/exit cancela).");
+        while (!winner.isDone()) {
+            String input;
+            try {
+                if (!scanner.hasNextLine()) return true;
+                input = scanner.nextLine();
+            } catch (java.util.NoSuchElementException | IllegalStateException e) {
+                return true;
             }
-        }, "p2p-accept");
-        acceptThread.setDaemon(true);
-        acceptThread.start();
-        return serverSocket;
+            if ("/exit".equalsIgnoreCase(input) || "exit".equalsIgnoreCase(input)) {
+                // se um caminho venceu ao mesmo tempo, a sessão é aberta e o /exit a encerra no laço de envio
+                if (done.compareAndSet(false, true)) return false;
+                typedAfterConnect.set(input);
+                return true;
+            }
+            if (input.trim().isEmpty()) continue;
+            if (handleHistoryCommand(input.trim())) continue;
+            if (winner.isDone()) {
+                typedAfterConnect.set(input);
+                return true;
+            }
+            queueUndelivered(input);
+            // a sessão pode ter vencido (e esvaziado a outbox) enquanto a mensagem era guardada
+            if (winner.isDone()) flushOutbox(winner.join());
+        }
+        return true;
+    }
+
+    /**
+     * Variante que abre um listener só para esta sessão (a porta é fechada ao final). Para manter
+     * a porta aberta entre sessões use {@link PeerListener#open} e a variante acima.
+     */
+    public void startPeerRace(int listenPort,
+                              List<PeerEndpoint> peerCandidates,
+                              PeerIdentity myIdentity,
+                              String peerStaticPubB64,
+                              Scanner scanner) throws IOException {
+        try (PeerListener listener = PeerListener.open(listenPort, myIdentity)) {
+            startPeerRace(listener, peerCandidates, myIdentity, peerStaticPubB64, scanner);
+        }
+    }
+
+    /**
+     * Variante com um único endereço do peer (IP ou hostname); equivale a uma lista de um candidato.
+     */
+    public void startPeerRace(int listenPort,
+                              String peerIpOrNull,
+                              Integer peerPort,
+                              PeerIdentity myIdentity,
+                              String peerStaticPubB64,
+                              Scanner scanner) throws IOException {
+        List<PeerEndpoint> candidates = (peerIpOrNull == null || peerPort == null)
+                ? Collections.emptyList()
+                : Collections.singletonList(new PeerEndpoint(peerIpOrNull, peerPort));
+        startPeerRace(listenPort, candidates, myIdentity, peerStaticPubB64, scanner);
     }
 
     /**
-     * dialPeer: se IP e porta do peer forem fornecidos, inicia um thread "p2p-dial" que tenta
-     * conexões ativas com retry e backoff exponencial (com jitter). Ao conectar, realiza o handshake
-     * como iniciador; se vencer a corrida, completa o winner com a sessão resultante.
+     * dialPeer: se houver endereços candidatos do peer, inicia um thread "p2p-dial" que executa rodadas de
+     * discagem "happy eyeballs" ({@link HappyEyeballsDialer}): todos os candidatos (IPv4, IPv6, hostnames)
+     * competem com partidas escalonadas e o primeiro a concluir o handshake vence. Entre rodadas sem sucesso
+     * aplica backoff exponencial (com jitter). Se vencer a corrida global, completa o winner com a sessão.
      */
-    private void dialPeer(String peerIpOrNull,
-                          Integer peerPort,
+    private void dialPeer(List<PeerEndpoint> candidates,
                           PeerIdentity myIdentity,
                           String peerStaticPubB64,
                           AtomicBoolean done,
                           CompletableFuture<SecureSession> winner) {
-        if (peerIpOrNull == null || peerPort == null) {
+        final List<PeerEndpoint> targets = directory != null
+                ? directory.rank(peerStaticPubB64, candidates == null ? new ArrayList<>() : candidates)
+                : (candidates == null ? new ArrayList<>() : new ArrayList<>(candidates));
+        final LanDiscovery lan = discovery;
+        if (targets.isEmpty() && lan == null) {
             System.out.println("[P2P] Modo somente ouvir (sem IP do peer informado).");
             return;
         }
-        final String peerIpFinal = peerIpOrNull;
+        final HappyEyeballsDialer dialer = new HappyEyeballsDialer(myIdentity, peerStaticPubB64);
+        if (directory != null) {
+            dialer.setObserver(new HappyEyeballsDialer.DialObserver() {
+                @Override public void onAttemptSucceeded(PeerEndpoint endpoint, long handshakeMs) {
+                    directory.recordSuccess(peerStaticPubB64, endpoint, handshakeMs);
+                }
+                @Override public void onAttemptFailed(PeerEndpoint endpoint) {
+                    directory.recordFailure(peerStaticPubB64, endpoint);
+                }
+            });
+        }
         Thread dialThread = new Thread(() -> {
             long backoffMs = 1000;
-            System.out.println("[P2P] Tentando conectar ativamente ao peer em " + peerIpFinal + ":" + peerPort + " ...");
+            if (!targets.isEmpty()) System.out.println("[P2P] Tentando conectar ativamente ao peer em " + targets + " ...");
+            boolean waitingLan = false;
             while (!done.get()) {
-                Socket socket = null;
-                SecureSession session = null;
-                try {
-                    socket = new Socket();
-                    socket.connect(new InetSocketAddress(peerIpFinal, peerPort), 2000);
-                    if (done.get()) {
-                        // se outro caminho já venceu, garante fechar o socket que criamos e sair
-                        try { if (socket != null) socket.close(); } catch (IOException ignored) {}
+                List<PeerEndpoint> round = withDiscovered(lan, peerStaticPubB64, targets);
+                if (round.isEmpty()) {
+                    // sem endereço digitado nem conhecido: disca assim que o peer se anunciar na rede local
+                    if (!waitingLan) System.out.println("[P2P] Aguardando o peer aparecer na rede local...");
+                    waitingLan = true;
+                    try {
+                        lan.awaitPeer(peerStaticPubB64, 1000);
+                    } catch (InterruptedException ie) {
                         break;
                     }
-
-                    session = new SecureSession(new TcpSocketAdapter(socket), myIdentity, peerStaticPubB64, true);
-                    try {
-                        session.startHandshake();
-                        if (done.compareAndSet(false, true)) {
-                            // vencemos a corrida: não fechamos o socket aqui — a sessão é entregue ao caller
-                            winner.complete(session);
-                            break; // sai do loop mantendo a sessão ativa
-                        } else {
-                            // perdemos a corrida: fechar a sessão que criamos
-                            try { session.close(); } catch (IOException ignored) {}
-                            break;
-                        }
-                    } catch (Exception ex) {
-                        System.err.println("[P2P] Handshake falhou no caminho de discagem: " + ex.getMessage());
-                        // continuar com retry
+                    continue;
+                }
+                SecureSession session = dialer.race(round, done);
+                if (session != null) {
+                    if (done.compareAndSet(false, true)) {
+                        // vencemos a corrida: não fechamos o socket aqui — a sessão é entregue ao caller
+                        winner.complete(session);
+                    } else {
+                        // perdemos a corrida para o listener: fechar a sessão que criamos
+                        try { session.close(); } catch (IOException ignored) {}
                     }
-                } catch (IOException ce) {
-                    // conexão não estabelecida — fechar socket e retry com backoff
-                    try { if (socket != null) socket.close(); } catch (IOException ignored) {}
+                    break;
                 }
                 try {
                     long jitter = (long) (Math.random() * 250);
@@ -151,34 +300,131 @@ public class P2PConnector {
         dialThread.setDaemon(true);
         dialThread.start();
     }
+
+    /** Endpoints anunciados pelo peer na rede local primeiro (caminho mais curto), depois os demais. */
+    private static List<PeerEndpoint> withDiscovered(LanDiscovery lan, String peerStaticPubB64, List<PeerEndpoint> targets) {
+        if (lan == null) return targets;
+        List<PeerEndpoint> out = new ArrayList<>(lan.endpointsOf(peerStaticPubB64));
+        for (PeerEndpoint e : targets) if (!out.contains(e)) out.add(e);
+        return out;
+    }
+
+    /**
+     * dialRelay/punchPeer: caminhos alternativos para peers atrás de NAT, cada um num thread próprio.
+     * Com -Dp2p.rendezvous, "p2p-punch" troca endpoints pelo {@link RendezvousServer} e fura os NATs
+     * via UDP ({@link HolePuncher}), um caminho direto. Com -Dp2p.relay, "p2p-relay-dial" entra no
+     * {@link RelayServer} após RELAY_DELAY_MS, dando preferência aos caminhos diretos. As sessões
+     * concorrem com o listener e o dialer; perdendo a corrida, a tentativa pendente é cancelada.
+     */
+    private void punchPeer(PeerIdentity myIdentity,
+                           String peerStaticPubB64,
+                           AtomicBoolean done,
+                           CompletableFuture<SecureSession> winner) {
+        if (RENDEZVOUS == null || RENDEZVOUS.trim().isEmpty()) return;
+        final HolePuncher puncher;
+        try {
+            puncher = new HolePuncher(PeerEndpoint.parse(RENDEZVOUS, 0), myIdentity, peerStaticPubB64);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[P2P] Rendezvous inválido (" + RENDEZVOUS + "): " + e.getMessage());
+            return;
+        }
+        winner.whenComplete((s, e) -> puncher.cancel());
+        dialVia("p2p-punch", "hole punching (rendezvous " + RENDEZVOUS + ")", 0,
+                () -> puncher.connect(PAIR_WAIT_MS), done, winner);
+    }
+
+    private void dialRelay(PeerIdentity myIdentity,
+                           String peerStaticPubB64,
+                           AtomicBoolean done,
+                           CompletableFuture<SecureSession> winner) {
+        if (RELAY == null || RELAY.trim().isEmpty()) return;
+        final RelayDialer dialer;
+        try {
+            dialer = new RelayDialer(PeerEndpoint.parse(RELAY, 0), myIdentity, peerStaticPubB64);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[P2P] Relay inválido (" + RELAY + "): " + e.getMessage());
+            return;
+        }
+        winner.whenComplete((s, e) -> dialer.cancel());
+        dialVia("p2p-relay-dial", "relay " + RELAY, RELAY_DELAY_MS,
+                () -> dialer.connect(PAIR_WAIT_MS), done, winner);
+    }
+
+    private void dialVia(String threadName,
+                         String via,
+                         long initialDelayMs,
+                         Callable<SecureSession> attempt,
+                         AtomicBoolean done,
+                         CompletableFuture<SecureSession> winner) {
+        Thread t = new Thread(() -> {
+            long delayMs = initialDelayMs;
+            while (!done.get()) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                if (done.get()) break;
+                FlightEvents.Dial event = FlightEvents.beginDial();
+                try {
+                    System.out.println("[P2P] Tentando via " + via + " ...");
+                    SecureSession session = attempt.call();
+                    if (event != null) event.end(via, null, null);
+                    if (done.compareAndSet(false, true)) {
+                        System.out.println("[P2P] Conectado via " + via + ".");
+                        winner.complete(session);
+                    } else {
+                        try { session.close(); } catch (IOException ignored) {}
+                    }
+                    break;
+                } catch (Exception e) {
+                    if (event != null) event.end(via, null, done.get() ? "cancelada" : String.valueOf(e.getMessage()));
+                    if (done.get()) break;
+                    System.err.println("[P2P] Falha via " + via + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+                }
+                delayMs = Math.min(Math.max(delayMs, 1000) * 2, 10_000);
+            }
+        }, threadName);
+        t.setDaemon(true);
+        t.start();
+    }
+
     /**
-     * awaitWinner: bloqueia até que uma sessão segura seja definida no CompletableFuture winner
-     * (proveniente do listener ou do dialer). Ao sair, sinaliza 'done=true' e fecha o ServerSocket
-     * para liberar a porta e parar a thread de accept.
+     * awaitWinner: bloqueia até que a sessão vencedora (do listener ou do dialer) esteja pronta
+     * ({@link #establishSecureSession}). Ao sair, sinaliza 'done=true' e desanexa do listener, que
+     * continua com a porta aberta para a próxima sessão. Retorna null se a preparação falhou (a sessão
+     * já foi fechada).
      */
-    private SecureSession awaitWinner(ServerSocket serverSocket,
+    private SecureSession awaitWinner(PeerListener listener,
                                       AtomicBoolean done,
                                       CompletableFuture<SecureSession> winner) {
         SecureSession established;
         try {
             established = winner.join();
+        } catch (CompletionException ce) {
+            Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+            System.err.println("[P2P] Falha ao iniciar a sessão: " + (cause.getMessage() == null ? cause.toString() : cause.getMessage()));
+            return null;
         } finally {
             done.set(true);
-            try { serverSocket.close(); } catch (IOException ignored) {}
+            listener.detach();
         }
         return established;
     }
 
     /**
-     * establishSecureSession: com a sessão já criada, inicia o receptor (imprime mensagens do peer),
-     * envia um ping de prontidão (para sinalizar que o canal está operacional) e então entra no laço
-     * de envio que lê do Scanner e envia ao peer. Ao encerrar, retorna ao caller.
+     * establishSecureSession: chamado na thread que completou a corrida, inicia o receptor (imprime
+     * mensagens do peer), liga o keepalive (derruba a sessão se o peer parar de responder), envia um
+     * ping de prontidão (para sinalizar que o canal está operacional) e reenvia a outbox. O laço de
+     * envio do CLI roda depois, na thread do caller ({@link #sendingLoop}).
      */
-    private void establishSecureSession(SecureSession session, Scanner scanner) throws IOException {
-        System.out.println("Sessão segura estabelecida. Digite /exit para sair.");
-        session.runReceiver(new SecureSession.MessageHandler() {
+    private void establishSecureSession(SecureSession session, LatencyTracer tracer) {
+        System.out.println("Sessão segura estabelecida. Digite /exit para sair."
+                + (history != null ? " Use /history [n|@aaaa-mm-dd hh:mm] e /search palavras." : ""));
+        SecureSession.MessageHandler handler = new SecureSession.MessageHandler() {
             @Override public void onPlaintext(String text) {
                 System.out.println("Peer: " + text);
+                if (!READY_PING.equals(text)) record(ChatHistory.Direction.IN, text);
             }
             @Override public void onError(Exception e) {
                 if (e == null) {
@@ -194,9 +440,32 @@ public class P2PConnector {
                 }
                 System.err.println("[P2P] Erro no receptor: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
             }
-        });
+        };
+        if (tracer != null) {
+            session.enableTracing(tracer);
+            tracer.startReporting(TRACE_PERIOD_MS, System.out::print);
+        }
+        session.runReceiver(storeAndForward != null ? storeAndForward.handlerFor(session, handler) : handler, DECRYPT_WORKERS);
+        if (HEARTBEAT_INTERVAL_MS > 0) session.startHeartbeat(HEARTBEAT_INTERVAL_MS, HEARTBEAT_MAX_MISSED);
         sendReadinessPing(session);
-        sendingLoop(session, scanner);
+        flushOutbox(session);
+    }
+
+    /**
+     * flushOutbox: reenvia em segundo plano as mensagens guardadas na outbox enquanto o peer estava offline,
+     * sem atrasar o início do laço de envio do CLI.
+     */
+    private void flushOutbox(SecureSession session) {
+        if (storeAndForward == null) return;
+        Thread t = new Thread(() -> {
+            try {
+                storeAndForward.flush(session);
+            } catch (IOException e) {
+                System.err.println("[Outbox] Reenvio interrompido: " + e.getMessage());
+            }
+        }, "p2p-outbox");
+        t.setDaemon(true);
+        t.start();
     }
 
     /**
@@ -206,24 +475,40 @@ public class P2PConnector {
      */
     private void sendReadinessPing(SecureSession session) {
         try {
-            session.send("[/ready]");
+            session.send(READY_PING);
         } catch (IOException ignored) {
             // ping é best-effort
         }
     }
 
-    private void sendingLoop(SecureSession session, Scanner scanner) {
+    /**
+     * sendingLoop: lê do Scanner e envia ao peer até /exit ou o fim da sessão. 'pending' é uma linha já
+     * lida (ex.: digitada enquanto a sessão era aberta) processada antes das demais; pode ser null.
+     */
+    private void sendingLoop(SecureSession session, Scanner scanner, String pending) {
         try {
             while (!session.isClosed()) {
                 try {
-                    if (!scanner.hasNextLine()) {
+                    String input;
+                    if (pending != null) {
+                        input = pending;
+                        pending = null;
+                    } else if (!scanner.hasNextLine()) {
                         try { Thread.sleep(200); } catch (InterruptedException ignored) {}
                         continue;
+                    } else {
+                        input = scanner.nextLine();
                     }
-                    String input = scanner.nextLine();
                     if ("/exit".equalsIgnoreCase(input) || "exit".equalsIgnoreCase(input)) break;
                     if (input.trim().isEmpty()) continue;
-                    session.send(input);
+                    if (handleHistoryCommand(input.trim())) continue;
+                    try {
+                        session.send(input);
+                    } catch (IOException sendFailure) {
+                        queueUndelivered(input);
+                        throw sendFailure;
+                    }
+                    record(ChatHistory.Direction.OUT, input);
                 } catch (java.util.NoSuchElementException | IllegalStateException e) {
                     System.out.println("[CLI] Entrada indisponível. Sessão continuará somente recebendo.");
                     while (!session.isClosed()) {
@@ -241,4 +526,81 @@ public class P2PConnector {
             }
         }
     }
+
+    private void queueUndelivered(String input) {
+        if (storeAndForward == null) return;
+        try {
+            storeAndForward.enqueue(input);
+            System.out.println("[Outbox] Mensagem guardada para envio na próxima conexão.");
+        } catch (IOException e) {
+            System.err.println("[Outbox] Falha ao guardar mensagem: " + e.getMessage());
+        }
+    }
+
+    private void record(ChatHistory.Direction direction, String text) {
+        if (history == null) return;
+        try {
+            history.append(direction, System.currentTimeMillis(), text);
+        } catch (IOException e) {
+            System.err.println("[History] Falha ao gravar mensagem no histórico: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Comandos locais de histórico (não são enviados ao peer):
+     * /history [n] — últimas n mensagens; /history @aaaa-mm-dd [hh:mm] — página a partir do instante;
+     * /search palavras — mensagens que contêm todas as palavras, mais recentes primeiro.
+     * Retorna true se a entrada era um desses comandos.
+     */
+    private boolean handleHistoryCommand(String input) {
+        String[] p = input.split("\\s+", 2);
+        String cmd = p[0].toLowerCase();
+        if (!"/history".equals(cmd) && !"/search".equals(cmd)) return false;
+        if (history == null) {
+            System.out.println("[History] Histórico local desabilitado.");
+            return true;
+        }
+        String arg = p.length > 1 ? p[1].trim() : "";
+        try {
+            List<ChatHistory.Entry> entries;
+            if ("/search".equals(cmd)) {
+                if (arg.isEmpty()) {
+                    System.out.println("[History] Uso: /search palavras");
+                    return true;
+                }
+                entries = history.search(arg, DEFAULT_HISTORY_PAGE);
+            } else if (arg.startsWith("@")) {
+                entries = history.page(history.seek(parseInstant(arg.substring(1).trim())), DEFAULT_HISTORY_PAGE);
+            } else {
+                entries = history.tail(arg.isEmpty() ? DEFAULT_HISTORY_PAGE : Integer.parseInt(arg));
+            }
+            printEntries(entries);
+        } catch (NumberFormatException | ParseException e) {
+            System.out.println("[History] Argumento inválido: " + arg);
+        } catch (IllegalStateException e) {
+            System.out.println("[History] " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("[History] Falha ao ler histórico: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private static long parseInstant(String s) throws ParseException {
+        String pattern = s.length() > 10 ? "yyyy-MM-dd HH:mm" : "yyyy-MM-dd";
+        SimpleDateFormat f = new SimpleDateFormat(pattern);
+        f.setLenient(false);
+        return f.parse(s).getTime();
+    }
+
+    private static void printEntries(List<ChatHistory.Entry> entries) {
+        if (entries.isEmpty()) {
+            System.out.println("[History] Nenhuma mensagem.");
+            return;
+        }
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        for (ChatHistory.Entry e : entries) {
+            String who = e.getDirection() == ChatHistory.Direction.IN ? "Peer" : "Você";
+            System.out.println("#" + e.getIndex() + " [" + f.format(new Date(e.getTimestampMs())) + "] " + who + ": " + e.getText());
+        }
+    }
 }
@@ -0,0 +1,256 @@
+package me.m41k0n.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import me.m41k0n.domain.PeerEndpoint;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diretório persistente de peers, indexado pela chave pública Ed25519 (Base64) do peer.
+ *
+ * Para cada peer guarda os endpoints conhecidos com histórico de sucesso/falha e a latência de
+ * conexão+handshake suavizada (EWMA). O dialer usa {@link #rank(String, List)} para tentar primeiro
+ * o endpoint historicamente mais rápido, tornando a reconexão após reinícios imediata.
+ *
+ * Persistência: JSON (Gson) gravado de forma atômica (arquivo temporário + move).
+ */
+public class PeerDirectory {
+
+    /** Peso da amostra mais recente na média móvel de latência. */
+    private static final double EWMA_ALPHA = 0.3;
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, PeerRecord>>() { }.getType();
+
+    private final Path file;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Map<String, PeerRecord> peers;
+
+    /**
+     * Registro persistido de um peer.
+     */
+    public static final class PeerRecord {
+        private String alias;
+        private long lastSeenMs;
+        private List<EndpointStats> endpoints = new ArrayList<>();
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public long getLastSeenMs() {
+            return lastSeenMs;
+        }
+
+        public List<EndpointStats> getEndpoints() {
+            return endpoints;
+        }
+    }
+
+    /**
+     * Estatísticas de um endpoint de um peer.
+     */
+    public static final class EndpointStats {
+        private String host;
+        private int port;
+        private int successes;
+        private int failures;
+        private int consecutiveFailures;
+        private long lastSuccessMs;
+        private long lastFailureMs;
+        private double handshakeMsEwma = -1;
+
+        public PeerEndpoint toEndpoint() {
+            return new PeerEndpoint(host, port);
+        }
+
+        public int getSuccesses() {
+            return successes;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public long getLastSuccessMs() {
+            return lastSuccessMs;
+        }
+
+        /** Latência média suavizada de connect+handshake em ms, ou -1 se nunca houve sucesso. */
+        public double getHandshakeMsEwma() {
+            return handshakeMsEwma;
+        }
+
+        boolean matches(PeerEndpoint ep) {
+            return port == ep.getPort() && host.equalsIgnoreCase(ep.getHost());
+        }
+    }
+
+    public PeerDirectory(Path file) {
+        this.file = file;
+        this.peers = load(file);
+    }
+
+    /**
+     * Abre o diretório no local padrão ({@link DataDirectory}).
+     */
+    public static PeerDirectory openDefault() throws IOException {
+        return new PeerDirectory(DataDirectory.resolve("peers.json"));
+    }
+
+    private Map<String, PeerRecord> load(Path f) {
+        if (!Files.exists(f)) return new LinkedHashMap<>();
+        try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+            Map<String, PeerRecord> m = gson.fromJson(r, MAP_TYPE);
+            return m != null ? m : new LinkedHashMap<>();
+        } catch (IOException | JsonParseException e) {
+            // arquivo corrompido não deve impedir o uso do app: começa vazio e sobrescreve no próximo save
+            System.err.println("[PeerDirectory] Falha ao ler " + f + ": " + e.getMessage() + " (ignorando)");
+            return new LinkedHashMap<>();
+        }
+    }
+
+    public synchronized List<String> knownPeers() {
+        return new ArrayList<>(peers.keySet());
+    }
+
+    public synchronized PeerRecord get(String peerPubB64) {
+        return peers.get(peerPubB64);
+    }
+
+    public synchronized void setAlias(String peerPubB64, String alias) {
+        record(peerPubB64).alias = alias;
+        saveQuietly();
+    }
+
+    /**
+     * Endpoints conhecidos do peer, do mais promissor para o menos promissor.
+     */
+    public synchronized List<PeerEndpoint> knownEndpoints(String peerPubB64) {
+        return rank(peerPubB64, new ArrayList<>());
+    }
+
+    /**
+     * Une os candidatos informados aos endpoints conhecidos do peer e os ordena pelo histórico:
+     * menos falhas consecutivas, menor latência média e sucesso mais recente primeiro.
+     * Endpoints sem histórico ficam depois dos que já funcionaram e antes dos que vêm falhando.
+     */
+    public synchronized List<PeerEndpoint> rank(String peerPubB64, List<PeerEndpoint> candidates) {
+        List<PeerEndpoint> all = new ArrayList<>(candidates);
+        PeerRecord rec = peers.get(peerPubB64);
+        if (rec != null) {
+            for (EndpointStats s : rec.endpoints) {
+                PeerEndpoint ep = s.toEndpoint();
+                if (!all.contains(ep)) all.add(ep);
+            }
+        }
+        Comparator<PeerEndpoint> byHistory = Comparator
+                .comparingInt((PeerEndpoint ep) -> bucket(find(rec, ep)))
+                .thenComparingDouble(ep -> latencyKey(find(rec, ep)))
+                .thenComparingLong(ep -> -lastSuccess(find(rec, ep)));
+        all.sort(byHistory);
+        return all;
+    }
+
+    private static int bucket(EndpointStats s) {
+        if (s == null) return 1;                     // novo: neutro
+        if (s.consecutiveFailures > 0) return 2;     // vem falhando
+        return s.successes > 0 ? 0 : 1;              // já funcionou
+    }
+
+    private static double latencyKey(EndpointStats s) {
+        return (s == null || s.handshakeMsEwma < 0) ? Double.MAX_VALUE : s.handshakeMsEwma;
+    }
+
+    private static long lastSuccess(EndpointStats s) {
+        return s == null ? 0 : s.lastSuccessMs;
+    }
+
+    private static EndpointStats find(PeerRecord rec, PeerEndpoint ep) {
+        if (rec == null) return null;
+        for (EndpointStats s : rec.endpoints) {
+            if (s.matches(ep)) return s;
+        }
+        return null;
+    }
+
+    public synchronized void recordSuccess(String peerPubB64, PeerEndpoint ep, long handshakeMs) {
+        EndpointStats s = stats(peerPubB64, ep);
+        long now = System.currentTimeMillis();
+        s.successes++;
+        s.consecutiveFailures = 0;
+        s.lastSuccessMs = now;
+        s.handshakeMsEwma = s.handshakeMsEwma < 0
+                ? handshakeMs
+                : EWMA_ALPHA * handshakeMs + (1 - EWMA_ALPHA) * s.handshakeMsEwma;
+        record(peerPubB64).lastSeenMs = now;
+        saveQuietly();
+    }
+
+    public synchronized void recordFailure(String peerPubB64, PeerEndpoint ep) {
+        EndpointStats s = stats(peerPubB64, ep);
+        s.failures++;
+        s.consecutiveFailures++;
+        s.lastFailureMs = System.currentTimeMillis();
+        saveQuietly();
+    }
+
+    /**
+     * Registra que o peer foi visto (ex.: conexão entrante autenticada), sem endpoint de discagem associado.
+     */
+    public synchronized void recordSeen(String peerPubB64) {
+        record(peerPubB64).lastSeenMs = System.currentTimeMillis();
+        saveQuietly();
+    }
+
+    private PeerRecord record(String peerPubB64) {
+        return peers.computeIfAbsent(peerPubB64, k -> new PeerRecord());
+    }
+
+    private EndpointStats stats(String peerPubB64, PeerEndpoint ep) {
+        PeerRecord rec = record(peerPubB64);
+        EndpointStats s = find(rec, ep);
+        if (s == null) {
+            s = new EndpointStats();
+            s.host = ep.getHost();
+            s.port = ep.getPort();
+            rec.endpoints.add(s);
+        }
+        return s;
+    }
+
+    public synchronized void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gson.toJson(peers, MAP_TYPE, w);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("[PeerDirectory] Falha ao salvar " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.FlightEvents;
+import me.m41k0n.infra.HandshakeGuard;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.infra.TransportProfile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Listener de longa duração: a porta fica aberta durante toda a vida do app e aceita quantas
+ * sessões vierem, em vez de abrir e fechar um ServerSocket a cada conversa (o que deixava a porta
+ * fechada entre sessões e fazia peers reconectando levarem "connection refused" e backoff).
+ *
+ * Cada conexão passa pelo {@link HandshakeGuard} e faz o handshake (como responder) num pool de
+ * threads "p2p-handshake" reaproveitadas. A sessão autenticada é entregue ao consumidor anexado
+ * com {@link #attach} (um peer esperado ou, em modo frota, qualquer peer de um trust store).
+ *
+ * Sem consumidor anexado (ex.: entre sessões, com o CLI perguntando o próximo peer) as conexões são
+ * recusadas logo após o accept, exceto as de peers do trust store de espera ({@link #parkWhileDetached}):
+ * essas fazem o handshake e ficam estacionadas até o próximo attach que as aceite.
+ */
+public class PeerListener implements Closeable {
+
+    // Proteção do accept antes da autenticação: handshakes/s e rajada por IP de origem, handshakes
+    // simultâneos e a partir de quantos em andamento exigir cookie (-1 desliga o cookie)
+    private static final int HS_RATE_PER_SEC = Integer.getInteger("p2p.hsRate", 2);
+    private static final int HS_BURST = Integer.getInteger("p2p.hsBurst", 10);
+    private static final int HS_MAX_IN_FLIGHT = Integer.getInteger("p2p.hsMaxInFlight", 64);
+    private static final int HS_COOKIE_AT = Integer.getInteger("p2p.hsCookieAt", 16);
+    // Sessões estacionadas enquanto desanexado: no máximo uma por peer, até este total e esta idade
+    private static final int PARKED_MAX = Integer.getInteger("p2p.parkedSessions", 8);
+    private static final long PARKED_MAX_MS = Long.getLong("p2p.parkedMaxMs", 30_000L);
+
+    private final ServerSocket serverSocket;
+    private final TransportProfile profile;
+    private final PeerIdentity myIdentity;
+    private final HandshakeGuard guard;
+    private final ExecutorService handshakes;
+
+    private volatile Attachment attachment;
+    private volatile Attachment standby;
+    private volatile boolean closed;
+    // guarda também as trocas de 'attachment', para uma sessão não ser estacionada depois do attach que a buscaria
+    private final Deque<Parked> parked = new ArrayDeque<>();
+
+    // Um peer específico (expectedPeer) ou qualquer peer do trust store (modo frota)
+    private static final class Attachment {
+        final String expectedPeer;
+        final SecureSession.TrustStore trust;
+        final Consumer<SecureSession> sink;
+
+        Attachment(String expectedPeer, SecureSession.TrustStore trust, Consumer<SecureSession> sink) {
+            this.expectedPeer = expectedPeer;
+            this.trust = trust;
+            this.sink = sink;
+        }
+
+        SecureSession newResponder(SecureSession.SocketLike socket, PeerIdentity me) {
+            return trust != null
+                    ? SecureSession.forTrustedPeers(socket, me, trust)
+                    : new SecureSession(socket, me, expectedPeer, false);
+        }
+
+        boolean accepts(String peerPubB64) {
+            return trust != null
+                    ? peerPubB64.equals(trust.lookup(CryptoUtils.fingerprintHex(peerPubB64)))
+                    : expectedPeer.equals(peerPubB64);
+        }
+    }
+
+    private static final class Parked {
+        final SecureSession session;
+        final long sinceNanos = System.nanoTime();
+
+        Parked(SecureSession session) {
+            this.session = session;
+        }
+
+        boolean expired() {
+            return System.nanoTime() - sinceNanos > TimeUnit.MILLISECONDS.toNanos(PARKED_MAX_MS);
+        }
+    }
+
+    /**
+     * Abre a porta (0 = efêmera) e inicia a thread de accept.
+     */
+    public static PeerListener open(int port, PeerIdentity myIdentity) throws IOException {
+        PeerListener l = new PeerListener(port, myIdentity,
+                new HandshakeGuard(HS_RATE_PER_SEC, HS_BURST, HS_MAX_IN_FLIGHT, HS_COOKIE_AT), TransportProfile.current());
+        l.start();
+        return l;
+    }
+
+    PeerListener(int port, PeerIdentity myIdentity, HandshakeGuard guard) throws IOException {
+        this(port, myIdentity, guard, TransportProfile.current());
+    }
+
+    PeerListener(int port, PeerIdentity myIdentity, HandshakeGuard guard, TransportProfile profile) throws IOException {
+        this.profile = profile;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        profile.configure(serverSocket);
+        this.serverSocket.bind(new InetSocketAddress(port));
+        this.myIdentity = myIdentity;
+        this.guard = guard;
+        // pool sem fila: threads ociosas são reaproveitadas, o guard limita quantas rodam ao mesmo tempo
+        this.handshakes = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "p2p-handshake");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() {
+        Thread acceptThread = new Thread(this::acceptLoop, "p2p-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("[P2P] Ouvindo em *:" + getPort() + " (IPv4/IPv6).");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Passa a aceitar sessões do peer 'expectedPeer', entregando cada uma a 'sink' (chamado na
+     * thread do handshake). Substitui o consumidor anterior; uma sessão estacionada desse peer é
+     * entregue logo em seguida.
+     */
+    public void attach(String expectedPeer, Consumer<SecureSession> sink) {
+        if (expectedPeer == null || sink == null) throw new IllegalArgumentException("peer e consumidor são obrigatórios");
+        attach(new Attachment(expectedPeer, null, sink));
+    }
+
+    /**
+     * Modo frota: aceita sessões de qualquer peer presente em 'trust' (ex.: {@link PinnedPeers}),
+     * localizado pela impressão digital do hs1. Sessões simultâneas de vários peers são entregues
+     * a 'sink' (tipicamente um {@link SessionRegistry}).
+     */
+    public void attach(SecureSession.TrustStore trust, Consumer<SecureSession> sink) {
+        if (trust == null || sink == null) throw new IllegalArgumentException("trust store e consumidor são obrigatórios");
+        attach(new Attachment(null, trust, sink));
+    }
+
+    private void attach(Attachment a) {
+        List<SecureSession> ready = new ArrayList<>();
+        synchronized (parked) {
+            this.attachment = a;
+            for (Iterator<Parked> it = parked.iterator(); it.hasNext(); ) {
+                Parked p = it.next();
+                if (p.expired()) {
+                    it.remove();
+                    closeQuietly(p.session);
+                } else if (a.accepts(p.session.getPeerStaticPubB64())) {
+                    it.remove();
+                    ready.add(p.session);
+                }
+            }
+        }
+        for (SecureSession session : ready) {
+            try {
+                handshakes.execute(() -> a.sink.accept(session));
+            } catch (RuntimeException rejected) {
+                closeQuietly(session);
+            }
+        }
+    }
+
+    /**
+     * Para de entregar sessões; a porta continua aberta e só peers do trust store de espera
+     * ({@link #parkWhileDetached}) são aceitos.
+     */
+    public void detach() {
+        synchronized (parked) {
+            this.attachment = null;
+        }
+    }
+
+    /**
+     * Enquanto nada estiver anexado, aceita também sessões de peers presentes em 'trust' (ex.: os
+     * {@link PinnedPeers}) e as guarda para o próximo {@link #attach} que aceite o peer, em vez de
+     * recusá-las. Fica no máximo uma por peer (a mais recente), até -Dp2p.parkedSessions sessões e
+     * -Dp2p.parkedMaxMs de espera; as demais são fechadas. O que o peer enviar nesse meio tempo fica
+     * no buffer do socket e é lido quando o consumidor iniciar o receptor. 'trust' nulo desliga.
+     */
+    public void parkWhileDetached(SecureSession.TrustStore trust) {
+        this.standby = trust == null ? null : new Attachment(null, trust, null);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket s;
+            try {
+                s = serverSocket.accept();
+            } catch (IOException ioe) {
+                if (!closed) System.err.println("[P2P] Erro ao aceitar conexão: " + ioe.getMessage());
+                return;
+            }
+            FlightEvents.Accept event = FlightEvents.beginAccept();
+            Attachment a = attachment;
+            if (a == null) a = standby;
+            HandshakeGuard.Permit permit = a == null ? null : guard.tryAdmit(s.getInetAddress());
+            if (permit == null) {
+                // ninguém esperando sessão (nem trust store de espera), ou taxa do IP/limite global estourado: descarta sem ler nada
+                if (event != null) event.end(remoteOf(s), a == null ? "sem consumidor" : "limitada", null);
+                closeQuietly(s);
+                continue;
+            }
+            Attachment responder = a;
+            try {
+                handshakes.execute(() -> handshake(s, permit, responder, event));
+            } catch (RuntimeException rejected) {
+                if (event != null) event.end(remoteOf(s), "limitada", null);
+                permit.close();
+                closeQuietly(s);
+            }
+        }
+    }
+
+    private void handshake(Socket s, HandshakeGuard.Permit permit, Attachment a, FlightEvents.Accept event) {
+        SecureSession session = a.newResponder(new TcpSocketAdapter(s), myIdentity);
+        session.setHandshakeCookies(guard.cookiesFor(s.getInetAddress()));
+        try {
+            profile.configureAccepted(s);
+            s.setSoTimeout(profile.handshakeTimeoutMs());
+            session.startHandshake();
+            s.setSoTimeout(0);
+        } catch (Exception ex) {
+            if (event != null) event.end(remoteOf(s), "handshake falhou", null);
+            if (!closed) System.err.println("[P2P] Handshake falhou no caminho de aceitação: " + ex.getMessage());
+            try { session.close(); } catch (IOException ignored) { }
+            return;
+        } finally {
+            permit.close();
+        }
+        // o consumidor pode ter mudado durante o handshake: só entrega a quem aceita este peer;
+        // desanexado, peers do trust store de espera ficam estacionados até o próximo attach
+        String peer = session.getPeerStaticPubB64();
+        Attachment now;
+        synchronized (parked) {
+            now = attachment;
+            Attachment wait = standby;
+            if (now == null && wait != null && wait.accepts(peer) && !closed) {
+                park(session);
+                if (event != null) event.end(remoteOf(s), "estacionada", peer);
+                System.out.println("[P2P] Peer " + CryptoUtils.fingerprintHex(peer) + " conectou; a sessão aguarda até você escolhê-lo.");
+                return;
+            }
+        }
+        if (now == null || !now.accepts(peer)) {
+            if (event != null) event.end(remoteOf(s), "peer não esperado", peer);
+            closeQuietly(session);
+            return;
+        }
+        if (event != null) event.end(remoteOf(s), "entregue", peer);
+        now.sink.accept(session);
+    }
+
+    // Chamar com o lock de 'parked': substitui a sessão anterior do mesmo peer e descarta as vencidas/excedentes
+    private void park(SecureSession session) {
+        for (Iterator<Parked> it = parked.iterator(); it.hasNext(); ) {
+            Parked p = it.next();
+            if (p.expired() || p.session.getPeerStaticPubB64().equals(session.getPeerStaticPubB64())) {
+                it.remove();
+                closeQuietly(p.session);
+            }
+        }
+        parked.addLast(new Parked(session));
+        while (parked.size() > PARKED_MAX) closeQuietly(parked.pollFirst().session);
+    }
+
+    private static String remoteOf(Socket s) {
+        return String.valueOf(s.getRemoteSocketAddress());
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    private static void closeQuietly(SecureSession s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (parked) {
+            attachment = null;
+            for (Parked p : parked) closeQuietly(p.session);
+            parked.clear();
+        }
+        handshakes.shutdownNow();
+        serverSocket.close();
+    }
+}
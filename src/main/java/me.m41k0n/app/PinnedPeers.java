@@ -0,0 +1,157 @@
+package me.m41k0n.app;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Peers fixados (confiados) pelo usuário, indexados pela impressão digital da chave pública
+ * ({@link CryptoUtils#fingerprintHex(String)}). Como a identidade local agora é persistente, um peer
+ * fixado uma vez continua válido nas próximas execuções sem precisar colar a chave de novo.
+ *
+ * Também serve de {@link SecureSession.TrustStore} para o listener em modo frota: o peer que
+ * conecta é localizado pela impressão digital enviada no hs1.
+ *
+ * Persistência: JSON (Gson) gravado de forma atômica (arquivo temporário + move). Um arquivo com
+ * JSON inválido é movido para "<nome>.bad" antes de qualquer gravação (a lista recomeça vazia, com
+ * aviso); um erro de leitura falha a abertura, para nunca sobrescrever a lista do usuário.
+ */
+public class PinnedPeers implements SecureSession.TrustStore {
+
+    private static final Type MAP_TYPE = new TypeToken<LinkedHashMap<String, Pin>>() { }.getType();
+
+    private final Path file;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Map<String, Pin> pins;
+
+    /**
+     * Peer fixado.
+     */
+    public static final class Pin {
+        private String publicKey;
+        private String alias;
+        private long pinnedAtMs;
+
+        public String getPublicKey() {
+            return publicKey;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public long getPinnedAtMs() {
+            return pinnedAtMs;
+        }
+    }
+
+    public PinnedPeers(Path file) throws IOException {
+        this.file = file;
+        this.pins = load(file);
+    }
+
+    /**
+     * Abre a lista no local padrão ({@link DataDirectory}).
+     */
+    public static PinnedPeers openDefault() throws IOException {
+        return new PinnedPeers(DataDirectory.resolve("pinned-peers.json"));
+    }
+
+    private Map<String, Pin> load(Path f) throws IOException {
+        if (!Files.exists(f)) return new LinkedHashMap<>();
+        try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+            Map<String, Pin> m = gson.fromJson(r, MAP_TYPE);
+            return m != null ? m : new LinkedHashMap<>();
+        } catch (JsonParseException e) {
+            // preserva o original: o próximo pin()/unpin() gravaria a lista vazia por cima
+            Path bad = f.resolveSibling(f.getFileName() + ".bad");
+            Files.move(f, bad, StandardCopyOption.REPLACE_EXISTING);
+            System.err.println("[PinnedPeers] " + f + " corrompido (" + e.getMessage() + "); movido para " + bad
+                    + ". Nenhum peer fixado até você restaurá-lo ou fixar de novo.");
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Fixa o peer (idempotente). Um alias não nulo substitui o anterior. Retorna true se era novo.
+     */
+    public synchronized boolean pin(String peerPubB64, String alias) {
+        String fp = CryptoUtils.fingerprintHex(peerPubB64);
+        Pin p = pins.get(fp);
+        boolean added = p == null;
+        if (added) {
+            p = new Pin();
+            p.publicKey = peerPubB64;
+            p.pinnedAtMs = System.currentTimeMillis();
+            pins.put(fp, p);
+        } else if (!p.publicKey.equals(peerPubB64)) {
+            throw new IllegalStateException("colisão de impressão digital para " + fp);
+        }
+        if (alias != null) p.alias = alias;
+        if (added || alias != null) saveQuietly();
+        return added;
+    }
+
+    public synchronized boolean unpin(String peerPubB64) {
+        boolean removed = pins.remove(CryptoUtils.fingerprintHex(peerPubB64)) != null;
+        if (removed) saveQuietly();
+        return removed;
+    }
+
+    public synchronized boolean isPinned(String peerPubB64) {
+        Pin p = pins.get(CryptoUtils.fingerprintHex(peerPubB64));
+        return p != null && p.publicKey.equals(peerPubB64);
+    }
+
+    /** Chave pública do peer fixado com a impressão digital informada, ou null. */
+    public synchronized String findByFingerprint(String fingerprintHex) {
+        Pin p = pins.get(fingerprintHex);
+        return p == null ? null : p.publicKey;
+    }
+
+    @Override
+    public String lookup(String fingerprintHex) {
+        return findByFingerprint(fingerprintHex);
+    }
+
+    /** Chaves públicas fixadas, na ordem em que foram fixadas. */
+    public synchronized List<String> publicKeys() {
+        List<String> out = new ArrayList<>(pins.size());
+        for (Pin p : pins.values()) out.add(p.publicKey);
+        return out;
+    }
+
+    public synchronized void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gson.toJson(pins, MAP_TYPE, w);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("[PinnedPeers] Falha ao salvar " + file + ": " + e.getMessage());
+        }
+    }
+}
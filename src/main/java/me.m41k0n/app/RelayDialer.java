@@ -0,0 +1,93 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.infra.TransportProfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Lado cliente do {@link RelayServer}: autentica no relay, espera o peer entrar e faz o handshake
+ * {@link SecureSession} fim a fim pelo túnel. O papel (iniciador/responder) é decidido pelo relay.
+ */
+public class RelayDialer {
+
+    private final PeerEndpoint relay;
+    private final PeerIdentity myIdentity;
+    private final String peerStaticPubB64;
+    // opções TCP e timeouts de connect/preâmbulo/handshake (o tempo de espera pelo peer é de connect())
+    private final TransportProfile profile = TransportProfile.current();
+    // socket ainda no preâmbulo/handshake; null depois de entregue a sessão
+    private volatile Socket pending;
+    private volatile boolean cancelled;
+
+    public RelayDialer(PeerEndpoint relay, PeerIdentity myIdentity, String peerStaticPubB64) {
+        if (relay == null || myIdentity == null || peerStaticPubB64 == null) {
+            throw new IllegalArgumentException("relay, identidade e peer são obrigatórios");
+        }
+        this.relay = relay;
+        this.myIdentity = myIdentity;
+        this.peerStaticPubB64 = peerStaticPubB64;
+    }
+
+    /**
+     * Conecta ao relay e aguarda o peer por até 'pairWaitMs'. Retorna a sessão autenticada com o
+     * peer (o relay só enxerga registros cifrados); lança se o relay recusar, o peer não aparecer
+     * a tempo ou a tentativa for cancelada.
+     */
+    public SecureSession connect(int pairWaitMs) throws Exception {
+        Socket s = new Socket();
+        pending = s;
+        try {
+            if (cancelled) throw new IOException("discagem via relay cancelada");
+            // o relay só copia bytes: as opções valem para o caminho fim a fim como numa discagem direta
+            profile.configure(s);
+            s.connect(new InetSocketAddress(relay.getHost(), relay.getPort()), profile.connectTimeoutMs());
+            s.setSoTimeout(profile.handshakeTimeoutMs());
+            InputStream in = s.getInputStream();
+
+            String challenge = RelayServer.readLine(in);
+            if (!challenge.startsWith(RelayServer.CHALLENGE_PREFIX)) throw new IllegalStateException("relay respondeu fora do protocolo");
+            String nonce = challenge.substring(RelayServer.CHALLENGE_PREFIX.length());
+            String me = myIdentity.getPublicKeyBase64();
+            String sig = myIdentity.sign(RelayServer.joinPayload(nonce, me, peerStaticPubB64));
+            RelayServer.writeLine(s.getOutputStream(), RelayServer.JOIN_PREFIX + me + "|" + peerStaticPubB64 + "|" + sig);
+
+            s.setSoTimeout(pairWaitMs);
+            String paired = RelayServer.readLine(in);
+            boolean initiator;
+            if ((RelayServer.PAIRED_PREFIX + RelayServer.ROLE_INITIATOR).equals(paired)) {
+                initiator = true;
+            } else if ((RelayServer.PAIRED_PREFIX + RelayServer.ROLE_RESPONDER).equals(paired)) {
+                initiator = false;
+            } else {
+                throw new IllegalStateException("relay respondeu fora do protocolo");
+            }
+
+            s.setSoTimeout(profile.handshakeTimeoutMs());
+            SecureSession session = new SecureSession(new TcpSocketAdapter(s), myIdentity, peerStaticPubB64, initiator);
+            session.startHandshake();
+            s.setSoTimeout(0);
+            pending = null;
+            return session;
+        } catch (Exception e) {
+            pending = null;
+            try { s.close(); } catch (IOException ignored) { }
+            throw e;
+        }
+    }
+
+    /** Aborta uma tentativa em andamento (sessões já entregues não são afetadas). */
+    public void cancel() {
+        cancelled = true;
+        Socket s = pending;
+        if (s != null) {
+            try { s.close(); } catch (IOException ignored) { }
+        }
+    }
+}
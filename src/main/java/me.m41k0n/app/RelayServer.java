@@ -0,0 +1,474 @@
+package me.m41k0n.app;
+
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay para peers que não alcançam um ao outro diretamente (ambos atrás de NAT).
+ *
+ * Cada peer conecta ao relay e prova a posse da sua chave assinando um desafio:
+ * <pre>
+ *   relay → "relay1|&lt;nonce&gt;"
+ *   peer  → "join|&lt;minhaChave&gt;|&lt;chaveDoPeer&gt;|&lt;assinatura de relay1|nonce|minha|peer&gt;"
+ *   relay → "paired|responder" (quem chegou primeiro) / "paired|initiator" (quem completou o par)
+ * </pre>
+ * Depois do "paired" o relay só copia bytes entre os dois sockets: os peers fazem o handshake
+ * {@link me.m41k0n.infra.SecureSession} fim a fim pelo túnel e o relay nunca vê as chaves nem
+ * decifra os registros.
+ *
+ * A cópia roda em poucas threads "p2p-relay-N", cada uma com um Selector e NIO não bloqueante;
+ * cada sentido de cada par usa um único buffer direto de tamanho fixo (-Dp2p.relayBufferBytes),
+ * então a memória por sessão é limitada e um destino lento apenas deixa de ser lido da origem
+ * (backpressure TCP) em vez de acumular dados no relay.
+ *
+ * Como qualquer um pode criar duas chaves e emparelhá-las entre si, o relay também limita o uso:
+ * no máximo -Dp2p.relayMaxSessions pares retransmitidos ao mesmo tempo (novos pares são recusados)
+ * e pares sem tráfego em nenhum sentido por -Dp2p.relayIdleMs são encerrados (o heartbeat das
+ * sessões mantém vivos os pares em uso).
+ */
+public class RelayServer implements Closeable {
+
+    static final String CHALLENGE_PREFIX = "relay1|";
+    static final String JOIN_PREFIX = "join|";
+    static final String PAIRED_PREFIX = "paired|";
+    static final String ROLE_INITIATOR = "initiator";
+    static final String ROLE_RESPONDER = "responder";
+    static final int MAX_PREAMBLE_LEN = 2048;
+
+    private static final int BUFFER_BYTES = Integer.getInteger("p2p.relayBufferBytes", 16 * 1024);
+    private static final long PAIR_TIMEOUT_MS = Long.getLong("p2p.relayPairTimeoutMs", 60_000L);
+    private static final int MAX_WAITING = Integer.getInteger("p2p.relayMaxWaiting", 4096);
+    private static final int MAX_ACTIVE = Integer.getInteger("p2p.relayMaxSessions", 1024);
+    private static final long IDLE_MS = Long.getLong("p2p.relayIdleMs", 5 * 60_000L);
+    private static final int JOIN_TIMEOUT_MS = 10_000;
+    // iterações de cópia por evento antes de devolver a vez às outras sessões do mesmo seletor
+    private static final int MAX_SPINS_PER_EVENT = 16;
+
+    private final ServerSocketChannel server;
+    private final HandshakeGuard guard;
+    private final long pairTimeoutMs;
+    private final int maxWaiting;
+    private final int maxActive;
+    private final long idleNanos;
+    private final long sweepMs;
+    private final ExecutorService joins;
+    private final ScheduledExecutorService reaper;
+    private final Pump[] pumps;
+    private final AtomicInteger nextPump = new AtomicInteger();
+    private final SecureRandom random = new SecureRandom();
+
+    // "minhaChave>chaveDoPeer" -> conexão autenticada aguardando o par (protegido por 'waiting')
+    private final Map<String, SocketChannel> waiting = new HashMap<>();
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong bytesRelayed = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Abre o relay na porta (0 = efêmera) com uma thread de cópia por núcleo e o mesmo
+     * {@link HandshakeGuard} do listener limitando conexões por IP antes da autenticação.
+     */
+    public static RelayServer open(int port) throws IOException {
+        RelayServer r = new RelayServer(port, Runtime.getRuntime().availableProcessors(),
+                new HandshakeGuard(10, 50, 256, -1), PAIR_TIMEOUT_MS, MAX_WAITING, MAX_ACTIVE, IDLE_MS);
+        r.start();
+        return r;
+    }
+
+    RelayServer(int port, int pumpThreads, HandshakeGuard guard, long pairTimeoutMs, int maxWaiting,
+                int maxActive, long idleMs) throws IOException {
+        if (pumpThreads < 1) throw new IllegalArgumentException("pumpThreads deve ser >= 1");
+        if (maxActive < 1) throw new IllegalArgumentException("maxActive deve ser >= 1");
+        if (idleMs < 1) throw new IllegalArgumentException("idleMs deve ser >= 1");
+        this.server = ServerSocketChannel.open();
+        this.server.socket().setReuseAddress(true);
+        this.server.bind(new InetSocketAddress(port));
+        this.guard = guard;
+        this.pairTimeoutMs = pairTimeoutMs;
+        this.maxWaiting = maxWaiting;
+        this.maxActive = maxActive;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        // varredura de ociosos: granularidade de metade do limite, no máximo 1 s
+        this.sweepMs = Math.max(1, Math.min(idleMs / 2, 1000));
+        this.joins = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "p2p-relay-join");
+            t.setDaemon(true);
+            return t;
+        });
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "p2p-relay-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pumps = new Pump[pumpThreads];
+        for (int i = 0; i < pumpThreads; i++) pumps[i] = new Pump(i);
+    }
+
+    void start() {
+        for (Pump p : pumps) p.thread.start();
+        Thread acceptThread = new Thread(this::acceptLoop, "p2p-relay-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("[Relay] Ouvindo em *:" + getPort() + " (" + pumps.length + " thread(s) de cópia).");
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Pares conectados e sendo retransmitidos no momento. */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /** Total de bytes copiados entre peers (ambos os sentidos). */
+    public long getBytesRelayed() {
+        return bytesRelayed.get();
+    }
+
+    public int getWaitingCount() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (IOException ioe) {
+                if (!closed) System.err.println("[Relay] Erro ao aceitar conexão: " + ioe.getMessage());
+                return;
+            }
+            HandshakeGuard.Permit permit = guard.tryAdmit(ch.socket().getInetAddress());
+            if (permit == null) {
+                closeQuietly(ch);
+                continue;
+            }
+            try {
+                joins.execute(() -> join(ch, permit));
+            } catch (RuntimeException rejected) {
+                permit.close();
+                closeQuietly(ch);
+            }
+        }
+    }
+
+    /**
+     * Desafio/assinatura em modo bloqueante (com timeout) e emparelhamento. A leitura é byte a
+     * byte para não consumir nada além da linha de join: tudo que vier depois pertence ao túnel.
+     */
+    private void join(SocketChannel ch, HandshakeGuard.Permit permit) {
+        try {
+            Socket s = ch.socket();
+            s.setSoTimeout(JOIN_TIMEOUT_MS);
+            s.setTcpNoDelay(true);
+            byte[] nonceBytes = new byte[24];
+            random.nextBytes(nonceBytes);
+            String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(nonceBytes);
+            writeLine(s.getOutputStream(), CHALLENGE_PREFIX + nonce);
+
+            String[] p = readLine(s.getInputStream()).split("\\|", -1);
+            if (p.length != 4 || !JOIN_PREFIX.equals(p[0] + "|")) throw new IllegalStateException("join malformado");
+            String from = p[1];
+            String to = p[2];
+            byte[] fromKey;
+            try {
+                fromKey = Base64.getDecoder().decode(from);
+                Base64.getDecoder().decode(to);
+            } catch (IllegalArgumentException badB64) {
+                throw new IllegalStateException("chave inválida no join");
+            }
+            if (!CryptoUtils.verify(fromKey, joinPayload(nonce, from, to), p[3])) {
+                throw new IllegalStateException("assinatura do join inválida");
+            }
+            enqueueOrPair(ch, from + ">" + to, to + ">" + from);
+        } catch (Exception e) {
+            if (!closed) System.err.println("[Relay] Join recusado: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            closeQuietly(ch);
+        } finally {
+            permit.close();
+        }
+    }
+
+    private void enqueueOrPair(SocketChannel ch, String mine, String theirs) throws IOException {
+        SocketChannel partner;
+        SocketChannel replaced = null;
+        synchronized (waiting) {
+            partner = waiting.remove(theirs);
+            if (partner == null) {
+                if (waiting.size() >= maxWaiting && !waiting.containsKey(mine)) {
+                    throw new IllegalStateException("limite de conexões aguardando par atingido");
+                }
+                // reconexão do mesmo peer para o mesmo destino substitui a anterior
+                replaced = waiting.put(mine, ch);
+            }
+        }
+        if (replaced != null) closeQuietly(replaced);
+        if (partner == null) {
+            reaper.schedule(() -> expire(mine, ch), pairTimeoutMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        // reserva a vaga antes de avisar os peers; Splice.end a devolve
+        if (activeSessions.incrementAndGet() > maxActive) {
+            activeSessions.decrementAndGet();
+            closeQuietly(partner);
+            throw new IllegalStateException("limite de pares retransmitidos atingido");
+        }
+        try {
+            writeLine(partner.socket().getOutputStream(), PAIRED_PREFIX + ROLE_RESPONDER);
+            writeLine(ch.socket().getOutputStream(), PAIRED_PREFIX + ROLE_INITIATOR);
+        } catch (IOException e) {
+            activeSessions.decrementAndGet();
+            closeQuietly(partner);
+            throw e;
+        }
+        pumps[Math.floorMod(nextPump.getAndIncrement(), pumps.length)].add(partner, ch);
+    }
+
+    private void expire(String key, SocketChannel ch) {
+        boolean removed;
+        synchronized (waiting) {
+            removed = waiting.remove(key, ch);
+        }
+        if (removed) closeQuietly(ch);
+    }
+
+    static String joinPayload(String nonce, String from, String to) {
+        return CHALLENGE_PREFIX + nonce + "|" + from + "|" + to;
+    }
+
+    static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /** Lê uma linha do preâmbulo byte a byte (sem bufferizar além do '\n'), limitada a MAX_PREAMBLE_LEN. */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(128);
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) throw new EOFException("Conexão encerrada durante o preâmbulo do relay.");
+            if (buf.size() >= MAX_PREAMBLE_LEN) throw new IllegalStateException("linha de preâmbulo longa demais");
+            buf.write(b);
+        }
+        return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        joins.shutdownNow();
+        reaper.shutdownNow();
+        synchronized (waiting) {
+            for (SocketChannel ch : waiting.values()) closeQuietly(ch);
+            waiting.clear();
+        }
+        for (Pump p : pumps) p.shutdown();
+    }
+
+    /** Um sentido da cópia: lê de 'src' no buffer e escreve em 'dst'. */
+    private static final class Direction {
+        final SocketChannel src;
+        final SocketChannel dst;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        // destino não aceitou tudo: para de ler da origem e espera OP_WRITE no destino
+        boolean stalled;
+
+        Direction(SocketChannel src, SocketChannel dst) {
+            this.src = src;
+            this.dst = dst;
+        }
+    }
+
+    private final class Splice {
+        final Direction ab;
+        final Direction ba;
+        SelectionKey keyA;
+        SelectionKey keyB;
+        boolean done;
+        long lastActiveNanos = System.nanoTime();
+
+        Splice(SocketChannel a, SocketChannel b) {
+            this.ab = new Direction(a, b);
+            this.ba = new Direction(b, a);
+        }
+
+        void onReady(SelectionKey key) {
+            lastActiveNanos = System.nanoTime();
+            try {
+                boolean isA = key == keyA;
+                if (key.isReadable() && !pump(isA ? ab : ba)) {
+                    end();
+                    return;
+                }
+                if (key.isValid() && key.isWritable() && !pump(isA ? ba : ab)) {
+                    end();
+                    return;
+                }
+                updateInterest();
+            } catch (IOException | RuntimeException e) {
+                end();
+            }
+        }
+
+        /**
+         * Copia até esvaziar a origem, encher o destino ou gastar a cota; false em EOF. Cada leitura
+         * é seguida de uma escrita, para nunca sair com bytes no buffer sem esperar OP_WRITE.
+         */
+        private boolean pump(Direction d) throws IOException {
+            for (int i = 0; i < MAX_SPINS_PER_EVENT; i++) {
+                int n = d.src.read(d.buf);
+                if (!flush(d) || n == 0) return true;
+                if (n < 0) return false;
+            }
+            return true;
+        }
+
+        /** Escreve o que houver no buffer; false se o destino não aceitou tudo (stalled). */
+        private boolean flush(Direction d) throws IOException {
+            if (d.buf.position() > 0) {
+                d.buf.flip();
+                bytesRelayed.addAndGet(d.dst.write(d.buf));
+                d.buf.compact();
+            }
+            d.stalled = d.buf.position() > 0;
+            return !d.stalled;
+        }
+
+        private void updateInterest() {
+            keyA.interestOps((ab.stalled ? 0 : SelectionKey.OP_READ) | (ba.stalled ? SelectionKey.OP_WRITE : 0));
+            keyB.interestOps((ba.stalled ? 0 : SelectionKey.OP_READ) | (ab.stalled ? SelectionKey.OP_WRITE : 0));
+        }
+
+        void end() {
+            if (done) return;
+            done = true;
+            if (keyA != null) keyA.cancel();
+            if (keyB != null) keyB.cancel();
+            closeQuietly(ab.src);
+            closeQuietly(ba.src);
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /** Thread de cópia com o seu Selector; novos pares chegam pela fila e um wakeup. */
+    private final class Pump {
+        final Thread thread;
+        final Selector selector;
+        final Queue<Splice> pending = new ConcurrentLinkedQueue<>();
+
+        Pump(int id) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this::run, "p2p-relay-" + id);
+            this.thread.setDaemon(true);
+        }
+
+        void add(SocketChannel a, SocketChannel b) {
+            pending.add(new Splice(a, b));
+            selector.wakeup();
+        }
+
+        private void run() {
+            try {
+                long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepMs);
+                while (!closed) {
+                    selector.select(sweepMs);
+                    for (Splice sp = pending.poll(); sp != null; sp = pending.poll()) register(sp);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        if (k.isValid()) ((Splice) k.attachment()).onReady(k);
+                    }
+                    long now = System.nanoTime();
+                    if (now - nextSweep >= 0) {
+                        endIdle(now);
+                        nextSweep = now + TimeUnit.MILLISECONDS.toNanos(sweepMs);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (!closed) System.err.println("[Relay] Thread de cópia encerrada: " + e.getMessage());
+            } finally {
+                for (SelectionKey k : selector.keys()) {
+                    try {
+                        ((Splice) k.attachment()).end();
+                    } catch (ClosedSelectorException ignored) {
+                        // seletor já fechado: os canais já foram fechados
+                    }
+                }
+            }
+        }
+
+        private void endIdle(long now) {
+            for (SelectionKey k : selector.keys()) {
+                Splice sp = (Splice) k.attachment();
+                if (k == sp.keyA && now - sp.lastActiveNanos > idleNanos) sp.end();
+            }
+        }
+
+        private void register(Splice sp) {
+            try {
+                SocketChannel a = sp.ab.src;
+                SocketChannel b = sp.ba.src;
+                a.configureBlocking(false);
+                b.configureBlocking(false);
+                sp.keyA = a.register(selector, SelectionKey.OP_READ, sp);
+                sp.keyB = b.register(selector, SelectionKey.OP_READ, sp);
+            } catch (IOException e) {
+                sp.end();
+            }
+        }
+
+        void shutdown() {
+            selector.wakeup();
+            for (Splice sp = pending.poll(); sp != null; sp = pending.poll()) sp.end();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            closeQuietly(selector);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package me.m41k0n.app;
+
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Servidor de rendezvous para hole punching: informa a cada peer o endpoint UDP público do outro,
+ * como visto daqui (depois do NAT), para que os dois furem os NATs ao mesmo tempo (ver
+ * {@link HolePuncher}). Não carrega tráfego do chat; roda na mesma porta em UDP e TCP.
+ *
+ * <pre>
+ *   peer → UDP "udp|&lt;token&gt;"             (o servidor anota o endpoint observado do token)
+ *   rdv  → UDP "seen|&lt;ip&gt;|&lt;porta&gt;"
+ *   rdv  → TCP "rdv1|&lt;nonce&gt;"
+ *   peer → TCP "meet|&lt;minhaChave&gt;|&lt;chaveDoPeer&gt;|&lt;token&gt;|&lt;assinatura&gt;"
+ *   rdv  → TCP "peer|&lt;ip&gt;|&lt;porta&gt;|initiator|responder"  (quando os dois chegaram)
+ * </pre>
+ * A assinatura do "meet" impede que alguém se passe por um peer para descobrir ou desviar o
+ * endpoint do outro; a autenticação fim a fim continua sendo a da SecureSession.
+ */
+public class RendezvousServer implements Closeable {
+
+    static final String UDP_PREFIX = "udp|";
+    static final String SEEN_PREFIX = "seen|";
+    static final String CHALLENGE_PREFIX = "rdv1|";
+    static final String MEET_PREFIX = "meet|";
+    static final String PEER_PREFIX = "peer|";
+
+    private static final long PAIR_TIMEOUT_MS = Long.getLong("p2p.rendezvousPairTimeoutMs", 60_000L);
+    private static final int JOIN_TIMEOUT_MS = 10_000;
+    private static final long TOKEN_TTL_MS = 60_000;
+    private static final int MAX_TOKENS = 16_384;
+
+    private final ServerSocket tcp;
+    private final DatagramSocket udp;
+    private final HandshakeGuard guard;
+    private final long pairTimeoutMs;
+    private final ExecutorService joins;
+    private final SecureRandom random = new SecureRandom();
+
+    private static final class Observed {
+        final InetSocketAddress address;
+        final long atMs;
+
+        Observed(InetSocketAddress address, long atMs) {
+            this.address = address;
+            this.atMs = atMs;
+        }
+    }
+
+    private static final class Waiting {
+        final InetSocketAddress udp;
+        final CompletableFuture<String> match = new CompletableFuture<>();
+
+        Waiting(InetSocketAddress udp) {
+            this.udp = udp;
+        }
+    }
+
+    private final Map<String, Observed> observed = new ConcurrentHashMap<>();
+    // "minhaChave>chaveDoPeer" -> peer aguardando o outro (protegido por 'waiting')
+    private final Map<String, Waiting> waiting = new HashMap<>();
+    private volatile boolean closed;
+
+    public static RendezvousServer open(int port) throws IOException {
+        RendezvousServer r = new RendezvousServer(port, new HandshakeGuard(10, 50, 1024, -1), PAIR_TIMEOUT_MS);
+        r.start();
+        return r;
+    }
+
+    RendezvousServer(int port, HandshakeGuard guard, long pairTimeoutMs) throws IOException {
+        this.tcp = new ServerSocket();
+        this.tcp.setReuseAddress(true);
+        this.tcp.bind(new InetSocketAddress(port));
+        try {
+            this.udp = new DatagramSocket(tcp.getLocalPort());
+        } catch (IOException e) {
+            tcp.close();
+            throw e;
+        }
+        this.guard = guard;
+        this.pairTimeoutMs = pairTimeoutMs;
+        this.joins = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "p2p-rendezvous-join");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() {
+        Thread udpThread = new Thread(this::udpLoop, "p2p-rendezvous-udp");
+        udpThread.setDaemon(true);
+        udpThread.start();
+        Thread acceptThread = new Thread(this::acceptLoop, "p2p-rendezvous-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        System.out.println("[Rendezvous] Ouvindo em *:" + getPort() + " (TCP e UDP).");
+    }
+
+    public int getPort() {
+        return tcp.getLocalPort();
+    }
+
+    public int getWaitingCount() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    private void udpLoop() {
+        byte[] buf = new byte[256];
+        DatagramPacket p = new DatagramPacket(buf, buf.length);
+        while (!closed) {
+            try {
+                p.setLength(buf.length);
+                udp.receive(p);
+                String msg = new String(buf, 0, p.getLength(), StandardCharsets.UTF_8);
+                if (!msg.startsWith(UDP_PREFIX)) continue;
+                InetSocketAddress from = (InetSocketAddress) p.getSocketAddress();
+                long now = System.currentTimeMillis();
+                if (observed.size() >= MAX_TOKENS) observed.values().removeIf(o -> now - o.atMs > TOKEN_TTL_MS);
+                if (observed.size() >= MAX_TOKENS) continue;
+                observed.put(msg.substring(UDP_PREFIX.length()), new Observed(from, now));
+                byte[] reply = (SEEN_PREFIX + format(from)).getBytes(StandardCharsets.UTF_8);
+                udp.send(new DatagramPacket(reply, reply.length, from));
+            } catch (IOException e) {
+                if (!closed) System.err.println("[Rendezvous] Erro no socket UDP: " + e.getMessage());
+                if (udp.isClosed()) return;
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            Socket s;
+            try {
+                s = tcp.accept();
+            } catch (IOException ioe) {
+                if (!closed) System.err.println("[Rendezvous] Erro ao aceitar conexão: " + ioe.getMessage());
+                return;
+            }
+            HandshakeGuard.Permit permit = guard.tryAdmit(s.getInetAddress());
+            if (permit == null) {
+                closeQuietly(s);
+                continue;
+            }
+            try {
+                joins.execute(() -> meet(s, permit));
+            } catch (RuntimeException rejected) {
+                permit.close();
+                closeQuietly(s);
+            }
+        }
+    }
+
+    private void meet(Socket s, HandshakeGuard.Permit permit) {
+        try (Socket sock = s) {
+            sock.setSoTimeout(JOIN_TIMEOUT_MS);
+            byte[] nonceBytes = new byte[24];
+            random.nextBytes(nonceBytes);
+            String nonce = Base64.getUrlEncoder().withoutPadding().encodeToString(nonceBytes);
+            RelayServer.writeLine(sock.getOutputStream(), CHALLENGE_PREFIX + nonce);
+
+            String[] p = RelayServer.readLine(sock.getInputStream()).split("\\|", -1);
+            if (p.length != 5 || !MEET_PREFIX.equals(p[0] + "|")) throw new IllegalStateException("meet malformado");
+            String from = p[1];
+            String to = p[2];
+            String token = p[3];
+            byte[] fromKey;
+            try {
+                fromKey = Base64.getDecoder().decode(from);
+            } catch (IllegalArgumentException badB64) {
+                throw new IllegalStateException("chave inválida no meet");
+            }
+            if (!CryptoUtils.verify(fromKey, meetPayload(nonce, from, to, token), p[4])) {
+                throw new IllegalStateException("assinatura do meet inválida");
+            }
+            Observed seen = observed.remove(token);
+            if (seen == null) throw new IllegalStateException("endpoint UDP do peer não observado (token desconhecido)");
+
+            String line = awaitPartner(from + ">" + to, to + ">" + from, seen.address);
+            RelayServer.writeLine(sock.getOutputStream(), line);
+        } catch (TimeoutException e) {
+            // peer não apareceu: a conexão é fechada e o cliente tenta de novo
+        } catch (Exception e) {
+            if (!closed) System.err.println("[Rendezvous] Meet recusado: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+        } finally {
+            permit.close();
+        }
+    }
+
+    /** Emparelha com o peer já à espera ou espera por ele; retorna a linha "peer|..." para este lado. */
+    private String awaitPartner(String key, String partnerKey, InetSocketAddress myUdp) throws Exception {
+        Waiting mine = new Waiting(myUdp);
+        Waiting partner;
+        Waiting replaced = null;
+        synchronized (waiting) {
+            partner = waiting.remove(partnerKey);
+            if (partner == null) replaced = waiting.put(key, mine);
+        }
+        if (replaced != null) replaced.match.completeExceptionally(new IllegalStateException("substituído por nova conexão"));
+        if (partner != null) {
+            partner.match.complete(PEER_PREFIX + format(myUdp) + "|" + RelayServer.ROLE_RESPONDER);
+            return PEER_PREFIX + format(partner.udp) + "|" + RelayServer.ROLE_INITIATOR;
+        }
+        try {
+            return mine.match.get(pairTimeoutMs, TimeUnit.MILLISECONDS);
+        } finally {
+            synchronized (waiting) {
+                waiting.remove(key, mine);
+            }
+        }
+    }
+
+    static String meetPayload(String nonce, String from, String to, String token) {
+        return CHALLENGE_PREFIX + nonce + "|" + from + "|" + to + "|" + token;
+    }
+
+    static String format(InetSocketAddress a) {
+        return a.getAddress().getHostAddress() + "|" + a.getPort();
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        tcp.close();
+        udp.close();
+        joins.shutdownNow();
+        synchronized (waiting) {
+            for (Waiting w : waiting.values()) w.match.completeExceptionally(new IllegalStateException("rendezvous encerrado"));
+            waiting.clear();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package me.m41k0n.app;
+
+import me.m41k0n.infra.SecureSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tabela concorrente das sessões ativas, uma por peer (chave pública Base64), alimentada pelo
+ * {@link PeerListener} em modo frota: uma nova sessão do mesmo peer substitui e fecha a anterior
+ * (reconexão), e cada sessão sai da tabela quando o receptor termina ({@link #handlerFor}).
+ */
+public class SessionRegistry {
+
+    private final ConcurrentMap<String, SecureSession> sessions = new ConcurrentHashMap<>();
+
+    /** Registra a sessão do peer; uma sessão anterior do mesmo peer é fechada. */
+    public void register(SecureSession session) {
+        SecureSession previous = sessions.put(session.getPeerStaticPubB64(), session);
+        if (previous != null && previous != session) {
+            System.out.println("[Sessions] Peer reconectou; sessão anterior encerrada.");
+            closeQuietly(previous);
+        }
+    }
+
+    /** Remove a sessão, se ainda for a registrada para o peer (não remove uma substituta). */
+    public boolean unregister(SecureSession session) {
+        return sessions.remove(session.getPeerStaticPubB64(), session);
+    }
+
+    /**
+     * Handler para {@link SecureSession#runReceiver} que repassa tudo a 'delegate' e tira a sessão
+     * da tabela quando o receptor termina.
+     */
+    public SecureSession.MessageHandler handlerFor(SecureSession session, SecureSession.MessageHandler delegate) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { delegate.onPlaintext(text); }
+            @Override public void onControl(String body) { delegate.onControl(body); }
+            @Override public void onGroupRecord(String envelope) { delegate.onGroupRecord(envelope); }
+            @Override public void onError(Exception e) {
+                unregister(session);
+                delegate.onError(e);
+            }
+        };
+    }
+
+    /** Sessão ativa do peer, ou null. Sessões já encerradas são descartadas aqui. */
+    public SecureSession get(String peerPubB64) {
+        SecureSession s = sessions.get(peerPubB64);
+        if (s != null && s.isClosed()) {
+            sessions.remove(peerPubB64, s);
+            return null;
+        }
+        return s;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /** Peers com sessão registrada no momento (cópia). */
+    public List<String> peers() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    /** Fecha e remove todas as sessões. */
+    public void closeAll() {
+        for (SecureSession s : sessions.values()) {
+            unregister(s);
+            closeQuietly(s);
+        }
+    }
+
+    private static void closeQuietly(SecureSession s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+}
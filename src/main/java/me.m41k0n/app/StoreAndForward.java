@@ -0,0 +1,131 @@
+package me.m41k0n.app;
+
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.store.Outbox;
+
+import java.io.IOException;
+
+/**
+ * Protocolo de entrega da {@link Outbox} sobre registros de controle da sessão segura.
+ *
+ * Remetente: ao reconectar, {@link #flush(SecureSession)} envia as mensagens pendentes em lotes
+ * ("obx|id|texto"), cada lote seguido de "obx-sync|id". Destinatário: entrega cada "obx" ao handler
+ * como mensagem normal (descartando ids já entregues) e responde ao sync com "obx-ack|id", que
+ * confirma o lote na outbox do remetente e permite compactar os segmentos.
+ * Semântica: entrega ao menos uma vez (um ack perdido causa reenvio na próxima conexão).
+ */
+public class StoreAndForward {
+
+    public static final int DEFAULT_BATCH = 256;
+
+    private static final String MSG = "obx";
+    private static final String SYNC = "obx-sync";
+    private static final String ACK = "obx-ack";
+
+    private final Outbox outbox;
+    private final int batchSize;
+    // último id enviado nesta sessão; acks além dele confirmariam mensagens que o peer nunca viu
+    private volatile long sentUpTo = -1;
+    private volatile long lastDelivered = -1;
+
+    /**
+     * @param outbox outbox local para o peer desta sessão (pode ser null se só recebemos)
+     */
+    public StoreAndForward(Outbox outbox) {
+        this(outbox, DEFAULT_BATCH);
+    }
+
+    public StoreAndForward(Outbox outbox, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize deve ser >= 1");
+        this.outbox = outbox;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Envia todas as mensagens pendentes da outbox em lotes. Retorna quantas foram enviadas.
+     * Não espera os acks: eles chegam de forma assíncrona pelo handler.
+     */
+    public synchronized int flush(SecureSession session) throws IOException {
+        if (outbox == null) return 0;
+        int total = 0;
+        while (true) {
+            final int[] count = {0};
+            long last = outbox.forEachPending(sentUpTo, batchSize, (id, text) -> {
+                session.sendControl(MSG + "|" + id + "|" + text);
+                count[0]++;
+            });
+            if (last == sentUpTo) break;
+            sentUpTo = last;
+            session.sendControl(SYNC + "|" + last);
+            total += count[0];
+        }
+        if (total > 0) System.out.println("[Outbox] " + total + " mensagem(ns) pendente(s) reenviada(s) ao peer.");
+        return total;
+    }
+
+    /**
+     * Processa um registro de controle do protocolo. Retorna true se foi consumido.
+     */
+    public boolean handleControl(SecureSession session, String body, SecureSession.MessageHandler delivery) {
+        String[] p = body.split("\\|", 3);
+        try {
+            if (MSG.equals(p[0]) && p.length == 3) {
+                long id = Long.parseLong(p[1]);
+                if (id > lastDelivered) {
+                    lastDelivered = id;
+                    delivery.onPlaintext(p[2]);
+                }
+                return true;
+            }
+            if (SYNC.equals(p[0]) && p.length == 2) {
+                session.sendControl(ACK + "|" + Long.parseLong(p[1]));
+                return true;
+            }
+            if (ACK.equals(p[0]) && p.length == 2) {
+                long id = Long.parseLong(p[1]);
+                if (id > sentUpTo) throw new IllegalArgumentException("ack de mensagem ainda não enviada: " + id);
+                if (outbox != null) outbox.acknowledge(id);
+                return true;
+            }
+        } catch (NumberFormatException nfe) {
+            System.err.println("[Outbox] Controle com id malformado ignorado.");
+            return true;
+        } catch (IllegalArgumentException iae) {
+            System.err.println("[Outbox] Ack inválido ignorado: " + iae.getMessage());
+            return true;
+        } catch (IOException ioe) {
+            System.err.println("[Outbox] Falha ao processar controle '" + p[0] + "': " + ioe.getMessage());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Handler que trata o protocolo da outbox e delega o restante ao handler original.
+     */
+    public SecureSession.MessageHandler handlerFor(SecureSession session, SecureSession.MessageHandler delegate) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) {
+                delegate.onPlaintext(text);
+            }
+            @Override public void onError(Exception e) {
+                delegate.onError(e);
+            }
+            @Override public void onControl(String body) {
+                if (!handleControl(session, body, delegate)) delegate.onControl(body);
+            }
+            @Override public void onGroupRecord(String envelope) {
+                delegate.onGroupRecord(envelope);
+            }
+        };
+    }
+
+    /**
+     * Enfileira uma mensagem que não pôde ser enviada (peer offline ou falha de envio). O msync é
+     * agrupado pela {@link Outbox}.
+     */
+    public void enqueue(String text) throws IOException {
+        if (outbox == null) throw new IOException("outbox indisponível");
+        outbox.enqueue(text);
+    }
+}
@@ -1,8 +1,14 @@
 package me.m41k0n.cli;
 
+import me.m41k0n.domain.PeerEndpoint;
+
+import java.io.Console;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -27,52 +33,127 @@ public final class CliUtils {
         }
     }
 
+    /**
+     * Lê uma senha sem eco quando há console; em IDEs/pipes (sem console) lê do Scanner.
+     * A variável de ambiente P2P_PASSPHRASE, se definida, dispensa a pergunta (uso não interativo).
+     */
+    public static char[] askPassphrase(Scanner sc, String label) {
+        String env = System.getenv("P2P_PASSPHRASE");
+        if (env != null) return env.toCharArray();
+        Console console = System.console();
+        if (console != null) {
+            char[] pw = console.readPassword("%s: ", label);
+            return pw != null ? pw : new char[0];
+        }
+        System.out.print(label + ": ");
+        return sc.nextLine().toCharArray();
+    }
+
     public static String askBase64Key(Scanner sc, String label) {
         while (true) {
             System.out.print(label + ": ");
             String b64 = sc.nextLine().trim();
-            if (b64.isEmpty()) {
-                System.err.println("Chave pública obrigatória. Cole a string Base64 exibida pelo seu peer.");
-                continue;
-            }
-            try {
-                Base64.getDecoder().decode(b64);
-                return b64;
-            } catch (IllegalArgumentException e) {
-                System.err.println("Chave pública inválida: não é Base64 válido. Tente novamente.");
-            }
+            if (isBase64Key(b64)) return b64;
         }
     }
 
     /**
-     * Pergunta o IP do peer. Retorna string vazia para modo somente ouvir.
-     * Valida formato de IPv4 simples quando informado.
+     * Pergunta a chave do peer oferecendo os peers já conhecidos (diretório persistente):
+     * o usuário pode digitar o número de um peer listado ou colar uma chave Base64 nova.
+     * O número é testado antes da validação Base64 ("1" sozinho não é Base64 válido).
      */
-    public static String askPeerIp(Scanner sc) {
+    public static String askPeerKey(Scanner sc, List<String> knownKeys, String label) {
+        if (knownKeys == null || knownKeys.isEmpty()) return askBase64Key(sc, label);
+        System.out.println("Peers conhecidos:");
+        for (int i = 0; i < knownKeys.size(); i++) {
+            System.out.println(" " + (i + 1) + ") " + knownKeys.get(i));
+        }
         while (true) {
-            System.out.print("IP do peer (vazio para apenas aguardar conexões): ");
-            String ip = sc.nextLine().trim();
-            if (ip.isEmpty()) return ip; // somente ouvir
-            if (isLikelyIPv4(ip)) return ip;
-            System.err.println("IP inválido. Informe um IPv4 (ex.: 127.0.0.1 ou 192.168.0.10) ou deixe vazio para somente ouvir.");
+            System.out.print(label + " ou número do peer conhecido: ");
+            String line = sc.nextLine().trim();
+            if (line.matches("\\d{1,4}")) {
+                int idx = Integer.parseInt(line);
+                if (idx >= 1 && idx <= knownKeys.size()) return knownKeys.get(idx - 1);
+                System.err.println("Número fora da lista (1.." + knownKeys.size() + "). Tente novamente.");
+                continue;
+            }
+            if (isBase64Key(line)) return line;
         }
     }
 
-    private static boolean isLikelyIPv4(String ip) {
-        String[] parts = ip.split("\\.");
-        if (parts.length != 4) return false;
+    // Valida uma chave colada; em caso de erro explica ao usuário e retorna false
+    private static boolean isBase64Key(String b64) {
+        if (b64.isEmpty()) {
+            System.err.println("Chave pública obrigatória. Cole a string Base64 exibida pelo seu peer.");
+            return false;
+        }
         try {
-            for (String p : parts) {
-                if (p.isEmpty()) return false;
-                int n = Integer.parseInt(p);
-                if (n < 0 || n > 255) return false;
-            }
+            Base64.getDecoder().decode(b64);
             return true;
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
+            System.err.println("Chave pública inválida: não é Base64 válido. Tente novamente.");
             return false;
         }
     }
 
+    /**
+     * Pergunta os endereços candidatos do peer, separados por vírgula (IPv4, IPv6 ou hostname,
+     * cada um opcionalmente com porta: 10.0.0.5:9000, [fe80::1]:9000, peer.local).
+     * Se algum endereço vier sem porta, pergunta a porta padrão do peer.
+     * Retorna lista vazia para modo somente ouvir.
+     */
+    public static List<PeerEndpoint> askPeerEndpoints(Scanner sc) {
+        return askPeerEndpoints(sc, Collections.emptyList());
+    }
+
+    /**
+     * Variante que informa os endpoints já conhecidos do peer; eles são tentados automaticamente
+     * junto com os digitados, então a resposta vazia significa "usar apenas os conhecidos".
+     */
+    public static List<PeerEndpoint> askPeerEndpoints(Scanner sc, List<PeerEndpoint> known) {
+        if (known != null && !known.isEmpty()) {
+            System.out.println("Endereços conhecidos deste peer (tentados automaticamente, mais rápido primeiro): " + known);
+        }
+        List<String> specs = askPeerAddresses(sc);
+        if (specs.isEmpty()) return Collections.emptyList();
+        int defaultPort = 0;
+        for (String spec : specs) {
+            if (!PeerEndpoint.hasExplicitPort(spec)) {
+                defaultPort = askPort(sc, "Porta do peer");
+                break;
+            }
+        }
+        List<PeerEndpoint> out = new ArrayList<>(specs.size());
+        for (String spec : specs) {
+            out.add(PeerEndpoint.parse(spec, defaultPort));
+        }
+        return out;
+    }
+
+    private static List<String> askPeerAddresses(Scanner sc) {
+        while (true) {
+            System.out.print("IP(s)/host(s) do peer, separados por vírgula (vazio para apenas aguardar conexões): ");
+            String line = sc.nextLine().trim();
+            if (line.isEmpty()) return Collections.emptyList(); // somente ouvir
+            List<String> specs = new ArrayList<>();
+            String invalid = null;
+            for (String raw : line.split(",")) {
+                String spec = raw.trim();
+                if (spec.isEmpty()) continue;
+                try {
+                    PeerEndpoint.parse(spec, 1); // valida formato; a porta real é definida depois
+                    specs.add(spec);
+                } catch (IllegalArgumentException e) {
+                    invalid = spec + " (" + e.getMessage() + ")";
+                    break;
+                }
+            }
+            if (invalid == null && !specs.isEmpty()) return specs;
+            System.err.println("Endereço inválido: " + (invalid == null ? line : invalid)
+                    + ". Informe IPv4 (192.168.0.10), IPv6 ([fe80::1]:9000) ou hostname, ou deixe vazio para somente ouvir.");
+        }
+    }
+
     public static void printLocalIPv4() {
         try {
             Enumeration<NetworkInterface> ifs = NetworkInterface.getNetworkInterfaces();
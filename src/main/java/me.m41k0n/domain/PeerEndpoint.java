@@ -0,0 +1,149 @@
+package me.m41k0n.domain;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Endereço candidato de um peer (IPv4, IPv6 ou hostname) + porta.
+ *
+ * Formatos aceitos em {@link #parse(String, int)}:
+ * - "192.168.0.10" ou "192.168.0.10:9000"
+ * - "fe80::1" ou "[fe80::1]:9000" (IPv6 com porta exige colchetes)
+ * - "peer.local" ou "peer.local:9000"
+ */
+public final class PeerEndpoint {
+
+    private final String host;
+    private final int port;
+
+    public PeerEndpoint(String host, int port) {
+        if (!isValidHost(host)) throw new IllegalArgumentException("host inválido: " + host);
+        if (port < 1 || port > 65535) throw new IllegalArgumentException("porta inválida: " + port);
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Interpreta um endereço digitado pelo usuário. Se a entrada não trouxer porta, usa defaultPort.
+     */
+    public static PeerEndpoint parse(String spec, int defaultPort) {
+        if (spec == null || spec.trim().isEmpty()) throw new IllegalArgumentException("endereço vazio");
+        String s = spec.trim();
+        String host = s;
+        Integer port = null;
+        if (s.startsWith("[")) {
+            int end = s.indexOf(']');
+            if (end < 0) throw new IllegalArgumentException("IPv6 sem ']' de fechamento: " + s);
+            host = s.substring(1, end);
+            String rest = s.substring(end + 1);
+            if (!rest.isEmpty()) {
+                if (!rest.startsWith(":")) throw new IllegalArgumentException("sufixo inesperado após ']': " + rest);
+                port = parsePort(rest.substring(1));
+            }
+        } else if (s.indexOf(':') >= 0 && s.indexOf(':') == s.lastIndexOf(':')) {
+            // exatamente um ':' => host:porta (IPv6 sem colchetes sempre tem vários ':')
+            host = s.substring(0, s.indexOf(':'));
+            port = parsePort(s.substring(s.indexOf(':') + 1));
+        }
+        return new PeerEndpoint(host, port != null ? port : defaultPort);
+    }
+
+    /**
+     * Indica se a entrada traz porta explícita (usado pelo CLI para decidir se pergunta a porta padrão).
+     */
+    public static boolean hasExplicitPort(String spec) {
+        String s = spec.trim();
+        if (s.startsWith("[")) return s.contains("]:");
+        return s.indexOf(':') >= 0 && s.indexOf(':') == s.lastIndexOf(':');
+    }
+
+    public static boolean isValidHost(String host) {
+        if (host == null || host.isEmpty() || host.length() > 253) return false;
+        if (host.indexOf(':') >= 0) return isLikelyIPv6(host);
+        if (host.matches("[0-9.]+")) return isLikelyIPv4(host);
+        return isLikelyHostname(host);
+    }
+
+    private static int parsePort(String s) {
+        try {
+            int p = Integer.parseInt(s);
+            if (p < 1 || p > 65535) throw new IllegalArgumentException("porta fora da faixa 1..65535: " + s);
+            return p;
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("porta inválida: " + s);
+        }
+    }
+
+    private static boolean isLikelyIPv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) return false;
+        try {
+            for (String p : parts) {
+                if (p.isEmpty() || p.length() > 3) return false;
+                int n = Integer.parseInt(p);
+                if (n < 0 || n > 255) return false;
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLikelyIPv6(String ip) {
+        // aceita zona de escopo (fe80::1%eth0); validação estrutural simples sem resolução DNS
+        String addr = ip.contains("%") ? ip.substring(0, ip.indexOf('%')) : ip;
+        if (!addr.matches("[0-9A-Fa-f:.]+")) return false;
+        if (addr.indexOf(":::") >= 0) return false;
+        int doubleColon = addr.indexOf("::");
+        if (doubleColon >= 0 && addr.indexOf("::", doubleColon + 1) >= 0) return false;
+        String[] groups = addr.split(":", -1);
+        if (groups.length < 3 || groups.length > 9) return false;
+        for (int i = 0; i < groups.length; i++) {
+            String g = groups[i];
+            if (g.contains(".")) {
+                // IPv4 embutido só é permitido no último grupo (ex.: ::ffff:10.0.0.1)
+                if (i != groups.length - 1 || !isLikelyIPv4(g)) return false;
+            } else if (g.length() > 4) {
+                return false;
+            }
+        }
+        return doubleColon >= 0 || groups.length == 8;
+    }
+
+    private static boolean isLikelyHostname(String host) {
+        String h = host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+        if (h.isEmpty()) return false;
+        for (String label : h.split("\\.", -1)) {
+            if (label.isEmpty() || label.length() > 63) return false;
+            if (label.startsWith("-") || label.endsWith("-")) return false;
+            if (!label.matches("[A-Za-z0-9-]+")) return false;
+        }
+        return true;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PeerEndpoint)) return false;
+        PeerEndpoint other = (PeerEndpoint) o;
+        return port == other.port && host.equalsIgnoreCase(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host.toLowerCase(Locale.ROOT), port);
+    }
+
+    @Override
+    public String toString() {
+        return host.indexOf(':') >= 0 ? "[" + host + "]:" + port : host + ":" + port;
+    }
+}
@@ -2,6 +2,7 @@ package me.m41k0n.domain;
 
 import me.m41k0n.infra.CryptoUtils;
 
+import java.security.PrivateKey;
 import java.util.Arrays;
 import java.util.Base64;
 
@@ -9,6 +10,7 @@ public class PeerIdentity {
 
     private byte[] publicKey;
     private byte[] privateKey;
+    private volatile PrivateKey parsedPrivateKey;
 
     public PeerIdentity(byte[] publicKey, byte[] privateKey) {
         this.publicKey = publicKey;
@@ -31,6 +33,27 @@ public class PeerIdentity {
         return privateKey;
     }
 
+    /**
+     * Chave privada decodificada (PKCS8 → PrivateKey), parseada na primeira chamada e reutilizada
+     * em todas as assinaturas seguintes.
+     */
+    public PrivateKey getParsedPrivateKey() {
+        PrivateKey k = parsedPrivateKey;
+        if (k == null) {
+            if (privateKey == null) throw new IllegalStateException("chave privada já foi apagada");
+            k = CryptoUtils.parseEd25519PrivateKey(privateKey);
+            parsedPrivateKey = k;
+        }
+        return k;
+    }
+
+    /**
+     * Assina os dados com a chave privada desta identidade (Base64 da assinatura Ed25519).
+     */
+    public String sign(String data) {
+        return CryptoUtils.signWith(getParsedPrivateKey(), data);
+    }
+
     /**
      * Apaga de forma segura o conteúdo da chave privada na memória.
      * Após a chamada, o array é sobrescrito com zeros e referenciado como null.
@@ -40,6 +63,7 @@ public class PeerIdentity {
         if (privateKey == null) return false;
         Arrays.fill(privateKey, (byte) 0);
         privateKey = null;
+        parsedPrivateKey = null;
         return true;
     }
 
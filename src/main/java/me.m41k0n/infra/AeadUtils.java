@@ -3,7 +3,6 @@ package me.m41k0n.infra;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
-import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
@@ -63,6 +62,14 @@ public final class AeadUtils {
     }
 
     public static String encryptToBase64(byte[] key, byte[] plaintext, byte[] aad) {
+        return Base64.getEncoder().encodeToString(encrypt(key, plaintext, aad));
+    }
+
+    /**
+     * Variante binária de {@link #encryptToBase64}: retorna IV(12 bytes) || ciphertext_with_tag,
+     * útil para armazenamento em disco sem o overhead do Base64.
+     */
+    public static byte[] encrypt(byte[] key, byte[] plaintext, byte[] aad) {
         try {
             if (key == null || key.length == 0) throw new IllegalArgumentException("key inválida");
             if (plaintext == null) throw new IllegalArgumentException("plaintext null");
@@ -79,32 +86,39 @@ public final class AeadUtils {
             ByteBuffer bb = ByteBuffer.allocate(IV_BYTES + ct.length);
             bb.put(iv);
             bb.put(ct);
-            return Base64.getEncoder().encodeToString(bb.array());
+            return bb.array();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     public static byte[] decryptFromBase64(byte[] key, String ciphertextB64, byte[] aad) {
+        if (key == null || key.length == 0) throw new IllegalArgumentException("key inválida");
+        if (ciphertextB64 == null) throw new IllegalArgumentException("ciphertext null");
+        byte[] all;
+        try {
+            all = Base64.getDecoder().decode(ciphertextB64);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("ciphertext base64 inválido", ex);
+        }
+        return decrypt(key, all, aad);
+    }
+
+    /**
+     * Variante binária de {@link #decryptFromBase64}: recebe IV || ciphertext_with_tag.
+     */
+    public static byte[] decrypt(byte[] key, byte[] all, byte[] aad) {
         try {
             if (key == null || key.length == 0) throw new IllegalArgumentException("key inválida");
-            if (ciphertextB64 == null) throw new IllegalArgumentException("ciphertext null");
-            byte[] all;
-            try {
-                all = Base64.getDecoder().decode(ciphertextB64);
-            } catch (IllegalArgumentException ex) {
-                throw new IllegalArgumentException("ciphertext base64 inválido", ex);
-            }
+            if (all == null) throw new IllegalArgumentException("ciphertext null");
             if (all.length < IV_BYTES + 16) throw new IllegalArgumentException("ciphertext muito curto");
-            byte[] iv = Arrays.copyOfRange(all, 0, IV_BYTES);
-            byte[] ct = Arrays.copyOfRange(all, IV_BYTES, all.length);
 
             Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
             SecretKeySpec keySpec = new SecretKeySpec(fitKey(key), "AES");
-            GCMParameterSpec gcm = new GCMParameterSpec(GCM_TAG_BITS, iv);
+            GCMParameterSpec gcm = new GCMParameterSpec(GCM_TAG_BITS, all, 0, IV_BYTES);
             cipher.init(Cipher.DECRYPT_MODE, keySpec, gcm);
             if (aad != null) cipher.updateAAD(aad);
-            return cipher.doFinal(ct);
+            return cipher.doFinal(all, IV_BYTES, all.length - IV_BYTES);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,410 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transporte TCP sobre {@link AsynchronousSocketChannel} (NIO.2) para {@link SecureSession}: em vez
+ * de uma thread leitora bloqueada por sessão, os registros são lidos por callbacks de conclusão num
+ * {@link AsynchronousChannelGroup} compartilhado (ver {@link SecureSession#runReceiverAsync}).
+ *
+ * - Handshake: os streams de {@link #getInputStream()}/{@link #getOutputStream()} bloqueiam como um
+ *   socket comum. A leitura nunca entrega bytes além do fim de linha e reporta available() = 0,
+ *   então o BufferedReader da sessão não guarda nada adiantado: os bytes que chegaram junto com a
+ *   última linha do handshake ficam no buffer deste transporte e {@link #readLines} continua deles.
+ * - Escrita: cada linha vai para uma fila enviada por escritas assíncronas agrupadas (várias linhas
+ *   numa só chamada); quem escreve só bloqueia se a fila passar de p2p.asyncWriteQueueBytes (1 MiB).
+ * - close(): o que já está na fila ainda é enviado (como os bytes já entregues ao kernel num socket
+ *   comum) e o canal fecha em seguida, ou após WRITE_TIMEOUT_MS sem progresso.
+ *
+ * O grupo tem p2p.asyncThreads threads "p2p-async" (padrão: núcleos, mínimo 2) para todas as sessões.
+ * Como só elas concluem as escritas, uma escrita feita numa delas (ex.: pong respondido pelo handler)
+ * nunca espera a fila esvaziar: enfileira além do limite em vez de travar o grupo.
+ */
+public final class AsyncChannelTransport implements SecureSession.SocketLike {
+
+    /** Recebe as linhas lidas por {@link #readLines}; chamado por uma thread do grupo de cada vez. */
+    public interface LineConsumer {
+        /** Retorna false para parar de ler (o consumidor já cuidou do encerramento). */
+        boolean onLine(String line);
+
+        /** Fim da leitura: 'cause' nulo para EOF ou canal fechado localmente. */
+        void onEnd(Exception cause);
+    }
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final long MAX_QUEUED_BYTES = Long.getLong("p2p.asyncWriteQueueBytes", 1024 * 1024L);
+    private static final long WRITE_TIMEOUT_MS = 30_000;
+    private static final int MAX_GATHER = 64;
+    // sentinela (comparada por identidade) para linha descartada
+    private static final String DISCARDED = new String("");
+
+    private static final class SharedGroup {
+        static final AsynchronousChannelGroup GROUP = create();
+
+        private static AsynchronousChannelGroup create() {
+            int threads = Integer.getInteger("p2p.asyncThreads", Math.max(2, Runtime.getRuntime().availableProcessors()));
+            try {
+                return AsynchronousChannelGroup.withFixedThreadPool(threads, GroupThread::new);
+            } catch (IOException e) {
+                throw new UncheckedIOException("falha ao criar o grupo de canais assíncronos", e);
+            }
+        }
+    }
+
+    /** Threads do grupo: escritas feitas nelas não esperam a fila esvaziar (ver {@link #enqueue}). */
+    private static final class GroupThread extends Thread {
+        GroupThread(Runnable r) {
+            super(r, "p2p-async");
+            setDaemon(true);
+        }
+    }
+
+    private final AsynchronousSocketChannel channel;
+    private final int handshakeTimeoutMs;
+    // modo leitura (flip) entre operações; usado pelo stream bloqueante e depois só pela cadeia de callbacks
+    private final ByteBuffer inbound = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private final InputStream inputStream = new LineBoundedInput();
+    private final OutputStream outputStream = new QueuedOutput();
+
+    private volatile LineConsumer consumer;
+    private int maxLineLen;
+    private boolean discarding; // linha longa demais: descarta até o próximo '\n'
+    private final ReadCompletion readCompletion = new ReadCompletion();
+
+    // protegidos por 'this'
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean writing;
+    private IOException writeFailure;
+    private volatile boolean closing;
+    private final WriteCompletion writeCompletion = new WriteCompletion();
+
+    /** Grupo compartilhado por todos os transportes deste processo. */
+    public static AsynchronousChannelGroup sharedGroup() {
+        return SharedGroup.GROUP;
+    }
+
+    /** Listener no grupo compartilhado, com o buffer de recepção do perfil (antes do bind). */
+    public static AsynchronousServerSocketChannel listen(SocketAddress local, TransportProfile profile) throws IOException {
+        AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open(sharedGroup());
+        try {
+            profile.configure(server);
+            server.bind(local);
+            return server;
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    /** Disca 'remote' no grupo compartilhado com as opções e o timeout de connect do perfil. */
+    public static AsyncChannelTransport connect(SocketAddress remote, TransportProfile profile) throws IOException {
+        AsynchronousSocketChannel ch = AsynchronousSocketChannel.open(sharedGroup());
+        try {
+            profile.configure(ch);
+            await(ch.connect(remote), profile.connectTimeoutMs(), "connect");
+            return new AsyncChannelTransport(ch, profile.handshakeTimeoutMs());
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Envolve um canal já conectado (ex.: aceito de um {@link #listen} listener), aplicando o perfil.
+     */
+    public AsyncChannelTransport(AsynchronousSocketChannel channel, TransportProfile profile) throws IOException {
+        this(channel, profile.handshakeTimeoutMs());
+        profile.configure(channel);
+    }
+
+    private AsyncChannelTransport(AsynchronousSocketChannel channel, int handshakeTimeoutMs) {
+        this.channel = channel;
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+        inbound.flip();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Passa a ler linhas por callbacks: primeiro as que já estão no buffer (entregues na própria
+     * chamada), depois as que chegarem, nas threads do grupo. Linhas maiores que 'maxLineLen' são descartadas. Chamar uma única vez, após o handshake; o
+     * stream bloqueante não pode mais ser usado.
+     */
+    public void readLines(int maxLineLen, LineConsumer consumer) {
+        if (maxLineLen < 1 || maxLineLen >= READ_BUFFER_BYTES) throw new IllegalArgumentException("maxLineLen fora de 1.." + (READ_BUFFER_BYTES - 1));
+        if (this.consumer != null) throw new IllegalStateException("leitura assíncrona já iniciada");
+        this.maxLineLen = maxLineLen;
+        this.consumer = consumer;
+        deliverBuffered();
+    }
+
+    /** Entrega as linhas completas do buffer e agenda a próxima leitura. */
+    private void deliverBuffered() {
+        LineConsumer c = consumer;
+        for (;;) {
+            if (closing) {
+                c.onEnd(null);
+                return;
+            }
+            String line = nextLine();
+            if (line == null) break;
+            if (line == DISCARDED) continue;
+            boolean more;
+            try {
+                more = c.onLine(line);
+            } catch (RuntimeException e) {
+                c.onEnd(e);
+                return;
+            }
+            if (!more) return;
+        }
+        inbound.compact();
+        try {
+            channel.read(inbound, null, readCompletion);
+        } catch (RuntimeException e) {
+            // canal já fechado (ShutdownChannelGroupException etc.)
+            inbound.flip();
+            c.onEnd(closing ? null : e);
+        }
+    }
+
+    private String nextLine() {
+        int start = inbound.position();
+        int end = inbound.limit();
+        byte[] a = inbound.array();
+        for (int i = start; i < end; i++) {
+            if (a[i] != '\n') continue;
+            inbound.position(i + 1);
+            if (discarding) {
+                discarding = false;
+                return DISCARDED;
+            }
+            return i - start > maxLineLen ? DISCARDED : new String(a, start, i - start, StandardCharsets.UTF_8);
+        }
+        if (discarding || end - start > maxLineLen) {
+            discarding = true;
+            inbound.position(end);
+        }
+        return null;
+    }
+
+    private final class ReadCompletion implements CompletionHandler<Integer, Void> {
+        @Override
+        public void completed(Integer n, Void ignored) {
+            inbound.flip();
+            if (n < 0) {
+                consumer.onEnd(null);
+                return;
+            }
+            deliverBuffered();
+        }
+
+        @Override
+        public void failed(Throwable t, Void ignored) {
+            inbound.flip();
+            boolean local = closing || t instanceof AsynchronousCloseException || t instanceof ClosedChannelException;
+            consumer.onEnd(local ? null : t instanceof Exception ? (Exception) t : new IOException(t));
+        }
+    }
+
+    /** Leitura bloqueante do handshake: entrega no máximo até o próximo '\n' (inclusive). */
+    private final class LineBoundedInput extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (consumer != null) throw new IllegalStateException("leitura assíncrona em andamento");
+            if (len == 0) return 0;
+            if (!inbound.hasRemaining()) {
+                inbound.clear();
+                int n;
+                try {
+                    n = await(channel.read(inbound), handshakeTimeoutMs, "leitura");
+                } finally {
+                    inbound.flip();
+                }
+                if (n < 0) return -1;
+            }
+            int take = Math.min(len, inbound.remaining());
+            byte[] a = inbound.array();
+            int p = inbound.position();
+            for (int i = 0; i < take; i++) {
+                if (a[p + i] == '\n') {
+                    take = i + 1;
+                    break;
+                }
+            }
+            inbound.get(b, off, take);
+            return take;
+        }
+
+        // sempre 0: impede o decodificador do BufferedReader de ler além da linha corrente
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            AsyncChannelTransport.this.close();
+        }
+    }
+
+    private final class QueuedOutput extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            enqueue(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            AsyncChannelTransport.this.close();
+        }
+    }
+
+    private synchronized void enqueue(byte[] b, int off, int len) throws IOException {
+        boolean mayBlock = !(Thread.currentThread() instanceof GroupThread);
+        while (mayBlock && queuedBytes > MAX_QUEUED_BYTES && writeFailure == null && !closing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("escrita interrompida aguardando a fila");
+            }
+        }
+        if (writeFailure != null) throw new IOException("escrita assíncrona falhou: " + writeFailure.getMessage(), writeFailure);
+        if (closing) throw new IOException("transporte fechado");
+        if (len == 0) return;
+        queue.add(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+        queuedBytes += len;
+        if (!writing) {
+            writing = true;
+            writeQueued();
+        }
+    }
+
+    // chamado com o lock de 'this' e 'writing' = true
+    private void writeQueued() {
+        ByteBuffer[] batch = new ByteBuffer[Math.min(queue.size(), MAX_GATHER)];
+        int i = 0;
+        for (ByteBuffer buf : queue) {
+            if (i == batch.length) break;
+            batch[i++] = buf;
+        }
+        try {
+            channel.write(batch, 0, batch.length, WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS, null, writeCompletion);
+        } catch (RuntimeException e) {
+            failWrites(new IOException(e));
+        }
+    }
+
+    private final class WriteCompletion implements CompletionHandler<Long, Void> {
+        @Override
+        public void completed(Long n, Void ignored) {
+            synchronized (AsyncChannelTransport.this) {
+                queuedBytes -= n;
+                while (!queue.isEmpty() && !queue.peek().hasRemaining()) queue.poll();
+                AsyncChannelTransport.this.notifyAll();
+                if (!queue.isEmpty()) {
+                    writeQueued();
+                    return;
+                }
+                writing = false;
+                if (!closing) return;
+            }
+            closeChannel();
+        }
+
+        @Override
+        public void failed(Throwable t, Void ignored) {
+            synchronized (AsyncChannelTransport.this) {
+                failWrites(t instanceof IOException ? (IOException) t : new IOException(t));
+            }
+        }
+    }
+
+    // chamado com o lock de 'this'
+    private void failWrites(IOException cause) {
+        writeFailure = cause;
+        writing = false;
+        queue.clear();
+        queuedBytes = 0;
+        notifyAll();
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closing) return;
+            closing = true;
+            notifyAll();
+            if (writing) return; // a última escrita da fila fecha o canal
+        }
+        closeChannel();
+    }
+
+    private static <T> T await(Future<T> f, long timeoutMs, String what) throws IOException {
+        try {
+            return timeoutMs > 0 ? f.get(timeoutMs, TimeUnit.MILLISECONDS) : f.get();
+        } catch (TimeoutException e) {
+            // uma operação cancelada deixa o canal inutilizável: quem chamou deve fechá-lo
+            f.cancel(true);
+            throw new SocketTimeoutException(what + " expirou após " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            throw new InterruptedIOException(what + " interrompida");
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException) throw (IOException) c;
+            throw new IOException(c);
+        }
+    }
+}
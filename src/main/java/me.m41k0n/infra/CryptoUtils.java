@@ -8,6 +8,7 @@ import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -16,6 +17,7 @@ import java.security.Security;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -30,8 +32,52 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 public class CryptoUtils {
 
-    static {
-        Security.addProvider(new BouncyCastleProvider());
+    public static final int FINGERPRINT_BYTES = 16;
+
+    private static volatile Boolean jdkEd25519;
+
+    /**
+     * Registro tardio do BouncyCastle: a classe do provider só é carregada quando um fallback "BC"
+     * realmente acontece (JDK sem Ed25519), e não no carregamento de CryptoUtils.
+     */
+    private static final class BouncyCastleHolder {
+        static final boolean REGISTERED = register();
+
+        private static boolean register() {
+            if (Security.getProvider("BC") == null) Security.addProvider(new BouncyCastleProvider());
+            return true;
+        }
+    }
+
+    /**
+     * Sonda se o JDK oferece Ed25519 (resultado em cache) e só registra o BouncyCastle se não
+     * oferecer. Chamado na inicialização do app; os caminhos de fallback também o registram sob demanda.
+     * Retorna true se o BouncyCastle foi necessário.
+     */
+    public static boolean registerProviderIfNeeded() {
+        if (jdkSupportsEd25519()) return false;
+        ensureBouncyCastle();
+        return true;
+    }
+
+    static boolean jdkSupportsEd25519() {
+        Boolean cached = jdkEd25519;
+        if (cached == null) {
+            boolean ok;
+            try {
+                KeyFactory.getInstance("Ed25519");
+                Signature.getInstance("Ed25519");
+                ok = true;
+            } catch (NoSuchAlgorithmException e) {
+                ok = false;
+            }
+            jdkEd25519 = cached = ok;
+        }
+        return cached;
+    }
+
+    private static void ensureBouncyCastle() {
+        if (!BouncyCastleHolder.REGISTERED) throw new IllegalStateException("BouncyCastle não registrado");
     }
 
     public static PeerIdentity generateEd25519KeyPair() {
@@ -44,6 +90,7 @@ public class CryptoUtils {
         } catch (Exception e) {
             // Fallback to BouncyCastle
             try {
+                ensureBouncyCastle();
                 KeyPairGenerator kpg = KeyPairGenerator.getInstance("Ed25519", "BC");
                 KeyPair kp = kpg.generateKeyPair();
                 byte[] pub = kp.getPublic().getEncoded();
@@ -69,6 +116,7 @@ public class CryptoUtils {
         } catch (NoSuchAlgorithmException e) {
             // Fallback para BouncyCastle quando o algoritmo não estiver disponível no JDK (ex.: Java 11)
             try {
+                ensureBouncyCastle();
                 return doSign("Ed25519", "BC", privateKeyEncoded, data);
             } catch (NoSuchAlgorithmException e2) {
                 throw new CryptoProviderUnavailableException("Ed25519 indisponível em todos os providers (JDK e BC)", e2);
@@ -84,6 +132,54 @@ public class CryptoUtils {
         }
     }
 
+    /**
+     * Decodifica uma chave privada Ed25519 PKCS8 uma única vez, para reutilização em
+     * {@link #signWith(PrivateKey, String)} sem reparsear a cada assinatura.
+     */
+    public static PrivateKey parseEd25519PrivateKey(byte[] privateKeyEncoded) {
+        if (privateKeyEncoded == null) {
+            throw new IllegalArgumentException("privateKeyEncoded não pode ser null");
+        }
+        try {
+            return KeyFactory.getInstance("Ed25519").generatePrivate(new PKCS8EncodedKeySpec(privateKeyEncoded));
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                ensureBouncyCastle();
+                return KeyFactory.getInstance("Ed25519", "BC").generatePrivate(new PKCS8EncodedKeySpec(privateKeyEncoded));
+            } catch (InvalidKeySpecException badKey) {
+                throw new IllegalArgumentException("invalid Ed25519 private key", badKey);
+            } catch (GeneralSecurityException e2) {
+                throw new CryptoProviderUnavailableException("Ed25519 indisponível em todos os providers (JDK e BC)", e2);
+            }
+        } catch (InvalidKeySpecException badKey) {
+            throw new IllegalArgumentException("invalid Ed25519 private key", badKey);
+        }
+    }
+
+    /**
+     * Assina com uma chave já decodificada (ver {@link #parseEd25519PrivateKey(byte[])}).
+     */
+    public static String signWith(PrivateKey privateKey, String data) {
+        if (privateKey == null) {
+            throw new IllegalArgumentException("privateKey não pode ser null");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("data não pode ser null");
+        }
+        try {
+            Signature sig = Signature.getInstance("Ed25519");
+            sig.initSign(privateKey);
+            sig.update(data.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(sig.sign());
+        } catch (NoSuchAlgorithmException e) {
+            throw new CryptoProviderUnavailableException("Ed25519 indisponível", e);
+        } catch (InvalidKeyException badKey) {
+            throw new IllegalArgumentException("invalid Ed25519 private key", badKey);
+        } catch (GeneralSecurityException gse) {
+            throw new CryptoOperationException("Falha inesperada ao assinar com Ed25519", gse);
+        }
+    }
+
     private static String doSign(String algorithm, String provider, byte[] privateKeyEncoded, String data)
             throws GeneralSecurityException {
         KeyFactory kf = (provider == null)
@@ -119,6 +215,7 @@ public class CryptoUtils {
         } catch (Exception e) {
             // Fallback to BouncyCastle
             try {
+                ensureBouncyCastle();
                 KeyFactory kf = KeyFactory.getInstance("Ed25519", "BC");
                 PublicKey publicKey = kf.generatePublic(new X509EncodedKeySpec(publicKeyEncoded));
                 Signature sig = Signature.getInstance("Ed25519", "BC");
@@ -136,4 +233,32 @@ public class CryptoUtils {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Impressão digital de tamanho fixo de uma chave pública: os 16 primeiros bytes do SHA-256
+     * da chave codificada. Usada como identificador compacto do peer (nomes de diretório, índices).
+     */
+    public static byte[] fingerprint(byte[] publicKeyEncoded) {
+        if (publicKeyEncoded == null || publicKeyEncoded.length == 0) {
+            throw new IllegalArgumentException("publicKeyEncoded não pode ser vazio");
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKeyEncoded);
+            return Arrays.copyOf(digest, FINGERPRINT_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CryptoProviderUnavailableException("SHA-256 indisponível", e);
+        }
+    }
+
+    /**
+     * {@link #fingerprint(byte[])} em hexadecimal minúsculo, a partir da chave em Base64.
+     */
+    public static String fingerprintHex(String publicKeyBase64) {
+        byte[] fp = fingerprint(Base64.getDecoder().decode(publicKeyBase64));
+        StringBuilder sb = new StringBuilder(fp.length * 2);
+        for (byte b : fp) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package me.m41k0n.infra;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recepção em pipeline de uma {@link SecureSession}: leitura/enquadramento numa thread,
+ * decifragem num pool de workers e entrega ao handler em outra thread, estritamente em ordem.
+ *
+ * O buffer de reordenação é uma fila FIFO limitada de futures, na ordem em que os registros
+ * chegaram: a thread de entrega espera sempre pelo próximo da fila, então um registro decifrado
+ * fora de ordem fica retido até os anteriores ficarem prontos. A capacidade limitada também é
+ * o backpressure: com a janela cheia a leitora para de ler do socket.
+ */
+final class DecryptPipeline {
+
+    // Registros em voo por worker (janela de reordenação)
+    private static final int WINDOW_PER_WORKER = 32;
+    private static final long OFFER_POLL_MS = 100;
+
+    private final SecureSession session;
+    private final SecureSession.MessageHandler handler;
+    private final ExecutorService workers;
+    private final BlockingQueue<CompletableFuture<Item>> inOrder;
+    private volatile boolean stopped;
+
+    DecryptPipeline(SecureSession session, SecureSession.MessageHandler handler, int decryptWorkers) {
+        this.session = session;
+        this.handler = handler;
+        this.inOrder = new ArrayBlockingQueue<>(decryptWorkers * WINDOW_PER_WORKER);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(decryptWorkers, decryptWorkers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "secure-decrypt-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    void start() {
+        Thread reader = new Thread(this::readLoop, "secure-recv-");
+        reader.setDaemon(true);
+        Thread delivery = new Thread(this::deliverLoop, "secure-deliver-");
+        delivery.setDaemon(true);
+        delivery.start();
+        reader.start();
+    }
+
+    private void readLoop() {
+        Exception end = null;
+        try {
+            for (String line = session.readLineLimited(); line != null && !stopped; line = session.readLineLimited()) {
+                SecureSession.Frame f = session.frame(line);
+                if (f == null) continue;
+                if (f.isGroup()) {
+                    enqueue(CompletableFuture.completedFuture(new Item(f, null, null)));
+                } else {
+                    session.acceptSeq(f.seq);
+                    enqueue(CompletableFuture.supplyAsync(() -> new Item(f, session.decrypt(f), null), workers));
+                }
+            }
+        } catch (Exception e) {
+            end = e;
+        }
+        if (!stopped) enqueue(CompletableFuture.completedFuture(new Item(null, null, end)));
+    }
+
+    // Bloqueia com a janela cheia, mas desiste se a entrega já terminou (ex.: falha de decifragem)
+    private void enqueue(CompletableFuture<Item> item) {
+        try {
+            while (!inOrder.offer(item, OFFER_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (stopped) return;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliverLoop() {
+        try {
+            while (true) {
+                Item it;
+                try {
+                    it = inOrder.take().join();
+                } catch (CompletionException ce) {
+                    Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+                    if (session.isClosed()) {
+                        // sessão fechada localmente enquanto decifrávamos: término normal
+                        session.endReceiver(null, handler);
+                    } else {
+                        session.failDecrypt(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause), handler);
+                    }
+                    return;
+                }
+                if (it.frame == null) {
+                    session.endReceiver(it.end, handler);
+                    return;
+                }
+                try {
+                    if (it.frame.isGroup()) {
+                        handler.onGroupRecord(it.frame.body);
+                    } else {
+                        session.deliver(it.frame, it.texts, handler);
+                    }
+                } catch (RuntimeException e) {
+                    // mesmo desfecho do receptor sequencial: fecha a sessão e avisa o handler
+                    session.endReceiver(e, handler);
+                    return;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            workers.shutdownNow();
+            inOrder.clear();
+        }
+    }
+
+    /** Resultado de um registro: frame+mensagens, ou frame nulo marcando o fim da leitura. */
+    private static final class Item {
+        final SecureSession.Frame frame;
+        final String[] texts;
+        final Exception end;
+
+        Item(SecureSession.Frame frame, String[] texts, Exception end) {
+            this.frame = frame;
+            this.texts = texts;
+            this.end = end;
+        }
+    }
+}
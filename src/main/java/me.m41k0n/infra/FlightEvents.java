@@ -0,0 +1,229 @@
+package me.m41k0n.infra;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Eventos do Java Flight Recorder (handshake, registros, discagem e aceitação), para correlacionar
+ * picos de latência com GC e I/O na mesma gravação, ex.:
+ * {@code java -XX:StartFlightRecording=filename=p2p.jfr,settings=profile -jar ...}.
+ *
+ * Os métodos begin* só alocam o evento se houver gravação com ele habilitado; sem gravação o
+ * custo é uma leitura de flag. Registros têm limiar padrão de 1 ms (só os lentos entram), ajustável
+ * no .jfc como qualquer evento do JDK ("me.m41k0n.RecordSend#threshold=0 ms").
+ */
+public final class FlightEvents {
+
+    private static final String CATEGORY = "P2P Chat";
+
+    private static final EventType RECORD_SEND = typeOf(RecordSend.class);
+    private static final EventType RECORD_RECEIVE = typeOf(RecordReceive.class);
+    private static final EventType DIAL = typeOf(Dial.class);
+    private static final EventType ACCEPT = typeOf(Accept.class);
+
+    private FlightEvents() {
+    }
+
+    @Name("me.m41k0n.Handshake")
+    @Label("Handshake")
+    @Category({CATEGORY, "Sessão"})
+    @Description("Handshake autenticado da SecureSession, com a duração de cada fase criptográfica")
+    @StackTrace(false)
+    public static final class Handshake extends Event {
+        @Label("Iniciador")
+        boolean initiator;
+        @Label("Peer")
+        @Description("Impressão digital da chave estática do peer")
+        String peer;
+        @Label("Sucesso")
+        boolean success;
+        @Label("Falha")
+        String failure;
+        @Label("Par efêmero X25519")
+        @Timespan
+        long keygen;
+        @Label("Assinatura Ed25519")
+        @Timespan
+        long sign;
+        @Label("Verificação Ed25519")
+        @Timespan
+        long verify;
+        @Label("Acordo X25519")
+        @Timespan
+        long agree;
+        @Label("HKDF")
+        @Timespan
+        long hkdf;
+
+        /** Chamado também nos caminhos de erro do handshake: não pode lançar. */
+        void end(String peerPubB64, String failure) {
+            if (!shouldCommit()) return; // sem gravação ativa: nem calcula a impressão digital
+            this.peer = fingerprintOrNull(peerPubB64);
+            this.success = failure == null;
+            this.failure = failure;
+            commit();
+        }
+
+        private static String fingerprintOrNull(String peerPubB64) {
+            if (peerPubB64 == null) return null;
+            try {
+                return CryptoUtils.fingerprintHex(peerPubB64);
+            } catch (RuntimeException malformed) {
+                return null; // chave do peer não é Base64 válido: o handshake já está falhando por isso
+            }
+        }
+    }
+
+    @Name("me.m41k0n.RecordSend")
+    @Label("Registro enviado")
+    @Category({CATEGORY, "Registros"})
+    @Description("Cifragem e escrita de um registro (inclui a espera pela vez do seq)")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static final class RecordSend extends Event {
+        @Label("Tipo")
+        int type;
+        @Label("Seq")
+        long seq;
+        @Label("Bytes em claro")
+        int plaintextBytes;
+        @Label("Bytes na linha")
+        int lineBytes;
+
+        void end(byte type, long seq, int plaintextBytes, int lineBytes) {
+            this.type = type;
+            this.seq = seq;
+            this.plaintextBytes = plaintextBytes;
+            this.lineBytes = lineBytes;
+            if (shouldCommit()) commit();
+        }
+    }
+
+    @Name("me.m41k0n.RecordReceive")
+    @Label("Registro recebido")
+    @Category({CATEGORY, "Registros"})
+    @Description("Do enquadramento da linha lida até o fim do handler (inclui decifragem e fila do pipeline)")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static final class RecordReceive extends Event {
+        @Label("Tipo")
+        int type;
+        @Label("Seq")
+        long seq;
+        @Label("Bytes na linha")
+        int lineBytes;
+        @Label("Mensagens")
+        int messages;
+
+        void end(byte type, long seq, int lineBytes, int messages) {
+            this.type = type;
+            this.seq = seq;
+            this.lineBytes = lineBytes;
+            this.messages = messages;
+            if (shouldCommit()) commit();
+        }
+    }
+
+    @Name("me.m41k0n.Dial")
+    @Label("Tentativa de discagem")
+    @Category({CATEGORY, "Conexões"})
+    @Description("Uma tentativa de conexão ao peer (connect + handshake), direta, por hole punching ou relay")
+    @StackTrace(false)
+    public static final class Dial extends Event {
+        @Label("Caminho")
+        String path;
+        @Label("Endereço")
+        String address;
+        @Label("Sucesso")
+        boolean success;
+        @Label("Falha")
+        String failure;
+
+        public void end(String path, String address, String failure) {
+            this.path = path;
+            this.address = address;
+            this.success = failure == null;
+            this.failure = failure;
+            if (shouldCommit()) commit();
+        }
+    }
+
+    @Name("me.m41k0n.Accept")
+    @Label("Conexão aceita")
+    @Category({CATEGORY, "Conexões"})
+    @Description("Desfecho de uma conexão entrante no listener, do accept à entrega (ou recusa)")
+    @StackTrace(false)
+    public static final class Accept extends Event {
+        @Label("Origem")
+        String remote;
+        @Label("Desfecho")
+        String outcome;
+        @Label("Peer")
+        String peer;
+
+        public void end(String remote, String outcome, String peerPubB64) {
+            this.remote = remote;
+            this.outcome = outcome;
+            this.peer = peerPubB64 == null ? null : CryptoUtils.fingerprintHex(peerPubB64);
+            if (shouldCommit()) commit();
+        }
+    }
+
+    /** Handshakes são raros e caros: o evento é sempre criado e só gravado se habilitado. */
+    static Handshake beginHandshake(boolean initiator) {
+        Handshake e = new Handshake();
+        e.initiator = initiator;
+        e.begin();
+        return e;
+    }
+
+    static RecordSend beginRecordSend() {
+        if (!enabled(RECORD_SEND)) return null;
+        RecordSend e = new RecordSend();
+        e.begin();
+        return e;
+    }
+
+    static RecordReceive beginRecordReceive() {
+        if (!enabled(RECORD_RECEIVE)) return null;
+        RecordReceive e = new RecordReceive();
+        e.begin();
+        return e;
+    }
+
+    /** Evento de discagem já iniciado, ou null se nenhuma gravação o habilita. */
+    public static Dial beginDial() {
+        if (!enabled(DIAL)) return null;
+        Dial e = new Dial();
+        e.begin();
+        return e;
+    }
+
+    /** Evento de aceitação já iniciado, ou null se nenhuma gravação o habilita. */
+    public static Accept beginAccept() {
+        if (!enabled(ACCEPT)) return null;
+        Accept e = new Accept();
+        e.begin();
+        return e;
+    }
+
+    private static boolean enabled(EventType type) {
+        return type != null && type.isEnabled();
+    }
+
+    // JVMs sem suporte a JFR: os eventos ficam desligados
+    private static EventType typeOf(Class<? extends Event> eventClass) {
+        try {
+            return EventType.getEventType(eventClass);
+        } catch (RuntimeException | InternalError unsupported) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package me.m41k0n.infra;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Proteção do caminho de aceitação antes de qualquer autenticação: cada conexão entrante passa
+ * por um token bucket do endereço de origem e por um limite global de handshakes em andamento.
+ * Acima de 'cookieThreshold' handshakes simultâneos o responder passa a exigir um cookie sem
+ * estado (HMAC do endereço + janela de tempo) antes de gastar CPU com Ed25519/X25519: quem só
+ * despeja hs1 sem ler as respostas nunca chega à parte cara.
+ */
+public final class HandshakeGuard {
+
+    private static final long COOKIE_WINDOW_MS = 30_000;
+    private static final int COOKIE_BYTES = 16;
+    private static final int MAX_TRACKED = 10_000;
+    private static final long PRUNE_EVERY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxInFlight;
+    private final int cookieThreshold;
+    private final LongSupplier nanoClock;
+    private final LongSupplier millisClock;
+
+    private final Map<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Semaphore inFlight;
+    private final AtomicLong lastPrune = new AtomicLong();
+    private final AtomicLong rejectedByRate = new AtomicLong();
+    private final AtomicLong rejectedByLoad = new AtomicLong();
+
+    private final byte[] cookieSecret = new byte[32];
+    private final ThreadLocal<Mac> cookieMac;
+
+    /**
+     * @param ratePerSecond   handshakes por segundo por endereço de origem (reposição do bucket)
+     * @param burst           rajada tolerada por endereço (capacidade do bucket)
+     * @param maxInFlight     handshakes simultâneos no total
+     * @param cookieThreshold a partir de quantos handshakes em andamento exigir cookie (0 = sempre, -1 = nunca)
+     */
+    public HandshakeGuard(double ratePerSecond, int burst, int maxInFlight, int cookieThreshold) {
+        this(ratePerSecond, burst, maxInFlight, cookieThreshold, System::nanoTime, System::currentTimeMillis);
+    }
+
+    HandshakeGuard(double ratePerSecond, int burst, int maxInFlight, int cookieThreshold,
+                   LongSupplier nanoClock, LongSupplier millisClock) {
+        if (ratePerSecond <= 0 || burst < 1) throw new IllegalArgumentException("taxa e rajada devem ser positivas");
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight deve ser >= 1");
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+        this.cookieThreshold = cookieThreshold;
+        this.nanoClock = nanoClock;
+        this.millisClock = millisClock;
+        this.inFlight = new Semaphore(maxInFlight);
+        new SecureRandom().nextBytes(cookieSecret);
+        this.cookieMac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(cookieSecret, "HmacSHA256"));
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new CryptoOperationException("Falha ao inicializar HMAC do cookie", e);
+            }
+        });
+    }
+
+    /**
+     * Admite (ou não) um handshake vindo de 'source'. Retorna null se o endereço estourou a taxa
+     * ou se o limite global está cheio; caso contrário o permit deve ser fechado ao fim do handshake.
+     */
+    public Permit tryAdmit(InetAddress source) {
+        long now = nanoClock.getAsLong();
+        pruneIfNeeded(now);
+        Bucket b = buckets.computeIfAbsent(source, k -> new Bucket(burst, now));
+        if (!b.tryTake(now, ratePerSecond, burst)) {
+            rejectedByRate.incrementAndGet();
+            return null;
+        }
+        if (!inFlight.tryAcquire()) {
+            rejectedByLoad.incrementAndGet();
+            return null;
+        }
+        return new Permit();
+    }
+
+    /** Cookies para uma conexão vinda de 'source' (ver {@link SecureSession#setHandshakeCookies}). */
+    public SecureSession.HandshakeCookies cookiesFor(InetAddress source) {
+        byte[] addr = source.getAddress();
+        return new SecureSession.HandshakeCookies() {
+            @Override public boolean required() {
+                return cookieThreshold >= 0 && inFlightCount() >= cookieThreshold;
+            }
+
+            @Override public String issue() {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(cookie(addr, slot(0)));
+            }
+
+            @Override public boolean verify(String cookie) {
+                byte[] got;
+                try {
+                    got = Base64.getUrlDecoder().decode(cookie);
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                // aceita a janela atual e a anterior, para cookies emitidos perto da virada
+                return MessageDigest.isEqual(got, cookie(addr, slot(0))) || MessageDigest.isEqual(got, cookie(addr, slot(-1)));
+            }
+        };
+    }
+
+    public int inFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public long getRejectedByRate() {
+        return rejectedByRate.get();
+    }
+
+    public long getRejectedByLoad() {
+        return rejectedByLoad.get();
+    }
+
+    private long slot(int delta) {
+        return millisClock.getAsLong() / COOKIE_WINDOW_MS + delta;
+    }
+
+    private byte[] cookie(byte[] addr, long slot) {
+        Mac mac = cookieMac.get();
+        mac.update(addr);
+        mac.update(ByteBuffer.allocate(8).putLong(slot).array());
+        byte[] full = mac.doFinal();
+        byte[] out = new byte[COOKIE_BYTES];
+        System.arraycopy(full, 0, out, 0, COOKIE_BYTES);
+        return out;
+    }
+
+    // Descarta buckets cheios (endereços ociosos) quando há muitos endereços rastreados
+    private void pruneIfNeeded(long now) {
+        long last = lastPrune.get();
+        if (buckets.size() < MAX_TRACKED || now - last < PRUNE_EVERY_NANOS || !lastPrune.compareAndSet(last, now)) return;
+        buckets.values().removeIf(b -> b.isFull(now, ratePerSecond, burst));
+    }
+
+    /** Vaga de handshake em andamento; fechar libera a vaga (idempotente). */
+    public final class Permit implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) inFlight.release();
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastNanos;
+
+        Bucket(int burst, long now) {
+            this.tokens = burst;
+            this.lastNanos = now;
+        }
+
+        synchronized boolean tryTake(long now, double ratePerSecond, int burst) {
+            refill(now, ratePerSecond, burst);
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isFull(long now, double ratePerSecond, int burst) {
+            refill(now, ratePerSecond, burst);
+            return tokens >= burst;
+        }
+
+        private void refill(long now, double ratePerSecond, int burst) {
+            long elapsed = now - lastNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + elapsed * ratePerSecond / 1e9);
+                lastNanos = now;
+            }
+        }
+    }
+}
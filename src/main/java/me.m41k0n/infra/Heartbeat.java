@@ -0,0 +1,157 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keepalive de uma {@link SecureSession}: envia "hb-ping|id|t" como registro de controle cifrado a
+ * cada intervalo, o peer devolve "hb-pong|id|t" ecoando o instante, e o RTT medido alimenta uma
+ * estimativa suavizada no estilo do TCP (SRTT com ganho 1/8 e variação/jitter com ganho 1/4).
+ *
+ * Qualquer registro recebido prova que o peer está vivo. Se 'maxMissed' pings seguidos ficarem sem
+ * nenhum tráfego de volta, a sessão é derrubada: uma conexão meio-aberta é detectada em segundos,
+ * em vez de esperar o timeout do kernel.
+ *
+ * O timer nunca escreve: o ping é enviado por outra thread, porque numa conexão meio-aberta com o
+ * buffer de envio cheio (ou atrás de um escritor já bloqueado) a escrita não retorna. Enquanto o
+ * ping anterior estiver preso, cada intervalo conta como perdido sem enfileirar outro, e o timer
+ * continua livre para derrubar a sessão.
+ */
+public class Heartbeat {
+
+    static final String PING = "hb-ping";
+    static final String PONG = "hb-pong";
+
+    private final SecureSession session;
+    private final long intervalMs;
+    private final int maxMissed;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService sender;
+
+    private long nextId;
+    private int missed;
+    private boolean pingInFlight;
+    private double srttMs = -1;
+    private double rttVarMs = -1;
+
+    Heartbeat(SecureSession session, long intervalMs, int maxMissed) {
+        if (intervalMs < 1) throw new IllegalArgumentException("intervalo do heartbeat deve ser >= 1 ms");
+        if (maxMissed < 1) throw new IllegalArgumentException("maxMissed deve ser >= 1");
+        this.session = session;
+        this.intervalMs = intervalMs;
+        this.maxMissed = maxMissed;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "p2p-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "p2p-heartbeat-send");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() {
+        timer.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    /** Qualquer registro autenticado recebido zera a contagem de pings sem resposta. */
+    synchronized void onTraffic() {
+        missed = 0;
+    }
+
+    /**
+     * Trata um registro de controle de heartbeat. Retorna true se o corpo era ping/pong.
+     */
+    boolean handleControl(String body) {
+        String[] p = body.split("\\|", -1);
+        if (p.length != 3 || !(PING.equals(p[0]) || PONG.equals(p[0]))) return false;
+        long sentNanos;
+        try {
+            Long.parseLong(p[1]);
+            sentNanos = Long.parseLong(p[2]);
+        } catch (NumberFormatException nfe) {
+            System.err.println("[Heartbeat] Registro malformado ignorado.");
+            return true;
+        }
+        if (PING.equals(p[0])) {
+            try {
+                session.sendControl(PONG + "|" + p[1] + "|" + p[2]);
+            } catch (IOException e) {
+                // a falha de escrita aparece também no laço de envio; nada a fazer aqui
+            }
+        } else {
+            sample((System.nanoTime() - sentNanos) / 1_000_000.0);
+        }
+        return true;
+    }
+
+    /** RTT suavizado em ms, ou -1 se ainda não houve medição. */
+    public synchronized double getSmoothedRttMs() {
+        return srttMs;
+    }
+
+    /** Variação média do RTT (jitter) em ms, ou -1 se ainda não houve medição. */
+    public synchronized double getJitterMs() {
+        return rttVarMs;
+    }
+
+    synchronized void sample(double rttMs) {
+        if (rttMs < 0) return; // eco de outro processo/relógio: descarta
+        if (srttMs < 0) {
+            srttMs = rttMs;
+            rttVarMs = rttMs / 2;
+        } else {
+            rttVarMs = 0.75 * rttVarMs + 0.25 * Math.abs(srttMs - rttMs);
+            srttMs = 0.875 * srttMs + 0.125 * rttMs;
+        }
+    }
+
+    private void tick() {
+        if (session.isClosed()) {
+            stop();
+            return;
+        }
+        long id;
+        synchronized (this) {
+            if (missed >= maxMissed) {
+                System.err.println("[Heartbeat] Peer sem resposta a " + missed + " heartbeat(s); encerrando sessão.");
+                stop();
+                session.abort();
+                return;
+            }
+            missed++;
+            if (pingInFlight) return; // ping anterior ainda preso na escrita
+            pingInFlight = true;
+            id = nextId++;
+        }
+        try {
+            sender.execute(() -> sendPing(id));
+        } catch (RejectedExecutionException stopped) {
+            // heartbeat parado entre a verificação e o envio
+        }
+    }
+
+    private void sendPing(long id) {
+        try {
+            session.sendControl(PING + "|" + id + "|" + System.nanoTime());
+        } catch (IOException e) {
+            stop();
+            session.abort();
+        } finally {
+            synchronized (this) {
+                pingInFlight = false;
+            }
+        }
+    }
+}
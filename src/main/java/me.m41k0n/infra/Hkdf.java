@@ -1,59 +1,171 @@
 package me.m41k0n.infra;
 
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * HKDF com SHA-256 (RFC 5869) — utilitário mínimo para derivação de chaves.
+ *
+ * {@link #hkdfSha256} é o atalho de sempre (uma chave por chamada). Para derivar várias chaves do
+ * mesmo segredo (handshake, retomada, rekey) use o {@link Engine} da thread ({@link #engine()}):
+ * o Mac é criado uma vez por thread, o PRK é calculado em buffer interno e fica carregado no Mac,
+ * e cada expand escreve direto no buffer do chamador, sem concatenar arrays por bloco.
  */
 public final class Hkdf {
 
+    public static final int HASH_LEN = 32;
+    private static final String HMAC = "HmacSHA256";
+    private static final byte[] ZERO_SALT = new byte[HASH_LEN];
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ThreadLocal<Engine> ENGINES = ThreadLocal.withInitial(Engine::new);
+
     private Hkdf() {}
 
     public static byte[] hkdfSha256(byte[] ikm, byte[] salt, byte[] info, int length) {
         if (ikm == null) throw new IllegalArgumentException("ikm null");
-        if (length <= 0 || length > 255 * 32) throw new IllegalArgumentException("length inválido");
+        if (length <= 0 || length > 255 * HASH_LEN) throw new IllegalArgumentException("length inválido");
+        byte[] okm = new byte[length];
+        Engine e = engine().extract(salt, ikm);
         try {
-            // Extract
-            byte[] prk = hmacSha256(salt != null ? salt : new byte[32], ikm);
-            // Expand
-            int n = (int) Math.ceil((double) length / 32.0);
-            byte[] okm = new byte[length];
-            byte[] t = new byte[0];
+            e.expand(info, okm, 0, length);
+        } finally {
+            e.wipe();
+        }
+        return okm;
+    }
+
+    /**
+     * Motor HKDF da thread atual. Não é reentrante: use extract/expand em sequência no mesmo
+     * método e chame {@link Engine#wipe()} ao terminar.
+     */
+    public static Engine engine() {
+        return ENGINES.get();
+    }
+
+    /**
+     * Motor HKDF reutilizável (um por thread): Mac e buffers de trabalho são alocados uma única vez.
+     */
+    public static final class Engine {
+        private final Mac mac;
+        private final byte[] prk = new byte[HASH_LEN];
+        private final byte[] block = new byte[HASH_LEN];
+        private boolean keyed;
+
+        private Engine() {
+            try {
+                this.mac = Mac.getInstance(HMAC);
+            } catch (GeneralSecurityException e) {
+                throw new CryptoProviderUnavailableException("HmacSHA256 indisponível", e);
+            }
+        }
+
+        /**
+         * Extract: PRK = HMAC(salt, ikm). Salt nulo equivale a 32 bytes zero. Deixa o Mac pronto
+         * para expandir a partir desse PRK.
+         */
+        public Engine extract(byte[] salt, byte[] ikm) {
+            if (ikm == null) throw new IllegalArgumentException("ikm null");
+            init(salt != null && salt.length > 0 ? salt : ZERO_SALT);
+            mac.update(ikm);
+            doFinal(prk);
+            return withPrk(prk);
+        }
+
+        /**
+         * Usa um PRK já calculado (ex.: guardado para rekey) como chave de expansão.
+         */
+        public Engine withPrk(byte[] pseudoRandomKey) {
+            if (pseudoRandomKey == null || pseudoRandomKey.length != HASH_LEN) throw new IllegalArgumentException("PRK deve ter 32 bytes");
+            if (pseudoRandomKey != prk) System.arraycopy(pseudoRandomKey, 0, prk, 0, HASH_LEN);
+            init(prk);
+            keyed = true;
+            return this;
+        }
+
+        /**
+         * Copia o PRK atual (após {@link #extract}) para o buffer informado.
+         */
+        public void copyPrk(byte[] out, int off) {
+            if (!keyed) throw new IllegalStateException("extract/withPrk ainda não chamado");
+            System.arraycopy(prk, 0, out, off, HASH_LEN);
+        }
+
+        /**
+         * Expand: escreve 'len' bytes de OKM em out[off..off+len) para o 'info' dado.
+         * Pode ser chamado várias vezes com infos diferentes sem recalcular o PRK.
+         */
+        public void expand(byte[] info, byte[] out, int off, int len) {
+            if (!keyed) throw new IllegalStateException("extract/withPrk ainda não chamado");
+            if (len <= 0 || len > 255 * HASH_LEN) throw new IllegalArgumentException("length inválido");
+            if (off < 0 || off + len > out.length) throw new IllegalArgumentException("buffer de saída pequeno demais");
+            byte[] inf = info != null ? info : EMPTY;
             int pos = 0;
-            for (int i = 1; i <= n; i++) {
-                byte[] data;
-                if (info != null && info.length > 0) {
-                    data = concat(t, info, new byte[]{(byte) i});
+            for (int i = 1; pos < len; i++) {
+                if (i > 1) mac.update(block, 0, HASH_LEN);
+                mac.update(inf);
+                mac.update((byte) i);
+                int remaining = len - pos;
+                if (remaining >= HASH_LEN) {
+                    // bloco inteiro: escreve direto na saída e guarda T(i) para o próximo bloco
+                    doFinal(out, off + pos);
+                    System.arraycopy(out, off + pos, block, 0, HASH_LEN);
+                    pos += HASH_LEN;
                 } else {
-                    data = concat(t, new byte[]{(byte) i});
+                    doFinal(block);
+                    System.arraycopy(block, 0, out, off + pos, remaining);
+                    pos = len;
                 }
-                t = hmacSha256(prk, data);
-                int toCopy = Math.min(32, length - pos);
-                System.arraycopy(t, 0, okm, pos, toCopy);
-                pos += toCopy;
             }
-            return okm;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
-    }
 
-    private static byte[] hmacSha256(byte[] key, byte[] data) throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(key, "HmacSHA256"));
-        return mac.doFinal(data);
-    }
+        /**
+         * Deriva várias chaves rotuladas do mesmo PRK numa só passada: a i-ésima chave ocupa
+         * out[i*keyLen..(i+1)*keyLen) e usa info = context || label[i].
+         */
+        public void expandLabels(byte[] context, byte[][] labels, int keyLen, byte[] out) {
+            if (out.length < labels.length * keyLen) throw new IllegalArgumentException("buffer de saída pequeno demais");
+            byte[] ctx = context != null ? context : EMPTY;
+            int maxLabel = 0;
+            for (byte[] l : labels) maxLabel = Math.max(maxLabel, l.length);
+            byte[] info = new byte[ctx.length + maxLabel];
+            System.arraycopy(ctx, 0, info, 0, ctx.length);
+            for (int k = 0; k < labels.length; k++) {
+                System.arraycopy(labels[k], 0, info, ctx.length, labels[k].length);
+                byte[] exact = labels[k].length == maxLabel ? info : Arrays.copyOf(info, ctx.length + labels[k].length);
+                expand(exact, out, k * keyLen, keyLen);
+            }
+        }
+
+        /** Apaga PRK e bloco intermediário e descarrega a chave do Mac. */
+        public void wipe() {
+            Arrays.fill(prk, (byte) 0);
+            Arrays.fill(block, (byte) 0);
+            if (keyed) init(ZERO_SALT);
+            keyed = false;
+        }
+
+        private void init(byte[] key) {
+            try {
+                mac.init(new SecretKeySpec(key, HMAC));
+            } catch (GeneralSecurityException e) {
+                throw new CryptoOperationException("Falha ao inicializar HMAC", e);
+            }
+        }
 
-    private static byte[] concat(byte[]... arrs) {
-        int len = 0;
-        for (byte[] a : arrs) len += a.length;
-        byte[] out = new byte[len];
-        int p = 0;
-        for (byte[] a : arrs) {
-            System.arraycopy(a, 0, out, p, a.length);
-            p += a.length;
+        private void doFinal(byte[] out) {
+            doFinal(out, 0);
+        }
+
+        private void doFinal(byte[] out, int off) {
+            try {
+                mac.doFinal(out, off);
+            } catch (ShortBufferException e) {
+                throw new IllegalArgumentException("buffer de saída pequeno demais", e);
+            }
         }
-        return out;
     }
 }
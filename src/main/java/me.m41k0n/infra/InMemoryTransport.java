@@ -0,0 +1,92 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Transporte em memória para {@link SecureSession}: um par de pontas conectadas por dois
+ * {@link SpscByteRing} (um por sentido), sem passar pela pilha TCP do kernel.
+ *
+ * Útil para benchmarks (isola o custo da sessão/cripto) e para componentes no mesmo processo que
+ * querem falar pela mesma API segura. Cada ponta deve ter um único leitor (o receptor da sessão)
+ * e escritas serializadas, como a {@link SecureSession} já garante.
+ */
+public final class InMemoryTransport {
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private InMemoryTransport() {
+    }
+
+    /**
+     * Cria duas pontas conectadas: o que uma escreve a outra lê.
+     */
+    public static Endpoint[] pair() {
+        return pair(DEFAULT_CAPACITY, SpscByteRing.WaitStrategy.BLOCKING);
+    }
+
+    public static Endpoint[] pair(int capacity, SpscByteRing.WaitStrategy strategy) {
+        SpscByteRing aToB = new SpscByteRing(capacity, strategy);
+        SpscByteRing bToA = new SpscByteRing(capacity, strategy);
+        return new Endpoint[]{new Endpoint(bToA, aToB), new Endpoint(aToB, bToA)};
+    }
+
+    /**
+     * Uma ponta do transporte. Fechar encerra os dois sentidos: o peer lê EOF após consumir o que
+     * já foi escrito, e escritas de qualquer lado passam a falhar.
+     */
+    public static final class Endpoint implements SecureSession.SocketLike {
+        private final SpscByteRing in;
+        private final SpscByteRing out;
+        private final InputStream inputStream;
+        private final OutputStream outputStream;
+
+        Endpoint(SpscByteRing in, SpscByteRing out) {
+            this.in = in;
+            this.out = out;
+            this.inputStream = new InputStream() {
+                @Override public int read() {
+                    byte[] one = new byte[1];
+                    return in.read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+                @Override public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+                @Override public int available() {
+                    return in.available();
+                }
+                @Override public void close() {
+                    Endpoint.this.close();
+                }
+            };
+            this.outputStream = new OutputStream() {
+                @Override public void write(int b) throws IOException {
+                    out.write(new byte[]{(byte) b}, 0, 1);
+                }
+                @Override public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+                @Override public void close() {
+                    Endpoint.this.close();
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public void close() {
+            out.close();
+            in.close();
+        }
+    }
+}
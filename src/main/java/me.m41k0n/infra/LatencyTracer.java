@@ -0,0 +1,131 @@
+package me.m41k0n.infra;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Rastreamento de latência por mensagem, por estágio, em histogramas lock-free.
+ *
+ * Com {@link SecureSession#enableTracing} o remetente carimba cada mensagem com o instante de
+ * envio (µs de relógio de parede) dentro do texto claro autenticado (registro "seq|t|..."), e o
+ * receptor mede cada estágio do seu lado. SEND, READ, DECODE, DECRYPT e HANDLER usam nanoTime
+ * local. TRANSIT e END_TO_END comparam relógios de parede de hosts diferentes, então só valem
+ * entre máquinas com relógio sincronizado (ou no mesmo host).
+ */
+public final class LatencyTracer {
+
+    public enum Stage {
+        /** send() até a linha cifrada ser escrita (fila de escrita + cifragem), no remetente. */
+        SEND("envio"),
+        /** Carimbo de envio até a linha estar lida no receptor (rede + buffers). */
+        TRANSIT("trânsito"),
+        /** Do primeiro ao último caractere da linha no receptor. */
+        READ("leitura"),
+        /** Enquadramento (tipo/seq) + Base64. */
+        DECODE("decode"),
+        /** Abertura AES-GCM. */
+        DECRYPT("decifra"),
+        /** Tempo dentro do MessageHandler. */
+        HANDLER("handler"),
+        /** Carimbo de envio até o fim do handler. */
+        END_TO_END("fim a fim");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] total = new LatencyHistogram[STAGES.length];
+    // trocado a cada resumo: o resumo periódico mostra só o último intervalo
+    private final AtomicReferenceArray<LatencyHistogram> interval = new AtomicReferenceArray<>(STAGES.length);
+    private volatile Thread reporter;
+
+    public LatencyTracer() {
+        for (int i = 0; i < STAGES.length; i++) {
+            total[i] = new LatencyHistogram();
+            interval.set(i, new LatencyHistogram());
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        total[stage.ordinal()].record(nanos);
+        interval.get(stage.ordinal()).record(nanos);
+    }
+
+    /** Histograma acumulado do estágio desde a criação. */
+    public LatencyHistogram histogram(Stage stage) {
+        return total[stage.ordinal()];
+    }
+
+    /** Histogramas do intervalo corrente (desde o último snapshot), que recomeça do zero. */
+    public Map<Stage, LatencyHistogram> snapshotInterval() {
+        Map<Stage, LatencyHistogram> out = new EnumMap<>(Stage.class);
+        for (Stage s : STAGES) out.put(s, interval.getAndSet(s.ordinal(), new LatencyHistogram()));
+        return out;
+    }
+
+    /** Uma linha por estágio com amostras: n, p50, p99 e máximo em µs. */
+    public static String format(Map<Stage, LatencyHistogram> stages) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Stage, LatencyHistogram> e : stages.entrySet()) {
+            LatencyHistogram h = e.getValue();
+            if (h.count() == 0) continue;
+            sb.append(String.format(Locale.ROOT, "[Trace] %-9s n=%-8d p50=%9.1f µs p99=%9.1f µs max=%9.1f µs%n",
+                    e.getKey().label(), h.count(), h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3));
+        }
+        return sb.toString();
+    }
+
+    /** Resumo acumulado (ver {@link #format}). */
+    public String summary() {
+        Map<Stage, LatencyHistogram> all = new EnumMap<>(Stage.class);
+        for (Stage s : STAGES) all.put(s, total[s.ordinal()]);
+        return format(all);
+    }
+
+    /**
+     * Imprime a cada 'periodMs' o resumo do intervalo (thread daemon "p2p-trace") até {@link #stop()}.
+     */
+    public synchronized void startReporting(long periodMs, Consumer<String> out) {
+        if (periodMs <= 0) throw new IllegalArgumentException("periodMs deve ser > 0");
+        if (reporter != null) throw new IllegalStateException("relatório já iniciado");
+        Thread t = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(periodMs);
+                    String s = format(snapshotInterval());
+                    if (!s.isEmpty()) out.accept(s);
+                }
+            } catch (InterruptedException ignored) {
+                // stop()
+            }
+        }, "p2p-trace");
+        t.setDaemon(true);
+        reporter = t;
+        t.start();
+    }
+
+    public synchronized void stop() {
+        Thread t = reporter;
+        reporter = null;
+        if (t != null) t.interrupt();
+    }
+
+    /** Relógio de parede em µs (o carimbo que viaja no registro). */
+    static long wallMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,160 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Empacota várias mensagens de dados de uma {@link SecureSession} num único registro AEAD,
+ * amortizando IV, tag, Base64 e Cipher.init por registro em mensagens pequenas.
+ *
+ * Layout interno do lote (antes de cifrar): repetição de [int len][len bytes UTF-8]. O lote sai
+ * quando a próxima mensagem não cabe, ao atingir o limite ou 'maxDelayMs' após a primeira
+ * mensagem pendente. O seq é reservado ao fechar o lote, ainda sob o lock, para que a ordem de
+ * escrita seja a ordem de chegada das mensagens; cifra e escrita acontecem fora do lock.
+ */
+final class RecordBatcher {
+
+    // Lote cifrado + Base64 + seq precisa caber numa linha (MAX_LINE_LEN da sessão)
+    static final int MAX_BATCH_BYTES = 12000;
+    private static final int LEN_PREFIX = 4;
+
+    private final SecureSession session;
+    private final int maxBytes;
+    private final long maxDelayMs;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private final byte[] buf;
+    private int used;   // guardado por lock
+    private int count;  // guardado por lock
+
+    RecordBatcher(SecureSession session, int maxBytes, long maxDelayMs) {
+        this.session = session;
+        this.maxBytes = maxBytes;
+        this.maxDelayMs = maxDelayMs;
+        this.buf = new byte[maxBytes];
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "p2p-batch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Enfileira uma mensagem; pode enviar o lote anterior (e a própria mensagem, se grande demais). */
+    void add(byte[] message) throws IOException {
+        List<Sealed> out = new ArrayList<>(2);
+        synchronized (lock) {
+            int need = LEN_PREFIX + message.length;
+            if (need > maxBytes) {
+                // não cabe em lote nenhum: sai sozinha como registro de dados comum, depois do pendente
+                cut(out);
+                out.add(new Sealed(session.reserveSeq(), message, false));
+            } else {
+                if (used + need > maxBytes) cut(out);
+                ByteBuffer.wrap(buf, used, need).putInt(message.length).put(message);
+                used += need;
+                if (++count == 1) scheduleFlush();
+                if (used == maxBytes) cut(out);
+            }
+        }
+        write(out);
+    }
+
+    /** Envia o lote pendente agora. */
+    void flush() throws IOException {
+        List<Sealed> out = new ArrayList<>(1);
+        synchronized (lock) {
+            cut(out);
+        }
+        write(out);
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        synchronized (lock) {
+            Arrays.fill(buf, 0, used, (byte) 0);
+            used = 0;
+            count = 0;
+        }
+    }
+
+    private void scheduleFlush() {
+        try {
+            timer.schedule(this::flushQuietly, maxDelayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException closing) {
+            // sessão encerrando: o lote será descartado em stop()
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // falha de escrita já foi registrada pela sessão; o próximo send() a verá também
+        }
+    }
+
+    // Fecha o lote atual (se houver) reservando o seq sob o lock. Um lote de uma só mensagem vira
+    // registro de dados comum, sem o prefixo de tamanho.
+    private void cut(List<Sealed> out) {
+        if (count == 0) return;
+        if (count == 1) {
+            out.add(new Sealed(session.reserveSeq(), Arrays.copyOfRange(buf, LEN_PREFIX, used), false));
+        } else {
+            out.add(new Sealed(session.reserveSeq(), Arrays.copyOf(buf, used), true));
+        }
+        Arrays.fill(buf, 0, used, (byte) 0);
+        used = 0;
+        count = 0;
+    }
+
+    private void write(List<Sealed> out) throws IOException {
+        IOException first = null;
+        // todos os seqs reservados precisam passar pela vez de escrita, mesmo após uma falha
+        for (Sealed s : out) {
+            try {
+                session.sealAndWrite(s.seq, s.batch ? SecureSession.RECORD_BATCH : SecureSession.RECORD_DATA, s.plain);
+            } catch (IOException e) {
+                if (first == null) first = e;
+            } finally {
+                Arrays.fill(s.plain, (byte) 0);
+            }
+        }
+        if (first != null) throw first;
+    }
+
+    /** Desempacota um lote decifrado; layout inválido é tratado como registro corrompido. */
+    static String[] unpack(byte[] plain) {
+        List<String> out = new ArrayList<>();
+        ByteBuffer bb = ByteBuffer.wrap(plain);
+        while (bb.hasRemaining()) {
+            if (bb.remaining() < LEN_PREFIX) throw new IllegalStateException("lote malformado: prefixo truncado");
+            int len = bb.getInt();
+            if (len < 0 || len > bb.remaining()) throw new IllegalStateException("lote malformado: tamanho inválido");
+            out.add(new String(plain, bb.position(), len, StandardCharsets.UTF_8));
+            bb.position(bb.position() + len);
+        }
+        if (out.isEmpty()) throw new IllegalStateException("lote vazio");
+        return out.toArray(new String[0]);
+    }
+
+    private static final class Sealed {
+        final long seq;
+        final byte[] plain;
+        final boolean batch;
+
+        Sealed(long seq, byte[] plain, boolean batch) {
+            this.seq = seq;
+            this.plain = plain;
+            this.batch = batch;
+        }
+    }
+}
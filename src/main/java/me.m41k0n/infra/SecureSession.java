@@ -21,6 +21,10 @@ import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.net.SocketException;
 
 /**
@@ -31,26 +35,80 @@ public class SecureSession implements Closeable {
 
     private final SocketLike socket;
     private final PeerIdentity me;
-    private final String peerStaticPubB64;
+    // No modo frota (responder com TrustStore) só é conhecido após o hs1 do iniciador
+    private volatile String peerStaticPubB64;
+    private final TrustStore trustStore;
     private final boolean initiator;
 
     private BufferedReader reader;
     private BufferedWriter writer;
 
-    private byte[] aeadKey;
-    private long sendSeq = 0;
+    private volatile byte[] aeadKey;
+    // Seq de envio alocado sem lock; a escrita acontece por ordem de ticket (seq) sob writeLock
+    private final AtomicLong sendSeq = new AtomicLong();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition writeTurn = writeLock.newCondition();
+    private long nextToWrite = 0; // guardado por writeLock
     private long recvSeq = -1; // último seq aceito
 
     // Flag de encerramento para coordenação com o CLI
     private volatile boolean closed = false;
+    private final AtomicBoolean closeOnce = new AtomicBoolean();
+
+    private volatile Heartbeat heartbeat;
+    private volatile RecordBatcher batcher;
+    private volatile HandshakeCookies cookies;
+    private volatile LatencyTracer tracer;
+
+    // Sessões internas (ex.: aquecimento) não poluem o console com o ciclo de vida normal
+    private volatile boolean quiet;
 
     // Limite defensivo para cada linha/fragmento recebido (base64 + metadados)
     // Evita consumo excessivo de memória em caso de peers maliciosos.
     private static final int MAX_LINE_LEN = 16 * 1024; // 16 KiB
 
+    // Tipos de registro (entram na AAD; RECORD_DATA mantém o byte de versão original do canal)
+    static final byte RECORD_DATA = 1;
+    private static final byte RECORD_CONTROL = 2;
+    static final byte RECORD_BATCH = 3;
+    // Dados com carimbo de envio: texto claro = [µs de relógio de parede:8][utf-8]
+    private static final byte RECORD_TRACED = 4;
+    // Envelope de grupo: não passa pela AEAD da sessão (marcador interno, nunca vai para a AAD)
+    private static final byte RECORD_GROUP = 0;
+    private static final String CONTROL_TAG = "c";
+    private static final String BATCH_TAG = "b";
+    private static final String TRACE_TAG = "t";
+    private static final String GROUP_PREFIX = "g|";
+    private static final String COOKIE_PREFIX = "cookie|";
+
     public interface MessageHandler {
         void onPlaintext(String text);
         void onError(Exception e);
+
+        /** Registro de controle decifrado (ver {@link SecureSession#sendControl}). Ignorado por padrão. */
+        default void onControl(String body) { }
+
+        /** Envelope de grupo opaco (ver {@link SecureSession#sendGroupRecord}). Ignorado por padrão. */
+        default void onGroupRecord(String envelope) { }
+    }
+
+    /**
+     * Cookie de ida e volta exigido do iniciador antes de qualquer cripto assimétrica. É
+     * verificável sem guardar estado por conexão (HMAC do endereço de origem + janela de tempo).
+     */
+    public interface HandshakeCookies {
+        /** Se o cookie deve ser exigido agora (ex.: muitos handshakes em andamento). */
+        boolean required();
+
+        String issue();
+
+        boolean verify(String cookie);
+    }
+
+    /** Chaves de peers confiáveis indexadas pela impressão digital ({@link CryptoUtils#fingerprintHex}). */
+    public interface TrustStore {
+        /** Chave pública (Base64) com essa impressão digital, ou null se não for confiável. */
+        String lookup(String fingerprintHex);
     }
 
     public interface SocketLike extends Closeable {
@@ -63,49 +121,85 @@ public class SecureSession implements Closeable {
         this.me = Objects.requireNonNull(me);
         this.peerStaticPubB64 = Objects.requireNonNull(peerStaticPubB64);
         this.initiator = initiator;
+        this.trustStore = null;
+    }
+
+    private SecureSession(SocketLike socket, PeerIdentity me, TrustStore trustStore) {
+        this.socket = Objects.requireNonNull(socket);
+        this.me = Objects.requireNonNull(me);
+        this.trustStore = Objects.requireNonNull(trustStore);
+        this.initiator = false;
+    }
+
+    /**
+     * Responder que aceita qualquer peer do 'trustStore': o iniciador é identificado pela impressão
+     * digital ("fp:") do seu hs1, resolvida em O(1) antes de qualquer verificação de assinatura.
+     * Após o handshake, {@link #getPeerStaticPubB64()} retorna a chave autenticada.
+     */
+    public static SecureSession forTrustedPeers(SocketLike socket, PeerIdentity me, TrustStore trustStore) {
+        return new SecureSession(socket, me, trustStore);
     }
 
     public void startHandshake() throws Exception {
         this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
         this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
 
+        FlightEvents.Handshake hs = FlightEvents.beginHandshake(initiator);
         try {
-            // Gera par efêmero X25519
-            KeyPair eph = X25519Utils.generate();
-            String ephPubB64 = Base64.getEncoder().encodeToString(eph.getPublic().getEncoded());
-
-            // payload assinado inclui nossa eph key e o peer esperado, para evitar mitm com mudança de destino
-            String payload = "epk:" + ephPubB64 + "|peer:" + peerStaticPubB64;
-            String sig = CryptoUtils.sign(me.getPrivateKey(), payload);
-            Message m = new Message("hs1", me.getPublicKeyBase64(), peerStaticPubB64, payload, sig);
-
             if (initiator) {
+                long t0 = System.nanoTime();
+                KeyPair eph = X25519Utils.generate();
+                hs.keygen = System.nanoTime() - t0;
+                Message m = hello(eph, hs);
                 sendLine(m.toJson());
-                Message other = Message.fromJsonValidated(expectLineNonNullLimited());
-                validateHandshakeMessage(other);
+                String reply = expectLineNonNullLimited();
+                if (reply.startsWith(COOKIE_PREFIX)) {
+                    // responder sob carga: ecoa o cookie e repete o hs1
+                    sendLine(reply);
+                    sendLine(m.toJson());
+                    reply = expectLineNonNullLimited();
+                }
+                Message other = Message.fromJsonValidated(reply);
+                validateHandshakeMessage(other, hs);
 
                 PublicKey otherEph = decodeX25519FromPayload(other.getPayload());
+                t0 = System.nanoTime();
                 byte[] secret = X25519Utils.agree(eph.getPrivate(), otherEph);
+                hs.agree = System.nanoTime() - t0;
                 // HKDF: info amarra identidades estáticas
                 byte[] info = (sortPair(me.getPublicKeyBase64(), other.getFrom()) + ":chat").getBytes(StandardCharsets.UTF_8);
-                this.aeadKey = Hkdf.hkdfSha256(secret, null, info, 32);
+                t0 = System.nanoTime();
+                this.aeadKey = deriveSessionKey(secret, info);
+                hs.hkdf = System.nanoTime() - t0;
             } else {
-                Message first = Message.fromJsonValidated(expectLineNonNullLimited());
-                validateHandshakeMessage(first);
+                // nenhuma cripto assimétrica (verificação Ed25519, par efêmero) antes do cookie, se exigido
+                Message first = Message.fromJsonValidated(expectCookieThenHello());
+                if (trustStore != null) this.peerStaticPubB64 = resolveTrustedPeer(first);
+                validateHandshakeMessage(first, hs);
                 PublicKey otherEph = decodeX25519FromPayload(first.getPayload());
 
                 // responde com nosso hs1
-                sendLine(m.toJson());
+                long t0 = System.nanoTime();
+                KeyPair eph = X25519Utils.generate();
+                hs.keygen = System.nanoTime() - t0;
+                sendLine(hello(eph, hs).toJson());
 
+                t0 = System.nanoTime();
                 byte[] secret = X25519Utils.agree(eph.getPrivate(), otherEph);
+                hs.agree = System.nanoTime() - t0;
                 byte[] info = (sortPair(first.getFrom(), me.getPublicKeyBase64()) + ":chat").getBytes(StandardCharsets.UTF_8);
-                this.aeadKey = Hkdf.hkdfSha256(secret, null, info, 32);
+                t0 = System.nanoTime();
+                this.aeadKey = deriveSessionKey(secret, info);
+                hs.hkdf = System.nanoTime() - t0;
             }
+            hs.end(peerStaticPubB64, null);
         } catch (IllegalArgumentException iae) {
+            hs.end(peerStaticPubB64, "input inválido: " + iae.getMessage());
             System.err.println("[SecureSession] startHandshake FAILED (input inválido): " + iae.getMessage());
             try { this.close(); } catch (IOException ignore) {}
             throw iae;
         } catch (Exception e) {
+            hs.end(peerStaticPubB64, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
             System.err.println("[SecureSession] startHandshake FAILED: " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
             // garanta que recursos parcialmente abertos sejam fechados
             try { this.close(); } catch (IOException ignore) {}
@@ -113,70 +207,341 @@ public class SecureSession implements Closeable {
         }
     }
 
+    // payload assinado inclui nossa eph key e o peer esperado, para evitar mitm com mudança de destino
+    private Message hello(KeyPair eph, FlightEvents.Handshake hs) {
+        String ephPubB64 = Base64.getEncoder().encodeToString(eph.getPublic().getEncoded());
+        String payload = "epk:" + ephPubB64 + "|peer:" + peerStaticPubB64 + "|fp:" + CryptoUtils.fingerprintHex(me.getPublicKeyBase64());
+        long t0 = System.nanoTime();
+        String sig = me.sign(payload);
+        hs.sign = System.nanoTime() - t0;
+        return new Message("hs1", me.getPublicKeyBase64(), peerStaticPubB64, payload, sig);
+    }
+
+    /**
+     * Lado responder: lê o hs1 do iniciador. Se houver {@link HandshakeCookies} e o guard exigir
+     * cookie (carga alta), responde "cookie|..." e só aceita o hs1 seguinte após o eco válido.
+     */
+    private String expectCookieThenHello() throws IOException {
+        String line = expectLineNonNullLimited();
+        HandshakeCookies hc = cookies;
+        if (hc == null || !(line.startsWith(COOKIE_PREFIX) || hc.required())) return line;
+        if (!line.startsWith(COOKIE_PREFIX)) {
+            sendLine(COOKIE_PREFIX + hc.issue());
+            line = expectLineNonNullLimited();
+        }
+        if (!line.startsWith(COOKIE_PREFIX) || !hc.verify(line.substring(COOKIE_PREFIX.length()))) {
+            throw new IllegalStateException("Cookie de handshake ausente, inválido ou expirado.");
+        }
+        return expectLineNonNullLimited();
+    }
+
+    /**
+     * Ativa o cookie sem estado no lado responder (ver {@link HandshakeGuard#cookiesFor}).
+     * Chamar antes de {@link #startHandshake()}.
+     */
+    public void setHandshakeCookies(HandshakeCookies cookies) {
+        this.cookies = cookies;
+    }
+
     public void runReceiver(MessageHandler handler) {
         Thread t = new Thread(() -> {
             try {
                 for (String line = readLineLimited(); line != null; line = readLineLimited()) {
-                    if (line.isEmpty()) continue; // linhas muito longas são retornadas vazias e ignoradas
-                    // Cada linha é: seq|base64(ciphertext)
-                    String[] parts = line.split("\\|", 2);
-                    if (parts.length != 2) {
-                        // entrada malformada: ignora e continua
-                        System.out.println("[SecureSession] receiver: linha malformada (ignorada)");
-                        continue;
-                    }
-                    long seq;
-                    try {
-                        seq = Long.parseLong(parts[0]);
-                    } catch (NumberFormatException nfe) {
-                        // linha malformada: ignora
-                        System.out.println("[SecureSession] receiver: seq malformado (ignorado)");
-                        continue;
-                    }
-                    if (seq <= recvSeq) {
-                        System.out.println("[SecureSession] receiver: seq replay/out-of-order (ignorado) seq=" + seq + " last=" + recvSeq);
-                        continue; // proteção simples contra replay/out-of-order
-                    }
-                    byte[] aad = aadFor(seq);
-                    byte[] plain;
-                    try {
-                        plain = AeadUtils.decryptFromBase64(aeadKey, parts[1], aad);
-                    } catch (RuntimeException ex) {
-                        // Problema decifrando (chave inválida / corrupção). Log e fechar a sessão.
-                        System.err.println("[SecureSession] receiver: falha ao decifrar/validar mensagem — " + ex.getMessage());
-                        ex.printStackTrace();
-                        try {
-                            SecureSession.this.close();
-                        } catch (IOException ignore) {
-                        }
-                        // O handler espera Exception; embrulhamos o RuntimeException em IOException para manter compatibilidade
-                        handler.onError(new IOException("Falha ao decifrar/validar mensagem", ex));
-                        return;
-                    }
-                    recvSeq = seq;
-                    handler.onPlaintext(new String(plain, StandardCharsets.UTF_8));
+                    if (!dispatchLine(line, handler)) return;
                 }
-                // EOF alcançado: fechar sessão silenciosamente e notificar término normal
-                System.out.println("[SecureSession] receiver: EOF reached, closing session — socket=AA");
-                try { SecureSession.this.close(); } catch (IOException ignore) {}
-                handler.onError(null);
-            } catch (EOFException eof) {
-                try { SecureSession.this.close(); } catch (IOException ignore) {}
-                handler.onError(null);
-            } catch (IllegalArgumentException iae) {
-                System.err.println("[SecureSession] receiver: entrada inválida — " + iae.getMessage());
-                try { SecureSession.this.close(); } catch (IOException ignore) {}
-                handler.onError(new IOException("Entrada inválida: " + iae.getMessage(), iae));
+                endReceiver(null, handler);
             } catch (Exception e) {
-                System.err.println("[SecureSession] receiver: erro inesperado — " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
-                try { SecureSession.this.close(); } catch (IOException ignore) {}
-                handler.onError(e);
+                endReceiver(e, handler);
             }
         }, "secure-recv-");
         t.setDaemon(true);
         t.start();
     }
 
+    /**
+     * Variante para sessões de transferência em massa: a thread leitora só enquadra os registros e
+     * os entrega a 'decryptWorkers' threads que decifram em paralelo; um buffer de reordenação
+     * garante que o handler continue recebendo tudo estritamente na ordem de sequência, numa
+     * única thread. Com 'decryptWorkers' <= 1 equivale a {@link #runReceiver(MessageHandler)}.
+     */
+    public void runReceiver(MessageHandler handler, int decryptWorkers) {
+        if (decryptWorkers <= 1) {
+            runReceiver(handler);
+            return;
+        }
+        new DecryptPipeline(this, handler, decryptWorkers).start();
+    }
+
+    /**
+     * Variante sem thread leitora dedicada, para muitas sessões: exige um {@link AsyncChannelTransport}
+     * e lê os registros por callbacks de conclusão no grupo de canais compartilhado. O handler roda
+     * nas threads desse grupo, uma chamada por vez e na ordem de sequência; enquanto ele não retorna
+     * a sessão não lê, então não deve bloquear por muito tempo.
+     */
+    public void runReceiverAsync(MessageHandler handler) {
+        if (!(socket instanceof AsyncChannelTransport)) {
+            throw new IllegalStateException("runReceiverAsync exige AsyncChannelTransport");
+        }
+        ((AsyncChannelTransport) socket).readLines(MAX_LINE_LEN, new AsyncChannelTransport.LineConsumer() {
+            @Override
+            public boolean onLine(String line) {
+                if (closed) {
+                    endReceiver(null, handler);
+                    return false;
+                }
+                return dispatchLine(line, handler);
+            }
+
+            @Override
+            public void onEnd(Exception cause) {
+                endReceiver(cause, handler);
+            }
+        });
+    }
+
+    /**
+     * Encerra o receptor: 'cause' nulo ou EOF é término normal (handler.onError(null)); entrada
+     * inválida e demais erros fecham a sessão e são repassados ao handler.
+     */
+    void endReceiver(Exception cause, MessageHandler handler) {
+        if (cause == null) {
+            // EOF alcançado: fechar sessão silenciosamente e notificar término normal
+            if (!quiet) System.out.println("[SecureSession] receiver: EOF reached, closing session — socket=AA");
+            try { SecureSession.this.close(); } catch (IOException ignore) {}
+            handler.onError(null);
+        } else if (cause instanceof EOFException) {
+            try { SecureSession.this.close(); } catch (IOException ignore) {}
+            handler.onError(null);
+        } else if (cause instanceof IllegalArgumentException) {
+            System.err.println("[SecureSession] receiver: entrada inválida — " + cause.getMessage());
+            try { SecureSession.this.close(); } catch (IOException ignore) {}
+            handler.onError(new IOException("Entrada inválida: " + cause.getMessage(), cause));
+        } else {
+            System.err.println("[SecureSession] receiver: erro inesperado — " + (cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage()));
+            try { SecureSession.this.close(); } catch (IOException ignore) {}
+            handler.onError(cause);
+        }
+    }
+
+    /**
+     * Interpreta uma linha recebida e a entrega ao handler conforme o tipo de registro:
+     * - "seq|base64"   registro de dados (AAD tipo {@link #RECORD_DATA})
+     * - "seq|c|base64" registro de controle (AAD tipo {@link #RECORD_CONTROL})
+     * - "seq|b|base64" lote de mensagens de dados (AAD tipo {@link #RECORD_BATCH}, ver {@link RecordBatcher})
+     * - "seq|t|base64" dados com carimbo de envio (AAD tipo {@link #RECORD_TRACED}, ver {@link #enableTracing})
+     * - "g|envelope"   registro de grupo já cifrado com a chave do remetente (repassado opaco)
+     * Retorna false se a sessão foi encerrada por falha de autenticação/decifragem.
+     */
+    private boolean dispatchLine(String line, MessageHandler handler) {
+        Frame f = frame(line);
+        if (f == null) return true;
+        if (f.type == RECORD_GROUP) {
+            handler.onGroupRecord(f.body);
+            return true;
+        }
+        String[] texts;
+        try {
+            texts = decrypt(f);
+        } catch (RuntimeException ex) {
+            failDecrypt(ex, handler);
+            return false;
+        }
+        recvSeq = f.seq;
+        deliver(f, texts, handler);
+        return true;
+    }
+
+    /** Registro enquadrado, ainda cifrado (ou envelope de grupo opaco). */
+    static final class Frame {
+        final byte type;
+        final long seq;
+        final String body;
+        // preenchidos só com rastreamento ativo (ver LatencyTracer)
+        long parseNanos;
+        long arrivedAtMicros;
+        long sentAtMicros;
+        // só com gravação JFR habilitada para registros recebidos
+        FlightEvents.RecordReceive event;
+
+        Frame(byte type, long seq, String body) {
+            this.type = type;
+            this.seq = seq;
+            this.body = body;
+        }
+
+        boolean isGroup() {
+            return type == RECORD_GROUP;
+        }
+    }
+
+    /**
+     * Separa tipo, seq e corpo de uma linha e aplica a proteção anti-replay (seq estritamente
+     * crescente). Retorna null para linhas que devem ser ignoradas.
+     */
+    Frame frame(String line) {
+        FlightEvents.RecordReceive event = FlightEvents.beginRecordReceive();
+        if (event != null) {
+            Frame f = timedFrame(line);
+            if (f != null && !f.isGroup()) f.event = event;
+            return f;
+        }
+        return timedFrame(line);
+    }
+
+    private Frame timedFrame(String line) {
+        LatencyTracer t = tracer;
+        if (t == null) return parseFrame(line);
+        long arrived = LatencyTracer.wallMicros();
+        long start = System.nanoTime();
+        Frame f = parseFrame(line);
+        if (f != null) {
+            f.parseNanos = System.nanoTime() - start;
+            f.arrivedAtMicros = arrived;
+        }
+        return f;
+    }
+
+    private Frame parseFrame(String line) {
+        if (line.isEmpty()) return null; // linhas muito longas são retornadas vazias e ignoradas
+        if (line.startsWith(GROUP_PREFIX)) return new Frame(RECORD_GROUP, -1, line.substring(GROUP_PREFIX.length()));
+        String[] parts = line.split("\\|", 3);
+        byte recordType;
+        String body;
+        if (parts.length == 2) {
+            recordType = RECORD_DATA;
+            body = parts[1];
+        } else if (parts.length == 3 && CONTROL_TAG.equals(parts[1])) {
+            recordType = RECORD_CONTROL;
+            body = parts[2];
+        } else if (parts.length == 3 && BATCH_TAG.equals(parts[1])) {
+            recordType = RECORD_BATCH;
+            body = parts[2];
+        } else if (parts.length == 3 && TRACE_TAG.equals(parts[1])) {
+            recordType = RECORD_TRACED;
+            body = parts[2];
+        } else {
+            // entrada malformada: ignora e continua
+            System.out.println("[SecureSession] receiver: linha malformada (ignorada)");
+            return null;
+        }
+        long seq;
+        try {
+            seq = Long.parseLong(parts[0]);
+        } catch (NumberFormatException nfe) {
+            // linha malformada: ignora
+            System.out.println("[SecureSession] receiver: seq malformado (ignorado)");
+            return null;
+        }
+        if (seq <= recvSeq) {
+            System.out.println("[SecureSession] receiver: seq replay/out-of-order (ignorado) seq=" + seq + " last=" + recvSeq);
+            return null; // proteção simples contra replay/out-of-order
+        }
+        return new Frame(recordType, seq, body);
+    }
+
+    /** Marca 'seq' como aceito (o pipeline avança antes de decifrar; falha de decifragem encerra a sessão). */
+    void acceptSeq(long seq) {
+        recvSeq = seq;
+    }
+
+    /**
+     * Decifra um registro enquadrado; pode rodar em qualquer thread. Retorna as mensagens contidas
+     * (uma só, exceto em lotes). Lança RuntimeException se a tag não confere.
+     */
+    String[] decrypt(Frame f) {
+        byte[] key = aeadKey;
+        if (key == null) throw new IllegalStateException("sessão encerrada");
+        LatencyTracer t = tracer;
+        byte[] plain = t == null ? AeadUtils.decryptFromBase64(key, f.body, aadFor(f.seq, f.type)) : decryptTimed(t, key, f);
+        if (f.type == RECORD_BATCH) return RecordBatcher.unpack(plain);
+        if (f.type == RECORD_TRACED) {
+            // o carimbo está autenticado junto com a mensagem; receptores sem rastreamento só o descartam
+            if (plain.length < 8) throw new IllegalStateException("registro rastreado sem carimbo");
+            f.sentAtMicros = ByteBuffer.wrap(plain).getLong();
+            return new String[]{new String(plain, 8, plain.length - 8, StandardCharsets.UTF_8)};
+        }
+        return new String[]{new String(plain, StandardCharsets.UTF_8)};
+    }
+
+    // Mesmo resultado de decryptFromBase64, medindo Base64 (somado ao enquadramento) e AEAD à parte
+    private byte[] decryptTimed(LatencyTracer t, byte[] key, Frame f) {
+        long start = System.nanoTime();
+        byte[] all;
+        try {
+            all = Base64.getDecoder().decode(f.body);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("ciphertext base64 inválido", ex);
+        }
+        long decoded = System.nanoTime();
+        byte[] plain = AeadUtils.decrypt(key, all, aadFor(f.seq, f.type));
+        t.record(LatencyTracer.Stage.DECODE, f.parseNanos + decoded - start);
+        t.record(LatencyTracer.Stage.DECRYPT, System.nanoTime() - decoded);
+        return plain;
+    }
+
+    void failDecrypt(Exception ex, MessageHandler handler) {
+        // Problema decifrando (chave inválida / corrupção). Log e fechar a sessão.
+        System.err.println("[SecureSession] receiver: falha ao decifrar/validar mensagem — " + ex.getMessage());
+        ex.printStackTrace();
+        try {
+            SecureSession.this.close();
+        } catch (IOException ignore) {
+        }
+        // O handler espera Exception; embrulhamos o RuntimeException em IOException para manter compatibilidade
+        handler.onError(new IOException("Falha ao decifrar/validar mensagem", ex));
+    }
+
+    /**
+     * Como {@link #deliver(byte, String[], MessageHandler)}, medindo handler, trânsito e fim a fim
+     * (com rastreamento) e fechando o evento JFR do registro, se houver.
+     */
+    void deliver(Frame f, String[] texts, MessageHandler handler) {
+        LatencyTracer t = tracer;
+        long start = t == null ? 0 : System.nanoTime();
+        deliver(f.type, texts, handler);
+        if (f.event != null) f.event.end(f.type, f.seq, f.body.length(), texts.length);
+        if (t == null) return;
+        t.record(LatencyTracer.Stage.HANDLER, System.nanoTime() - start);
+        if (f.sentAtMicros > 0) {
+            t.record(LatencyTracer.Stage.TRANSIT, (f.arrivedAtMicros - f.sentAtMicros) * 1000);
+            t.record(LatencyTracer.Stage.END_TO_END, (LatencyTracer.wallMicros() - f.sentAtMicros) * 1000);
+        }
+    }
+
+    /** Entrega um registro já decifrado ao handler (ou ao heartbeat). */
+    void deliver(byte recordType, String[] texts, MessageHandler handler) {
+        Heartbeat hb = heartbeat;
+        if (hb != null) hb.onTraffic();
+        if (recordType == RECORD_BATCH) {
+            for (String t : texts) handler.onPlaintext(t);
+            return;
+        }
+        String text = texts[0];
+        if (recordType == RECORD_CONTROL) {
+            if (isHeartbeat(text)) {
+                if (hb != null) hb.handleControl(text); else answerPing(text);
+                return;
+            }
+            handler.onControl(text);
+        } else {
+            handler.onPlaintext(text);
+        }
+    }
+
+    private static boolean isHeartbeat(String body) {
+        return body.startsWith(Heartbeat.PING + "|") || body.startsWith(Heartbeat.PONG + "|");
+    }
+
+    // Sem keepalive local ainda responde aos pings do peer, para que ele não derrube a sessão
+    private void answerPing(String body) {
+        if (!body.startsWith(Heartbeat.PING + "|")) return;
+        try {
+            sendControl(Heartbeat.PONG + body.substring(Heartbeat.PING.length()));
+        } catch (IOException ignored) {
+            // falha de escrita aparece no laço de envio
+        }
+    }
+
     // Lê uma linha impondo limite de tamanho para evitar OOM em entrada maliciosa
     private String expectLineNonNullLimited() throws IOException {
         String line = readLineLimited();
@@ -184,10 +549,13 @@ public class SecureSession implements Closeable {
         return line;
     }
 
-    private String readLineLimited() throws IOException {
+    String readLineLimited() throws IOException {
         StringBuilder sb = new StringBuilder(256);
+        LatencyTracer t = tracer;
+        long firstCharAt = 0; // a espera pelo primeiro caractere é ociosidade, não leitura
         int ch;
         while ((ch = reader.read()) != -1) {
+            if (t != null && firstCharAt == 0) firstCharAt = System.nanoTime();
             if (ch == '\n') break;
             sb.append((char) ch);
             if (sb.length() > MAX_LINE_LEN) {
@@ -200,33 +568,241 @@ public class SecureSession implements Closeable {
             }
         }
         if (ch == -1 && sb.length() == 0) return null;
+        if (firstCharAt != 0) t.record(LatencyTracer.Stage.READ, System.nanoTime() - firstCharAt);
         return sb.toString();
     }
 
-    public synchronized void send(String plaintext) throws IOException {
-        long seq = sendSeq++;
-        byte[] aad = aadFor(seq);
+    public void send(String plaintext) throws IOException {
+        RecordBatcher b = batcher;
+        if (b != null) {
+            ensureOpen();
+            b.add(plaintext.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        LatencyTracer t = tracer;
+        if (t != null) {
+            sendTraced(t, plaintext);
+            return;
+        }
+        sendRecord(plaintext, RECORD_DATA);
+    }
+
+    private void sendTraced(LatencyTracer t, String plaintext) throws IOException {
+        long start = System.nanoTime();
+        ensureOpen();
+        byte[] text = plaintext.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer plain = ByteBuffer.allocate(8 + text.length);
+        plain.putLong(LatencyTracer.wallMicros()).put(text);
+        sealAndWrite(reserveSeq(), RECORD_TRACED, plain.array());
+        t.record(LatencyTracer.Stage.SEND, System.nanoTime() - start);
+    }
+
+    /**
+     * Envia um registro de controle cifrado (ex.: distribuição de chave de grupo). Compartilha a
+     * sequência e a proteção anti-replay dos dados, mas é entregue via {@link MessageHandler#onControl}.
+     * Com lotes ativos, o lote pendente sai antes, preservando a ordem em relação aos dados.
+     */
+    public void sendControl(String body) throws IOException {
+        RecordBatcher b = batcher;
+        if (b != null) b.flush();
+        sendRecord(body, RECORD_CONTROL);
+    }
+
+    /**
+     * Ativa o empacotamento de mensagens de dados: chamadas a {@link #send} acumulam num lote
+     * (layout interno [len][utf-8]...) que sai como um único registro AEAD ao atingir
+     * 'maxBatchBytes' ou após 'maxDelayMs' da primeira mensagem pendente. O receptor desempacota
+     * de forma transparente. Requer que o peer também entenda registros "seq|b|...".
+     */
+    public void enableBatching(int maxBatchBytes, long maxDelayMs) {
+        if (aeadKey == null) throw new IllegalStateException("lotes exigem handshake concluído");
+        if (maxBatchBytes < 64 || maxBatchBytes > RecordBatcher.MAX_BATCH_BYTES) {
+            throw new IllegalArgumentException("maxBatchBytes deve estar entre 64 e " + RecordBatcher.MAX_BATCH_BYTES);
+        }
+        if (maxDelayMs <= 0) throw new IllegalArgumentException("maxDelayMs deve ser > 0");
+        RecordBatcher b = new RecordBatcher(this, maxBatchBytes, maxDelayMs);
+        synchronized (this) {
+            if (batcher != null) throw new IllegalStateException("lotes já ativos");
+            batcher = b;
+        }
+    }
+
+    /**
+     * Ativa o rastreamento de latência: {@link #send} passa a carimbar cada mensagem com o instante
+     * de envio dentro do texto claro autenticado (registros "seq|t|...") e o receptor desta sessão
+     * registra no 'tracer' o tempo de cada estágio (leitura, decode, decifra, handler, trânsito e
+     * fim a fim). Com lotes ativos as mensagens saem em lote, sem carimbo. Requer que o peer também
+     * entenda registros "seq|t|...".
+     */
+    public void enableTracing(LatencyTracer tracer) {
+        if (tracer == null) throw new IllegalArgumentException("tracer null");
+        this.tracer = tracer;
+    }
+
+    /** Envia imediatamente o lote pendente, se houver. Sem lotes ativos não faz nada. */
+    public void flush() throws IOException {
+        RecordBatcher b = batcher;
+        if (b != null) b.flush();
+    }
+
+    /**
+     * Repassa um envelope de grupo já cifrado com a chave do remetente, sem recifrar com a chave
+     * da sessão: o mesmo texto é enviado a todos os membros (cifra uma vez, distribui N vezes).
+     * A autenticidade do envelope é verificada pelo destinatário (assinatura do remetente, ver GroupChannel).
+     */
+    public void sendGroupRecord(String envelope) throws IOException {
+        if (envelope == null || envelope.indexOf('\n') >= 0) throw new IllegalArgumentException("envelope de grupo inválido");
+        writeLock.lock();
+        try {
+            ensureOpen();
+            sendLine(GROUP_PREFIX + envelope);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Aloca o seq atomicamente e cifra fora de qualquer lock (produtores em várias threads cifram
+     * em paralelo); só a escrita é serializada, na ordem dos seqs, pois o receptor rejeita seq
+     * que não seja crescente.
+     */
+    private void sendRecord(String plaintext, byte recordType) throws IOException {
+        ensureOpen();
+        // codifica antes de reservar o seq: uma falha aqui (ex.: texto nulo) não pode deixar a vez presa
+        byte[] plain = plaintext.getBytes(StandardCharsets.UTF_8);
+        sealAndWrite(reserveSeq(), recordType, plain);
+    }
+
+    /** Reserva o próximo seq de envio; quem reserva deve chamar {@link #sealAndWrite} com ele. */
+    long reserveSeq() {
+        return sendSeq.getAndIncrement();
+    }
+
+    /** Cifra 'plain' com o seq já reservado (fora de lock) e escreve na vez desse seq. */
+    void sealAndWrite(long seq, byte recordType, byte[] plain) throws IOException {
+        FlightEvents.RecordSend event = FlightEvents.beginRecordSend();
+        String line;
         try {
-            String enc = AeadUtils.encryptToBase64(aeadKey, plaintext.getBytes(StandardCharsets.UTF_8), aad);
-            sendLine(seq + "|" + enc);
+            byte[] key = aeadKey;
+            if (key == null) throw new IllegalStateException("sessão sem chave (handshake não concluído ou sessão encerrada)");
+            String enc = AeadUtils.encryptToBase64(key, plain, aadFor(seq, recordType));
+            line = recordType == RECORD_CONTROL ? seq + "|" + CONTROL_TAG + "|" + enc
+                    : recordType == RECORD_BATCH ? seq + "|" + BATCH_TAG + "|" + enc
+                    : recordType == RECORD_TRACED ? seq + "|" + TRACE_TAG + "|" + enc
+                    : seq + "|" + enc;
         } catch (RuntimeException re) {
             // AeadUtils pode lançar RuntimeException para simplicidade; convertemos para IOException para o caller lidar consistentemente
+            writeInTurn(seq, null); // libera a vez deste seq (o receptor tolera lacunas)
             System.err.println("[SecureSession] send() runtime error — " + (re.getMessage() == null ? re.getClass().getSimpleName() : re.getMessage()));
             throw new IOException("Erro ao cifrar/enviar (runtime): " + re.getMessage(), re);
+        }
+        try {
+            writeInTurn(seq, line);
+            if (event != null) event.end(recordType, seq, plain.length, line.length());
         } catch (IOException ioe) {
             System.err.println("[SecureSession] send() IOException — " + (ioe.getMessage() == null ? ioe.getClass().getSimpleName() : ioe.getMessage()));
             throw ioe;
         }
     }
 
-    private void validateHandshakeMessage(Message other) {
+    /**
+     * Espera a vez de 'seq' e escreve a linha (null apenas avança a vez). A vez sempre avança,
+     * mesmo com falha de escrita, para não travar os seqs seguintes; close() acorda quem espera.
+     */
+    private void writeInTurn(long seq, String line) throws IOException {
+        writeLock.lock();
+        try {
+            while (nextToWrite != seq) {
+                if (closed) throw new IOException("Sessão encerrada");
+                writeTurn.awaitUninterruptibly();
+            }
+            try {
+                if (line != null) {
+                    ensureOpen();
+                    sendLine(line);
+                }
+            } finally {
+                nextToWrite++;
+                writeTurn.signalAll();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Sessão encerrada");
+    }
+
+    /**
+     * Inicia o keepalive: ping cifrado a cada 'intervalMs' e encerramento da sessão após
+     * 'maxMissed' pings seguidos sem nenhum tráfego do peer. Chamar após o handshake.
+     */
+    public void startHeartbeat(long intervalMs, int maxMissed) {
+        if (aeadKey == null) throw new IllegalStateException("heartbeat exige handshake concluído");
+        Heartbeat hb = new Heartbeat(this, intervalMs, maxMissed);
+        synchronized (this) {
+            if (heartbeat != null) throw new IllegalStateException("heartbeat já iniciado");
+            heartbeat = hb;
+        }
+        hb.start();
+    }
+
+    /** RTT suavizado medido pelo heartbeat (ms), ou -1 se sem heartbeat/medição. */
+    public double getSmoothedRttMs() {
+        Heartbeat hb = heartbeat;
+        return hb == null ? -1 : hb.getSmoothedRttMs();
+    }
+
+    /** Jitter (variação média do RTT, ms) medido pelo heartbeat, ou -1 se sem medição. */
+    public double getRttJitterMs() {
+        Heartbeat hb = heartbeat;
+        return hb == null ? -1 : hb.getJitterMs();
+    }
+
+    /**
+     * Derruba a sessão a partir de threads internas (ex.: heartbeat); {@link #close()} já não
+     * depende do lock de escrita, então basta ignorar erros de fechamento.
+     */
+    void abort() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    /**
+     * Modo frota: localiza o iniciador no TrustStore pela impressão digital do hs1 (peers antigos,
+     * sem "fp:", são localizados pela impressão digital da chave em "from").
+     */
+    private String resolveTrustedPeer(Message hello) {
+        String fp = payloadField(hello.getPayload(), "fp:");
+        if (fp == null) fp = CryptoUtils.fingerprintHex(hello.getFrom());
+        String trusted = trustStore.lookup(fp);
+        if (trusted == null) {
+            throw new IllegalStateException("Autenticação falhou: peer " + fp + " não está na lista de confiança.");
+        }
+        return trusted;
+    }
+
+    private static String payloadField(String payload, String key) {
+        for (String s : payload.split("\\|")) {
+            if (s.startsWith(key)) return s.substring(key.length());
+        }
+        return null;
+    }
+
+    private void validateHandshakeMessage(Message other, FlightEvents.Handshake hs) {
         if (!"hs1".equals(other.getType())) {
             throw new IllegalStateException("Mensagem de handshake inválida: tipo inesperado '" + other.getType() + "' (esperado 'hs1').");
         }
         if (!peerStaticPubB64.equals(other.getFrom())) {
             throw new IllegalStateException("Autenticação falhou: chave pública recebida não é a esperada para o peer.");
         }
+        long t0 = System.nanoTime();
         boolean ok = CryptoUtils.verify(Base64.getDecoder().decode(other.getFrom()), other.getPayload(), other.getSignature());
+        hs.verify = System.nanoTime() - t0;
         if (!ok) {
             throw new IllegalStateException("Assinatura do handshake é inválida (Ed25519 verificação falhou).");
         }
@@ -236,27 +812,37 @@ public class SecureSession implements Closeable {
     }
 
     private PublicKey decodeX25519FromPayload(String payload) throws Exception {
-        String[] kv = payload.split("\\|");
-        String epk = null;
-        for (String s : kv) {
-            if (s.startsWith("epk:")) {
-                epk = s.substring(4);
-            }
-        }
+        String epk = payloadField(payload, "epk:");
         if (epk == null) throw new IllegalStateException("Handshake inválido: campo 'epk' ausente no payload.");
         byte[] der = Base64.getDecoder().decode(epk);
         KeyFactory kf = KeyFactory.getInstance("X25519");
         return kf.generatePublic(new X509EncodedKeySpec(der));
     }
 
+    /**
+     * Deriva a chave AEAD com o motor HKDF da thread (Mac reaproveitado entre handshakes) e
+     * apaga o segredo X25519 e o PRK assim que a chave sai.
+     */
+    private static byte[] deriveSessionKey(byte[] secret, byte[] info) {
+        byte[] key = new byte[32];
+        Hkdf.Engine hkdf = Hkdf.engine();
+        try {
+            hkdf.extract(null, secret).expand(info, key, 0, key.length);
+        } finally {
+            hkdf.wipe();
+            Arrays.fill(secret, (byte) 0);
+        }
+        return key;
+    }
+
     private String sortPair(String a, String b) {
         return a.compareTo(b) <= 0 ? a + ":" + b : b + ":" + a;
     }
 
-    private byte[] aadFor(long seq) {
+    private byte[] aadFor(long seq, byte recordType) {
         ByteBuffer bb = ByteBuffer.allocate(8 + 1);
         bb.putLong(seq);
-        bb.put((byte) 1); // versão do canal
+        bb.put(recordType); // versão do canal / tipo de registro
         return bb.array();
     }
 
@@ -266,39 +852,58 @@ public class SecureSession implements Closeable {
         writer.flush();
     }
 
+    /**
+     * Encerra a sessão sem esperar por escritas em andamento: fecha primeiro o socket, o que
+     * faz uma escrita presa (peer que parou de ler) falhar e soltar o writeLock, depois acorda
+     * quem aguarda a vez de escrever e libera streams e chave.
+     */
     @Override
-    public synchronized void close() throws IOException {
-        if (closed) return;
+    public void close() throws IOException {
+        if (!closeOnce.compareAndSet(false, true)) return;
         closed = true;
+        Heartbeat hb = heartbeat;
+        if (hb != null) hb.stop();
+        RecordBatcher b = batcher;
+        if (b != null) b.stop(); // lote ainda não enviado é descartado; use flush() antes de fechar
         // Evita imprimir stacktrace em produção; log simples
-        System.out.println("[SecureSession] close() chamado");
+        if (!quiet) System.out.println("[SecureSession] close() chamado");
         try {
+            socket.close();
+        } catch (IOException ex) {
+            System.err.println("[SecureSession] socket.close() erro: " + ex.getMessage());
+        }
+        writeLock.lock();
+        try {
+            writeTurn.signalAll();
             if (writer != null) {
-                try { writer.close(); } catch (IOException ex) { System.err.println("[SecureSession] writer.close() erro: " + ex.getMessage()); }
-                writer = null;
+                try { writer.close(); } catch (IOException ex) { /* socket já fechado: flush pendente é descartado */ }
             }
         } finally {
-            try {
-                if (reader != null) {
-                    try { reader.close(); } catch (IOException ex) { System.err.println("[SecureSession] reader.close() erro: " + ex.getMessage()); }
-                    reader = null;
-                }
-            } finally {
-                // limpar chave de sessão da memória
-                if (aeadKey != null) {
-                    Arrays.fill(aeadKey, (byte) 0);
-                    aeadKey = null;
-                }
-                try {
-                    socket.close();
-                } catch (IOException ex) {
-                    System.err.println("[SecureSession] socket.close() erro: " + ex.getMessage());
-                    ex.printStackTrace();
-                }
+            writeLock.unlock();
+        }
+        try {
+            if (reader != null) {
+                try { reader.close(); } catch (IOException ex) { System.err.println("[SecureSession] reader.close() erro: " + ex.getMessage()); }
             }
+        } finally {
+            // limpar chave de sessão da memória
+            byte[] key = aeadKey;
+            aeadKey = null;
+            if (key != null) Arrays.fill(key, (byte) 0);
         }
     }
 
+    void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Chave pública estática (Base64) do peer autenticado nesta sessão.
+     */
+    public String getPeerStaticPubB64() {
+        return peerStaticPubB64;
+    }
+
     /**
      * Indica se a sessão já foi encerrada.
      */
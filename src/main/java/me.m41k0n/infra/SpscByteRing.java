@@ -0,0 +1,160 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Buffer circular de bytes para exatamente um produtor e um consumidor (SPSC), sem locks.
+ *
+ * As posições de escrita e leitura são contadores monotônicos de 64 bits; cada lado só escreve o
+ * próprio contador e lê o do outro, então não há disputa de escrita. Capacidade potência de 2
+ * (índice = posição & máscara). Quando não há dados/espaço, o lado que espera registra sua thread e
+ * estaciona (park); o outro lado a acorda (unpark) ao publicar. A ordem "publica posição → lê thread
+ * em espera" / "registra thread → relê posição" usa campos voláteis, o que impede perder o aviso.
+ *
+ * Vários threads podem usar o mesmo lado desde que serializados externamente (ex.: o lock de envio da
+ * {@link SecureSession}), o que garante a relação happens-before entre eles.
+ */
+public final class SpscByteRing {
+
+    /** Como esperar por dados (leitor) ou espaço (escritor). */
+    public enum WaitStrategy {
+        /** Estaciona a thread imediatamente: menor uso de CPU, latência de acordar do SO. */
+        BLOCKING,
+        /** Gira alguns ciclos (onSpinWait), cede a CPU e só então estaciona: menor latência, mais CPU. */
+        SPIN_THEN_PARK
+    }
+
+    private static final int SPIN_TRIES = 2_000;
+    private static final int YIELD_TRIES = 50;
+
+    private final byte[] buffer;
+    private final int mask;
+    private final WaitStrategy strategy;
+
+    private final AtomicLong writePos = new AtomicLong();
+    private final AtomicLong readPos = new AtomicLong();
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+    private volatile boolean closed;
+
+    public SpscByteRing(int capacity, WaitStrategy strategy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("capacidade deve ser potência de 2 (>= 2)");
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+        this.strategy = strategy == null ? WaitStrategy.BLOCKING : strategy;
+    }
+
+    /**
+     * Escreve todos os bytes, esperando por espaço quando o buffer está cheio.
+     * Lança IOException se o ring for fechado.
+     */
+    public void write(byte[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            if (closed) throw new IOException("Socket closed");
+            long w = writePos.get();
+            int free = buffer.length - (int) (w - readPos.get());
+            if (free == 0) {
+                awaitSpace(w);
+                continue;
+            }
+            int n = Math.min(free, len);
+            int idx = (int) (w & mask);
+            int first = Math.min(n, buffer.length - idx);
+            System.arraycopy(src, off, buffer, idx, first);
+            if (n > first) System.arraycopy(src, off + first, buffer, 0, n - first);
+            writePos.set(w + n);
+            wake(waitingReader);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Lê até 'len' bytes, esperando até haver pelo menos 1. Retorna -1 se o ring foi fechado e esvaziado.
+     */
+    public int read(byte[] dst, int off, int len) {
+        if (len == 0) return 0;
+        long r = readPos.get();
+        int available = (int) (writePos.get() - r);
+        while (available == 0) {
+            if (closed) {
+                // revalida após ver o fechamento: dados publicados antes do close ainda são entregues
+                available = (int) (writePos.get() - r);
+                if (available == 0) return -1;
+                break;
+            }
+            awaitData(r);
+            available = (int) (writePos.get() - r);
+        }
+        int n = Math.min(available, len);
+        int idx = (int) (r & mask);
+        int first = Math.min(n, buffer.length - idx);
+        System.arraycopy(buffer, idx, dst, off, first);
+        if (n > first) System.arraycopy(buffer, 0, dst, off + first, n - first);
+        readPos.set(r + n);
+        wake(waitingWriter);
+        return n;
+    }
+
+    /** Bytes disponíveis para leitura sem esperar. */
+    public int available() {
+        return (int) (writePos.get() - readPos.get());
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Fecha o ring: escritas passam a falhar e o leitor recebe -1 após consumir o que restou.
+     */
+    public void close() {
+        closed = true;
+        wake(waitingReader);
+        wake(waitingWriter);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void awaitData(long r) {
+        int tries = 0;
+        while (writePos.get() == r && !closed) {
+            if (spin(tries++)) continue;
+            waitingReader = Thread.currentThread();
+            if (writePos.get() == r && !closed) LockSupport.park(this);
+            waitingReader = null;
+        }
+    }
+
+    private void awaitSpace(long w) {
+        int tries = 0;
+        while (w - readPos.get() == buffer.length && !closed) {
+            if (spin(tries++)) continue;
+            waitingWriter = Thread.currentThread();
+            if (w - readPos.get() == buffer.length && !closed) LockSupport.park(this);
+            waitingWriter = null;
+        }
+    }
+
+    /** Retorna true se ainda deve girar/ceder antes de estacionar. */
+    private boolean spin(int tries) {
+        if (strategy != WaitStrategy.SPIN_THEN_PARK) return false;
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+            return true;
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return true;
+        }
+        return false;
+    }
+
+    private static void wake(Thread t) {
+        if (t != null) LockSupport.unpark(t);
+    }
+}
@@ -0,0 +1,125 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.util.Locale;
+
+/**
+ * Perfis de ajuste do TCP aplicados igualmente aos sockets discados e aceitos, escolhidos por
+ * -Dp2p.transport=latency|throughput|mobile (padrão: latency).
+ *
+ * - LATENCY: TCP_NODELAY (registros pequenos não esperam o ACK do anterior; Nagle + delayed ACK
+ *   chegam a segurar uma mensagem por ~40 ms), buffers do SO (autoajuste), ToS de baixo atraso.
+ * - THROUGHPUT: Nagle ligado para agrupar segmentos, buffers de 1 MiB e ToS de vazão; para
+ *   transferências grandes, em que a latência de cada registro importa pouco.
+ * - MOBILE: TCP_NODELAY, buffers de 128 KiB (evita filas longas em enlaces lentos) e timeouts de
+ *   connect/handshake mais generosos para rádios que acordam devagar.
+ *
+ * Todos ligam SO_KEEPALIVE, para o SO descartar conexões mortas mesmo sem o heartbeat da sessão.
+ * Buffers 0 mantêm o padrão do SO (no Linux, fixar SO_RCVBUF desliga o autoajuste da janela).
+ */
+public enum TransportProfile {
+
+    // ToS da RFC 1349: 0x10 baixo atraso, 0x08 vazão (só uma dica; a rede pode ignorar ou reescrever)
+    LATENCY(true, 0, 0, 0x10, 2000, 10_000),
+    THROUGHPUT(false, 1 << 20, 1 << 20, 0x08, 5000, 15_000),
+    MOBILE(true, 128 * 1024, 128 * 1024, 0, 8000, 20_000);
+
+    private final boolean noDelay;
+    private final int sendBufferBytes;
+    private final int receiveBufferBytes;
+    private final int trafficClass;
+    private final int connectTimeoutMs;
+    private final int handshakeTimeoutMs;
+
+    TransportProfile(boolean noDelay, int sendBufferBytes, int receiveBufferBytes, int trafficClass,
+                     int connectTimeoutMs, int handshakeTimeoutMs) {
+        this.noDelay = noDelay;
+        this.sendBufferBytes = sendBufferBytes;
+        this.receiveBufferBytes = receiveBufferBytes;
+        this.trafficClass = trafficClass;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+    }
+
+    /** Perfil escolhido por -Dp2p.transport (lido a cada chamada). */
+    public static TransportProfile current() {
+        return parse(System.getProperty("p2p.transport", "latency"));
+    }
+
+    public static TransportProfile parse(String name) {
+        if (name == null) throw new IllegalArgumentException("perfil de transporte ausente");
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("perfil de transporte desconhecido: " + name + " (use latency, throughput ou mobile)");
+        }
+    }
+
+    public int connectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /** Timeout de leitura durante preâmbulo/handshake; depois dele a sessão lê sem timeout (o heartbeat cuida da vivacidade). */
+    public int handshakeTimeoutMs() {
+        return handshakeTimeoutMs;
+    }
+
+    /**
+     * Aplica o perfil a um socket a discar. Chamar antes do connect: o buffer de recepção
+     * precisa estar definido antes do SYN para valer na escala de janela.
+     */
+    public void configure(Socket s) throws IOException {
+        if (receiveBufferBytes > 0) s.setReceiveBufferSize(receiveBufferBytes);
+        applyAfterConnect(s);
+    }
+
+    /**
+     * Aplica o perfil a um listener antes do bind; os sockets aceitos herdam o buffer de recepção
+     * e devem passar por {@link #configureAccepted}.
+     */
+    public void configure(ServerSocket ss) throws IOException {
+        if (receiveBufferBytes > 0) ss.setReceiveBufferSize(receiveBufferBytes);
+    }
+
+    /** Opções por conexão de um socket aceito (o buffer de recepção vem do ServerSocket). */
+    public void configureAccepted(Socket s) throws IOException {
+        applyAfterConnect(s);
+    }
+
+    /**
+     * Equivalente para canais NIO ({@link AsyncChannelTransport}): num canal de listener só o buffer
+     * de recepção vale (antes do bind); num canal de conexão, chamar antes do connect ou logo após
+     * o accept.
+     */
+    public void configure(NetworkChannel ch) throws IOException {
+        if (receiveBufferBytes > 0) ch.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+        if (!ch.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) return;
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, noDelay);
+        ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        if (sendBufferBytes > 0) ch.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferBytes);
+        if (trafficClass != 0 && ch.supportedOptions().contains(StandardSocketOptions.IP_TOS)) {
+            try {
+                ch.setOption(StandardSocketOptions.IP_TOS, trafficClass);
+            } catch (IOException | IllegalArgumentException ignored) {
+                // ToS é só uma dica (ver applyAfterConnect)
+            }
+        }
+    }
+
+    private void applyAfterConnect(Socket s) throws IOException {
+        s.setTcpNoDelay(noDelay);
+        s.setKeepAlive(true);
+        if (sendBufferBytes > 0) s.setSendBufferSize(sendBufferBytes);
+        if (trafficClass != 0) {
+            try {
+                s.setTrafficClass(trafficClass);
+            } catch (IOException | IllegalArgumentException ignored) {
+                // ToS é só uma dica: alguns SOs/pilhas (ex.: IPv6 em certas plataformas) recusam
+            }
+        }
+    }
+}
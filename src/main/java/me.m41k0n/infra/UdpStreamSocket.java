@@ -0,0 +1,406 @@
+package me.m41k0n.infra;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fluxo de bytes confiável e ordenado sobre um DatagramSocket já "furado" (hole punching), para
+ * rodar uma {@link SecureSession} direto entre peers atrás de NAT.
+ *
+ * Protocolo mínimo: datagramas [tipo:1][seq:4][ack:4][dados], janela deslizante de WINDOW
+ * segmentos com ACK cumulativo, retransmissão por segmento com RTO dobrando a cada tentativa,
+ * FIN na mesma numeração dos dados e keepalive quando ocioso. Confidencialidade e integridade
+ * ficam por conta da SecureSession acima; aqui só se garante entrega em ordem.
+ *
+ * Cada sentido começa num número de sequência inicial (ISN) aleatório, trocado nos punches; como
+ * no TCP, um terceiro fora do caminho que forje o endereço do peer precisa acertar a janela de
+ * recepção para injetar dados, e ACKs de segmentos ainda não enviados descartam o datagrama.
+ */
+public class UdpStreamSocket implements SecureSession.SocketLike {
+
+    static final byte TYPE_PUNCH = 0;
+    static final byte TYPE_DATA = 1;
+    static final byte TYPE_ACK = 2;
+    static final byte TYPE_FIN = 3;
+    static final int HEADER_LEN = 9;
+    static final int MAX_PAYLOAD = 1200;
+    // campo 'ack' de um punch: sonda do laço de punching ou resposta de um fluxo já aberto
+    private static final int PUNCH_PROBE = 0;
+    private static final int PUNCH_REPLY = 1;
+
+    private static final long PUNCH_INTERVAL_MS = 100;
+    private static final int WINDOW = 256;
+    private static final long RTO_MS = 200;
+    private static final long MAX_RTO_MS = 3000;
+    private static final long KEEPALIVE_MS = 5000;
+    private static final long IDLE_TIMEOUT_MS = 15_000;
+    private static final long LINGER_MS = 2000;
+    // entregue e ainda não lido acima disto: novos segmentos são descartados (o peer retransmite)
+    private static final int MAX_UNREAD_BYTES = 1 << 20;
+    private static final byte[] FIN_MARK = new byte[0];
+    private static final SecureRandom RNG = new SecureRandom();
+
+    private final DatagramSocket socket;
+    private final InetSocketAddress peer;
+    private final int localIsn;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition canSend = lock.newCondition();
+    private final Condition canRead = lock.newCondition();
+
+    // envio: segmentos [sendBase, nextSeq) aguardando ACK, indexados por seq % WINDOW
+    private final byte[][] unacked = new byte[WINDOW][];
+    private final long[] sentAt = new long[WINDOW];
+    private final int[] tries = new int[WINDOW];
+    private int sendBase;
+    private int nextSeq;
+    private long lastSentMs;
+
+    // recepção: próximo seq esperado e segmentos fora de ordem dentro da janela
+    private final byte[][] reorder = new byte[WINDOW][];
+    private final ArrayDeque<byte[]> readable = new ArrayDeque<>();
+    private int readOffset;
+    private int unreadBytes;
+    private int expected;
+    private long lastHeardMs;
+
+    private boolean eof;
+    private boolean closed;
+    private boolean closing; // close() esperando espaço na janela para o FIN
+    private long lingerFromMs; // após o close: instante do close ou do último ACK que avançou a janela
+    private IOException failure;
+
+    private final InputStream in = new InputStream() {
+        @Override public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            return readBytes(b, off, len);
+        }
+    };
+
+    private final OutputStream out = new OutputStream() {
+        @Override public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            writeBytes(b, off, len);
+        }
+    };
+
+    /**
+     * @param socket   DatagramSocket cujo mapeamento NAT já foi aberto para 'peer' (ver {@link #punch});
+     *                 passa a pertencer a este objeto e é fechado em {@link #close()}
+     * @param localIsn número de sequência do nosso primeiro segmento
+     * @param peerIsn  número de sequência do primeiro segmento do peer
+     */
+    UdpStreamSocket(DatagramSocket socket, InetSocketAddress peer, int localIsn, int peerIsn) {
+        this.socket = socket;
+        this.peer = peer;
+        this.localIsn = localIsn;
+        this.sendBase = localIsn;
+        this.nextSeq = localIsn;
+        this.expected = peerIsn;
+        long now = System.currentTimeMillis();
+        this.lastHeardMs = now;
+        this.lastSentMs = now;
+        Thread t = new Thread(this::receiveLoop, "p2p-udp-stream");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Hole punching: envia datagramas de "punch" com o nosso ISN a 'peer' a cada PUNCH_INTERVAL_MS
+     * (abrindo o mapeamento no nosso NAT) até receber um punch dele, que traz o ISN do outro
+     * sentido, ou até 'windowMs'. Os dois lados chamam ao mesmo tempo, após trocarem os endpoints
+     * observados pelo rendezvous. Retorna o fluxo sobre 'socket' se o caminho direto abriu, ou
+     * null caso contrário (o socket continua sendo do chamador).
+     */
+    public static UdpStreamSocket punch(DatagramSocket socket, InetSocketAddress peer, long windowMs) throws IOException {
+        int isn = RNG.nextInt();
+        byte[] probe = packet(TYPE_PUNCH, isn, PUNCH_PROBE, null, 0, 0);
+        byte[] buf = new byte[HEADER_LEN + MAX_PAYLOAD + 64];
+        DatagramPacket p = new DatagramPacket(buf, buf.length);
+        socket.setSoTimeout((int) PUNCH_INTERVAL_MS);
+        long deadline = System.currentTimeMillis() + windowMs;
+        while (System.currentTimeMillis() < deadline) {
+            socket.send(new DatagramPacket(probe, probe.length, peer));
+            try {
+                p.setLength(buf.length);
+                socket.receive(p);
+            } catch (SocketTimeoutException again) {
+                continue;
+            }
+            // só o punch traz o ISN do peer; dados dele que cheguem antes são ignorados (o fluxo do
+            // peer responde à próxima sonda com outro punch)
+            if (peer.equals(p.getSocketAddress()) && p.getLength() >= HEADER_LEN && buf[0] == TYPE_PUNCH) {
+                int peerIsn = ByteBuffer.wrap(buf, 1, 4).getInt();
+                // alguns punches extras: o nosso primeiro pode ter sido descartado pelo NAT do peer
+                for (int i = 0; i < 3; i++) socket.send(new DatagramPacket(probe, probe.length, peer));
+                return new UdpStreamSocket(socket, peer, isn, peerIsn);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    private int readBytes(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        lock.lock();
+        try {
+            while (readable.isEmpty() && !eof && failure == null && !closed) {
+                canRead.awaitUninterruptibly();
+            }
+            if (closed) throw new IOException("Socket closed");
+            if (readable.isEmpty()) {
+                if (eof) return -1;
+                throw failure;
+            }
+            int n = 0;
+            while (n < len && !readable.isEmpty()) {
+                byte[] head = readable.peekFirst();
+                int c = Math.min(len - n, head.length - readOffset);
+                System.arraycopy(head, readOffset, b, off + n, c);
+                n += c;
+                readOffset += c;
+                if (readOffset == head.length) {
+                    readable.pollFirst();
+                    readOffset = 0;
+                }
+            }
+            unreadBytes -= n;
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        lock.lock();
+        try {
+            for (int pos = 0; pos < len; ) {
+                int c = Math.min(MAX_PAYLOAD, len - pos);
+                awaitWindow();
+                enqueue(TYPE_DATA, b, off + pos, c);
+                pos += c;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitWindow() throws IOException {
+        while (nextSeq - sendBase >= WINDOW && failure == null && !closed && !closing) {
+            try {
+                canSend.await(RTO_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("envio interrompido", e);
+            }
+        }
+        if (closed || closing) throw new IOException("Socket closed");
+        if (failure != null) throw failure;
+    }
+
+    // chamado com 'lock'
+    private void enqueue(byte type, byte[] b, int off, int len) throws IOException {
+        int seq = nextSeq++;
+        byte[] packet = packet(type, seq, expected, b, off, len);
+        int i = Math.floorMod(seq, WINDOW);
+        unacked[i] = packet;
+        tries[i] = 0;
+        sentAt[i] = System.currentTimeMillis();
+        transmit(packet);
+    }
+
+    private static byte[] packet(byte type, int seq, int ack, byte[] b, int off, int len) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LEN + len);
+        buf.put(type).putInt(seq).putInt(ack);
+        if (len > 0) buf.put(b, off, len);
+        return buf.array();
+    }
+
+    private void transmit(byte[] packet) throws IOException {
+        socket.send(new DatagramPacket(packet, packet.length, peer));
+        lastSentMs = System.currentTimeMillis();
+    }
+
+    private void receiveLoop() {
+        byte[] buf = new byte[HEADER_LEN + MAX_PAYLOAD + 64];
+        DatagramPacket p = new DatagramPacket(buf, buf.length);
+        try {
+            socket.setSoTimeout((int) (RTO_MS / 2));
+            while (true) {
+                boolean got;
+                try {
+                    p.setLength(buf.length);
+                    socket.receive(p);
+                    got = true;
+                } catch (SocketTimeoutException idle) {
+                    got = false;
+                }
+                lock.lock();
+                try {
+                    if (got && peer.equals(p.getSocketAddress()) && p.getLength() >= HEADER_LEN) {
+                        onPacket(ByteBuffer.wrap(buf, 0, p.getLength()));
+                    }
+                    if (!tick()) return;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                fail(e);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    // chamado com 'lock'
+    private void onPacket(ByteBuffer b) throws IOException {
+        long now = System.currentTimeMillis();
+        byte type = b.get();
+        int seq = b.getInt();
+        int ack = b.getInt();
+        if (type == TYPE_PUNCH) {
+            // o peer ainda está furando e perdeu os nossos punches: reenvia o nosso ISN (só a sondas, sem eco)
+            if (ack == PUNCH_PROBE) transmit(packet(TYPE_PUNCH, localIsn, PUNCH_REPLY, null, 0, 0));
+            return;
+        }
+        if (type != TYPE_ACK && type != TYPE_DATA && type != TYPE_FIN) return;
+        // ACK de algo que nunca enviamos: forjado (ou lixo); descarta o datagrama inteiro, como o TCP.
+        // ACK atrás de sendBase é duplicata (p.ex. retransmissão com o ACK da época) e só não avança nada.
+        if (ack - sendBase > nextSeq - sendBase) return;
+        int ahead = seq - expected;
+        boolean data = type == TYPE_DATA || type == TYPE_FIN;
+        // só tráfego plausível conta como sinal de vida contra o IDLE_TIMEOUT_MS
+        if (ack - sendBase >= 0 || (data && ahead >= -WINDOW && ahead < WINDOW)) lastHeardMs = now;
+        boolean advanced = false;
+        while (ack - sendBase > 0) {
+            unacked[Math.floorMod(sendBase, WINDOW)] = null;
+            sendBase++;
+            advanced = true;
+        }
+        if (advanced && closed) lingerFromMs = now;
+        canSend.signalAll();
+        if (!data) return;
+        if (ahead >= 0 && ahead < WINDOW && unreadBytes < MAX_UNREAD_BYTES) {
+            byte[] payload;
+            if (type == TYPE_FIN) {
+                payload = FIN_MARK;
+            } else {
+                payload = new byte[b.remaining()];
+                b.get(payload);
+            }
+            reorder[Math.floorMod(seq, WINDOW)] = payload;
+            for (byte[] next = reorder[Math.floorMod(expected, WINDOW)]; next != null; next = reorder[Math.floorMod(expected, WINDOW)]) {
+                reorder[Math.floorMod(expected, WINDOW)] = null;
+                expected++;
+                if (next == FIN_MARK) {
+                    eof = true;
+                } else if (!eof) {
+                    readable.addLast(next);
+                    unreadBytes += next.length;
+                }
+            }
+            canRead.signalAll();
+        }
+        // ACK cumulativo também para duplicatas (o ACK anterior pode ter se perdido)
+        transmit(packet(TYPE_ACK, nextSeq, expected, null, 0, 0));
+    }
+
+    /** Retransmissões, keepalive e timeouts; false quando o laço deve terminar. Chamado com 'lock'. */
+    private boolean tick() throws IOException {
+        long now = System.currentTimeMillis();
+        if (closed) {
+            // após o close, espera o ACK do FIN antes de soltar o socket; desiste após LINGER_MS sem progresso
+            if (sendBase == nextSeq || now - lingerFromMs > LINGER_MS || failure != null) return false;
+        } else if (now - lastHeardMs > IDLE_TIMEOUT_MS) {
+            fail(new IOException("Peer inalcançável via UDP (sem resposta há " + IDLE_TIMEOUT_MS / 1000 + " s)."));
+            return false;
+        }
+        for (int seq = sendBase; seq != nextSeq; seq++) {
+            int i = Math.floorMod(seq, WINDOW);
+            long rto = Math.min(RTO_MS << Math.min(tries[i], 4), MAX_RTO_MS);
+            if (now - sentAt[i] >= rto) {
+                tries[i]++;
+                sentAt[i] = now;
+                transmit(unacked[i]);
+            }
+        }
+        if (now - lastSentMs >= KEEPALIVE_MS) transmit(packet(TYPE_ACK, nextSeq, expected, null, 0, 0));
+        return true;
+    }
+
+    // chamado com 'lock'
+    private void fail(IOException e) {
+        if (failure == null) failure = e;
+        canRead.signalAll();
+        canSend.signalAll();
+    }
+
+    /**
+     * Envia FIN e libera leitores/escritores locais; o socket UDP só é fechado depois do ACK do
+     * FIN (ou após LINGER_MS sem nenhum ACK novo), para que o peer receba o fim do fluxo. Com a janela cheia, o
+     * FIN espera (até LINGER_MS) um slot livre: enfileirá-lo antes sobrescreveria o segmento mais
+     * antigo ainda sem ACK. Se a janela não abrir a tempo, fecha sem FIN (o peer cai no timeout).
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed || closing) return;
+            closing = true;
+            canSend.signalAll(); // escritores esperando janela desistem: o slot livre é do FIN
+            long deadline = System.currentTimeMillis() + LINGER_MS;
+            for (long left = LINGER_MS; nextSeq - sendBase >= WINDOW && failure == null && left > 0;
+                 left = deadline - System.currentTimeMillis()) {
+                try {
+                    canSend.await(Math.min(left, RTO_MS), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (failure == null && nextSeq - sendBase < WINDOW) {
+                try {
+                    enqueue(TYPE_FIN, null, 0, 0);
+                } catch (IOException ignored) {
+                    // socket já indisponível: o laço de recepção encerra sozinho
+                }
+            }
+            closed = true;
+            lingerFromMs = System.currentTimeMillis();
+            canRead.signalAll();
+            canSend.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
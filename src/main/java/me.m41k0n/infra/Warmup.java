@@ -0,0 +1,100 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aquecimento da JIT: executa handshakes completos e troca de registros entre duas sessões sobre
+ * o {@link InMemoryTransport}, exercitando Ed25519, X25519, HKDF, AES-GCM, Gson e o próprio
+ * {@link SecureSession}. Rodando em segundo plano enquanto o CLI faz perguntas, a primeira conexão
+ * real já encontra as classes carregadas e os caminhos quentes compilados.
+ *
+ * Também serve de "execução de treino" para gerar o arquivo AppCDS (perfil Maven "cds").
+ */
+public final class Warmup {
+
+    public static final int DEFAULT_ITERATIONS = 200;
+    private static final int RECORDS_PER_ITERATION = 32;
+
+    private Warmup() {
+    }
+
+    /**
+     * Inicia o aquecimento numa thread daemon de baixa prioridade ("p2p-warmup").
+     * O número de iterações pode ser ajustado com -Dp2p.warmup.iterations (0 desliga).
+     */
+    public static Thread startInBackground() {
+        int iterations = Integer.getInteger("p2p.warmup.iterations", DEFAULT_ITERATIONS);
+        Thread t = new Thread(() -> run(iterations), "p2p-warmup");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        if (iterations > 0) t.start();
+        return t;
+    }
+
+    /**
+     * Executa 'iterations' ciclos de handshake + registros. Retorna quantos completaram;
+     * falhas são silenciosas (aquecimento é best-effort).
+     */
+    public static int run(int iterations) {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+        int done = 0;
+        for (int i = 0; i < iterations; i++) {
+            try {
+                cycle(a, b);
+                done++;
+            } catch (Exception | AssertionError e) {
+                // best-effort: nunca atrapalhar o app
+            }
+        }
+        return done;
+    }
+
+    private static void cycle(PeerIdentity a, PeerIdentity b) throws Exception {
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession initiator = new SecureSession(ends[0], a, b.getPublicKeyBase64(), true);
+        SecureSession responder = new SecureSession(ends[1], b, a.getPublicKeyBase64(), false);
+        initiator.setQuiet(true);
+        responder.setQuiet(true);
+        FutureTask<Void> accept = new FutureTask<>(() -> {
+            responder.startHandshake();
+            return null;
+        });
+        Thread t = new Thread(accept, "p2p-warmup-peer");
+        t.setDaemon(true);
+        t.start();
+        CountDownLatch ended = new CountDownLatch(1);
+        boolean receiving = false;
+        try {
+            initiator.startHandshake();
+            accept.get(5, TimeUnit.SECONDS);
+            CountDownLatch received = new CountDownLatch(RECORDS_PER_ITERATION + 1);
+            responder.runReceiver(new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { received.countDown(); }
+                @Override public void onError(Exception e) { ended.countDown(); }
+                @Override public void onControl(String body) { received.countDown(); }
+            });
+            receiving = true;
+            for (int i = 0; i < RECORDS_PER_ITERATION; i++) initiator.send("aquecimento " + i);
+            initiator.sendControl("warmup|0");
+            received.await(5, TimeUnit.SECONDS);
+        } finally {
+            // fecha só o iniciador: o receptor do outro lado vê EOF e encerra a própria sessão
+            closeQuietly(initiator);
+            if (!receiving || !ended.await(5, TimeUnit.SECONDS)) closeQuietly(responder);
+        }
+    }
+
+    private static void closeQuietly(SecureSession s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+}
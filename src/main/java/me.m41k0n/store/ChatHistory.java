@@ -0,0 +1,402 @@
+package me.m41k0n.store;
+
+import me.m41k0n.infra.AeadUtils;
+import me.m41k0n.infra.Hkdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Histórico local de conversa com um peer: log de mensagens ({@link SegmentedLog}) + índice compacto
+ * mapeado em memória com entradas de tamanho fixo [long endereço no log][long timestamp].
+ *
+ * - Paginação: a mensagem i está na posição fixa i*16 do índice, então abrir qualquer página custa
+ *   O(1) independentemente do tamanho do histórico.
+ * - Busca por tempo: timestamps do índice são monotônicos, então {@link #seek(long)} faz busca binária
+ *   direto no mmap (O(log n), ~20 acessos para 1 milhão de mensagens).
+ * - Busca por palavra (opcional): índice invertido token → posições, mantido incrementalmente a cada
+ *   append e persistido em "tokens" (entradas [long hash][int índice]).
+ *
+ * O texto fica cifrado em repouso (AES-GCM, AAD = timestamp + direção) e os tokens são gravados como
+ * HMAC truncado, então nem o log nem o índice de palavras expõem o conteúdo em claro.
+ */
+public class ChatHistory implements Closeable {
+
+    /** Direção da mensagem em relação ao nó local. */
+    public enum Direction { IN, OUT }
+
+    /** Mensagem do histórico. */
+    public static final class Entry {
+        private final long index;
+        private final long timestampMs;
+        private final Direction direction;
+        private final String text;
+
+        Entry(long index, long timestampMs, Direction direction, String text) {
+            this.index = index;
+            this.timestampMs = timestampMs;
+            this.direction = direction;
+            this.text = text;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private static final int INDEX_HEADER = 16;
+    private static final int INDEX_ENTRY = 16;
+    private static final int CHUNK_ENTRIES = 64 * 1024; // 1 MiB por bloco mapeado
+    private static final int INDEX_MAGIC = 0x48494458; // "HIDX"
+    private static final int POSTING_BYTES = 12;
+    private static final int MIN_TOKEN = 2;
+
+    private final SegmentedLog log;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer indexHeader;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final byte[] atRestKey;
+    private final FileChannel tokenChannel;
+    private final Map<Long, IntList> postings;
+    private final Mac tokenMac;
+    private long count;
+    private long lastTimestamp;
+
+    public ChatHistory(Path dir, byte[] atRestKey, boolean tokenIndex) throws IOException {
+        this(dir, atRestKey, tokenIndex, SegmentedLog.DEFAULT_SEGMENT_BYTES);
+    }
+
+    public ChatHistory(Path dir, byte[] atRestKey, boolean tokenIndex, int segmentBytes) throws IOException {
+        if (atRestKey == null || atRestKey.length != 32) throw new IllegalArgumentException("chave de repouso deve ter 32 bytes");
+        this.atRestKey = atRestKey.clone();
+        this.log = new SegmentedLog(dir.resolve("log"), segmentBytes);
+        this.indexChannel = FileChannel.open(dir.resolve("index"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexHeader = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER);
+        if (indexHeader.getInt(0) != INDEX_MAGIC) {
+            indexHeader.putInt(0, INDEX_MAGIC);
+            indexHeader.putLong(8, 0L);
+        }
+        this.count = indexHeader.getLong(8);
+        this.lastTimestamp = count > 0 ? timestampAt(count - 1) : 0;
+        if (tokenIndex) {
+            this.tokenChannel = FileChannel.open(dir.resolve("tokens"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.postings = new HashMap<>();
+            this.tokenMac = newTokenMac(this.atRestKey);
+        } else {
+            this.tokenChannel = null;
+            this.postings = null;
+            this.tokenMac = null;
+        }
+        recover();
+    }
+
+    /**
+     * Deriva a chave de repouso do histórico a partir da chave privada da identidade local.
+     */
+    public static byte[] deriveAtRestKey(byte[] identityPrivateKey, String peerPubB64) {
+        byte[] info = ("history-at-rest:" + peerPubB64).getBytes(StandardCharsets.UTF_8);
+        return Hkdf.hkdfSha256(identityPrivateKey, null, info, 32);
+    }
+
+    /**
+     * Anexa uma mensagem e retorna seu índice. Timestamps que retrocedem (ajuste de relógio) são
+     * elevados ao último registrado para manter o índice ordenado.
+     */
+    public synchronized long append(Direction direction, long timestampMs, String text) throws IOException {
+        long ts = Math.max(timestampMs, lastTimestamp);
+        byte[] header = recordHeader(ts, direction);
+        byte[] sealed = AeadUtils.encrypt(atRestKey, text.getBytes(StandardCharsets.UTF_8), header);
+        byte[] record = new byte[header.length + sealed.length];
+        System.arraycopy(header, 0, record, 0, header.length);
+        System.arraycopy(sealed, 0, record, header.length, sealed.length);
+        long address = log.append(record);
+        long idx = indexAppend(address, ts);
+        if (postings != null) indexTokens(idx, text);
+        return idx;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    public synchronized Entry get(long index) throws IOException {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("índice fora do histórico: " + index);
+        return decode(index, log.read(addressAt(index)));
+    }
+
+    /**
+     * Até 'max' mensagens a partir de 'fromIndex' (inclusive), em ordem cronológica.
+     */
+    public synchronized List<Entry> page(long fromIndex, int max) throws IOException {
+        List<Entry> out = new ArrayList<>();
+        for (long i = Math.max(0, fromIndex); i < count && out.size() < max; i++) {
+            Entry e = readOrSkip(i);
+            if (e != null) out.add(e);
+        }
+        return out;
+    }
+
+    /** As últimas 'max' mensagens, em ordem cronológica. */
+    public synchronized List<Entry> tail(int max) throws IOException {
+        return page(count - max, max);
+    }
+
+    /**
+     * Índice da primeira mensagem com timestamp >= timestampMs (ou {@link #size()} se nenhuma).
+     */
+    public synchronized long seek(long timestampMs) {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestampAt(mid) < timestampMs) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Busca mensagens que contenham todas as palavras da consulta, mais recentes primeiro.
+     * Requer o índice de palavras habilitado na abertura.
+     */
+    public synchronized List<Entry> search(String query, int limit) throws IOException {
+        if (postings == null) throw new IllegalStateException("índice de palavras desabilitado para este histórico");
+        Set<String> terms = tokenize(query);
+        if (terms.isEmpty()) return Collections.emptyList();
+        int[] result = null;
+        for (String t : terms) {
+            IntList p = postings.get(tokenHash(t));
+            if (p == null) return Collections.emptyList();
+            result = result == null ? p.toArray() : intersect(result, p);
+            if (result.length == 0) return Collections.emptyList();
+        }
+        List<Entry> out = new ArrayList<>();
+        for (int i = result.length - 1; i >= 0 && out.size() < limit; i--) {
+            Entry e = readOrSkip(result[i]);
+            if (e != null) out.add(e);
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        indexHeader.force();
+        for (MappedByteBuffer c : chunks) c.force();
+        indexChannel.close();
+        if (tokenChannel != null) tokenChannel.close();
+        Arrays.fill(atRestKey, (byte) 0);
+    }
+
+    private long indexAppend(long address, long ts) throws IOException {
+        ByteBuffer chunk = chunkFor(count);
+        int off = (int) (count % CHUNK_ENTRIES) * INDEX_ENTRY;
+        chunk.putLong(off, address);
+        chunk.putLong(off + 8, ts);
+        long idx = count++;
+        // contador por último: após queda, entradas não contadas são refeitas a partir do log
+        indexHeader.putLong(8, count);
+        lastTimestamp = ts;
+        return idx;
+    }
+
+    private long addressAt(long index) {
+        return chunkForRead(index).getLong((int) (index % CHUNK_ENTRIES) * INDEX_ENTRY);
+    }
+
+    private long timestampAt(long index) {
+        return chunkForRead(index).getLong((int) (index % CHUNK_ENTRIES) * INDEX_ENTRY + 8);
+    }
+
+    private ByteBuffer chunkForRead(long index) {
+        try {
+            return chunkFor(index);
+        } catch (IOException e) {
+            throw new IllegalStateException("falha ao mapear índice do histórico", e);
+        }
+    }
+
+    private MappedByteBuffer chunkFor(long index) throws IOException {
+        int c = (int) (index / CHUNK_ENTRIES);
+        while (chunks.size() <= c) {
+            long pos = INDEX_HEADER + (long) chunks.size() * CHUNK_ENTRIES * INDEX_ENTRY;
+            chunks.add(indexChannel.map(FileChannel.MapMode.READ_WRITE, pos, (long) CHUNK_ENTRIES * INDEX_ENTRY));
+        }
+        return chunks.get(c);
+    }
+
+    /**
+     * Reconstrói entradas do índice (e do índice de palavras) para registros do log que ficaram
+     * sem indexação após uma queda entre o append no log e a atualização do índice.
+     */
+    private void recover() throws IOException {
+        long next = count == 0 ? log.first() : log.next(addressAt(count - 1));
+        for (long a = next; a < log.end(); a = log.next(a)) {
+            ByteBuffer rec = ByteBuffer.wrap(log.read(a));
+            indexAppend(a, Math.max(rec.getLong(0), lastTimestamp));
+        }
+        if (postings == null) return;
+        int maxIndexed = loadPostings();
+        for (long i = maxIndexed + 1; i < count; i++) {
+            Entry e = readOrSkip(i);
+            if (e != null) indexTokens(i, e.getText());
+        }
+    }
+
+    /** Lê a mensagem ou retorna null (com log) se ela não decifrar, ex.: gravada com outra identidade. */
+    private Entry readOrSkip(long index) throws IOException {
+        try {
+            return get(index);
+        } catch (IllegalStateException ex) {
+            System.err.println("[History] Mensagem #" + index + " ilegível (ignorada): " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private Entry decode(long index, byte[] record) {
+        ByteBuffer b = ByteBuffer.wrap(record);
+        long ts = b.getLong(0);
+        Direction d = record[8] == 0 ? Direction.IN : Direction.OUT;
+        byte[] aad = Arrays.copyOf(record, 9);
+        byte[] sealed = Arrays.copyOfRange(record, 9, record.length);
+        byte[] plain;
+        try {
+            plain = AeadUtils.decrypt(atRestKey, sealed, aad);
+        } catch (RuntimeException ex) {
+            throw new IllegalStateException("mensagem não autenticou com a chave de repouso", ex);
+        }
+        return new Entry(index, ts, d, new String(plain, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] recordHeader(long ts, Direction d) {
+        return ByteBuffer.allocate(9).putLong(ts).put((byte) (d == Direction.IN ? 0 : 1)).array();
+    }
+
+    private void indexTokens(long idx, String text) throws IOException {
+        Set<String> terms = tokenize(text);
+        if (terms.isEmpty()) return;
+        ByteBuffer buf = ByteBuffer.allocate(terms.size() * POSTING_BYTES);
+        for (String t : terms) {
+            long h = tokenHash(t);
+            postings.computeIfAbsent(h, k -> new IntList()).add((int) idx);
+            buf.putLong(h).putInt((int) idx);
+        }
+        buf.flip();
+        long pos = tokenChannel.size();
+        while (buf.hasRemaining()) pos += tokenChannel.write(buf, pos);
+    }
+
+    /** Carrega o índice de palavras do disco e retorna o maior índice de mensagem já indexado. */
+    private int loadPostings() throws IOException {
+        long size = tokenChannel.size() - tokenChannel.size() % POSTING_BYTES;
+        int max = -1;
+        ByteBuffer buf = ByteBuffer.allocate(POSTING_BYTES * 4096);
+        long pos = 0;
+        while (pos < size) {
+            buf.clear();
+            if (size - pos < buf.capacity()) buf.limit((int) (size - pos));
+            while (buf.hasRemaining()) {
+                int n = tokenChannel.read(buf, pos + buf.position());
+                if (n < 0) break;
+            }
+            buf.flip();
+            while (buf.remaining() >= POSTING_BYTES) {
+                long h = buf.getLong();
+                int idx = buf.getInt();
+                if (idx >= count) continue; // posting de mensagem não indexada (queda): será refeito
+                postings.computeIfAbsent(h, k -> new IntList()).add(idx);
+                max = Math.max(max, idx);
+            }
+            pos += buf.limit();
+        }
+        tokenChannel.truncate(size);
+        return max;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> out = new LinkedHashSet<>();
+        for (String t : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+            if (t.length() >= MIN_TOKEN) out.add(t);
+        }
+        return out;
+    }
+
+    private long tokenHash(String token) {
+        return ByteBuffer.wrap(tokenMac.doFinal(token.getBytes(StandardCharsets.UTF_8))).getLong();
+    }
+
+    private static Mac newTokenMac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (Exception e) {
+            throw new IllegalStateException("HMAC indisponível para o índice de palavras", e);
+        }
+    }
+
+    private static int[] intersect(int[] a, IntList b) {
+        int[] out = new int[Math.min(a.length, b.size)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.size) {
+            if (a[i] == b.values[j]) {
+                out[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b.values[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Lista crescente de ints sem boxing (postings em ordem de índice). */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size > 0 && values[size - 1] == v) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package me.m41k0n.store;
+
+import me.m41k0n.infra.AeadUtils;
+import me.m41k0n.infra.Hkdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caixa de saída durável por peer (store-and-forward) sobre um {@link SegmentedLog}.
+ *
+ * As mensagens são gravadas já cifradas (AES-GCM, AAD = chave pública do peer) com uma chave de
+ * repouso derivada da identidade local, então o disco nunca contém texto claro. O cursor de ack
+ * (endereço do último registro confirmado pelo peer) é persistido em "ack"; segmentos inteiramente
+ * confirmados são apagados (compactação).
+ *
+ * Durabilidade em grupo: {@link #enqueue} não força o disco a cada mensagem; um único msync cobre
+ * tudo o que foi enfileirado nos últimos -Dp2p.outboxFlushMs (padrão 100 ms). Como o log é mapeado
+ * em memória, uma queda do processo não perde nada; só uma queda do SO dentro dessa janela perde
+ * as mensagens mais recentes. {@link #flush()} força imediatamente.
+ */
+public class Outbox implements Closeable {
+
+    private static final String ACK_FILE = "ack";
+    private static final long FLUSH_DELAY_MS = Long.getLong("p2p.outboxFlushMs", 100L);
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "p2p-outbox-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final SegmentedLog log;
+    private final Path ackFile;
+    private final byte[] atRestKey;
+    private final byte[] aad;
+    private long ackedUpTo;
+    private boolean flushScheduled;
+
+    /**
+     * Visitante de mensagens pendentes, na ordem de escrita.
+     */
+    public interface PendingVisitor {
+        void visit(long id, String plaintext) throws IOException;
+    }
+
+    public Outbox(Path dir, byte[] atRestKey, String peerPubB64) throws IOException {
+        this(dir, atRestKey, peerPubB64, SegmentedLog.DEFAULT_SEGMENT_BYTES);
+    }
+
+    public Outbox(Path dir, byte[] atRestKey, String peerPubB64, int segmentBytes) throws IOException {
+        if (atRestKey == null || atRestKey.length != 32) throw new IllegalArgumentException("chave de repouso deve ter 32 bytes");
+        this.log = new SegmentedLog(dir, segmentBytes);
+        this.ackFile = dir.resolve(ACK_FILE);
+        this.atRestKey = atRestKey.clone();
+        this.aad = peerPubB64.getBytes(StandardCharsets.UTF_8);
+        this.ackedUpTo = readAck();
+    }
+
+    /**
+     * Deriva a chave de repouso da caixa de saída a partir da chave privada da identidade local.
+     */
+    public static byte[] deriveAtRestKey(byte[] identityPrivateKey, String peerPubB64) {
+        byte[] info = ("outbox-at-rest:" + peerPubB64).getBytes(StandardCharsets.UTF_8);
+        return Hkdf.hkdfSha256(identityPrivateKey, null, info, 32);
+    }
+
+    /**
+     * Grava a mensagem cifrada no log e retorna seu identificador (crescente). O msync é agrupado
+     * com o das mensagens seguintes (ver a doc da classe).
+     */
+    public synchronized long enqueue(String plaintext) throws IOException {
+        byte[] sealed = AeadUtils.encrypt(atRestKey, plaintext.getBytes(StandardCharsets.UTF_8), aad);
+        long id = log.append(sealed);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            FLUSHER.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return id;
+    }
+
+    public synchronized boolean hasPending() throws IOException {
+        return firstPending() < log.end();
+    }
+
+    /**
+     * Visita até 'max' mensagens pendentes posteriores a 'afterId' (use -1 para começar do cursor de ack).
+     * Registros que não decifram (ex.: chave de identidade diferente) são descartados com log.
+     * Retorna o id da última mensagem visitada, ou 'afterId' se nenhuma foi visitada.
+     */
+    public long forEachPending(long afterId, int max, PendingVisitor visitor) throws IOException {
+        long from;
+        synchronized (this) {
+            long start = firstPending();
+            from = afterId >= 0 && afterId >= ackedUpTo ? log.next(afterId) : start;
+            if (from < start) from = start;
+        }
+        long last = afterId;
+        int n = 0;
+        for (long a = from; a < log.end() && n < max; a = log.next(a), n++) {
+            byte[] plain;
+            try {
+                plain = AeadUtils.decrypt(atRestKey, log.read(a), aad);
+            } catch (RuntimeException ex) {
+                System.err.println("[Outbox] Registro " + a + " ilegível (descartado): " + ex.getMessage());
+                last = a;
+                continue;
+            }
+            visitor.visit(a, new String(plain, StandardCharsets.UTF_8));
+            last = a;
+        }
+        return last;
+    }
+
+    /**
+     * Confirma (cumulativamente) todas as mensagens até 'id' e compacta segmentos já confirmados.
+     * Ids já confirmados são ignorados; um id que não é o endereço de uma mensagem pendente (o id
+     * vem do peer) lança IllegalArgumentException sem mexer no cursor.
+     */
+    public synchronized void acknowledge(long id) throws IOException {
+        if (id <= ackedUpTo) return;
+        long a = firstPending();
+        while (a < id && a < log.end()) a = log.next(a);
+        if (a != id || id >= log.end()) throw new IllegalArgumentException("ack não corresponde a uma mensagem pendente: " + id);
+        ackedUpTo = id;
+        log.flush();
+        writeAck(id);
+        log.deleteSegmentsBefore(id);
+    }
+
+    public synchronized long getAckedUpTo() {
+        return ackedUpTo;
+    }
+
+    public synchronized int segmentCount() {
+        return log.segmentCount();
+    }
+
+    /** Força as mensagens enfileiradas para o disco. */
+    public void flush() {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+        log.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        log.close();
+        Arrays.fill(atRestKey, (byte) 0);
+    }
+
+    private long firstPending() throws IOException {
+        return ackedUpTo < 0 ? log.first() : log.next(ackedUpTo);
+    }
+
+    private long readAck() throws IOException {
+        if (!Files.exists(ackFile)) return -1;
+        byte[] b = Files.readAllBytes(ackFile);
+        return b.length == 8 ? ByteBuffer.wrap(b).getLong() : -1;
+    }
+
+    private void writeAck(long id) throws IOException {
+        Path tmp = ackFile.resolveSibling(ACK_FILE + ".tmp");
+        Files.write(tmp, ByteBuffer.allocate(8).putLong(id).array());
+        Files.move(tmp, ackFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,258 @@
+package me.m41k0n.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Log append-only segmentado sobre arquivos mapeados em memória (mmap).
+ *
+ * Cada segmento é um arquivo de tamanho fixo "NNNNNNNNNN.seg" mapeado por inteiro; os dados ficam no
+ * page cache do SO e não no heap, então o log comporta milhões de registros com memória Java constante.
+ *
+ * Layout de cada registro: [int len][int crc32][len bytes]. Um len 0 (área ainda zerada) marca o fim
+ * dos dados do segmento. Na abertura, o segmento ativo é varrido até o último registro íntegro e o
+ * restante é zerado (descarta escrita parcial após queda).
+ *
+ * Endereço de um registro: (número do segmento << 32) | posição no segmento. Endereços são
+ * crescentes na ordem de escrita e servem como identificadores estáveis (ex.: cursor de ack).
+ * Compactação: {@link #deleteSegmentsBefore(long)} apaga segmentos inteiros já consumidos.
+ */
+public class SegmentedLog implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final TreeSet<Integer> segments = new TreeSet<>();
+    private final Map<Integer, MappedByteBuffer> mappings = new ConcurrentHashMap<>();
+
+    private int activeSegment;
+    private MappedByteBuffer active;
+    private int writePos;
+    private volatile long end;
+    private boolean closed;
+
+    public SegmentedLog(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public SegmentedLog(Path dir, int segmentBytes) throws IOException {
+        if (segmentBytes < 4096) throw new IllegalArgumentException("segmentBytes muito pequeno (mínimo 4096)");
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    segments.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // arquivo estranho no diretório: ignora
+                }
+            }
+        }
+        if (segments.isEmpty()) segments.add(0);
+        activeSegment = segments.last();
+        active = map(activeSegment);
+        writePos = recover(active);
+        end = address(activeSegment, writePos);
+    }
+
+    /**
+     * Anexa um registro e retorna seu endereço. Não força o flush em disco (ver {@link #flush()}).
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        return append(data, 0, data.length);
+    }
+
+    public synchronized long append(byte[] data, int off, int len) throws IOException {
+        if (closed) throw new IOException("log fechado");
+        if (len <= 0) throw new IllegalArgumentException("registro vazio");
+        if (len > segmentBytes - HEADER_BYTES) throw new IllegalArgumentException("registro maior que o segmento");
+        if (writePos + HEADER_BYTES + len > segmentBytes) roll();
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        ByteBuffer b = active.duplicate();
+        b.position(writePos + HEADER_BYTES);
+        b.put(data, off, len);
+        b.putInt(writePos + 4, (int) crc.getValue());
+        // len por último: um leitor que vê len != 0 vê o registro completo
+        b.putInt(writePos, len);
+        long addr = address(activeSegment, writePos);
+        writePos += HEADER_BYTES + len;
+        end = address(activeSegment, writePos);
+        return addr;
+    }
+
+    /**
+     * Lê o registro no endereço informado. Lança IllegalStateException se o registro estiver corrompido.
+     */
+    public byte[] read(long address) throws IOException {
+        ByteBuffer b = view(segmentOf(address));
+        int pos = positionOf(address);
+        int len = b.getInt(pos);
+        if (len <= 0 || pos + HEADER_BYTES + len > segmentBytes) throw new IllegalStateException("endereço sem registro: " + address);
+        byte[] out = new byte[len];
+        b.position(pos + HEADER_BYTES);
+        b.get(out);
+        CRC32 crc = new CRC32();
+        crc.update(out, 0, len);
+        if ((int) crc.getValue() != b.getInt(pos + 4)) throw new IllegalStateException("registro corrompido em " + address);
+        return out;
+    }
+
+    /** Endereço do primeiro registro existente (ou {@link #end()} se o log estiver vazio). */
+    public synchronized long first() {
+        long a = address(segments.first(), 0);
+        return a >= end ? end : a;
+    }
+
+    /** Endereço onde o próximo registro será escrito; iterações param ao alcançá-lo. */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * Endereço do registro seguinte ao informado, ou {@link #end()} se não houver.
+     */
+    public long next(long address) throws IOException {
+        int seg = segmentOf(address);
+        ByteBuffer b = view(seg);
+        int pos = positionOf(address);
+        int nextPos = pos + HEADER_BYTES + b.getInt(pos);
+        long current = end;
+        long candidate = address(seg, nextPos);
+        if (candidate >= current) return current;
+        if (nextPos + HEADER_BYTES > segmentBytes || b.getInt(nextPos) == 0) {
+            // fim deste segmento: primeiro registro do próximo segmento existente
+            synchronized (this) {
+                Integer following = segments.higher(seg);
+                return following == null ? end : Math.min(address(following, 0), end);
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Apaga todos os segmentos anteriores ao segmento que contém o endereço informado
+     * (nunca apaga o segmento ativo). Retorna quantos segmentos foram removidos.
+     */
+    public synchronized int deleteSegmentsBefore(long address) throws IOException {
+        int limit = Math.min(segmentOf(address), activeSegment);
+        int removed = 0;
+        while (!segments.isEmpty() && segments.first() < limit) {
+            int seg = segments.pollFirst();
+            mappings.remove(seg);
+            Files.deleteIfExists(segmentPath(seg));
+            removed++;
+        }
+        return removed;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /** Força os dados do segmento ativo para o disco. */
+    public synchronized void flush() {
+        if (!closed) active.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        active.force();
+        closed = true;
+        mappings.clear();
+    }
+
+    public static int segmentOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    public static int positionOf(long address) {
+        return (int) address;
+    }
+
+    private static long address(int segment, int pos) {
+        return ((long) segment << 32) | (pos & 0xFFFFFFFFL);
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        activeSegment++;
+        segments.add(activeSegment);
+        active = map(activeSegment);
+        writePos = 0;
+    }
+
+    private ByteBuffer view(int seg) throws IOException {
+        MappedByteBuffer m = mappings.get(seg);
+        if (m == null) {
+            synchronized (this) {
+                if (!segments.contains(seg)) throw new IllegalStateException("segmento inexistente (compactado?): " + seg);
+                m = map(seg);
+            }
+        }
+        return m.duplicate();
+    }
+
+    private MappedByteBuffer map(int seg) throws IOException {
+        MappedByteBuffer existing = mappings.get(seg);
+        if (existing != null) return existing;
+        try (FileChannel ch = FileChannel.open(segmentPath(seg),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // o mapeamento permanece válido após fechar o canal
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            mappings.put(seg, m);
+            return m;
+        }
+    }
+
+    private Path segmentPath(int seg) {
+        return dir.resolve(String.format("%010d%s", seg, SUFFIX));
+    }
+
+    /**
+     * Varre o segmento até o último registro íntegro e zera o restante. Retorna a posição de escrita.
+     */
+    private int recover(MappedByteBuffer m) {
+        int pos = 0;
+        byte[] scratch = new byte[0];
+        while (pos + HEADER_BYTES <= segmentBytes) {
+            int len = m.getInt(pos);
+            if (len <= 0 || pos + HEADER_BYTES + len > segmentBytes) break;
+            if (scratch.length < len) scratch = new byte[len];
+            ByteBuffer b = m.duplicate();
+            b.position(pos + HEADER_BYTES);
+            b.get(scratch, 0, len);
+            CRC32 crc = new CRC32();
+            crc.update(scratch, 0, len);
+            if ((int) crc.getValue() != m.getInt(pos + 4)) break;
+            pos += HEADER_BYTES + len;
+        }
+        // zera o cabeçalho seguinte e qualquer sobra de escrita parcial (páginas podem ter sido
+        // persistidas fora de ordem antes da queda)
+        int i = pos;
+        for (; i + 8 <= segmentBytes; i += 8) {
+            if (m.getLong(i) != 0L) m.putLong(i, 0L);
+        }
+        for (; i < segmentBytes; i++) {
+            m.put(i, (byte) 0);
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,129 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Modo frota: vários peers fixados conectam ao mesmo listener ao mesmo tempo, localizados pela
+ * impressão digital enviada no handshake.
+ */
+public class FleetIntegrationTest {
+
+    private static SecureSession dial(int port, PeerIdentity me, PeerIdentity server) throws Exception {
+        SecureSession s = new SecureSession(new TcpSocketAdapter(new Socket("127.0.0.1", port)), me, server.getPublicKeyBase64(), true);
+        s.startHandshake();
+        return s;
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void servesManyPinnedPeersConcurrently() throws Exception {
+        PeerIdentity server = CryptoUtils.generateEd25519KeyPair();
+        Map<String, String> trusted = new ConcurrentHashMap<>();
+        List<PeerIdentity> clients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            PeerIdentity c = CryptoUtils.generateEd25519KeyPair();
+            clients.add(c);
+            trusted.put(CryptoUtils.fingerprintHex(c.getPublicKeyBase64()), c.getPublicKeyBase64());
+        }
+        SessionRegistry registry = new SessionRegistry();
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+
+        try (PeerListener listener = new PeerListener(0, server, new HandshakeGuard(1000, 1000, 64, -1))) {
+            listener.start();
+            listener.attach(trusted::get, session -> {
+                registry.register(session);
+                session.runReceiver(registry.handlerFor(session, new SecureSession.MessageHandler() {
+                    @Override public void onPlaintext(String text) { inbox.add(text); }
+                    @Override public void onError(Exception e) { }
+                }));
+            });
+            int port = listener.getPort();
+
+            List<CompletableFuture<SecureSession>> dials = new ArrayList<>();
+            for (PeerIdentity c : clients) {
+                dials.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return dial(port, c, server);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            List<SecureSession> sessions = new ArrayList<>();
+            for (CompletableFuture<SecureSession> f : dials) sessions.add(f.get(20, TimeUnit.SECONDS));
+            for (int i = 0; i < sessions.size(); i++) sessions.get(i).send("oi " + i);
+            for (int i = 0; i < sessions.size(); i++) assertNotNull(inbox.poll(5, TimeUnit.SECONDS));
+
+            assertEquals(clients.size(), registry.size());
+            for (PeerIdentity c : clients) assertNotNull(registry.get(c.getPublicKeyBase64()));
+
+            // desconexão tira o peer da tabela
+            sessions.get(0).close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (registry.get(clients.get(0).getPublicKeyBase64()) != null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertNull(registry.get(clients.get(0).getPublicKeyBase64()));
+
+            for (SecureSession s : sessions) s.close();
+            registry.closeAll();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void reconnectReplacesPreviousSessionAndUnknownPeerIsRejected() throws Exception {
+        PeerIdentity server = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity client = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity stranger = CryptoUtils.generateEd25519KeyPair();
+        String fp = CryptoUtils.fingerprintHex(client.getPublicKeyBase64());
+        SessionRegistry registry = new SessionRegistry();
+        BlockingQueue<SecureSession> delivered = new LinkedBlockingQueue<>();
+
+        try (PeerListener listener = new PeerListener(0, server, new HandshakeGuard(1000, 1000, 64, -1))) {
+            listener.start();
+            listener.attach(f -> fp.equals(f) ? client.getPublicKeyBase64() : null, session -> {
+                registry.register(session);
+                delivered.add(session);
+            });
+            int port = listener.getPort();
+
+            SecureSession c1 = dial(port, client, server);
+            SecureSession first = delivered.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            SecureSession c2 = dial(port, client, server);
+            SecureSession second = delivered.poll(5, TimeUnit.SECONDS);
+            assertNotNull(second);
+
+            assertTrue(first.isClosed(), "a sessão anterior do mesmo peer é encerrada");
+            assertSame(second, registry.get(client.getPublicKeyBase64()));
+            assertEquals(1, registry.size());
+
+            assertThrows(Exception.class, () -> dial(port, stranger, server));
+            assertNull(delivered.poll(300, TimeUnit.MILLISECONDS));
+            assertEquals(1, registry.size());
+
+            c1.close();
+            c2.close();
+            registry.closeAll();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.AeadUtils;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Grupo com um remetente e dois membros sobre sessões pareadas reais (loopback):
+ * distribuição de chave, fan-out do mesmo envelope e rotação ao remover um membro.
+ */
+public class GroupChannelIntegrationTest {
+
+    private static final SecureSession.MessageHandler IGNORE = new SecureSession.MessageHandler() {
+        @Override public void onPlaintext(String text) { }
+        @Override public void onError(Exception e) { }
+    };
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void broadcastReachesAllMembersAndRotationExcludesRemoved() throws Exception {
+        PeerIdentity sender = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+
+        SecureSession[] sa = connect(sender, alice);
+        SecureSession[] sb = connect(sender, bob);
+
+        GroupChannel senderGroup = new GroupChannel("team", sender);
+        GroupChannel aliceGroup = new GroupChannel("team", alice);
+        GroupChannel bobGroup = new GroupChannel("team", bob);
+        BlockingQueue<String> aliceInbox = new LinkedBlockingQueue<>();
+        BlockingQueue<String> bobInbox = new LinkedBlockingQueue<>();
+
+        sa[1].runReceiver(aliceGroup.handlerFor(sa[1], IGNORE, (from, text) -> aliceInbox.add(text)));
+        sb[1].runReceiver(bobGroup.handlerFor(sb[1], IGNORE, (from, text) -> bobInbox.add(text)));
+
+        senderGroup.addMember(sa[0]);
+        senderGroup.addMember(sb[0]);
+        assertEquals(2, senderGroup.broadcast("olá grupo"));
+        assertEquals("olá grupo", aliceInbox.poll(5, TimeUnit.SECONDS));
+        assertEquals("olá grupo", bobInbox.poll(5, TimeUnit.SECONDS));
+
+        senderGroup.removeMember(bob.getPublicKeyBase64());
+        assertEquals(1, senderGroup.broadcast("só alice"));
+        assertEquals("só alice", aliceInbox.poll(5, TimeUnit.SECONDS));
+        assertNull(bobInbox.poll(300, TimeUnit.MILLISECONDS));
+
+        for (SecureSession s : new SecureSession[]{sa[0], sa[1], sb[0], sb[1]}) s.close();
+    }
+
+    @Test
+    void openRejectsReplayAndForeignSender() throws Exception {
+        PeerIdentity p = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity q = CryptoUtils.generateEd25519KeyPair();
+        GroupChannel receiver = new GroupChannel("g1", q);
+        GroupChannel other = new GroupChannel("g1", q);
+        // chave distribuída manualmente (simula registro de controle vindo do peer P)
+        String keyB64 = Base64.getEncoder().encodeToString(new byte[32]);
+        assertTrue(receiver.handleControl(p.getPublicKeyBase64(), "gkey|g1|kid|" + keyB64));
+        assertFalse(other.handleControl(p.getPublicKeyBase64(), "gkey|outro|kid|" + keyB64));
+
+        String env = envelope(p, new byte[32], "g1|kid|0", "x");
+        assertThrows(IllegalStateException.class, () -> receiver.open(q.getPublicKeyBase64(), env));
+        assertEquals("x", receiver.open(p.getPublicKeyBase64(), env));
+        assertThrows(IllegalStateException.class, () -> receiver.open(p.getPublicKeyBase64(), env));
+    }
+
+    @Test
+    void memberCannotHijackAnotherMembersKeyId() throws Exception {
+        PeerIdentity v = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity m = CryptoUtils.generateEd25519KeyPair();
+        GroupChannel receiver = new GroupChannel("g1", CryptoUtils.generateEd25519KeyPair());
+        byte[] victimKey = new byte[32];
+        victimKey[0] = 1;
+        assertTrue(receiver.handleControl(v.getPublicKeyBase64(), "gkey|g1|kid|" + Base64.getEncoder().encodeToString(victimKey)));
+        // M viu o keyId de V num envelope e tenta registrar a própria chave com ele
+        assertTrue(receiver.handleControl(m.getPublicKeyBase64(), "gkey|g1|kid|" + Base64.getEncoder().encodeToString(new byte[32])));
+
+        String fromVictim = envelope(v, victimKey, "g1|kid|0", "de V");
+        String forged = envelope(m, new byte[32], "g1|kid|0", "falso");
+        assertEquals("de V", receiver.open(v.getPublicKeyBase64(), fromVictim));
+        // a chave de M só abre envelopes entregues pela sessão de M
+        assertThrows(IllegalStateException.class, () -> receiver.open(v.getPublicKeyBase64(), forged));
+        assertEquals("falso", receiver.open(m.getPublicKeyBase64(), forged));
+    }
+
+    @Test
+    void memberKnowingTheSenderKeyCannotForgeEnvelopes() throws Exception {
+        PeerIdentity v = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity m = CryptoUtils.generateEd25519KeyPair();
+        GroupChannel receiver = new GroupChannel("g1", CryptoUtils.generateEd25519KeyPair());
+        byte[] victimKey = new byte[32];
+        victimKey[0] = 1;
+        assertTrue(receiver.handleControl(v.getPublicKeyBase64(), "gkey|g1|kid|" + Base64.getEncoder().encodeToString(victimKey)));
+
+        // M recebeu a chave de V como membro e injeta no fluxo de V (ex.: no caminho, fora do AEAD pareado)
+        String forged = envelope(m, victimKey, "g1|kid|0", "falso em nome de V");
+        assertThrows(IllegalStateException.class, () -> receiver.open(v.getPublicKeyBase64(), forged));
+        String unsigned = forged.substring(0, forged.lastIndexOf('|'));
+        assertThrows(IllegalArgumentException.class, () -> receiver.open(v.getPublicKeyBase64(), unsigned));
+        // a rejeição não consome o gseq: a mensagem legítima ainda abre
+        assertEquals("de V", receiver.open(v.getPublicKeyBase64(), envelope(v, victimKey, "g1|kid|0", "de V")));
+    }
+
+    private static String envelope(PeerIdentity signer, byte[] key, String header, String text) {
+        String signed = header + "|" + AeadUtils.encryptToBase64(key, text.getBytes(StandardCharsets.UTF_8),
+                header.getBytes(StandardCharsets.UTF_8));
+        return signed + "|" + signer.sign(signed);
+    }
+
+    private static SecureSession[] connect(PeerIdentity dialer, PeerIdentity listener) throws Exception {
+        try (ServerSocket ss = new ServerSocket(0)) {
+            CompletableFuture<SecureSession> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    Socket s = ss.accept();
+                    SecureSession session = new SecureSession(new TcpSocketAdapter(s), listener, dialer.getPublicKeyBase64(), false);
+                    session.startHandshake();
+                    return session;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Socket c = new Socket();
+            c.connect(new InetSocketAddress("127.0.0.1", ss.getLocalPort()), 2000);
+            SecureSession out = new SecureSession(new TcpSocketAdapter(c), dialer, listener.getPublicKeyBase64(), true);
+            out.startHandshake();
+            return new SecureSession[]{out, accepted.get(5, TimeUnit.SECONDS)};
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Corrida happy eyeballs: um candidato morto (porta fechada) e um hostname que resolve para o
+ * listener real. A sessão vencedora deve ser a do caminho válido, sem esperar o candidato morto.
+ */
+public class HappyEyeballsDialerIntegrationTest {
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void racesCandidatesAndKeepsFirstCompletedHandshake() throws Exception {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+
+        int deadPort;
+        try (ServerSocket tmp = new ServerSocket(0)) {
+            deadPort = tmp.getLocalPort();
+        }
+
+        try (ServerSocket ss = new ServerSocket(0)) {
+            int port = ss.getLocalPort();
+            CompletableFuture<SecureSession> responder = CompletableFuture.supplyAsync(() -> {
+                try {
+                    Socket s = ss.accept();
+                    SecureSession session = new SecureSession(new TcpSocketAdapter(s), a, b.getPublicKeyBase64(), false);
+                    session.startHandshake();
+                    return session;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            HappyEyeballsDialer dialer = new HappyEyeballsDialer(b, a.getPublicKeyBase64(), 100, 1000);
+            SecureSession won = dialer.race(Arrays.asList(
+                    new PeerEndpoint("127.0.0.1", deadPort),
+                    new PeerEndpoint("localhost", port)), new AtomicBoolean(false));
+
+            assertNotNull(won, "alguma tentativa deveria concluir o handshake");
+            try (SecureSession server = responder.get(5, TimeUnit.SECONDS)) {
+                assertFalse(won.isClosed());
+                assertFalse(server.isClosed());
+            } finally {
+                won.close();
+            }
+        }
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void returnsNullWhenAllCandidatesFail() throws Exception {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+        int deadPort;
+        try (ServerSocket tmp = new ServerSocket(0)) {
+            deadPort = tmp.getLocalPort();
+        }
+        HappyEyeballsDialer dialer = new HappyEyeballsDialer(b, a.getPublicKeyBase64(), 50, 500);
+        assertNull(dialer.race(Arrays.asList(new PeerEndpoint("127.0.0.1", deadPort)), new AtomicBoolean(false)));
+    }
+}
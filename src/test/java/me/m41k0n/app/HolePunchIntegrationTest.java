@@ -0,0 +1,62 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+import me.m41k0n.infra.SecureSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Rendezvous local: os peers trocam endpoints UDP, furam e conversam direto, sem relay.
+ */
+public class HolePunchIntegrationTest {
+
+    private static CompletableFuture<SecureSession> punch(int port, PeerIdentity me, PeerIdentity peer) {
+        HolePuncher h = new HolePuncher(new PeerEndpoint("127.0.0.1", port), me, peer.getPublicKeyBase64());
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return h.connect(10_000);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void peersMeetThroughRendezvousAndTalkOverUdp() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        try (RendezvousServer rdv = new RendezvousServer(0, new HandshakeGuard(1000, 1000, 64, -1), 10_000)) {
+            rdv.start();
+            CompletableFuture<SecureSession> fa = punch(rdv.getPort(), alice, bob);
+            CompletableFuture<SecureSession> fb = punch(rdv.getPort(), bob, alice);
+            SecureSession a = fa.get(30, TimeUnit.SECONDS);
+            SecureSession b = fb.get(30, TimeUnit.SECONDS);
+            assertEquals(bob.getPublicKeyBase64(), a.getPeerStaticPubB64());
+            assertEquals(alice.getPublicKeyBase64(), b.getPeerStaticPubB64());
+
+            BlockingQueue<String> toB = new LinkedBlockingQueue<>();
+            b.runReceiver(new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { toB.add(text); }
+                @Override public void onError(Exception e) { toB.add(e == null ? "<eof>" : "<erro>"); }
+            });
+            String big = new String(new char[6000]).replace('\0', 'u');
+            for (int i = 0; i < 20; i++) a.send(big + i);
+            for (int i = 0; i < 20; i++) assertEquals(big + i, toB.poll(10, TimeUnit.SECONDS));
+            a.close();
+            assertEquals("<eof>", toB.poll(10, TimeUnit.SECONDS));
+            b.close();
+            assertEquals(0, rdv.getWaitingCount());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdentityStoreTest {
+
+    // poucas iterações para o teste ser rápido; o padrão de produção é DEFAULT_ITERATIONS
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    void keepsSameIdentityAcrossLoads(@TempDir Path dir) throws Exception {
+        IdentityStore store = new IdentityStore(dir.resolve("identity.json"), ITERATIONS);
+        assertFalse(store.exists());
+        PeerIdentity created = store.loadOrCreate("s3nha".toCharArray());
+        assertTrue(store.exists());
+
+        PeerIdentity loaded = new IdentityStore(dir.resolve("identity.json"), ITERATIONS).load("s3nha".toCharArray());
+        assertEquals(created.getPublicKeyBase64(), loaded.getPublicKeyBase64());
+        String sig = loaded.sign("dados");
+        assertTrue(CryptoUtils.verify(created.getPublicKey(), "dados", sig));
+    }
+
+    @Test
+    void rejectsWrongPassphraseAndStoresNoPlainPrivateKey(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("identity.json");
+        IdentityStore store = new IdentityStore(file, ITERATIONS);
+        PeerIdentity id = store.loadOrCreate("certa".toCharArray());
+
+        assertThrows(IllegalStateException.class, () -> store.load("errada".toCharArray()));
+        String raw = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertFalse(raw.contains(Base64.getEncoder().encodeToString(id.getPrivateKey())));
+    }
+
+    @Test
+    void detectsSwappedPublicKey(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("identity.json");
+        IdentityStore store = new IdentityStore(file, ITERATIONS);
+        PeerIdentity id = store.loadOrCreate(new char[0]);
+        String other = CryptoUtils.generateEd25519KeyPair().getPublicKeyBase64();
+        String raw = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Files.write(file, raw.replace(id.getPublicKeyBase64(), other).getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () -> store.load(new char[0]), "AAD amarra a chave privada à pública");
+    }
+}
@@ -0,0 +1,100 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LanDiscoveryTest {
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+    private final PeerIdentity me = CryptoUtils.generateEd25519KeyPair();
+    private final PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+
+    private LanDiscovery node(PeerIdentity id, int port) {
+        return new LanDiscovery(id, port, clock::get);
+    }
+
+    @Test
+    void signedAnnouncementPopulatesLiveTableUntilExpiry() throws Exception {
+        LanDiscovery local = node(me, 9000);
+        LanDiscovery remote = node(alice, 9100);
+        InetAddress from = InetAddress.getByName("192.168.1.20");
+
+        assertTrue(local.onDatagram(remote.announcement(), from));
+        assertEquals(List.of(new PeerEndpoint("192.168.1.20", 9100)), local.endpointsOf(alice.getPublicKeyBase64()));
+        assertEquals(List.of(alice.getPublicKeyBase64()),
+                local.present(List.of(me.getPublicKeyBase64(), alice.getPublicKeyBase64())));
+
+        clock.addAndGet(LanDiscovery.EXPIRY_MS + 1);
+        assertTrue(local.endpointsOf(alice.getPublicKeyBase64()).isEmpty(), "expira sem novos anúncios");
+        assertTrue(local.livePeers().isEmpty());
+
+        // anúncio mais novo de outro IP: peer volta com o endpoint atualizado
+        assertTrue(local.onDatagram(remote.announcement(), InetAddress.getByName("192.168.1.21")));
+        assertEquals(List.of(new PeerEndpoint("192.168.1.21", 9100)), local.endpointsOf(alice.getPublicKeyBase64()));
+    }
+
+    @Test
+    void rejectsForgedReplayedSkewedAndOwnAnnouncements() throws Exception {
+        LanDiscovery local = node(me, 9000);
+        LanDiscovery remote = node(alice, 9100);
+        InetAddress from = InetAddress.getByName("10.0.0.7");
+
+        String good = remote.announcement();
+        // mesmo corpo assinado por outra chave
+        String body = good.substring(0, good.lastIndexOf('|'));
+        PeerIdentity mallory = CryptoUtils.generateEd25519KeyPair();
+        assertFalse(local.onDatagram(body + "|" + mallory.sign(body), from), "assinatura de outra chave");
+        assertFalse(local.onDatagram(body.replace("|9100|", "|9200|") + good.substring(good.lastIndexOf('|')), from), "porta adulterada");
+
+        assertTrue(local.onDatagram(good, from));
+        assertFalse(local.onDatagram(good, from), "repetido");
+
+        clock.addAndGet(LanDiscovery.MAX_CLOCK_SKEW_MS * 2);
+        LanDiscovery stale = new LanDiscovery(alice, 9100, () -> clock.get() - LanDiscovery.MAX_CLOCK_SKEW_MS * 2);
+        assertFalse(local.onDatagram(stale.announcement(), from), "relógio fora da tolerância");
+
+        assertFalse(local.onDatagram(local.announcement(), from), "o próprio anúncio é ignorado");
+        assertFalse(local.onDatagram("lixo|qualquer", from));
+    }
+
+    @Test
+    void signatureChecksAreRateLimitedPerSource() throws Exception {
+        LanDiscovery local = node(me, 9000);
+        List<String> flood = new ArrayList<>();
+        for (int i = 0; i < 40; i++) flood.add(node(CryptoUtils.generateEd25519KeyPair(), 9100 + i).announcement());
+        InetAddress from = InetAddress.getByName("10.0.0.66");
+        int accepted = 0;
+        for (String a : flood) if (local.onDatagram(a, from)) accepted++;
+        assertTrue(accepted >= 20 && accepted < 40, "rajada por IP limitada, aceitos=" + accepted);
+        assertTrue(local.onDatagram(node(alice, 9100).announcement(), InetAddress.getByName("10.0.0.67")), "outro IP não é afetado");
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void awaitPeerWakesWhenPeerAnnounces() throws Exception {
+        LanDiscovery local = node(me, 9000);
+        CompletableFuture<PeerEndpoint> seen = CompletableFuture.supplyAsync(() -> {
+            try {
+                return local.awaitPeer(alice.getPublicKeyBase64(), 5000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertTrue(local.onDatagram(node(alice, 9100).announcement(), InetAddress.getByName("192.168.0.9")));
+        assertEquals(new PeerEndpoint("192.168.0.9", 9100), seen.get(5, TimeUnit.SECONDS));
+        assertNull(local.awaitPeer(me.getPublicKeyBase64(), 50));
+    }
+}
@@ -0,0 +1,94 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.store.Outbox;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Composição offline: o que é digitado antes de o peer conectar vai para a outbox e é entregue
+ * quando a sessão abre.
+ */
+public class P2PConnectorIntegrationTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void linesTypedWhilePeerIsOfflineAreDeliveredOnConnect(@TempDir Path dir) throws Exception {
+        PeerIdentity me = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity peer = CryptoUtils.generateEd25519KeyPair();
+        PipedOutputStream typing = new PipedOutputStream();
+        Scanner scanner = new Scanner(new PipedInputStream(typing), StandardCharsets.UTF_8.name());
+
+        try (PeerListener listener = PeerListener.open(0, me);
+             Outbox outbox = new Outbox(dir, new byte[32], peer.getPublicKeyBase64())) {
+            P2PConnector connector = new P2PConnector(null, new StoreAndForward(outbox));
+            CompletableFuture<Void> cli = CompletableFuture.runAsync(() -> {
+                try {
+                    connector.startPeerRace(listener, Collections.emptyList(), me, peer.getPublicKeyBase64(), scanner);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            typing.write("escrita offline\n".getBytes(StandardCharsets.UTF_8));
+            typing.flush();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!outbox.hasPending() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertTrue(outbox.hasPending(), "linha digitada offline deve ir para a outbox");
+
+            SecureSession session = new HappyEyeballsDialer(peer, me.getPublicKeyBase64()).race(
+                    Collections.singletonList(new PeerEndpoint("127.0.0.1", listener.getPort())), new AtomicBoolean(false));
+            assertNotNull(session);
+            BlockingQueue<String> received = new LinkedBlockingQueue<>();
+            session.runReceiver(new StoreAndForward(null).handlerFor(session, new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { received.add(text); }
+                @Override public void onError(Exception e) { received.add("<fim>"); }
+            }));
+            String first = received.poll(5, TimeUnit.SECONDS);
+            if ("[/ready]".equals(first)) first = received.poll(5, TimeUnit.SECONDS);
+            assertEquals("escrita offline", first);
+            long acked = System.currentTimeMillis() + 5000;
+            while (outbox.hasPending() && System.currentTimeMillis() < acked) Thread.sleep(20);
+            assertFalse(outbox.hasPending(), "ack do peer confirma a entrega");
+
+            // linha digitada com a sessão aberta segue pelo caminho normal
+            typing.write("online\n/exit\n".getBytes(StandardCharsets.UTF_8));
+            typing.flush();
+            assertEquals("online", received.poll(5, TimeUnit.SECONDS));
+            cli.get(10, TimeUnit.SECONDS);
+            assertEquals("<fim>", received.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void exitWhileWaitingCancelsTheRace(@TempDir Path dir) throws Exception {
+        PeerIdentity me = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity peer = CryptoUtils.generateEd25519KeyPair();
+        Scanner scanner = new Scanner("/exit\n");
+        try (PeerListener listener = PeerListener.open(0, me);
+             Outbox outbox = new Outbox(dir, new byte[32], peer.getPublicKeyBase64())) {
+            new P2PConnector(null, new StoreAndForward(outbox))
+                    .startPeerRace(listener, Collections.emptyList(), me, peer.getPublicKeyBase64(), scanner);
+            assertFalse(outbox.hasPending());
+        }
+    }
+}
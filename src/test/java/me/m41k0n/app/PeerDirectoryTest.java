@@ -0,0 +1,61 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeerDirectoryTest {
+
+    private static final String PEER = "UEVFUi1LRVk=";
+
+    @Test
+    void ranksFastestSuccessfulEndpointFirstAndFailingLast(@TempDir Path dir) {
+        PeerDirectory d = new PeerDirectory(dir.resolve("peers.json"));
+        PeerEndpoint slow = new PeerEndpoint("10.0.0.1", 9000);
+        PeerEndpoint fast = new PeerEndpoint("10.0.0.2", 9000);
+        PeerEndpoint broken = new PeerEndpoint("10.0.0.3", 9000);
+        PeerEndpoint fresh = new PeerEndpoint("peer.local", 9000);
+
+        d.recordSuccess(PEER, slow, 120);
+        d.recordSuccess(PEER, fast, 15);
+        d.recordSuccess(PEER, broken, 5);
+        d.recordFailure(PEER, broken);
+
+        List<PeerEndpoint> ranked = d.rank(PEER, Collections.singletonList(fresh));
+        assertEquals(Arrays.asList(fast, slow, fresh, broken), ranked);
+    }
+
+    @Test
+    void persistsAcrossInstances(@TempDir Path dir) {
+        Path file = dir.resolve("peers.json");
+        PeerDirectory d = new PeerDirectory(file);
+        PeerEndpoint ep = new PeerEndpoint("fe80::1", 7000);
+        d.recordSuccess(PEER, ep, 40);
+        d.recordSuccess(PEER, ep, 20);
+        d.setAlias(PEER, "alice");
+
+        PeerDirectory reloaded = new PeerDirectory(file);
+        assertEquals(Collections.singletonList(PEER), reloaded.knownPeers());
+        assertEquals(Collections.singletonList(ep), reloaded.knownEndpoints(PEER));
+        PeerDirectory.EndpointStats stats = reloaded.get(PEER).getEndpoints().get(0);
+        assertEquals(2, stats.getSuccesses());
+        assertEquals(0, stats.getConsecutiveFailures());
+        // EWMA: 0.3 * 20 + 0.7 * 40
+        assertEquals(34.0, stats.getHandshakeMsEwma(), 0.001);
+        assertEquals("alice", reloaded.get(PEER).getAlias());
+    }
+
+    @Test
+    void unknownPeerHasNoEndpoints(@TempDir Path dir) {
+        PeerDirectory d = new PeerDirectory(dir.resolve("peers.json"));
+        assertTrue(d.knownEndpoints("outro").isEmpty());
+        assertTrue(d.knownPeers().isEmpty());
+    }
+}
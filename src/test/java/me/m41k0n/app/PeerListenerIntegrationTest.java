@@ -0,0 +1,116 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * O listener mantém a porta aberta entre sessões e entrega cada sessão autenticada ao consumidor anexado;
+ * desanexado, só estaciona sessões de peers do trust store de espera.
+ */
+public class PeerListenerIntegrationTest {
+
+    private static SecureSession dial(int port, PeerIdentity me, PeerIdentity server) throws Exception {
+        SecureSession s = new SecureSession(new TcpSocketAdapter(new Socket("127.0.0.1", port)), me, server.getPublicKeyBase64(), true);
+        s.startHandshake();
+        return s;
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void acceptsSuccessiveSessionsOnTheSamePort() throws Exception {
+        PeerIdentity server = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity client = CryptoUtils.generateEd25519KeyPair();
+        try (PeerListener listener = new PeerListener(0, server, new HandshakeGuard(100, 100, 8, -1))) {
+            listener.start();
+            int port = listener.getPort();
+            BlockingQueue<SecureSession> sessions = new LinkedBlockingQueue<>();
+            listener.attach(client.getPublicKeyBase64(), sessions::add);
+
+            for (int round = 0; round < 3; round++) {
+                SecureSession c = dial(port, client, server);
+                SecureSession s = sessions.poll(5, TimeUnit.SECONDS);
+                assertNotNull(s, "sessão " + round + " deveria ter sido entregue");
+                assertEquals(client.getPublicKeyBase64(), s.getPeerStaticPubB64());
+                c.close();
+                s.close();
+            }
+            assertEquals(port, listener.getPort());
+
+            // desanexado: a conexão é aceita e fechada antes de qualquer handshake
+            listener.detach();
+            assertThrows(Exception.class, () -> dial(port, client, server));
+            assertNull(sessions.poll(200, TimeUnit.MILLISECONDS));
+
+            // reanexar volta a entregar sessões, sem reabrir a porta
+            listener.attach(client.getPublicKeyBase64(), sessions::add);
+            SecureSession c = dial(port, client, server);
+            SecureSession s = sessions.poll(5, TimeUnit.SECONDS);
+            assertNotNull(s);
+            c.close();
+            s.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void rejectsSessionsFromUnexpectedPeer() throws Exception {
+        PeerIdentity server = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity expected = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity intruder = CryptoUtils.generateEd25519KeyPair();
+        try (PeerListener listener = new PeerListener(0, server, new HandshakeGuard(100, 100, 8, -1))) {
+            listener.start();
+            BlockingQueue<SecureSession> sessions = new LinkedBlockingQueue<>();
+            listener.attach(expected.getPublicKeyBase64(), sessions::add);
+            assertThrows(Exception.class, () -> dial(listener.getPort(), intruder, server));
+            assertNull(sessions.poll(300, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void parksTrustedSessionsWhileDetachedAndHandsThemToTheNextAttach() throws Exception {
+        PeerIdentity server = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity pinned = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity stranger = CryptoUtils.generateEd25519KeyPair();
+        String pinnedFp = CryptoUtils.fingerprintHex(pinned.getPublicKeyBase64());
+        try (PeerListener listener = new PeerListener(0, server, new HandshakeGuard(100, 100, 8, -1))) {
+            listener.start();
+            listener.parkWhileDetached(fp -> pinnedFp.equals(fp) ? pinned.getPublicKeyBase64() : null);
+
+            // desanexado: o peer fixado completa o handshake e já envia; o desconhecido continua recusado
+            SecureSession c = dial(listener.getPort(), pinned, server);
+            c.send("enviada antes do attach");
+            assertThrows(Exception.class, () -> dial(listener.getPort(), stranger, server));
+
+            BlockingQueue<SecureSession> sessions = new LinkedBlockingQueue<>();
+            listener.attach(pinned.getPublicKeyBase64(), sessions::add);
+            SecureSession s = sessions.poll(5, TimeUnit.SECONDS);
+            assertNotNull(s, "a sessão estacionada deve ser entregue ao attach");
+            assertEquals(pinned.getPublicKeyBase64(), s.getPeerStaticPubB64());
+
+            BlockingQueue<String> received = new LinkedBlockingQueue<>();
+            CountDownLatch ended = new CountDownLatch(1);
+            s.runReceiver(new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { received.add(text); }
+                @Override public void onError(Exception e) { ended.countDown(); }
+            });
+            assertEquals("enviada antes do attach", received.poll(5, TimeUnit.SECONDS));
+            c.close();
+            assertTrue(ended.await(5, TimeUnit.SECONDS));
+            assertNull(sessions.poll(200, TimeUnit.MILLISECONDS), "cada sessão estacionada é entregue uma vez só");
+        }
+    }
+}
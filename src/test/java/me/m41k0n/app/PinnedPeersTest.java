@@ -0,0 +1,46 @@
+package me.m41k0n.app;
+
+import me.m41k0n.infra.CryptoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PinnedPeersTest {
+
+    @Test
+    void pinsPersistAndResolveByFingerprint(@TempDir Path dir) throws Exception {
+        String a = CryptoUtils.generateEd25519KeyPair().getPublicKeyBase64();
+        String b = CryptoUtils.generateEd25519KeyPair().getPublicKeyBase64();
+        PinnedPeers pins = new PinnedPeers(dir.resolve("pinned.json"));
+        assertTrue(pins.pin(a, "alice"));
+        assertFalse(pins.pin(a, null), "fixar de novo é idempotente");
+        assertTrue(pins.pin(b, null));
+
+        PinnedPeers reopened = new PinnedPeers(dir.resolve("pinned.json"));
+        assertEquals(List.of(a, b), reopened.publicKeys());
+        assertTrue(reopened.isPinned(a));
+        assertEquals(a, reopened.findByFingerprint(CryptoUtils.fingerprintHex(a)));
+        assertTrue(reopened.unpin(a));
+        assertFalse(new PinnedPeers(dir.resolve("pinned.json")).isPinned(a));
+    }
+
+    @Test
+    void corruptFileIsMovedAsideBeforeAnySave(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("pinned.json");
+        Files.write(file, "{ isto não é json".getBytes(StandardCharsets.UTF_8));
+        PinnedPeers pins = new PinnedPeers(file);
+        assertTrue(pins.publicKeys().isEmpty());
+        assertEquals("{ isto não é json", new String(Files.readAllBytes(dir.resolve("pinned.json.bad")), StandardCharsets.UTF_8));
+
+        String a = CryptoUtils.generateEd25519KeyPair().getPublicKeyBase64();
+        assertTrue(pins.pin(a, null));
+        assertTrue(Files.exists(dir.resolve("pinned.json.bad")), "a gravação não pode apagar o original");
+        assertEquals(List.of(a), new PinnedPeers(file).publicKeys());
+    }
+}
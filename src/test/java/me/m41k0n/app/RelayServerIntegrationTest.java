@@ -0,0 +1,140 @@
+package me.m41k0n.app;
+
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.HandshakeGuard;
+import me.m41k0n.infra.SecureSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dois peers se encontram no relay e conversam fim a fim; o relay só copia bytes.
+ */
+public class RelayServerIntegrationTest {
+
+    private static CompletableFuture<SecureSession> join(int port, PeerIdentity me, PeerIdentity peer) {
+        RelayDialer d = new RelayDialer(new PeerEndpoint("127.0.0.1", port), me, peer.getPublicKeyBase64());
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return d.connect(10_000);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static BlockingQueue<String> inbox(SecureSession s) {
+        BlockingQueue<String> q = new LinkedBlockingQueue<>();
+        s.runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { q.add(text); }
+            @Override public void onError(Exception e) { }
+        });
+        return q;
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void relaysManyPairsEndToEnd() throws Exception {
+        try (RelayServer relay = new RelayServer(0, 2, new HandshakeGuard(1000, 1000, 256, -1), 10_000, 1024, 1024, 60_000)) {
+            relay.start();
+            int port = relay.getPort();
+            int pairs = 20;
+            List<CompletableFuture<SecureSession>> as = new ArrayList<>();
+            List<CompletableFuture<SecureSession>> bs = new ArrayList<>();
+            for (int i = 0; i < pairs; i++) {
+                PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+                PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+                as.add(join(port, a, b));
+                bs.add(join(port, b, a));
+            }
+            String big = new String(new char[8000]).replace('\0', 'x');
+            for (int i = 0; i < pairs; i++) {
+                SecureSession a = as.get(i).get(20, TimeUnit.SECONDS);
+                SecureSession b = bs.get(i).get(20, TimeUnit.SECONDS);
+                BlockingQueue<String> toA = inbox(a);
+                BlockingQueue<String> toB = inbox(b);
+                for (int m = 0; m < 50; m++) a.send(big + m);
+                b.send("pong " + i);
+                for (int m = 0; m < 50; m++) assertEquals(big + m, toB.poll(5, TimeUnit.SECONDS));
+                assertEquals("pong " + i, toA.poll(5, TimeUnit.SECONDS));
+                a.close();
+                b.close();
+            }
+            assertTrue(relay.getBytesRelayed() > (long) pairs * 50 * 8000, "relay copiou o tráfego cifrado");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (relay.getActiveSessions() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(0, relay.getActiveSessions());
+            assertEquals(0, relay.getWaitingCount());
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void rejectsJoinWithForgedSignature() throws Exception {
+        PeerIdentity victim = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity attacker = CryptoUtils.generateEd25519KeyPair();
+        try (RelayServer relay = new RelayServer(0, 1, new HandshakeGuard(1000, 1000, 16, -1), 10_000, 16, 16, 60_000)) {
+            relay.start();
+            try (Socket raw = new Socket("127.0.0.1", relay.getPort())) {
+                InputStream in = raw.getInputStream();
+                String nonce = RelayServer.readLine(in).substring(RelayServer.CHALLENGE_PREFIX.length());
+                // assina com a própria chave mas se apresenta como a vítima
+                String sig = attacker.sign(RelayServer.joinPayload(nonce, victim.getPublicKeyBase64(), attacker.getPublicKeyBase64()));
+                RelayServer.writeLine(raw.getOutputStream(), RelayServer.JOIN_PREFIX + victim.getPublicKeyBase64()
+                        + "|" + attacker.getPublicKeyBase64() + "|" + sig);
+                assertEquals(-1, in.read(), "relay fecha a conexão");
+            }
+            assertEquals(0, relay.getWaitingCount());
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void capsActivePairsAndReapsIdleOnes() throws Exception {
+        try (RelayServer relay = new RelayServer(0, 1, new HandshakeGuard(1000, 1000, 16, -1), 10_000, 16, 1, 500)) {
+            relay.start();
+            int port = relay.getPort();
+            PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+            PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+            CompletableFuture<SecureSession> fa = join(port, a, b);
+            CompletableFuture<SecureSession> fb = join(port, b, a);
+            SecureSession sa = fa.get(10, TimeUnit.SECONDS);
+            SecureSession sb = fb.get(10, TimeUnit.SECONDS);
+            assertEquals(1, relay.getActiveSessions());
+
+            // segundo par acima do limite: recusado
+            PeerIdentity c = CryptoUtils.generateEd25519KeyPair();
+            PeerIdentity d = CryptoUtils.generateEd25519KeyPair();
+            CompletableFuture<SecureSession> fc = join(port, c, d);
+            CompletableFuture<SecureSession> fd = join(port, d, c);
+            assertThrows(Exception.class, () -> fc.get(10, TimeUnit.SECONDS));
+            assertThrows(Exception.class, () -> fd.get(10, TimeUnit.SECONDS));
+
+            // sem tráfego: o par é encerrado pelo relay e a vaga volta
+            CountDownLatch ended = new CountDownLatch(1);
+            sa.runReceiver(new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { }
+                @Override public void onError(Exception e) { ended.countDown(); }
+            });
+            assertTrue(ended.await(10, TimeUnit.SECONDS), "par ocioso deve ser encerrado");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (relay.getActiveSessions() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(0, relay.getActiveSessions());
+            sa.close();
+            sb.close();
+        }
+    }
+}
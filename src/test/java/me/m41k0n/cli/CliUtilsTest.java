@@ -0,0 +1,29 @@
+package me.m41k0n.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CliUtilsTest {
+
+    private static final List<String> KNOWN = List.of("QUFBQQ==", "QkJCQg==");
+
+    @Test
+    void askPeerKey_picksKnownPeerByNumber() {
+        assertEquals("QUFBQQ==", CliUtils.askPeerKey(new Scanner("1\n"), KNOWN, "Chave"));
+        assertEquals("QkJCQg==", CliUtils.askPeerKey(new Scanner("2\n"), KNOWN, "Chave"));
+    }
+
+    @Test
+    void askPeerKey_asksAgainForOutOfRangeNumberOrInvalidKey() {
+        assertEquals("QkJCQg==", CliUtils.askPeerKey(new Scanner("7\n***\n\n2\n"), KNOWN, "Chave"));
+    }
+
+    @Test
+    void askPeerKey_acceptsNewBase64Key() {
+        assertEquals("Q0NDQw==", CliUtils.askPeerKey(new Scanner("Q0NDQw==\n"), KNOWN, "Chave"));
+    }
+}
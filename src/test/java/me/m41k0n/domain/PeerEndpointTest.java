@@ -0,0 +1,58 @@
+package me.m41k0n.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeerEndpointTest {
+
+    @Test
+    void parse_ipv4WithAndWithoutPort() {
+        PeerEndpoint a = PeerEndpoint.parse("192.168.0.10", 9000);
+        assertEquals("192.168.0.10", a.getHost());
+        assertEquals(9000, a.getPort());
+
+        PeerEndpoint b = PeerEndpoint.parse("10.0.0.5:7000", 9000);
+        assertEquals("10.0.0.5", b.getHost());
+        assertEquals(7000, b.getPort());
+        assertTrue(PeerEndpoint.hasExplicitPort("10.0.0.5:7000"));
+        assertFalse(PeerEndpoint.hasExplicitPort("10.0.0.5"));
+    }
+
+    @Test
+    void parse_ipv6BareAndBracketed() {
+        PeerEndpoint a = PeerEndpoint.parse("fe80::1", 9000);
+        assertEquals("fe80::1", a.getHost());
+        assertEquals(9000, a.getPort());
+        assertFalse(PeerEndpoint.hasExplicitPort("fe80::1"));
+
+        PeerEndpoint b = PeerEndpoint.parse("[2001:db8::5]:7000", 9000);
+        assertEquals("2001:db8::5", b.getHost());
+        assertEquals(7000, b.getPort());
+        assertEquals("[2001:db8::5]:7000", b.toString());
+        assertTrue(PeerEndpoint.hasExplicitPort("[2001:db8::5]:7000"));
+
+        assertEquals("::ffff:10.0.0.1", PeerEndpoint.parse("::ffff:10.0.0.1", 1).getHost());
+    }
+
+    @Test
+    void parse_hostname() {
+        PeerEndpoint a = PeerEndpoint.parse("peer-1.local:8080", 9000);
+        assertEquals("peer-1.local", a.getHost());
+        assertEquals(8080, a.getPort());
+        assertEquals(PeerEndpoint.parse("PEER-1.local:8080", 1), a);
+    }
+
+    @Test
+    void parse_rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("256.1.1.1", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("10.0.0.1:99999", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("[fe80::1", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("1:2:3:4:5:6:7:8:9", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("bad_host", 9000));
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("-bad.example", 9000));
+        // sem porta explícita e sem porta padrão válida
+        assertThrows(IllegalArgumentException.class, () -> PeerEndpoint.parse("10.0.0.1", 0));
+    }
+}
@@ -0,0 +1,188 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.Message;
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Orçamento de alocação por operação nos caminhos quentes (bytes alocados pela thread, medidos
+ * pelo ThreadMXBean do HotSpot após aquecimento). Falha se uma mudança fizer a operação alocar
+ * mais que o orçamento: os valores abaixo são a linha de base medida (JDK 17, x86-64) com folga
+ * de ~25% para variação entre JVMs/JIT. Ao reduzir alocações, abaixe o orçamento junto; para
+ * subir, justifique no commit. Os valores medidos são impressos como "[Alloc] ...".
+ */
+public class AllocationBudgetTest {
+
+    private static final int MESSAGE_CHARS = 256;
+    private static final int WARMUP = 5_000;
+    private static final int ITERATIONS = 5_000;
+
+    // bytes por operação (linha de base medida entre parênteses; mensagem de 256 caracteres)
+    private static final long BUDGET_AEAD_SEAL_OPEN = 17_600;    // (14 072) cifra + decifra em Base64
+    private static final long BUDGET_MESSAGE_CODEC = 25_000;     // (~20 000) hs1 toJson + fromJsonValidated
+    private static final long BUDGET_RECORD_SEND = 10_800;       // (~8 600) SecureSession.send até a escrita
+    private static final long BUDGET_RECORD_RECEIVE = 12_000;    // (~9 500) leitura, enquadramento, decifra, entrega
+    private static final long BUDGET_HANDSHAKE = 650_000;        // (~515 000) as duas pontas somadas
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static final String TEXT = "x".repeat(MESSAGE_CHARS);
+    private static final SecureSession.MessageHandler DISCARD = new SecureSession.MessageHandler() {
+        @Override public void onPlaintext(String text) { }
+        @Override public void onError(Exception e) { }
+    };
+    private static ExecutorService responder;
+
+    @BeforeAll
+    static void meter() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean, "JVM sem contagem de alocação por thread");
+        threads = (com.sun.management.ThreadMXBean) mx;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "JVM sem contagem de alocação por thread");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        responder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "alloc-responder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @AfterAll
+    static void stop() {
+        if (responder != null) responder.shutdownNow();
+    }
+
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    /** Bytes alocados por execução de 'op' nas threads 'ids' (a atual sempre conta), após aquecimento. */
+    private static long perOp(String label, long budget, int warmup, int iterations, Op op, long... otherThreads) throws Exception {
+        for (int i = 0; i < warmup; i++) op.run();
+        long[] ids = new long[otherThreads.length + 1];
+        ids[0] = Thread.currentThread().getId();
+        System.arraycopy(otherThreads, 0, ids, 1, otherThreads.length);
+        long before = sum(threads.getThreadAllocatedBytes(ids));
+        for (int i = 0; i < iterations; i++) op.run();
+        long perOp = (sum(threads.getThreadAllocatedBytes(ids)) - before) / iterations;
+        report(label, budget, perOp);
+        return perOp;
+    }
+
+    private static void report(String label, long budget, long perOp) {
+        System.out.printf(Locale.ROOT, "[Alloc] %-15s %8d bytes/op (orçamento %d)%n", label, perOp, budget);
+    }
+
+    private static long sum(long[] values) {
+        long s = 0;
+        for (long v : values) s += v;
+        return s;
+    }
+
+    private static void assertWithin(String label, long budget, long perOp) {
+        assertTrue(perOp <= budget, label + " aloca " + perOp + " bytes/op, acima do orçamento de " + budget
+                + " (mudança no caminho quente? veja a linha de base no topo do teste)");
+    }
+
+    private static SecureSession[] handshake() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        return handshake(alice, bob);
+    }
+
+    private static SecureSession[] handshake(PeerIdentity alice, PeerIdentity bob) throws Exception {
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        Future<?> other = responder.submit(() -> {
+            b.startHandshake();
+            return null;
+        });
+        a.startHandshake();
+        other.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    @Test
+    void aeadSealOpen() throws Exception {
+        byte[] key = new byte[32];
+        byte[] aad = new byte[9];
+        byte[] plain = TEXT.getBytes(StandardCharsets.UTF_8);
+        long perOp = perOp("aead", BUDGET_AEAD_SEAL_OPEN, WARMUP, ITERATIONS,
+                () -> AeadUtils.decryptFromBase64(key, AeadUtils.encryptToBase64(key, plain, aad), aad));
+        assertWithin("AeadUtils seal+open", BUDGET_AEAD_SEAL_OPEN, perOp);
+    }
+
+    @Test
+    void messageCodec() throws Exception {
+        PeerIdentity me = CryptoUtils.generateEd25519KeyPair();
+        String payload = "epk:" + TEXT;
+        String sig = me.sign(payload);
+        long perOp = perOp("message", BUDGET_MESSAGE_CODEC, WARMUP, ITERATIONS,
+                () -> Message.fromJsonValidated(new Message("hs1", me.getPublicKeyBase64(), me.getPublicKeyBase64(), payload, sig).toJson()));
+        assertWithin("Message toJson+fromJson", BUDGET_MESSAGE_CODEC, perOp);
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void recordSendAndReceive() throws Exception {
+        SecureSession[] s = handshake();
+        // o receptor roda na thread do teste: cada registro enviado é lido, enquadrado, decifrado e entregue
+        long me = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            s[0].send(TEXT);
+            receiveOne(s[1]);
+        }
+        long sent = 0;
+        long received = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long t0 = threads.getThreadAllocatedBytes(me);
+            s[0].send(TEXT);
+            long t1 = threads.getThreadAllocatedBytes(me);
+            receiveOne(s[1]);
+            received += threads.getThreadAllocatedBytes(me) - t1;
+            sent += t1 - t0;
+        }
+        s[0].close();
+        s[1].close();
+        report("record send", BUDGET_RECORD_SEND, sent / ITERATIONS);
+        report("record receive", BUDGET_RECORD_RECEIVE, received / ITERATIONS);
+        assertWithin("SecureSession.send", BUDGET_RECORD_SEND, sent / ITERATIONS);
+        assertWithin("recepção de registro", BUDGET_RECORD_RECEIVE, received / ITERATIONS);
+    }
+
+    private static void receiveOne(SecureSession s) throws Exception {
+        SecureSession.Frame f = s.frame(s.readLineLimited());
+        s.acceptSeq(f.seq);
+        s.deliver(f, s.decrypt(f), DISCARD);
+    }
+
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void handshakeBothSides() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        long responderId = responder.submit(() -> Thread.currentThread().getId()).get();
+        long perOp = perOp("handshake", BUDGET_HANDSHAKE, 200, 200, () -> {
+            SecureSession[] s = handshake(alice, bob);
+            s[0].close();
+            s[1].close();
+        }, responderId);
+        assertWithin("handshake (iniciador + responder)", BUDGET_HANDSHAKE, perOp);
+    }
+}
@@ -0,0 +1,168 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sessões sobre {@link AsyncChannelTransport}: handshake pelos streams bloqueantes e recepção por
+ * callbacks no grupo compartilhado, sem thread leitora por sessão.
+ */
+public class AsyncChannelTransportIntegrationTest {
+
+    private static AsyncChannelTransport[] connectedPair() throws Exception {
+        try (AsynchronousServerSocketChannel server = AsyncChannelTransport.listen(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), TransportProfile.LATENCY)) {
+            Future<AsynchronousSocketChannel> accepted = server.accept();
+            AsyncChannelTransport dialed = AsyncChannelTransport.connect(server.getLocalAddress(), TransportProfile.LATENCY);
+            AsyncChannelTransport acc = new AsyncChannelTransport(accepted.get(5, TimeUnit.SECONDS), TransportProfile.LATENCY);
+            return new AsyncChannelTransport[]{dialed, acc};
+        }
+    }
+
+    private static SecureSession[] sessionPair() throws Exception {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+        AsyncChannelTransport[] t = connectedPair();
+        SecureSession dialed = new SecureSession(t[0], a, b.getPublicKeyBase64(), true);
+        SecureSession accepted = new SecureSession(t[1], b, a.getPublicKeyBase64(), false);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                accepted.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        dialed.startHandshake();
+        responder.get(10, TimeUnit.SECONDS);
+        return new SecureSession[]{dialed, accepted};
+    }
+
+    private static final class Collector implements SecureSession.MessageHandler {
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch ended = new CountDownLatch(1);
+        final CountDownLatch received;
+        volatile Exception error;
+
+        Collector(int expected) {
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override public void onPlaintext(String text) {
+            texts.add(text);
+            received.countDown();
+        }
+
+        @Override public void onError(Exception e) {
+            error = e;
+            ended.countDown();
+        }
+    }
+
+    private static long receiverThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("secure-recv-")).count();
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void manySessionsExchangeInOrderWithoutDedicatedReaderThreads() throws Exception {
+        int pairs = 8;
+        int messages = 300;
+        long readersBefore = receiverThreads();
+        List<SecureSession[]> sessions = new ArrayList<>();
+        List<Collector[]> collectors = new ArrayList<>();
+        for (int p = 0; p < pairs; p++) {
+            SecureSession[] s = sessionPair();
+            // o peer escreve antes de o outro lado começar a ler: registros já no buffer do transporte
+            s[0].send("cedo");
+            Collector[] c = {new Collector(messages + 1), new Collector(messages)};
+            s[1].runReceiverAsync(c[1]);
+            s[0].runReceiverAsync(c[0]);
+            s[1].send("cedo");
+            sessions.add(s);
+            collectors.add(c);
+        }
+        for (int i = 0; i < messages; i++) {
+            for (SecureSession[] s : sessions) {
+                s[0].send("a" + i);
+                s[1].send("b" + i);
+            }
+        }
+        assertTrue(receiverThreads() <= readersBefore, "nenhuma thread leitora dedicada");
+        for (int p = 0; p < pairs; p++) {
+            Collector[] c = collectors.get(p);
+            assertTrue(c[0].received.await(10, TimeUnit.SECONDS));
+            assertTrue(c[1].received.await(10, TimeUnit.SECONDS));
+            assertEquals("cedo", c[1].texts.get(0));
+            assertEquals("cedo", c[0].texts.get(0));
+            for (int i = 0; i < messages; i++) {
+                assertEquals("a" + i, c[1].texts.get(i + 1));
+            }
+            for (int i = 0; i < messages; i++) {
+                assertEquals("b" + i, c[0].texts.get(i + 1));
+            }
+        }
+        for (SecureSession[] s : sessions) {
+            s[0].close();
+            s[1].close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void closeFlushesQueuedRecordsBeforeEof() throws Exception {
+        SecureSession[] s = sessionPair();
+        int messages = 2000;
+        Collector c = new Collector(messages);
+        s[1].runReceiverAsync(c);
+        for (int i = 0; i < messages; i++) s[0].send("m" + i);
+        s[0].close();
+        assertTrue(c.ended.await(10, TimeUnit.SECONDS));
+        assertNull(c.error, "EOF é término normal");
+        assertEquals(messages, c.texts.size());
+        assertEquals("m" + (messages - 1), c.texts.get(messages - 1));
+        assertTrue(s[1].isClosed());
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void discardsOverlongLinesAndKeepsReading() throws Exception {
+        AsyncChannelTransport[] t = connectedPair();
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch ended = new CountDownLatch(1);
+        t[1].readLines(10, new AsyncChannelTransport.LineConsumer() {
+            @Override public boolean onLine(String line) {
+                lines.add(line);
+                return true;
+            }
+            @Override public void onEnd(Exception cause) {
+                assertNull(cause);
+                ended.countDown();
+            }
+        });
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 100_000) longLine.append('x');
+        OutputStream out = t[0].getOutputStream();
+        out.write(("abc\n" + longLine + "\ndef\n0123456789\n01234567890\nfim\n").getBytes(StandardCharsets.UTF_8));
+        t[0].close();
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("abc", "def", "0123456789", "fim"), lines);
+        t[1].close();
+    }
+}
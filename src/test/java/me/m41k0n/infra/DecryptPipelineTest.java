@@ -0,0 +1,111 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recepção com decifragem paralela: a ordem de entrega ao handler deve ser a ordem de envio.
+ */
+public class DecryptPipelineTest {
+
+    private static SecureSession[] handshake() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void deliversDataControlAndGroupRecordsInSendOrder() throws Exception {
+        SecureSession[] s = handshake();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch ended = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { delivered.add(text); threads.add(Thread.currentThread().getName()); }
+            @Override public void onControl(String body) { delivered.add("c:" + body); }
+            @Override public void onGroupRecord(String envelope) { delivered.add("g:" + envelope); }
+            @Override public void onError(Exception e) { error.set(e); ended.countDown(); }
+        }, 4);
+
+        // tamanhos variados fazem os workers terminarem fora de ordem
+        int total = 3000;
+        for (int i = 0; i < total; i++) {
+            if (i % 97 == 0) s[0].sendControl("ctl-" + i);
+            else if (i % 101 == 0) s[0].sendGroupRecord("env-" + i);
+            else s[0].send(i + ":" + "x".repeat((i * 37) % 2000));
+        }
+        s[0].close();
+        assertTrue(ended.await(20, TimeUnit.SECONDS), "EOF deve chegar depois de todos os registros");
+        assertNull(error.get(), "término normal deve ser sinalizado com onError(null)");
+
+        assertEquals(total, delivered.size());
+        for (int i = 0; i < total; i++) {
+            String got = delivered.get(i);
+            if (i % 97 == 0) assertEquals("c:ctl-" + i, got);
+            else if (i % 101 == 0) assertEquals("g:env-" + i, got);
+            else assertTrue(got.startsWith(i + ":"), "fora de ordem na posição " + i + ": " + got);
+        }
+        assertTrue(threads.stream().allMatch("secure-deliver-"::equals), "handler é chamado sempre pela mesma thread");
+        assertTrue(s[1].isClosed());
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void singleWorkerFallsBackToSequentialReceiver() throws Exception {
+        SecureSession[] s = handshake();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch got = new CountDownLatch(1);
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { threads.add(Thread.currentThread().getName()); got.countDown(); }
+            @Override public void onError(Exception e) { }
+        }, 1);
+        s[0].send("oi");
+        assertTrue(got.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("secure-recv-"), threads);
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void handlerExceptionEndsReceiverLikeSequentialMode() throws Exception {
+        SecureSession[] s = handshake();
+        CountDownLatch ended = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { throw new IllegalStateException("handler quebrou"); }
+            @Override public void onError(Exception e) { error.set(e); ended.countDown(); }
+        }, 4);
+        s[0].send("oi");
+        assertTrue(ended.await(5, TimeUnit.SECONDS), "falha no handler deve encerrar o receptor");
+        assertTrue(error.get() instanceof IllegalStateException);
+        assertTrue(s[1].isClosed());
+        s[0].close();
+    }
+}
@@ -0,0 +1,135 @@
+package me.m41k0n.infra;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Eventos JFR emitidos pelo handshake e pelos registros de uma sessão em memória.
+ */
+public class FlightEventsTest {
+
+    @TempDir
+    Path dir;
+
+    private static SecureSession[] handshake() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void recordsHandshakePhasesAndRecords() throws Exception {
+        Path file = dir.resolve("p2p.jfr");
+        List<RecordedEvent> events;
+        try (Recording r = new Recording()) {
+            r.enable("me.m41k0n.Handshake");
+            r.enable("me.m41k0n.RecordSend").withThreshold(Duration.ZERO);
+            r.enable("me.m41k0n.RecordReceive").withThreshold(Duration.ZERO);
+            r.start();
+
+            SecureSession[] s = handshake();
+            BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+            s[1].runReceiver(new SecureSession.MessageHandler() {
+                @Override public void onPlaintext(String text) { inbox.add(text); }
+                @Override public void onError(Exception e) { }
+            });
+            for (int i = 0; i < 20; i++) s[0].send("msg " + i);
+            for (int i = 0; i < 20; i++) assertEquals("msg " + i, inbox.poll(5, TimeUnit.SECONDS));
+            s[0].close();
+            s[1].close();
+
+            r.stop();
+            r.dump(file);
+        }
+        events = RecordingFile.readAllEvents(file);
+
+        List<RecordedEvent> handshakes = ofType(events, "me.m41k0n.Handshake");
+        assertEquals(2, handshakes.size());
+        for (RecordedEvent hs : handshakes) {
+            assertTrue(hs.getBoolean("success"));
+            assertNotNull(hs.getString("peer"));
+            for (String phase : new String[]{"keygen", "sign", "verify", "agree", "hkdf"}) {
+                assertTrue(hs.getDuration(phase).toNanos() > 0, phase + " sem duração");
+            }
+        }
+        assertEquals(1, handshakes.stream().filter(e -> e.getBoolean("initiator")).count());
+
+        List<RecordedEvent> sent = ofType(events, "me.m41k0n.RecordSend");
+        List<RecordedEvent> received = ofType(events, "me.m41k0n.RecordReceive");
+        assertTrue(sent.size() >= 20, "enviados: " + sent.size());
+        assertTrue(received.size() >= 20, "recebidos: " + received.size());
+        assertTrue(sent.stream().anyMatch(e -> e.getInt("plaintextBytes") == "msg 0".length()));
+        assertTrue(received.stream().allMatch(e -> e.getInt("messages") == 1 && e.getInt("lineBytes") > 0));
+    }
+
+    @Test
+    void beginReturnsNullWithoutRecording() {
+        assertNull(FlightEvents.beginRecordSend());
+        assertNull(FlightEvents.beginRecordReceive());
+        assertNull(FlightEvents.beginDial());
+        assertNull(FlightEvents.beginAccept());
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void failedHandshakeWithMalformedPeerKeyKeepsOriginalErrorWhileRecording() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, "não-é-base64!", true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        try (Recording r = new Recording()) {
+            r.enable("me.m41k0n.Handshake");
+            r.start();
+            CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+                try {
+                    b.startHandshake();
+                } catch (Exception expected) {
+                    // bob recusa o hs1 endereçado a outra chave
+                }
+            });
+            Exception e = assertThrows(Exception.class, a::startHandshake);
+            assertFalse(e instanceof IllegalArgumentException && String.valueOf(e.getMessage()).contains("Base64"),
+                    "falha original não pode ser mascarada pela impressão digital: " + e);
+            assertTrue(a.isClosed());
+            responder.get(5, TimeUnit.SECONDS);
+        }
+    }
+}
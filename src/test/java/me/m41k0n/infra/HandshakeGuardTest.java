@@ -0,0 +1,114 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HandshakeGuardTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+    private final AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+
+    private HandshakeGuard guard(double rate, int burst, int maxInFlight, int cookieAt) {
+        return new HandshakeGuard(rate, burst, maxInFlight, cookieAt, nanos::get, millis::get);
+    }
+
+    @Test
+    void tokenBucketLimitsEachSourceIndependently() throws Exception {
+        HandshakeGuard g = guard(2, 3, 100, -1);
+        InetAddress a = InetAddress.getByName("10.0.0.1");
+        InetAddress b = InetAddress.getByName("10.0.0.2");
+        for (int i = 0; i < 3; i++) g.tryAdmit(a).close();
+        assertNull(g.tryAdmit(a), "rajada esgotada");
+        assertNotNull(g.tryAdmit(b), "outro IP tem o próprio bucket");
+        assertEquals(1, g.getRejectedByRate());
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500)); // 2/s -> repõe 1 token
+        HandshakeGuard.Permit p = g.tryAdmit(a);
+        assertNotNull(p);
+        p.close();
+        assertNull(g.tryAdmit(a));
+    }
+
+    @Test
+    void globalInFlightCapIsReleasedByPermits() throws Exception {
+        HandshakeGuard g = guard(1000, 1000, 2, -1);
+        InetAddress a = InetAddress.getByName("192.0.2.7");
+        HandshakeGuard.Permit p1 = g.tryAdmit(a);
+        HandshakeGuard.Permit p2 = g.tryAdmit(a);
+        assertNotNull(p1);
+        assertNotNull(p2);
+        assertEquals(2, g.inFlightCount());
+        assertNull(g.tryAdmit(a));
+        assertEquals(1, g.getRejectedByLoad());
+        p1.close();
+        p1.close(); // idempotente
+        assertEquals(1, g.inFlightCount());
+        assertNotNull(g.tryAdmit(a));
+    }
+
+    @Test
+    void cookiesAreBoundToSourceAndExpire() throws Exception {
+        HandshakeGuard g = guard(10, 10, 10, 1);
+        SecureSession.HandshakeCookies forA = g.cookiesFor(InetAddress.getByName("10.1.1.1"));
+        SecureSession.HandshakeCookies forB = g.cookiesFor(InetAddress.getByName("10.1.1.2"));
+
+        assertFalse(forA.required());
+        HandshakeGuard.Permit p = g.tryAdmit(InetAddress.getByName("10.9.9.9"));
+        assertTrue(forA.required(), "com 1 handshake em andamento o cookie passa a ser exigido");
+        p.close();
+
+        String c = forA.issue();
+        assertTrue(forA.verify(c));
+        assertFalse(forB.verify(c), "cookie de outro endereço");
+        assertFalse(forA.verify("lixo!"));
+
+        millis.addAndGet(31_000);
+        assertTrue(forA.verify(c), "janela anterior ainda vale");
+        millis.addAndGet(31_000);
+        assertFalse(forA.verify(c), "expirado");
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void handshakeCompletesThroughCookieRoundTrip() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        // limiar 0: cookie sempre exigido
+        b.setHandshakeCookies(new HandshakeGuard(10, 10, 10, 0).cookiesFor(InetAddress.getLoopbackAddress()));
+
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        b.runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onError(Exception e) { }
+        });
+        a.send("depois do cookie");
+        assertEquals("depois do cookie", inbox.poll(5, TimeUnit.SECONDS));
+        a.close();
+        b.close();
+    }
+}
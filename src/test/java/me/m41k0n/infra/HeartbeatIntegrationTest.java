@@ -0,0 +1,129 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keepalive sobre sessões reais (loopback): medição de RTT com pings respondidos pelo peer e
+ * encerramento automático quando o peer para de responder.
+ */
+public class HeartbeatIntegrationTest {
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void measuresRttAndKeepsDataFlowing() throws Exception {
+        SecureSession[] s = connect();
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        BlockingQueue<String> controls = new LinkedBlockingQueue<>();
+        s[0].runReceiver(handler(new LinkedBlockingQueue<>(), new CountDownLatch(1)));
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onError(Exception e) { }
+            @Override public void onControl(String body) { controls.add(body); }
+        });
+        // só um lado com keepalive: o outro ainda responde aos pings
+        s[0].startHeartbeat(50, 3);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (s[0].getSmoothedRttMs() < 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertTrue(s[0].getSmoothedRttMs() >= 0, "RTT deve ser medido");
+        assertTrue(s[0].getRttJitterMs() >= 0);
+
+        s[0].send("depois dos pings");
+        assertEquals("depois dos pings", inbox.poll(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertFalse(s[0].isClosed(), "peer respondendo não deve ser derrubado");
+        assertTrue(controls.isEmpty(), "heartbeat não deve vazar para o handler");
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void tearsDownSessionWhenPeerStopsResponding() throws Exception {
+        SecureSession[] s = connect();
+        CountDownLatch ended = new CountDownLatch(1);
+        s[0].runReceiver(handler(new LinkedBlockingQueue<>(), ended));
+        // s[1] nunca lê: simula peer travado / conexão meio-aberta
+        s[0].startHeartbeat(50, 3);
+
+        assertTrue(ended.await(5, TimeUnit.SECONDS), "sessão deve cair após heartbeats perdidos");
+        assertTrue(s[0].isClosed());
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void tearsDownSessionWhenSendBufferIsFull() throws Exception {
+        SecureSession[] s = connect();
+        CountDownLatch ended = new CountDownLatch(1);
+        s[0].runReceiver(handler(new LinkedBlockingQueue<>(), ended));
+        // s[1] nunca lê e um escritor enche o buffer de envio: o ping ficaria preso atrás dele
+        Thread writer = new Thread(() -> {
+            String chunk = "x".repeat(60_000);
+            try {
+                while (true) s[0].send(chunk);
+            } catch (Exception expected) {
+                // sessão derrubada pelo heartbeat
+            }
+        }, "test-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Thread.sleep(300);
+        s[0].startHeartbeat(50, 3);
+
+        assertTrue(ended.await(5, TimeUnit.SECONDS), "escrita bloqueada não pode impedir a detecção");
+        assertTrue(s[0].isClosed());
+        writer.join(5000);
+        assertFalse(writer.isAlive(), "o escritor bloqueado deve ser liberado pelo encerramento");
+        s[1].close();
+    }
+
+    @Test
+    void rejectsHeartbeatBeforeHandshake() {
+        PeerIdentity me = CryptoUtils.generateEd25519KeyPair();
+        SecureSession s = new SecureSession(new TcpSocketAdapter(new Socket()), me, me.getPublicKeyBase64(), true);
+        assertThrows(IllegalStateException.class, () -> s.startHeartbeat(100, 3));
+    }
+
+    private static SecureSession.MessageHandler handler(BlockingQueue<String> inbox, CountDownLatch ended) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onError(Exception e) { ended.countDown(); }
+        };
+    }
+
+    private static SecureSession[] connect() throws Exception {
+        PeerIdentity dialer = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity listener = CryptoUtils.generateEd25519KeyPair();
+        try (ServerSocket ss = new ServerSocket(0)) {
+            CompletableFuture<SecureSession> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    Socket s = ss.accept();
+                    SecureSession session = new SecureSession(new TcpSocketAdapter(s), listener, dialer.getPublicKeyBase64(), false);
+                    session.startHandshake();
+                    return session;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Socket c = new Socket();
+            c.connect(new InetSocketAddress("127.0.0.1", ss.getLocalPort()), 2000);
+            SecureSession out = new SecureSession(new TcpSocketAdapter(c), dialer, listener.getPublicKeyBase64(), true);
+            out.startHandshake();
+            return new SecureSession[]{out, accepted.get(5, TimeUnit.SECONDS)};
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package me.m41k0n.infra;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HkdfTest {
+
+    private static byte[] hex(String s) {
+        byte[] out = new byte[s.length() / 2];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        return out;
+    }
+
+    private static byte[] seq(int from, int to) {
+        byte[] out = new byte[to - from + 1];
+        for (int i = 0; i < out.length; i++) out[i] = (byte) (from + i);
+        return out;
+    }
+
+    @Test
+    void matchesRfc5869TestCase1() {
+        byte[] ikm = hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] okm = Hkdf.hkdfSha256(ikm, seq(0x00, 0x0c), seq(0xf0, 0xf9), 42);
+        assertArrayEquals(hex("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf"
+                + "34007208d5b887185865"), okm);
+    }
+
+    @Test
+    void matchesRfc5869TestCase2WithMultipleBlocks() {
+        byte[] okm = Hkdf.hkdfSha256(seq(0x00, 0x4f), seq(0x60, 0xaf), seq(0xb0, 0xff), 82);
+        assertArrayEquals(hex("b11e398dc80327a1c8e7f78c596a49344f012eda2d4efad8a050cc4c19afa97c"
+                + "59045a99cac7827271cb41c65e590e09da3275600c2f09b8367793a9aca3db71"
+                + "cc30c58179ec3e87c14c01d5c1f3434f1d87"), okm);
+    }
+
+    @Test
+    void matchesRfc5869TestCase3WithoutSaltAndInfo() {
+        byte[] ikm = hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] okm = Hkdf.hkdfSha256(ikm, null, null, 42);
+        assertArrayEquals(hex("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d"
+                + "9d201395faa4b61a96c8"), okm);
+    }
+
+    @Test
+    void expandsInPlaceAtOffsetAndReusesPrk() {
+        byte[] ikm = hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] info = seq(0xf0, 0xf9);
+        byte[] buf = new byte[50];
+        Hkdf.Engine e = Hkdf.engine().extract(seq(0x00, 0x0c), ikm);
+        try {
+            e.expand(info, buf, 5, 42);
+            byte[] prk = new byte[Hkdf.HASH_LEN];
+            e.copyPrk(prk, 0);
+            assertArrayEquals(hex("077709362c2e32df0ddc3f0dc47bba6390b6c73bb50f9c3122ec844ad7c2b3e5"), prk);
+
+            byte[] again = new byte[42];
+            e.withPrk(prk).expand(info, again, 0, 42);
+            assertArrayEquals(Arrays.copyOfRange(buf, 5, 47), again);
+        } finally {
+            e.wipe();
+        }
+        assertEquals(0, buf[0]);
+        assertEquals(0, buf[49]);
+    }
+
+    @Test
+    void expandLabelsMatchesIndividualDerivations() {
+        byte[] secret = "segredo-compartilhado".getBytes(StandardCharsets.UTF_8);
+        byte[] ctx = "a|b:".getBytes(StandardCharsets.UTF_8);
+        byte[][] labels = {
+                "chat".getBytes(StandardCharsets.UTF_8),
+                "resume".getBytes(StandardCharsets.UTF_8),
+                "rk".getBytes(StandardCharsets.UTF_8)
+        };
+        byte[] out = new byte[3 * 32];
+        Hkdf.Engine e = Hkdf.engine().extract(null, secret);
+        try {
+            e.expandLabels(ctx, labels, 32, out);
+        } finally {
+            e.wipe();
+        }
+        assertArrayEquals(Hkdf.hkdfSha256(secret, null, "a|b:chat".getBytes(StandardCharsets.UTF_8), 32), Arrays.copyOfRange(out, 0, 32));
+        assertArrayEquals(Hkdf.hkdfSha256(secret, null, "a|b:resume".getBytes(StandardCharsets.UTF_8), 32), Arrays.copyOfRange(out, 32, 64));
+        assertArrayEquals(Hkdf.hkdfSha256(secret, null, "a|b:rk".getBytes(StandardCharsets.UTF_8), 32), Arrays.copyOfRange(out, 64, 96));
+    }
+
+    @Test
+    void rejectsExpandWithoutKeyAndBadLengths() {
+        Hkdf.Engine e = Hkdf.engine();
+        e.wipe();
+        assertThrows(IllegalStateException.class, () -> e.expand(null, new byte[32], 0, 32));
+        assertThrows(IllegalArgumentException.class, () -> Hkdf.hkdfSha256(new byte[1], null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> Hkdf.hkdfSha256(new byte[1], null, null, 255 * 32 + 1));
+        assertThrows(IllegalArgumentException.class, () -> Hkdf.hkdfSha256(null, null, null, 32));
+        e.extract(null, new byte[1]);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> e.expand(null, new byte[16], 0, 32));
+        } finally {
+            e.wipe();
+        }
+    }
+}
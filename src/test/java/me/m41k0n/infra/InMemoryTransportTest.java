@@ -0,0 +1,58 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sessão segura completa (handshake + registros) sobre o transporte em memória.
+ */
+public class InMemoryTransportTest {
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void secureSessionRunsOverInMemoryPair() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair(256, SpscByteRing.WaitStrategy.SPIN_THEN_PARK);
+
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        CountDownLatch ended = new CountDownLatch(1);
+        b.runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onError(Exception e) { ended.countDown(); }
+        });
+
+        // mensagens maiores que o ring forçam o escritor a esperar pelo leitor
+        StringBuilder big = new StringBuilder();
+        while (big.length() < 4000) big.append("dados-");
+        for (int i = 0; i < 50; i++) a.send(i + ":" + big);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i + ":" + big, inbox.poll(5, TimeUnit.SECONDS));
+        }
+
+        a.close();
+        assertTrue(ended.await(5, TimeUnit.SECONDS), "peer deve ver EOF ao fechar a outra ponta");
+        assertTrue(b.isClosed());
+    }
+}
@@ -0,0 +1,109 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Carimbo de envio nos registros "seq|t|..." e tempos por estágio no receptor.
+ */
+public class LatencyTracerTest {
+
+    private static SecureSession[] handshake() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    private static SecureSession.MessageHandler collect(BlockingQueue<String> inbox) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onError(Exception e) { }
+        };
+    }
+
+    @Test
+    void histogramPercentilesStayWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) h.record(v * 1000);
+        h.record(-5); // relógios fora de sincronia: conta como zero
+        assertEquals(100_001, h.count());
+        assertEquals(100_000_000, h.max());
+        long p50 = h.percentile(50);
+        assertTrue(p50 >= 50_000_000 && p50 <= 51_000_000, "p50=" + p50);
+        long p99 = h.percentile(99);
+        assertTrue(p99 >= 99_000_000 && p99 <= 100_000_000, "p99=" + p99);
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void recordsEveryStageForTracedMessages() throws Exception {
+        SecureSession[] s = handshake();
+        LatencyTracer sender = new LatencyTracer();
+        LatencyTracer receiver = new LatencyTracer();
+        s[0].enableTracing(sender);
+        s[1].enableTracing(receiver);
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        s[1].runReceiver(collect(inbox));
+
+        for (int i = 0; i < 100; i++) s[0].send("m" + i + " ção");
+        for (int i = 0; i < 100; i++) assertEquals("m" + i + " ção", inbox.poll(5, TimeUnit.SECONDS));
+
+        assertEquals(100, sender.histogram(LatencyTracer.Stage.SEND).count());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (receiver.histogram(LatencyTracer.Stage.END_TO_END).count() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (LatencyTracer.Stage stage : new LatencyTracer.Stage[]{LatencyTracer.Stage.READ, LatencyTracer.Stage.DECODE,
+                LatencyTracer.Stage.DECRYPT, LatencyTracer.Stage.HANDLER, LatencyTracer.Stage.TRANSIT, LatencyTracer.Stage.END_TO_END}) {
+            assertTrue(receiver.histogram(stage).count() >= 100, stage + " sem amostras");
+        }
+        String summary = receiver.summary();
+        assertTrue(summary.contains("[Trace] decifra"), summary);
+        assertTrue(summary.contains("[Trace] fim a fim"), summary);
+
+        Map<LatencyTracer.Stage, LatencyHistogram> interval = receiver.snapshotInterval();
+        assertTrue(interval.get(LatencyTracer.Stage.DECRYPT).count() >= 100);
+        assertEquals(0, receiver.snapshotInterval().get(LatencyTracer.Stage.DECRYPT).count(), "intervalo recomeça após o snapshot");
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void receiverWithoutTracingStripsTheStamp() throws Exception {
+        SecureSession[] s = handshake();
+        s[0].enableTracing(new LatencyTracer());
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        s[1].runReceiver(collect(inbox), 4);
+
+        for (int i = 0; i < 50; i++) s[0].send("msg " + i);
+        s[0].send("");
+        for (int i = 0; i < 50; i++) assertEquals("msg " + i, inbox.poll(5, TimeUnit.SECONDS));
+        assertEquals("", inbox.poll(5, TimeUnit.SECONDS));
+        s[0].close();
+        s[1].close();
+    }
+}
@@ -0,0 +1,150 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lotes de mensagens num único registro AEAD ("seq|b|...") e desempacotamento no receptor.
+ */
+public class RecordBatcherTest {
+
+    /** Conta as linhas (registros) escritas pelo remetente. */
+    private static final class CountingSocket implements SecureSession.SocketLike {
+        private final SecureSession.SocketLike inner;
+        private final AtomicInteger lines = new AtomicInteger();
+
+        CountingSocket(SecureSession.SocketLike inner) {
+            this.inner = inner;
+        }
+
+        @Override public InputStream getInputStream() throws IOException { return inner.getInputStream(); }
+
+        @Override public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(inner.getOutputStream()) {
+                @Override public void write(int b) throws IOException {
+                    if (b == '\n') lines.incrementAndGet();
+                    out.write(b);
+                }
+
+                @Override public void write(byte[] b, int off, int len) throws IOException {
+                    for (int i = off; i < off + len; i++) if (b[i] == '\n') lines.incrementAndGet();
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        @Override public void close() throws IOException { inner.close(); }
+    }
+
+    private CountingSocket counter;
+
+    private SecureSession[] handshake() throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair();
+        counter = new CountingSocket(ends[0]);
+        SecureSession a = new SecureSession(counter, alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    private static SecureSession.MessageHandler collect(BlockingQueue<String> inbox) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { inbox.add(text); }
+            @Override public void onControl(String body) { inbox.add("c:" + body); }
+            @Override public void onError(Exception e) { }
+        };
+    }
+
+    @Test
+    void unpackReadsLengthPrefixedMessages() {
+        byte[] a = "olá".getBytes(StandardCharsets.UTF_8);
+        byte[] b = new byte[0];
+        ByteBuffer bb = ByteBuffer.allocate(8 + a.length);
+        bb.putInt(a.length).put(a).putInt(b.length);
+        assertArrayEquals(new String[]{"olá", ""}, RecordBatcher.unpack(bb.array()));
+
+        assertThrows(IllegalStateException.class, () -> RecordBatcher.unpack(new byte[]{0, 0, 0, 9, 1}));
+        assertThrows(IllegalStateException.class, () -> RecordBatcher.unpack(new byte[]{0, 0}));
+        assertThrows(IllegalStateException.class, () -> RecordBatcher.unpack(new byte[0]));
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void packsSmallMessagesAndKeepsOrderWithControlsAndLargeMessages() throws Exception {
+        SecureSession[] s = handshake();
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        s[1].runReceiver(collect(inbox));
+        int linesAfterHandshake = counter.lines.get();
+
+        s[0].enableBatching(1024, 10_000);
+        for (int i = 0; i < 200; i++) s[0].send("m" + i);
+        s[0].sendControl("ctl");
+        String big = "x".repeat(2000);
+        s[0].send(big);
+        s[0].send("fim");
+        s[0].flush();
+
+        for (int i = 0; i < 200; i++) assertEquals("m" + i, inbox.poll(5, TimeUnit.SECONDS));
+        assertEquals("c:ctl", inbox.poll(5, TimeUnit.SECONDS));
+        assertEquals(big, inbox.poll(5, TimeUnit.SECONDS));
+        assertEquals("fim", inbox.poll(5, TimeUnit.SECONDS));
+
+        int records = counter.lines.get() - linesAfterHandshake;
+        assertTrue(records < 20, "200 mensagens pequenas deveriam caber em poucos registros, foram " + records);
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void pendingBatchIsFlushedAfterMaxDelay() throws Exception {
+        SecureSession[] s = handshake();
+        BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+        s[1].runReceiver(collect(inbox));
+        s[0].enableBatching(4096, 50);
+        s[0].send("a");
+        s[0].send("b");
+        assertEquals("a", inbox.poll(5, TimeUnit.SECONDS));
+        assertEquals("b", inbox.poll(5, TimeUnit.SECONDS));
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    void rejectsInvalidBatchSettings() throws Exception {
+        SecureSession[] s = handshake();
+        assertThrows(IllegalArgumentException.class, () -> s[0].enableBatching(RecordBatcher.MAX_BATCH_BYTES + 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> s[0].enableBatching(1024, 0));
+        s[0].enableBatching(1024, 10);
+        assertThrows(IllegalStateException.class, () -> s[0].enableBatching(1024, 10));
+        s[0].close();
+        s[1].close();
+    }
+}
@@ -0,0 +1,146 @@
+package me.m41k0n.infra;
+
+import me.m41k0n.domain.PeerIdentity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Envio concorrente (seq atômico + escrita por ordem de ticket) e close() com escritor preso.
+ */
+public class SecureSessionConcurrencyTest {
+
+    private static SecureSession[] handshake(int ringCapacity) throws Exception {
+        PeerIdentity alice = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity bob = CryptoUtils.generateEd25519KeyPair();
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair(ringCapacity, SpscByteRing.WaitStrategy.BLOCKING);
+        SecureSession a = new SecureSession(ends[0], alice, bob.getPublicKeyBase64(), true);
+        SecureSession b = new SecureSession(ends[1], bob, alice.getPublicKeyBase64(), false);
+        a.setQuiet(true);
+        b.setQuiet(true);
+        CompletableFuture<Void> responder = CompletableFuture.runAsync(() -> {
+            try {
+                b.startHandshake();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        a.startHandshake();
+        responder.get(5, TimeUnit.SECONDS);
+        return new SecureSession[]{a, b};
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void concurrentProducersAreAllDeliveredInPerThreadOrder() throws Exception {
+        SecureSession[] s = handshake(64 * 1024);
+        int threads = 8;
+        int perThread = 500;
+        Map<Integer, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch all = new CountDownLatch(threads * perThread);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) {
+                String[] p = text.split(":");
+                received.computeIfAbsent(Integer.parseInt(p[0]), k -> new ArrayList<>()).add(Integer.parseInt(p[1]));
+                all.countDown();
+            }
+            @Override public void onError(Exception e) { if (e != null) error.set(e); }
+        });
+
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread th = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) s[0].send(id + ":" + i);
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            });
+            producers.add(th);
+            th.start();
+        }
+        for (Thread th : producers) th.join();
+        assertTrue(all.await(20, TimeUnit.SECONDS), "todas as mensagens devem chegar (nenhum seq fora de ordem descartado)");
+        assertNull(error.get());
+        for (int t = 0; t < threads; t++) {
+            List<Integer> got = received.get(t);
+            assertEquals(perThread, got.size());
+            for (int i = 0; i < perThread; i++) assertEquals(i, got.get(i).intValue());
+        }
+        s[0].close();
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void closeDoesNotWaitBehindBlockedWriter() throws Exception {
+        // ring pequeno e ninguém lendo do outro lado: a escrita fica presa
+        SecureSession[] s = handshake(1024);
+        CompletableFuture<Void> stuck = CompletableFuture.runAsync(() -> {
+            try {
+                s[0].send("x".repeat(8000));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(stuck.isDone(), "escrita deveria estar bloqueada");
+
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(() -> {
+            try {
+                s[0].close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        closing.get(2, TimeUnit.SECONDS);
+        assertTrue(s[0].isClosed());
+
+        ExecutionException ee = assertThrows(ExecutionException.class, () -> stuck.get(2, TimeUnit.SECONDS));
+        assertTrue(ee.getCause() instanceof IllegalStateException);
+        assertThrows(IOException.class, () -> s[0].send("depois do close"));
+        s[1].close();
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void failedEncodingDoesNotBlockLaterSends() throws Exception {
+        SecureSession[] s = handshake(64 * 1024);
+        List<String> received = new ArrayList<>();
+        CountDownLatch two = new CountDownLatch(2);
+        s[1].runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { received.add(text); two.countDown(); }
+            @Override public void onControl(String body) { received.add("c:" + body); two.countDown(); }
+            @Override public void onError(Exception e) { }
+        });
+        assertThrows(NullPointerException.class, () -> s[0].send(null));
+        assertThrows(NullPointerException.class, () -> s[0].sendControl(null));
+        CompletableFuture<Void> later = CompletableFuture.runAsync(() -> {
+            try {
+                s[0].send("depois");
+                s[0].sendControl("ctl");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        later.get(2, TimeUnit.SECONDS);
+        assertTrue(two.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("depois", "c:ctl"), received);
+        s[0].close();
+        s[1].close();
+    }
+}
@@ -0,0 +1,86 @@
+package me.m41k0n.infra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpscByteRingTest {
+
+    @Test
+    void wrapsAroundPreservingOrder() throws Exception {
+        SpscByteRing ring = new SpscByteRing(8, SpscByteRing.WaitStrategy.BLOCKING);
+        byte[] out = new byte[8];
+        ring.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+        assertEquals(4, ring.read(out, 0, 4));
+        ring.write(new byte[]{7, 8, 9, 10, 11}, 0, 5); // atravessa o fim do array
+        assertEquals(7, ring.available());
+        assertEquals(7, ring.read(out, 0, 8));
+        assertArrayEquals(new byte[]{5, 6, 7, 8, 9, 10, 11}, Arrays.copyOf(out, 7));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpscByteRing.WaitStrategy.class)
+    @Timeout(value = 20, unit = TimeUnit.SECONDS)
+    void transfersStreamBetweenThreads(SpscByteRing.WaitStrategy strategy) throws Exception {
+        SpscByteRing ring = new SpscByteRing(1024, strategy);
+        int total = 4 * 1024 * 1024;
+        CRC32 sent = new CRC32();
+        Thread producer = new Thread(() -> {
+            Random rnd = new Random(42);
+            byte[] chunk = new byte[777];
+            try {
+                for (int done = 0; done < total; done += chunk.length) {
+                    int n = Math.min(chunk.length, total - done);
+                    rnd.nextBytes(chunk);
+                    sent.update(chunk, 0, n);
+                    ring.write(chunk, 0, n);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ring.close();
+        });
+        producer.start();
+
+        CRC32 received = new CRC32();
+        byte[] buf = new byte[500];
+        long count = 0;
+        for (int n = ring.read(buf, 0, buf.length); n >= 0; n = ring.read(buf, 0, buf.length)) {
+            received.update(buf, 0, n);
+            count += n;
+        }
+        producer.join();
+        assertEquals(total, count);
+        assertEquals(sent.getValue(), received.getValue());
+    }
+
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    void closeWakesBlockedWriterAndDrainsReader() throws Exception {
+        SpscByteRing ring = new SpscByteRing(4, SpscByteRing.WaitStrategy.BLOCKING);
+        ring.write(new byte[]{1, 2, 3, 4}, 0, 4);
+        Thread closer = new Thread(() -> {
+            try { Thread.sleep(100); } catch (InterruptedException ignored) {}
+            ring.close();
+        });
+        closer.start();
+        assertThrows(IOException.class, () -> ring.write(new byte[]{5}, 0, 1), "escritor bloqueado deve falhar ao fechar");
+        byte[] out = new byte[8];
+        assertEquals(4, ring.read(out, 0, 8), "dados escritos antes do close ainda são entregues");
+        assertEquals(-1, ring.read(out, 0, 8));
+    }
+
+    @Test
+    void rejectsNonPowerOfTwoCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SpscByteRing(1000, SpscByteRing.WaitStrategy.BLOCKING));
+    }
+}
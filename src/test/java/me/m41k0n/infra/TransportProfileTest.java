@@ -0,0 +1,58 @@
+package me.m41k0n.infra;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransportProfileTest {
+
+    @Test
+    void parsesNamesCaseInsensitivelyAndRejectsUnknown() {
+        assertEquals(TransportProfile.LATENCY, TransportProfile.parse("latency"));
+        assertEquals(TransportProfile.THROUGHPUT, TransportProfile.parse(" Throughput "));
+        assertEquals(TransportProfile.MOBILE, TransportProfile.parse("MOBILE"));
+        assertThrows(IllegalArgumentException.class, () -> TransportProfile.parse("turbo"));
+        assertThrows(IllegalArgumentException.class, () -> TransportProfile.parse(null));
+    }
+
+    @Test
+    void defaultsToLatencyProfile() {
+        String prev = System.getProperty("p2p.transport");
+        System.clearProperty("p2p.transport");
+        try {
+            assertEquals(TransportProfile.LATENCY, TransportProfile.current());
+            System.setProperty("p2p.transport", "mobile");
+            assertEquals(TransportProfile.MOBILE, TransportProfile.current());
+        } finally {
+            if (prev == null) System.clearProperty("p2p.transport");
+            else System.setProperty("p2p.transport", prev);
+        }
+    }
+
+    @Test
+    void appliesOptionsToDialedAndAcceptedSockets() throws Exception {
+        for (TransportProfile p : TransportProfile.values()) {
+            try (ServerSocket ss = new ServerSocket()) {
+                p.configure(ss);
+                ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                try (Socket dialed = new Socket()) {
+                    p.configure(dialed);
+                    dialed.connect(ss.getLocalSocketAddress(), p.connectTimeoutMs());
+                    try (Socket accepted = ss.accept()) {
+                        p.configureAccepted(accepted);
+                        boolean noDelay = p != TransportProfile.THROUGHPUT;
+                        assertEquals(noDelay, dialed.getTcpNoDelay(), p.name());
+                        assertEquals(noDelay, accepted.getTcpNoDelay(), p.name());
+                        assertTrue(dialed.getKeepAlive(), p.name());
+                        assertTrue(accepted.getKeepAlive(), p.name());
+                    }
+                }
+            }
+        }
+    }
+}
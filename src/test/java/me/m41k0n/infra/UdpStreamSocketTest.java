@@ -0,0 +1,227 @@
+package me.m41k0n.infra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UdpStreamSocketTest {
+
+    // ISNs perto da virada do int: a aritmética de sequência tem que sobreviver ao wraparound
+    private static final int ISN_A = Integer.MAX_VALUE - 50;
+    private static final int ISN_B = -3;
+
+    private static InetSocketAddress addr(DatagramSocket s) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), s.getLocalPort());
+    }
+
+    /** Encaminha o que chega em 'in' para 'target' saindo por 'out', descartando uma fração. */
+    private static void forward(DatagramSocket in, DatagramSocket out, InetSocketAddress target, double loss, long seed) {
+        Thread t = new Thread(() -> {
+            Random rnd = new Random(seed);
+            byte[] buf = new byte[2048];
+            DatagramPacket p = new DatagramPacket(buf, buf.length);
+            try {
+                while (true) {
+                    p.setLength(buf.length);
+                    in.receive(p);
+                    if (rnd.nextDouble() < loss) continue;
+                    out.send(new DatagramPacket(buf, p.getLength(), target));
+                }
+            } catch (Exception closed) {
+                // fim do teste
+            }
+        }, "test-lossy-link");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Como {@link #forward}, sem perdas aleatórias, mas descartando tudo enquanto 'blocked'. */
+    private static void forwardUnless(DatagramSocket in, DatagramSocket out, InetSocketAddress target, AtomicBoolean blocked) {
+        Thread t = new Thread(() -> {
+            byte[] buf = new byte[2048];
+            DatagramPacket p = new DatagramPacket(buf, buf.length);
+            try {
+                while (true) {
+                    p.setLength(buf.length);
+                    in.receive(p);
+                    if (blocked.get()) continue;
+                    out.send(new DatagramPacket(buf, p.getLength(), target));
+                }
+            } catch (Exception closed) {
+                // fim do teste
+            }
+        }, "test-blocked-link");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static byte[] raw(byte type, int seq, int ack, byte[] payload) {
+        return ByteBuffer.allocate(UdpStreamSocket.HEADER_LEN + payload.length)
+                .put(type).putInt(seq).putInt(ack).put(payload).array();
+    }
+
+    private static byte[] readFully(InputStream in, int n) throws Exception {
+        byte[] out = new byte[n];
+        for (int off = 0; off < n; ) {
+            int r = in.read(out, off, n - off);
+            if (r < 0) fail("EOF após " + off + " bytes");
+            off += r;
+        }
+        return out;
+    }
+
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void deliversInOrderOverLossyLinkAndSignalsEof() throws Exception {
+        DatagramSocket a = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        DatagramSocket b = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try (DatagramSocket px = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket py = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            // A fala com px, B fala com py; cada lado vê o outro pelo endereço do proxy
+            forward(px, py, addr(b), 0.15, 1);
+            forward(py, px, addr(a), 0.15, 2);
+            UdpStreamSocket sa = new UdpStreamSocket(a, addr(px), ISN_A, ISN_B);
+            UdpStreamSocket sb = new UdpStreamSocket(b, addr(py), ISN_B, ISN_A);
+
+            byte[] data = new byte[300_000];
+            new Random(42).nextBytes(data);
+            CompletableFuture<byte[]> received = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readFully(sb.getInputStream(), data.length);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            for (int off = 0; off < data.length; off += 5000) {
+                sa.getOutputStream().write(data, off, Math.min(5000, data.length - off));
+            }
+            assertTrue(Arrays.equals(data, received.get(45, TimeUnit.SECONDS)));
+
+            sb.getOutputStream().write("volta".getBytes());
+            assertArrayEquals("volta".getBytes(), readFully(sa.getInputStream(), 5));
+
+            sa.close();
+            assertEquals(-1, sb.getInputStream().read(), "FIN vira fim de fluxo do outro lado");
+            sb.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void punchSucceedsWhenBothSidesProbeAndExchangesIsns() throws Exception {
+        try (DatagramSocket a = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket b = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket c = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            assertNull(UdpStreamSocket.punch(c, addr(silent), 300), "peer que nunca responde");
+
+            CompletableFuture<UdpStreamSocket> other = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return UdpStreamSocket.punch(b, addr(a), 3000);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            UdpStreamSocket sa = UdpStreamSocket.punch(a, addr(b), 3000);
+            UdpStreamSocket sb = other.get(5, TimeUnit.SECONDS);
+            assertNotNull(sa);
+            assertNotNull(sb);
+
+            // cada lado aprendeu o ISN aleatório do outro: os dois sentidos entregam
+            sa.getOutputStream().write("ida".getBytes());
+            assertArrayEquals("ida".getBytes(), readFully(sb.getInputStream(), 3));
+            sb.getOutputStream().write("volta".getBytes());
+            assertArrayEquals("volta".getBytes(), readFully(sa.getInputStream(), 5));
+            sa.close();
+            sb.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void dropsForgedAcksAndDataOutsideTheWindow() throws Exception {
+        DatagramSocket a = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        DatagramSocket b = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        AtomicBoolean blocked = new AtomicBoolean(true);
+        try (DatagramSocket px = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket py = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            forwardUnless(px, py, addr(b), blocked);
+            forwardUnless(py, px, addr(a), blocked);
+            UdpStreamSocket sa = new UdpStreamSocket(a, addr(px), ISN_A, ISN_B);
+            UdpStreamSocket sb = new UdpStreamSocket(b, addr(py), ISN_B, ISN_A);
+
+            // enlace cortado: 10 segmentos de A ficam sem ACK
+            byte[] data = new byte[10 * UdpStreamSocket.MAX_PAYLOAD];
+            new Random(3).nextBytes(data);
+            sa.getOutputStream().write(data);
+
+            // um terceiro forjando o endereço do peer (px, do ponto de vista de A), sem saber os ISNs:
+            // ACKs além do que A enviou não podem descartar a janela, e dados fora dela não entram
+            byte[] junk = "forjado".getBytes();
+            for (byte[] forged : new byte[][]{
+                    raw(UdpStreamSocket.TYPE_ACK, 0, ISN_A + 11, new byte[0]),
+                    raw(UdpStreamSocket.TYPE_ACK, 0, ISN_A + 100_000, new byte[0]),
+                    raw(UdpStreamSocket.TYPE_DATA, 0, ISN_A + 11, junk),
+                    raw(UdpStreamSocket.TYPE_DATA, 0, ISN_A, junk),
+                    raw(UdpStreamSocket.TYPE_FIN, 0, ISN_A, new byte[0])}) {
+                px.send(new DatagramPacket(forged, forged.length, addr(a)));
+            }
+            Thread.sleep(300);
+            blocked.set(false);
+
+            assertArrayEquals(data, readFully(sb.getInputStream(), data.length), "retransmissão intacta");
+            sb.getOutputStream().write("volta".getBytes());
+            assertArrayEquals("volta".getBytes(), readFully(sa.getInputStream(), 5), "nada forjado antes");
+            sa.close();
+            assertEquals(-1, sb.getInputStream().read());
+            sb.close();
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void closeWithFullWindowKeepsUnackedTailAndDeliversFin() throws Exception {
+        DatagramSocket a = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        DatagramSocket b = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        AtomicBoolean blocked = new AtomicBoolean(true);
+        try (DatagramSocket px = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             DatagramSocket py = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            forwardUnless(px, py, addr(b), blocked);
+            forwardUnless(py, px, addr(a), blocked);
+            UdpStreamSocket sa = new UdpStreamSocket(a, addr(px), ISN_A, ISN_B);
+            UdpStreamSocket sb = new UdpStreamSocket(b, addr(py), ISN_B, ISN_A);
+
+            // enlace cortado: a janela inteira fica sem ACK
+            byte[] data = new byte[256 * UdpStreamSocket.MAX_PAYLOAD];
+            new Random(7).nextBytes(data);
+            sa.getOutputStream().write(data);
+            CompletableFuture<Void> closing = CompletableFuture.runAsync(() -> {
+                try {
+                    sa.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(300);
+            blocked.set(false);
+
+            assertArrayEquals(data, readFully(sb.getInputStream(), data.length));
+            assertEquals(-1, sb.getInputStream().read(), "FIN deve chegar depois dos dados");
+            closing.get(5, TimeUnit.SECONDS);
+            sb.close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package me.m41k0n.infra;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarmupTest {
+
+    @Test
+    @Timeout(value = 30, unit = TimeUnit.SECONDS)
+    void runsFullHandshakeCyclesInMemory() {
+        assertEquals(3, Warmup.run(3));
+    }
+
+    @Test
+    void registersBouncyCastleOnlyWhenJdkLacksEd25519() {
+        boolean needed = CryptoUtils.registerProviderIfNeeded();
+        assertEquals(!CryptoUtils.jdkSupportsEd25519(), needed);
+    }
+}
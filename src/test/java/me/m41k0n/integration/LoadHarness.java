@@ -0,0 +1,309 @@
+package me.m41k0n.integration;
+
+import me.m41k0n.app.HappyEyeballsDialer;
+import me.m41k0n.domain.PeerEndpoint;
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.AsyncChannelTransport;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.InMemoryTransport;
+import me.m41k0n.infra.LatencyHistogram;
+import me.m41k0n.infra.LatencyTracer;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.SpscByteRing;
+import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.infra.TransportProfile;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga / soak test em loopback (não é um teste JUnit: roda via perfil Maven "soak").
+ *
+ * Sobe N pares de {@link SecureSession} (discagem pelo {@link HappyEyeballsDialer}, aceitação por
+ * ServerSocket, como no {@code P2PConnector}), envia mensagens de tamanho e taxa configuráveis e
+ * imprime periodicamente vazão, latência p50/p99/p999, heap e threads. A taxa de handshakes é
+ * medida no estabelecimento dos pares.
+ *
+ * Parâmetros (-D): soak.pairs (8), soak.size em bytes (256), soak.rate mensagens/s por par
+ * (200; 0 = sem limite), soak.seconds (30), soak.report intervalo de relatório em s (5),
+ * soak.transport tcp|memory|async (tcp), soak.wait blocking|spin (blocking, só para memory) e
+ * soak.decryptWorkers (0 = receptor sequencial), soak.batchBytes (0 = sem lotes) e
+ * soak.batchDelayMs (5) para empacotar mensagens no remetente, e soak.trace (false) para
+ * rastrear a latência por estágio com um {@link LatencyTracer} compartilhado pelas sessões. Com
+ * "memory" os pares usam {@link InMemoryTransport}, isolando o custo da sessão/cripto do TCP; com
+ * "async" usam {@link AsyncChannelTransport} e recebem por callbacks, sem thread leitora por sessão.
+ *
+ * Uso: mvn -Psoak test-compile exec:java -Dsoak.pairs=32 -Dsoak.rate=1000 -Dsoak.seconds=600
+ *
+ * Com taxa fixa a latência é medida a partir do instante agendado de envio (e não do envio real),
+ * para não esconder atrasos quando o remetente fica para trás ("coordinated omission").
+ */
+public final class LoadHarness {
+
+    private static final int MAX_SIZE = 12 * 1024; // cabe em MAX_LINE_LEN da sessão após Base64
+    private static final String TRANSPORT = System.getProperty("soak.transport", "tcp");
+    private static final boolean IN_MEMORY = "memory".equalsIgnoreCase(TRANSPORT);
+    private static final boolean ASYNC = "async".equalsIgnoreCase(TRANSPORT);
+    private static final SpscByteRing.WaitStrategy WAIT = "spin".equalsIgnoreCase(System.getProperty("soak.wait", "blocking"))
+            ? SpscByteRing.WaitStrategy.SPIN_THEN_PARK : SpscByteRing.WaitStrategy.BLOCKING;
+    private static final int DECRYPT_WORKERS = Integer.getInteger("soak.decryptWorkers", 0);
+    private static final int BATCH_BYTES = Integer.getInteger("soak.batchBytes", 0);
+    private static final long BATCH_DELAY_MS = Long.getLong("soak.batchDelayMs", 5L);
+    private static final boolean TRACE = Boolean.getBoolean("soak.trace");
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pairs = Integer.getInteger("soak.pairs", 8);
+        int size = Integer.getInteger("soak.size", 256);
+        int rate = Integer.getInteger("soak.rate", 200);
+        int seconds = Integer.getInteger("soak.seconds", 30);
+        int reportSeconds = Integer.getInteger("soak.report", 5);
+        if (pairs < 1 || size < 32 || size > MAX_SIZE || rate < 0 || seconds < 1 || reportSeconds < 1) {
+            throw new IllegalArgumentException("parâmetros inválidos (pairs>=1, 32<=size<=" + MAX_SIZE + ", rate>=0, seconds>=1)");
+        }
+        System.out.printf(Locale.ROOT, "[Soak] %d par(es), %d bytes, %s msg/s por par, %d s, transporte=%s%n",
+                pairs, size, rate == 0 ? "sem limite" : String.valueOf(rate), seconds,
+                (IN_MEMORY ? "memory/" + WAIT : ASYNC ? "async" : "tcp") + (DECRYPT_WORKERS > 1 ? ", decifragem paralela=" + DECRYPT_WORKERS : "")
+                + (BATCH_BYTES > 0 ? ", lotes de " + BATCH_BYTES + " bytes/" + BATCH_DELAY_MS + " ms" : ""));
+
+        Stats stats = new Stats();
+        LatencyTracer tracer = TRACE ? new LatencyTracer() : null;
+        List<SecureSession[]> sessions = establishPairs(pairs);
+
+        AtomicBoolean stop = new AtomicBoolean(false);
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < sessions.size(); i++) {
+            SecureSession[] pair = sessions.get(i);
+            if (ASYNC) {
+                pair[1].runReceiverAsync(receiver(stats));
+                pair[0].runReceiverAsync(receiver(stats));
+            } else {
+                pair[1].runReceiver(receiver(stats), DECRYPT_WORKERS);
+                pair[0].runReceiver(receiver(stats), DECRYPT_WORKERS);
+            }
+            if (BATCH_BYTES > 0) pair[0].enableBatching(BATCH_BYTES, BATCH_DELAY_MS);
+            if (tracer != null) {
+                pair[0].enableTracing(tracer);
+                pair[1].enableTracing(tracer);
+            }
+            Thread t = new Thread(() -> sendLoop(pair[0], size, rate, stop, stats), "soak-send-" + i);
+            t.setDaemon(true);
+            senders.add(t);
+        }
+        long start = System.nanoTime();
+        senders.forEach(Thread::start);
+
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long lastReport = start;
+        while (System.nanoTime() < end) {
+            long remaining = end - System.nanoTime();
+            Thread.sleep(Math.max(1, Math.min(TimeUnit.SECONDS.toMillis(reportSeconds), TimeUnit.NANOSECONDS.toMillis(remaining))));
+            long now = System.nanoTime();
+            report("intervalo", stats.snapshotInterval(), now - lastReport, size);
+            if (tracer != null) System.out.print(LatencyTracer.format(tracer.snapshotInterval()));
+            lastReport = now;
+        }
+        stop.set(true);
+        for (Thread t : senders) t.join(2000);
+        report("total", stats.total, System.nanoTime() - start, size);
+        if (tracer != null) System.out.print(tracer.summary());
+        System.out.printf(Locale.ROOT, "[Soak] erros de envio=%d, sessões encerradas=%d%n",
+                stats.sendErrors.get(), stats.sessionsEnded.get());
+        for (SecureSession[] pair : sessions) {
+            try { pair[0].close(); } catch (IOException ignored) {}
+            try { pair[1].close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Estabelece os pares em paralelo e imprime a taxa de handshakes concluídos por segundo.
+     */
+    private static List<SecureSession[]> establishPairs(int pairs) throws Exception {
+        List<CompletableFuture<SecureSession[]>> pending = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(pairs, 2 * Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "soak-handshake");
+            t.setDaemon(true);
+            return t;
+        });
+        long t0 = System.nanoTime();
+        try {
+            for (int i = 0; i < pairs; i++) {
+                pending.add(CompletableFuture.supplyAsync(LoadHarness::connectPair, pool));
+            }
+            List<SecureSession[]> out = new ArrayList<>();
+            for (CompletableFuture<SecureSession[]> f : pending) out.add(f.get(30, TimeUnit.SECONDS));
+            double secs = (System.nanoTime() - t0) / 1e9;
+            System.out.printf(Locale.ROOT, "[Soak] %d handshake(s) em %.2f s (%.1f handshakes/s)%n", pairs, secs, pairs / secs);
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static SecureSession[] connectPair() {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+        if (IN_MEMORY) return connectInMemory(a, b);
+        if (ASYNC) return connectAsync(a, b);
+        try (ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // thread própria por aceitação: o pool comum poderia travar com aceites esperando discagens enfileiradas
+            FutureTask<SecureSession> accepted = new FutureTask<>(() -> {
+                Socket s = ss.accept();
+                SecureSession session = new SecureSession(new TcpSocketAdapter(s), b, a.getPublicKeyBase64(), false);
+                session.startHandshake();
+                return session;
+            });
+            Thread acceptor = new Thread(accepted, "soak-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+            HappyEyeballsDialer dialer = new HappyEyeballsDialer(a, b.getPublicKeyBase64());
+            SecureSession dialed = dialer.race(Collections.singletonList(
+                    new PeerEndpoint(InetAddress.getLoopbackAddress().getHostAddress(), ss.getLocalPort())), new AtomicBoolean(false));
+            if (dialed == null) throw new IllegalStateException("discagem em loopback falhou");
+            return new SecureSession[]{dialed, accepted.get(10, TimeUnit.SECONDS)};
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("falha ao estabelecer par", e);
+        }
+    }
+
+    private static SecureSession[] connectInMemory(PeerIdentity a, PeerIdentity b) {
+        InMemoryTransport.Endpoint[] ends = InMemoryTransport.pair(InMemoryTransport.DEFAULT_CAPACITY, WAIT);
+        SecureSession dialed = new SecureSession(ends[0], a, b.getPublicKeyBase64(), true);
+        SecureSession accepted = new SecureSession(ends[1], b, a.getPublicKeyBase64(), false);
+        FutureTask<Void> responder = new FutureTask<>(() -> {
+            accepted.startHandshake();
+            return null;
+        });
+        Thread t = new Thread(responder, "soak-accept");
+        t.setDaemon(true);
+        t.start();
+        try {
+            dialed.startHandshake();
+            responder.get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("falha ao estabelecer par em memória", e);
+        }
+        return new SecureSession[]{dialed, accepted};
+    }
+
+    private static SecureSession[] connectAsync(PeerIdentity a, PeerIdentity b) {
+        TransportProfile profile = TransportProfile.current();
+        try (AsynchronousServerSocketChannel server = AsyncChannelTransport.listen(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), profile)) {
+            Future<AsynchronousSocketChannel> incoming = server.accept();
+            SecureSession dialed = new SecureSession(AsyncChannelTransport.connect(server.getLocalAddress(), profile),
+                    a, b.getPublicKeyBase64(), true);
+            SecureSession accepted = new SecureSession(new AsyncChannelTransport(incoming.get(10, TimeUnit.SECONDS), profile),
+                    b, a.getPublicKeyBase64(), false);
+            FutureTask<Void> responder = new FutureTask<>(() -> {
+                accepted.startHandshake();
+                return null;
+            });
+            Thread t = new Thread(responder, "soak-accept");
+            t.setDaemon(true);
+            t.start();
+            dialed.startHandshake();
+            responder.get(10, TimeUnit.SECONDS);
+            return new SecureSession[]{dialed, accepted};
+        } catch (Exception e) {
+            throw new IllegalStateException("falha ao estabelecer par assíncrono", e);
+        }
+    }
+
+    private static void sendLoop(SecureSession session, int size, int rate, AtomicBoolean stop, Stats stats) {
+        StringBuilder pad = new StringBuilder(size);
+        while (pad.length() < size) pad.append('x');
+        long interval = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        while (!stop.get() && !session.isClosed()) {
+            long stamp;
+            if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                stamp = next;
+                next += interval;
+            } else {
+                stamp = System.nanoTime();
+            }
+            String prefix = stamp + "|";
+            try {
+                session.send(prefix + pad.substring(Math.min(prefix.length(), size)));
+            } catch (IOException e) {
+                stats.sendErrors.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private static SecureSession.MessageHandler receiver(Stats stats) {
+        return new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) {
+                long now = System.nanoTime();
+                int bar = text.indexOf('|');
+                if (bar <= 0) return;
+                try {
+                    stats.record(now - Long.parseLong(text.substring(0, bar)), text.length());
+                } catch (NumberFormatException ignored) {
+                    // mensagem que não é da carga
+                }
+            }
+            @Override public void onError(Exception e) {
+                stats.sessionsEnded.incrementAndGet();
+            }
+        };
+    }
+
+    private static void report(String label, LatencyHistogram h, long elapsedNanos, int size) {
+        double secs = elapsedNanos / 1e9;
+        long n = h.count();
+        Runtime rt = Runtime.getRuntime();
+        long heapMb = (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.printf(Locale.ROOT,
+                "[Soak] %-9s %9.0f msg/s %8.2f MB/s  p50=%.3f ms p99=%.3f ms p999=%.3f ms max=%.3f ms  heap=%d MB threads=%d%n",
+                label, n / secs, n * (double) size / secs / (1024 * 1024),
+                h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6, h.max() / 1e6,
+                heapMb, threads);
+    }
+
+    /** Contadores compartilhados pelos receptores (histograma do intervalo é trocado a cada relatório). */
+    private static final class Stats {
+        final LatencyHistogram total = new LatencyHistogram();
+        final AtomicReference<LatencyHistogram> interval = new AtomicReference<>(new LatencyHistogram());
+        final AtomicLong sendErrors = new AtomicLong();
+        final AtomicLong sessionsEnded = new AtomicLong();
+
+        void record(long latencyNanos, int bytes) {
+            total.record(latencyNanos);
+            interval.get().record(latencyNanos);
+        }
+
+        LatencyHistogram snapshotInterval() {
+            return interval.getAndSet(new LatencyHistogram());
+        }
+    }
+}
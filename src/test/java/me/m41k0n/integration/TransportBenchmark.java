@@ -0,0 +1,152 @@
+package me.m41k0n.integration;
+
+import me.m41k0n.domain.PeerIdentity;
+import me.m41k0n.infra.CryptoUtils;
+import me.m41k0n.infra.LatencyHistogram;
+import me.m41k0n.infra.SecureSession;
+import me.m41k0n.infra.TcpSocketAdapter;
+import me.m41k0n.infra.TransportProfile;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compara os perfis de {@link TransportProfile} com os padrões do JDK (Nagle ligado) numa sessão
+ * {@link SecureSession} sobre TCP em loopback (não é um teste JUnit). Para cada um mede:
+ * - ping-pong: uma mensagem pequena e o eco (RTT p50/p99);
+ * - escreve-escreve-lê: duas mensagens pequenas seguidas e a resposta só após a segunda, o padrão
+ *   em que Nagle segura a segunda até o ACK (atrasado) da primeira;
+ * - lote: 'bench.bulk' mensagens de 8 KiB num sentido (MB/s).
+ *
+ * Parâmetros (-D): bench.rounds (2000), bench.size em bytes (64), bench.bulk (5000).
+ *
+ * Uso: mvn -Psoak test-compile exec:java -Dsoak.main=me.m41k0n.integration.TransportBenchmark
+ *
+ * Em loopback não há perda nem RTT real; numa rede de verdade as diferenças crescem.
+ */
+public final class TransportBenchmark {
+
+    private static final int ROUNDS = Integer.getInteger("bench.rounds", 2000);
+    private static final int SIZE = Integer.getInteger("bench.size", 64);
+    private static final int BULK = Integer.getInteger("bench.bulk", 5000);
+    private static final int BULK_SIZE = 8 * 1024;
+
+    private TransportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf(Locale.ROOT, "[Bench] %d rodadas de %d bytes, lote de %d x %d bytes, loopback%n", ROUNDS, SIZE, BULK, BULK_SIZE);
+        run("jdk-padrão", null);
+        for (TransportProfile p : TransportProfile.values()) run(p.name().toLowerCase(Locale.ROOT), p);
+    }
+
+    private static void run(String label, TransportProfile profile) throws Exception {
+        SecureSession[] pair = connect(profile);
+        SecureSession client = pair[0];
+        SecureSession server = pair[1];
+        BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        AtomicInteger bulkLeft = new AtomicInteger(BULK);
+        CountDownLatch bulkDone = new CountDownLatch(1);
+        server.runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) {
+                try {
+                    if (text.startsWith("p")) {
+                        server.send("r");
+                    } else if (text.startsWith("2")) {
+                        server.send("r"); // responde só depois da segunda metade
+                    } else if (text.startsWith("b") && bulkLeft.decrementAndGet() == 0) {
+                        bulkDone.countDown();
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            @Override public void onError(Exception e) { }
+        });
+        client.runReceiver(new SecureSession.MessageHandler() {
+            @Override public void onPlaintext(String text) { replies.add(text); }
+            @Override public void onError(Exception e) { }
+        });
+
+        String ping = pad("p", SIZE);
+        String first = pad("1", SIZE);
+        String second = pad("2", SIZE);
+        LatencyHistogram pingPong = new LatencyHistogram();
+        LatencyHistogram writeWriteRead = new LatencyHistogram();
+        for (int warm = 0; warm < 2; warm++) {
+            for (int i = 0; i < ROUNDS; i++) {
+                long t0 = System.nanoTime();
+                client.send(ping);
+                await(replies);
+                long t1 = System.nanoTime();
+                client.send(first);
+                client.send(second);
+                await(replies);
+                long t2 = System.nanoTime();
+                if (warm == 1) {
+                    pingPong.record(t1 - t0);
+                    writeWriteRead.record(t2 - t1);
+                }
+            }
+        }
+
+        String chunk = pad("b", BULK_SIZE);
+        long b0 = System.nanoTime();
+        for (int i = 0; i < BULK; i++) client.send(chunk);
+        if (!bulkDone.await(60, TimeUnit.SECONDS)) throw new IllegalStateException("lote não chegou");
+        double secs = (System.nanoTime() - b0) / 1e9;
+
+        System.out.printf(Locale.ROOT, "[Bench] %-10s ping-pong p50=%7.1f µs p99=%8.1f µs | escreve-escreve-lê p50=%8.1f µs p99=%8.1f µs | lote %7.1f MB/s%n",
+                label, pingPong.percentile(50) / 1e3, pingPong.percentile(99) / 1e3,
+                writeWriteRead.percentile(50) / 1e3, writeWriteRead.percentile(99) / 1e3,
+                (double) BULK * BULK_SIZE / secs / (1024 * 1024));
+        client.close();
+        server.close();
+    }
+
+    private static void await(BlockingQueue<String> replies) throws InterruptedException {
+        if (replies.poll(10, TimeUnit.SECONDS) == null) throw new IllegalStateException("resposta não chegou");
+    }
+
+    private static String pad(String prefix, int size) {
+        StringBuilder sb = new StringBuilder(size).append(prefix);
+        while (sb.length() < size) sb.append('x');
+        return sb.toString();
+    }
+
+    /** Par discado/aceito como no PeerListener/HappyEyeballsDialer; profile null = padrões do JDK. */
+    private static SecureSession[] connect(TransportProfile profile) throws Exception {
+        PeerIdentity a = CryptoUtils.generateEd25519KeyPair();
+        PeerIdentity b = CryptoUtils.generateEd25519KeyPair();
+        try (ServerSocket ss = new ServerSocket()) {
+            if (profile != null) profile.configure(ss);
+            ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            FutureTask<SecureSession> accepted = new FutureTask<>(() -> {
+                Socket s = ss.accept();
+                if (profile != null) profile.configureAccepted(s);
+                SecureSession session = new SecureSession(new TcpSocketAdapter(s), b, a.getPublicKeyBase64(), false);
+                session.startHandshake();
+                return session;
+            });
+            Thread t = new Thread(accepted, "bench-accept");
+            t.setDaemon(true);
+            t.start();
+            Socket s = new Socket();
+            if (profile != null) profile.configure(s);
+            s.connect(ss.getLocalSocketAddress());
+            SecureSession dialed = new SecureSession(new TcpSocketAdapter(s), a, b.getPublicKeyBase64(), true);
+            dialed.startHandshake();
+            return new SecureSession[]{dialed, accepted.get(10, TimeUnit.SECONDS)};
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package me.m41k0n.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatHistoryTest {
+
+    private static final byte[] KEY = new byte[32];
+
+    @Test
+    void pagesAndSeeksByTimeAcrossReopen(@TempDir Path dir) throws Exception {
+        try (ChatHistory h = new ChatHistory(dir, KEY, false, 4096)) {
+            for (int i = 0; i < 500; i++) {
+                h.append(i % 2 == 0 ? ChatHistory.Direction.IN : ChatHistory.Direction.OUT, 1000L + i * 10, "msg " + i);
+            }
+        }
+        try (ChatHistory h = new ChatHistory(dir, KEY, false, 4096)) {
+            assertEquals(500, h.size());
+            List<ChatHistory.Entry> page = h.page(100, 5);
+            assertEquals(5, page.size());
+            assertEquals("msg 100", page.get(0).getText());
+            assertEquals(ChatHistory.Direction.IN, page.get(0).getDirection());
+            assertEquals(ChatHistory.Direction.OUT, page.get(1).getDirection());
+
+            List<ChatHistory.Entry> tail = h.tail(3);
+            assertEquals("msg 499", tail.get(2).getText());
+
+            assertEquals(250, h.seek(3500));
+            assertEquals(251, h.seek(3501));
+            assertEquals(0, h.seek(0));
+            assertEquals(500, h.seek(Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void clockGoingBackwardsKeepsIndexOrdered(@TempDir Path dir) throws Exception {
+        try (ChatHistory h = new ChatHistory(dir, KEY, false, 4096)) {
+            h.append(ChatHistory.Direction.OUT, 5000, "a");
+            h.append(ChatHistory.Direction.OUT, 4000, "b");
+            assertEquals(5000, h.get(1).getTimestampMs());
+            assertEquals(0, h.seek(5000));
+        }
+    }
+
+    @Test
+    void keywordSearchIsIncrementalAndPersistent(@TempDir Path dir) throws Exception {
+        try (ChatHistory h = new ChatHistory(dir, KEY, true, 4096)) {
+            h.append(ChatHistory.Direction.IN, 1, "Reunião amanhã às 10h");
+            h.append(ChatHistory.Direction.OUT, 2, "ok, reunião confirmada");
+            h.append(ChatHistory.Direction.IN, 3, "almoço depois?");
+            List<ChatHistory.Entry> hits = h.search("REUNIÃO", 10);
+            assertEquals(2, hits.size());
+            assertEquals("ok, reunião confirmada", hits.get(0).getText(), "mais recente primeiro");
+            assertEquals(1, h.search("reunião confirmada", 10).size());
+            assertTrue(h.search("inexistente", 10).isEmpty());
+        }
+        try (ChatHistory h = new ChatHistory(dir, KEY, true, 4096)) {
+            assertEquals(1, h.search("almoço", 10).size());
+            h.append(ChatHistory.Direction.OUT, 4, "almoço às 12h");
+            assertEquals(2, h.search("almoço", 10).size());
+        }
+    }
+
+    @Test
+    void rebuildsIndexesForRecordsWrittenAfterLastIndexUpdate(@TempDir Path dir) throws Exception {
+        try (ChatHistory h = new ChatHistory(dir, KEY, true, 4096)) {
+            h.append(ChatHistory.Direction.IN, 10, "primeira");
+            h.append(ChatHistory.Direction.IN, 20, "segunda");
+        }
+        // simula queda entre o append no log e a atualização dos índices
+        Files.delete(dir.resolve("index"));
+        Files.write(dir.resolve("tokens"), new byte[0]);
+        try (ChatHistory h = new ChatHistory(dir, KEY, true, 4096)) {
+            assertEquals(2, h.size());
+            assertEquals(1, h.seek(15));
+            assertEquals("segunda", h.search("segunda", 10).get(0).getText());
+        }
+    }
+
+    @Test
+    void storesNoPlaintextOnDisk(@TempDir Path dir) throws Exception {
+        try (ChatHistory h = new ChatHistory(dir, KEY, true, 4096)) {
+            h.append(ChatHistory.Direction.OUT, 1, "senha-secreta");
+        }
+        for (Path p : List.of(dir.resolve("log").resolve("0000000000.seg"), dir.resolve("index"), dir.resolve("tokens"))) {
+            String raw = new String(Files.readAllBytes(p), StandardCharsets.ISO_8859_1);
+            assertFalse(raw.contains("senha"), "texto claro em " + p.getFileName());
+        }
+    }
+}
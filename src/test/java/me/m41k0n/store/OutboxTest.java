@@ -0,0 +1,93 @@
+package me.m41k0n.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboxTest {
+
+    private static final String PEER = "UEVFUi1LRVk=";
+    private static final byte[] KEY = new byte[32];
+
+    @Test
+    void storesEncryptedAtRestAndSurvivesReopen(@TempDir Path dir) throws Exception {
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            o.enqueue("segredo-offline");
+            o.flush();
+        }
+        String raw = new String(Files.readAllBytes(dir.resolve("0000000000.seg")), StandardCharsets.ISO_8859_1);
+        assertFalse(raw.contains("segredo-offline"), "texto claro não deve ir para o disco");
+
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            assertTrue(o.hasPending());
+            List<String> seen = new ArrayList<>();
+            o.forEachPending(-1, 10, (id, text) -> seen.add(text));
+            assertEquals(List.of("segredo-offline"), seen);
+        }
+    }
+
+    @Test
+    void acknowledgeAdvancesCursorAndCompacts(@TempDir Path dir) throws Exception {
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            for (int i = 0; i < 300; i++) o.enqueue("m" + i);
+            int segments = o.segmentCount();
+            assertTrue(segments > 1);
+
+            List<Long> ids = new ArrayList<>();
+            long last = o.forEachPending(-1, 250, (id, text) -> ids.add(id));
+            assertEquals(250, ids.size());
+            o.acknowledge(last);
+            assertTrue(o.segmentCount() < segments, "segmentos confirmados devem ser apagados");
+
+            List<String> rest = new ArrayList<>();
+            o.forEachPending(-1, 1000, (id, text) -> rest.add(text));
+            assertEquals(50, rest.size());
+            assertEquals("m250", rest.get(0));
+        }
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            List<String> rest = new ArrayList<>();
+            o.forEachPending(-1, 1000, (id, text) -> rest.add(text));
+            assertEquals("m250", rest.get(0), "cursor de ack deve persistir");
+        }
+    }
+
+    @Test
+    void wrongKeyRecordsAreSkipped(@TempDir Path dir) throws Exception {
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            o.enqueue("x");
+        }
+        byte[] other = new byte[32];
+        other[0] = 1;
+        try (Outbox o = new Outbox(dir, other, PEER, 4096)) {
+            List<String> seen = new ArrayList<>();
+            o.forEachPending(-1, 10, (id, text) -> seen.add(text));
+            assertTrue(seen.isEmpty());
+        }
+    }
+
+    @Test
+    void acknowledgeRejectsIdsThatAreNotRecordAddresses(@TempDir Path dir) throws Exception {
+        try (Outbox o = new Outbox(dir, KEY, PEER, 4096)) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 3; i++) ids.add(o.enqueue("m" + i));
+
+            assertThrows(IllegalArgumentException.class, () -> o.acknowledge(ids.get(1) + 1));
+            assertThrows(IllegalArgumentException.class, () -> o.acknowledge(Long.MAX_VALUE));
+            assertEquals(-1, o.getAckedUpTo(), "ack inválido não deve mover o cursor");
+
+            o.acknowledge(ids.get(1));
+            assertEquals(ids.get(1), o.getAckedUpTo());
+            o.acknowledge(ids.get(0)); // já confirmado: ignorado
+            List<String> rest = new ArrayList<>();
+            o.forEachPending(-1, 10, (id, text) -> rest.add(text));
+            assertEquals(List.of("m2"), rest);
+        }
+    }
+}